@@ -2,9 +2,16 @@ package org.jsoncsvconverter.Logic;
 
 import com.opencsv.CSVWriter;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -19,6 +26,11 @@ import java.util.List;
  *   <li>Support for header-only files and full data files</li>
  *   <li>Proper resource management with try-with-resources</li>
  *   <li>Comprehensive error handling with meaningful exception messages</li>
+ *   <li>Write time, bytes and row counts reported to {@link ConversionMetrics}</li>
+ *   <li>Sparse rows expanded one at a time while writing, so mostly empty rows are never held dense</li>
+ *   <li>Optional per-column statistics gathered from the rows as they are written</li>
+ *   <li>Optional sidecar index of row offsets for random access, see {@link CsvRowIndex}</li>
+ *   <li>Optional columnar copy of the rows written in the same pass, see {@link ColumnarFileWriter}</li>
  * </ul>
  *
  * <p>Usage examples:</p>
@@ -50,6 +62,18 @@ public class CSVWriterFile {
     /** The column headers for the CSV file */
     private final String[] headers;
 
+    /** Statistics receiving every data row written, or null */
+    private ColumnStatistics statistics;
+
+    /** Rows per indexed offset of the row index written next to every file, 0 for none */
+    private int rowIndexInterval = 0;
+
+    /** Key column of the row index, or null */
+    private String rowIndexKeyColumn;
+
+    /** Columnar file receiving every data row written, or null */
+    private ColumnarFileWriter.Output columnarCopy;
+
     /**
      * Constructs a new CSVWriterFile with the specified column headers.
      * The headers define the structure of the CSV file and will be written as the first row
@@ -71,6 +95,54 @@ public class CSVWriterFile {
         this.headers = headers;
     }
 
+    /**
+     * Sets the statistics that receive every data row written by the following calls, so that
+     * they are gathered in the same pass as the file. The statistics must have been created for
+     * the headers of this writer.
+     *
+     * @param statistics The statistics to update, or null to gather none
+     * @return This writer
+     * @see ColumnStatistics#write(String)
+     */
+    public CSVWriterFile setStatistics(ColumnStatistics statistics) {
+        this.statistics = statistics;
+        return this;
+    }
+
+    /**
+     * Makes the following calls save a {@link CsvRowIndex} next to every file they create, with
+     * the byte offset of every {@code interval}-th data row and, when a key column is given, the
+     * smallest and largest key of each block of rows. Offsets are recorded while the rows are
+     * written, so the file is not read again.
+     *
+     * @param interval The number of rows per indexed offset, or 0 to write no index
+     * @param keyColumn The key column, or null for none. A column missing from the headers is
+     *                  empty in every row.
+     * @return This writer
+     * @throws IllegalArgumentException if the interval is negative
+     * @see CsvRowIndex#load(String)
+     */
+    public CSVWriterFile setRowIndex(int interval, String keyColumn) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Row index interval cannot be negative.");
+        }
+        this.rowIndexInterval = interval;
+        this.rowIndexKeyColumn = keyColumn;
+        return this;
+    }
+
+    /**
+     * Sets the columnar file that receives every data row written by the following calls, so
+     * that both files are written in one pass. The caller closes it once the rows are written.
+     *
+     * @param columnarCopy The open columnar file, with the headers of this writer, or null
+     * @return This writer
+     */
+    CSVWriterFile setColumnarCopy(ColumnarFileWriter.Output columnarCopy) {
+        this.columnarCopy = columnarCopy;
+        return this;
+    }
+
     /**
      * Creates a new CSV file containing only the header row.
      * This method is useful for creating template files or when data will be added later
@@ -96,17 +168,23 @@ public class CSVWriterFile {
     public void createNewCSVFile(String filePathOutput) {
         File file = new File(filePathOutput);
 
-        try {
-            ensureParentDir(file);
+        try (ConversionMetrics.StageTimer timer = ConversionMetrics.getInstance().start(ConversionMetrics.Stage.WRITE, filePathOutput)) {
+            try {
+                ensureParentDir(file);
 
-            try (FileWriter outputfile = new FileWriter(file);
-                 CSVWriter writer = new CSVWriter(outputfile)) {
+                try (FileWriter outputfile = new FileWriter(file);
+                     CSVWriter writer = new CSVWriter(outputfile)) {
 
-                writer.writeNext(headers);
-            }
+                    writer.writeNext(headers);
+                }
+                if (rowIndexInterval > 0) {
+                    newRowIndex().write(filePathOutput);
+                }
 
-        } catch (IOException e) {
-            throw new RuntimeException("Error while creating CSV file: " + filePathOutput, e);
+            } catch (IOException e) {
+                throw new RuntimeException("Error while creating CSV file: " + filePathOutput, e);
+            }
+            timer.complete(file.length(), 0, headers.length);
         }
     }
 
@@ -128,7 +206,8 @@ public class CSVWriterFile {
      *   <li>Creates parent directories if they don't exist</li>
      *   <li>Overwrites existing files at the specified path</li>
      *   <li>Properly closes all file resources using try-with-resources</li>
-     *   <li>Uses OpenCSV's writeAll() for efficient bulk writing</li>
+     *   <li>Reads each row once, writing it and adding it to the statistics and columnar copy
+     *   together, so rows spilled to disk are not read again</li>
      * </ul>
      *
      * @param filePathOutput The complete path where the CSV file should be created,
@@ -141,28 +220,255 @@ public class CSVWriterFile {
      *
      * @see #createNewCSVFile(String)
      * @see #ensureParentDir(File)
-     * @see CSVWriter#writeAll(List)
      */
     public void createCSVWithData(String filePathOutput, List<String[]> rows) {
         File file = new File(filePathOutput);
 
-        try {
-            ensureParentDir(file);
+        try (ConversionMetrics.StageTimer timer = ConversionMetrics.getInstance().start(ConversionMetrics.Stage.WRITE, filePathOutput)) {
+            try {
+                ensureParentDir(file);
+
+                CsvRowIndex.Builder index = newRowIndex();
+                if (index != null) {
+                    writeRowsIndexed(file, rows, index);
+                    index.write(filePathOutput);
+                } else {
+                    try (FileWriter outputfile = new FileWriter(file);
+                         CSVWriter writer = new CSVWriter(outputfile)) {
 
-            try (FileWriter outputfile = new FileWriter(file);
-                 CSVWriter writer = new CSVWriter(outputfile)) {
+                        // Write headers first
+                        writer.writeNext(headers);
 
-                // Write headers first
+                        // Write all rows
+                        if (rows != null) {
+                            for (String[] row : rows) {
+                                writer.writeNext(row);
+                                if (statistics != null) {
+                                    statistics.acceptRow(row);
+                                }
+                                if (columnarCopy != null) {
+                                    columnarCopy.addRow(row);
+                                }
+                            }
+                        }
+                    }
+                }
+
+            } catch (IOException e) {
+                throw new RuntimeException("Error while creating CSV file with data: " + filePathOutput, e);
+            }
+            timer.complete(file.length(), rows == null ? 0 : rows.size(), headers.length);
+        }
+    }
+
+    /**
+     * Creates a new CSV file with headers and rows that store only their populated cells.
+     * Each row is expanded only while it is written, so the rows never have to exist in dense
+     * form at the same time; the output is identical to {@link #createCSVWithData(String, List)}
+     * given the expanded rows.
+     *
+     * <p>When the platform charset encodes ASCII as itself, the rows are encoded straight to
+     * bytes in the same format, and number cells read from primitive columns are formatted
+     * without creating their text. Otherwise each row is expanded into a reusable array and
+     * written with OpenCSV.</p>
+     *
+     * @param filePathOutput The complete path where the CSV file should be created,
+     *                      including filename and .csv extension
+     * @param rows The rows to write, laid out for the headers of this writer. Can be null or
+     *            empty, in which case only headers will be written.
+     * @throws IllegalArgumentException if a row is wider than the headers
+     * @throws RuntimeException if an I/O error occurs during file creation, directory creation,
+     *                         or writing operations
+     *
+     * @see SparseRow
+     */
+    public void createCSVWithSparseRows(String filePathOutput, List<SparseRow> rows) {
+        File file = new File(filePathOutput);
+
+        try (ConversionMetrics.StageTimer timer = ConversionMetrics.getInstance().start(ConversionMetrics.Stage.WRITE, filePathOutput)) {
+            try {
+                ensureParentDir(file);
+
+                CsvRowIndex.Builder index = newRowIndex();
+                if (CsvByteWriter.supports(Charset.defaultCharset())) {
+                    writeSparseRowsAsBytes(new FileOutputStream(file), rows, index, Charset.defaultCharset(), true);
+                } else {
+                    writeSparseRowsWithOpenCsv(new FileOutputStream(file), rows, index, Charset.defaultCharset(),
+                            true);
+                }
+                if (index != null) {
+                    index.write(filePathOutput);
+                }
+
+            } catch (IOException e) {
+                throw new RuntimeException("Error while creating CSV file with data: " + filePathOutput, e);
+            }
+            timer.complete(file.length(), rows == null ? 0 : rows.size(), headers.length);
+        }
+    }
+
+    private void writeRowsIndexed(File file, List<String[]> rows, CsvRowIndex.Builder index) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try (CSVWriter writer = new CSVWriter(new OutputStreamWriter(counter, Charset.defaultCharset()))) {
+            writer.writeNext(headers);
+            if (rows != null) {
+                for (String[] row : rows) {
+                    index.addRow(blockOffset(index, writer, counter), row);
+                    writer.writeNext(row);
+                    if (statistics != null) {
+                        statistics.acceptRow(row);
+                    }
+                    if (columnarCopy != null) {
+                        columnarCopy.addRow(row);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes headers and rows that store only their populated cells to a stream, such as
+     * standard output, in the format of {@link #createCSVWithSparseRows(String, List)}. The
+     * stream is flushed but not closed, and no row index or columnar copy is written, as they
+     * describe files.
+     *
+     * @param output The stream to write to
+     * @param rows The rows to write, laid out for the headers of this writer. Can be null or
+     *            empty, in which case only headers will be written.
+     * @throws IllegalArgumentException if a row is wider than the headers
+     * @throws RuntimeException if an I/O error occurs while writing
+     */
+    public void writeCSVWithSparseRows(OutputStream output, List<SparseRow> rows) {
+        writeCSVWithSparseRows(output, rows, Charset.defaultCharset());
+    }
+
+    /**
+     * Writes headers and rows that store only their populated cells to a stream, encoded in the
+     * given charset rather than the platform charset, such as an HTTP response that declares its
+     * charset. The stream is flushed but not closed.
+     *
+     * @param output The stream to write to
+     * @param rows The rows to write, laid out for the headers of this writer. Can be null or
+     *            empty, in which case only headers will be written.
+     * @param charset The charset of the CSV text
+     * @throws IllegalArgumentException if a row is wider than the headers
+     * @throws RuntimeException if an I/O error occurs while writing
+     */
+    public void writeCSVWithSparseRows(OutputStream output, List<SparseRow> rows, Charset charset) {
+        writeSparseRows(output, rows, charset, true);
+    }
+
+    /**
+     * Writes rows that store only their populated cells to a stream without the headers, after
+     * rows written earlier for the same headers, such as the rows of the next file of a merge.
+     * The stream is flushed but not closed.
+     *
+     * @param output The stream to write to
+     * @param rows The rows to write, laid out for the headers of this writer. Can be null or
+     *            empty, in which case nothing is written.
+     * @param charset The charset of the CSV text
+     * @throws IllegalArgumentException if a row is wider than the headers
+     * @throws RuntimeException if an I/O error occurs while writing
+     */
+    void appendSparseRows(OutputStream output, List<SparseRow> rows, Charset charset) {
+        writeSparseRows(output, rows, charset, false);
+    }
+
+    private void writeSparseRows(OutputStream output, List<SparseRow> rows, Charset charset, boolean header) {
+        CountingOutputStream counter = new CountingOutputStream(new UnclosedOutputStream(output));
+        try (ConversionMetrics.StageTimer timer = ConversionMetrics.getInstance().start(ConversionMetrics.Stage.WRITE)) {
+            try {
+                if (CsvByteWriter.supports(charset)) {
+                    writeSparseRowsAsBytes(counter, rows, null, charset, header);
+                } else {
+                    writeSparseRowsWithOpenCsv(counter, rows, null, charset, header);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error while writing CSV stream", e);
+            }
+            timer.complete(counter.count, rows == null ? 0 : rows.size(), headers.length);
+        }
+    }
+
+    private void writeSparseRowsAsBytes(OutputStream output, List<SparseRow> rows, CsvRowIndex.Builder index,
+                                        Charset charset, boolean header) throws IOException {
+        try (CsvByteWriter writer = new CsvByteWriter(output, charset)) {
+            if (header) {
+                writer.writeRow(headers);
+            }
+            if (rows != null) {
+                for (SparseRow row : rows) {
+                    checkWidth(row);
+                    if (index != null) {
+                        index.addRow(index.isBlockStart() ? writer.getPosition() : -1, row);
+                    }
+                    writer.writeRow(row);
+                    if (statistics != null) {
+                        statistics.acceptRow(row);
+                    }
+                    if (columnarCopy != null) {
+                        columnarCopy.addRow(row);
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeSparseRowsWithOpenCsv(OutputStream output, List<SparseRow> rows, CsvRowIndex.Builder index,
+                                            Charset charset, boolean header) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(output));
+        try (CSVWriter writer = new CSVWriter(new OutputStreamWriter(counter, charset))) {
+
+            if (header) {
                 writer.writeNext(headers);
+            }
 
-                // Write all rows
-                if (rows != null && !rows.isEmpty()) {
-                    writer.writeAll(rows);
+            if (rows != null) {
+                String[] line = new String[headers.length];
+                Arrays.fill(line, "");
+                for (SparseRow row : rows) {
+                    checkWidth(row);
+                    row.copyInto(line);
+                    if (index != null) {
+                        index.addRow(blockOffset(index, writer, counter), row);
+                    }
+                    writer.writeNext(row.getWidth() == headers.length ? line : Arrays.copyOf(line, row.getWidth()));
+                    if (statistics != null) {
+                        statistics.acceptRow(row);
+                    }
+                    if (columnarCopy != null) {
+                        columnarCopy.addRow(row);
+                    }
+                    // Only the cells just written need clearing for the next row
+                    for (int i = 0; i < row.size(); i++) {
+                        line[row.getColumn(i)] = "";
+                    }
                 }
             }
+        }
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException("Error while creating CSV file with data: " + filePathOutput, e);
+    private CsvRowIndex.Builder newRowIndex() {
+        return rowIndexInterval == 0 ? null : new CsvRowIndex.Builder(rowIndexInterval, headers, rowIndexKeyColumn);
+    }
+
+    /**
+     * Returns the offset of the next row when it starts a block of the index, flushing the
+     * writer so that every byte before it has been counted.
+     */
+    private static long blockOffset(CsvRowIndex.Builder index, CSVWriter writer, CountingOutputStream counter)
+            throws IOException {
+        if (!index.isBlockStart()) {
+            return -1;
+        }
+        writer.flush();
+        return counter.count;
+    }
+
+    private void checkWidth(SparseRow row) {
+        if (row.getWidth() > headers.length) {
+            throw new IllegalArgumentException("Row of " + row.getWidth()
+                    + " columns does not fit " + headers.length + " headers.");
         }
     }
 
@@ -201,4 +507,48 @@ public class CSVWriterFile {
             }
         }
     }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Flushes the stream it wraps instead of closing it, for streams owned by the caller.
+     */
+    private static final class UnclosedOutputStream extends FilterOutputStream {
+
+        UnclosedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,403 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * A deterministic generator of synthetic campus-shaped JSON data for scaling tests and benchmarks.
+ * The generated documents exercise every flattening rule of {@link JSONParser}: nested objects,
+ * arrays of objects, arrays of primitives and optional fields that are only present on some records.
+ *
+ * <p>Key features:</p>
+ * <ul>
+ *   <li>Seedable and fully deterministic: the same seed always produces the same bytes</li>
+ *   <li>Output size controlled either by record count or by a target byte size (KB up to tens of GB)</li>
+ *   <li>Object-root, array-root and newline-delimited (NDJSON) layouts</li>
+ *   <li>Streams straight to the output, so memory use does not depend on the generated size</li>
+ * </ul>
+ *
+ * <p>Every student record has the following shape (fields marked optional are sparse):</p>
+ * <pre>{@code
+ * {
+ *   "id": "S00000001", "firstName": "...", "lastName": "...", "email": "...",   // email optional
+ *   "status": "active", "campus": "North", "major": "Biology", "term": "2024-FA",
+ *   "gpa": 3.42, "enrolled": true,
+ *   "address": {"street": "...", "city": "...", "state": "...", "zip": "...",
+ *               "geo": {"lat": 25.67, "lng": -100.31}},
+ *   "advisor": {"name": "...", "office": "..."},                               // optional
+ *   "courses": [{"code": "CS101", "title": "...", "credits": 4, "grades": [90, 85]}],
+ *   "skills": ["Java", "SQL"],
+ *   "scholarship": null                                                          // optional
+ * }
+ * }</pre>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * CampusDataGenerator generator = new CampusDataGenerator(42L);
+ * generator.generate(Paths.get("bench/students.json"), CampusDataGenerator.Layout.ARRAY_ROOT,
+ *         CampusDataGenerator.parseSize("512MB"));
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class CampusDataGenerator {
+
+    /**
+     * The top-level layout of the generated document.
+     */
+    public enum Layout {
+        /** A single object with campus metadata and a {@code students} array, as accepted by {@link JSONParser} */
+        OBJECT_ROOT,
+        /** A single array whose elements are student records */
+        ARRAY_ROOT,
+        /** One student record per line (newline-delimited JSON) */
+        NDJSON
+    }
+
+    private static final String[] FIRST_NAMES = {
+            "Ana", "Luis", "Maria", "Jose", "Sofia", "Diego", "Valeria", "Carlos", "Camila", "Miguel",
+            "Lucia", "Jorge", "Elena", "Pablo", "Daniela", "Andres", "Paula", "Ricardo", "Laura", "Fernando"
+    };
+
+    private static final String[] LAST_NAMES = {
+            "Garcia", "Martinez", "Lopez", "Hernandez", "Gonzalez", "Perez", "Rodriguez", "Sanchez",
+            "Ramirez", "Torres", "Flores", "Rivera", "Gomez", "Diaz", "Cruz", "Morales", "Reyes", "Ortiz"
+    };
+
+    private static final String[] STATUSES = {"active", "active", "active", "inactive", "graduated", "suspended"};
+
+    private static final String[] CAMPUSES = {"North", "South", "East", "West", "Downtown", "Online"};
+
+    private static final String[] MAJORS = {
+            "Computer Science", "Biology", "Mathematics", "Physics", "Economics", "History",
+            "Mechanical Engineering", "Psychology", "Architecture", "Chemistry", "Law", "Medicine"
+    };
+
+    private static final String[] TERMS = {"2023-FA", "2024-SP", "2024-SU", "2024-FA", "2025-SP"};
+
+    private static final String[] CITIES = {"Monterrey", "Guadalajara", "Puebla", "Merida", "Queretaro", "Leon"};
+
+    private static final String[] STATES = {"NL", "JAL", "PUE", "YUC", "QRO", "GTO"};
+
+    private static final String[] STREETS = {"Main St", "Hidalgo", "Juarez", "Reforma", "Madero", "Zaragoza"};
+
+    private static final String[] COURSE_PREFIXES = {"CS", "BIO", "MAT", "PHY", "ECO", "HIS", "CHE", "LAW"};
+
+    private static final String[] COURSE_TITLES = {
+            "Introduction to Programming", "Data Structures", "Calculus I", "Linear Algebra",
+            "Organic Chemistry", "Microeconomics", "World History", "Mechanics", "Genetics", "Ethics"
+    };
+
+    private static final String[] SKILLS = {
+            "Java", "Python", "SQL", "Excel", "Statistics", "Public Speaking", "Spanish", "English",
+            "Leadership", "Research", "Writing", "Design"
+    };
+
+    private static final String[] OFFICES = {"A-101", "A-204", "B-310", "C-015", "D-402"};
+
+    /** Buffer size used for the character stream written to the output */
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    /** The seed that makes the generated data reproducible */
+    private final long seed;
+
+    /**
+     * Constructs a new generator with the given seed.
+     * Two generators built with the same seed produce byte-identical output for the same request.
+     *
+     * @param seed The seed for the pseudo-random sequence
+     */
+    public CampusDataGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Writes a document of approximately {@code targetBytes} bytes to the given file.
+     * Parent directories are created when needed and an existing file is overwritten.
+     *
+     * @param output The file to write
+     * @param layout The top-level layout of the document
+     * @param targetBytes The minimum number of bytes to produce; generation stops at the first
+     *                    record boundary at or after this size
+     * @return The number of bytes actually written
+     * @throws RuntimeException if an I/O error occurs while writing the file
+     */
+    public long generate(Path output, Layout layout, long targetBytes) {
+        try {
+            Path parent = output.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (OutputStream out = Files.newOutputStream(output)) {
+                return generate(out, layout, targetBytes);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error while generating campus data: " + output, e);
+        }
+    }
+
+    /**
+     * Writes a document of approximately {@code targetBytes} bytes to the given stream.
+     * The stream is flushed but not closed.
+     *
+     * @param out The destination stream
+     * @param layout The top-level layout of the document
+     * @param targetBytes The minimum number of bytes to produce
+     * @return The number of bytes actually written
+     * @throws IOException if writing to the stream fails
+     */
+    public long generate(OutputStream out, Layout layout, long targetBytes) throws IOException {
+        if (targetBytes <= 0) {
+            throw new IllegalArgumentException("Target size must be positive.");
+        }
+        return write(out, layout, Long.MAX_VALUE, targetBytes);
+    }
+
+    /**
+     * Writes a document containing exactly {@code recordCount} student records to the given stream.
+     * The stream is flushed but not closed.
+     *
+     * @param out The destination stream
+     * @param layout The top-level layout of the document
+     * @param recordCount The number of student records to generate
+     * @return The number of bytes written
+     * @throws IOException if writing to the stream fails
+     */
+    public long generateRecords(OutputStream out, Layout layout, long recordCount) throws IOException {
+        if (recordCount < 0) {
+            throw new IllegalArgumentException("Record count cannot be negative.");
+        }
+        return write(out, layout, recordCount, Long.MAX_VALUE);
+    }
+
+    /**
+     * Shared generation loop. Stops when either the record limit or the byte target is reached.
+     * All generated text is ASCII, so the number of characters written equals the number of bytes.
+     */
+    private long write(OutputStream out, Layout layout, long maxRecords, long targetBytes) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        CountingWriter counter = new CountingWriter(
+                new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE));
+        JsonWriter json = new JsonWriter(counter);
+        json.setStrictness(Strictness.LENIENT);
+        json.setSerializeNulls(true);
+
+        if (layout == Layout.OBJECT_ROOT) {
+            json.beginObject();
+            json.name("institution").value("Campus University");
+            json.name("generator").value("CampusDataGenerator");
+            json.name("seed").value(seed);
+            json.name("students").beginArray();
+        } else if (layout == Layout.ARRAY_ROOT) {
+            json.beginArray();
+        }
+
+        long record = 0;
+        while (record < maxRecords && counter.count < targetBytes) {
+            writeStudent(json, random, record);
+            record++;
+            if (layout == Layout.NDJSON) {
+                json.flush();
+                counter.write('\n');
+            }
+        }
+
+        if (layout == Layout.OBJECT_ROOT) {
+            json.endArray();
+            json.endObject();
+        } else if (layout == Layout.ARRAY_ROOT) {
+            json.endArray();
+        }
+        json.flush();
+        return counter.count;
+    }
+
+    /**
+     * Writes one student record. Optional fields are decided by the random sequence so that
+     * roughly the documented share of records contains them.
+     */
+    private void writeStudent(JsonWriter json, SplittableRandom random, long index) throws IOException {
+        String firstName = pick(random, FIRST_NAMES);
+        String lastName = pick(random, LAST_NAMES);
+
+        json.beginObject();
+        json.name("id").value(String.format(Locale.ROOT, "S%08d", index + 1));
+        json.name("firstName").value(firstName);
+        json.name("lastName").value(lastName);
+        if (random.nextInt(100) < 80) {
+            json.name("email").value(firstName.toLowerCase(Locale.ROOT) + "." + lastName.toLowerCase(Locale.ROOT)
+                    + (index + 1) + "@campus.edu");
+        }
+        if (random.nextInt(100) < 50) {
+            json.name("phone").value(String.format(Locale.ROOT, "81-%04d-%04d",
+                    random.nextInt(10000), random.nextInt(10000)));
+        }
+        json.name("status").value(pick(random, STATUSES));
+        json.name("campus").value(pick(random, CAMPUSES));
+        json.name("major").value(pick(random, MAJORS));
+        json.name("term").value(pick(random, TERMS));
+        json.name("gpa").jsonValue(String.format(Locale.ROOT, "%.2f", 1.5 + random.nextDouble() * 2.5));
+        json.name("enrolled").value(random.nextInt(10) < 8);
+
+        int city = random.nextInt(CITIES.length);
+        json.name("address").beginObject();
+        json.name("street").value((1 + random.nextInt(9999)) + " " + pick(random, STREETS));
+        json.name("city").value(CITIES[city]);
+        json.name("state").value(STATES[city]);
+        json.name("zip").value(String.format(Locale.ROOT, "%05d", random.nextInt(100000)));
+        json.name("geo").beginObject();
+        json.name("lat").jsonValue(String.format(Locale.ROOT, "%.4f", 14.5 + random.nextDouble() * 18));
+        json.name("lng").jsonValue(String.format(Locale.ROOT, "%.4f", -117 + random.nextDouble() * 30));
+        json.endObject();
+        json.endObject();
+
+        if (random.nextInt(100) < 30) {
+            json.name("advisor").beginObject();
+            json.name("name").value("Dr. " + pick(random, LAST_NAMES));
+            json.name("office").value(pick(random, OFFICES));
+            json.endObject();
+        }
+
+        json.name("courses").beginArray();
+        int courseCount = random.nextInt(6);
+        for (int i = 0; i < courseCount; i++) {
+            json.beginObject();
+            json.name("code").value(pick(random, COURSE_PREFIXES) + (100 + random.nextInt(400)));
+            json.name("title").value(pick(random, COURSE_TITLES));
+            json.name("credits").value(1 + random.nextInt(5));
+            json.name("grades").beginArray();
+            int gradeCount = 1 + random.nextInt(4);
+            for (int g = 0; g < gradeCount; g++) {
+                json.value(50 + random.nextInt(51));
+            }
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+
+        json.name("skills").beginArray();
+        int skillCount = random.nextInt(4);
+        for (int i = 0; i < skillCount; i++) {
+            json.value(pick(random, SKILLS));
+        }
+        json.endArray();
+
+        if (random.nextInt(100) < 10) {
+            json.name("scholarship").nullValue();
+        }
+        json.endObject();
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Parses a human-readable size such as {@code 512KB}, {@code 64MB}, {@code 20GB} or a plain
+     * number of bytes. Units are binary (1KB = 1024 bytes) and case-insensitive.
+     *
+     * @param size The size text to parse
+     * @return The size in bytes
+     * @throws IllegalArgumentException if the text is not a valid positive size
+     */
+    public static long parseSize(String size) {
+        String text = size.trim().toUpperCase(Locale.ROOT);
+        long multiplier = 1;
+        if (text.endsWith("KB")) {
+            multiplier = 1L << 10;
+        } else if (text.endsWith("MB")) {
+            multiplier = 1L << 20;
+        } else if (text.endsWith("GB")) {
+            multiplier = 1L << 30;
+        }
+        if (multiplier > 1) {
+            text = text.substring(0, text.length() - 2).trim();
+        } else if (text.endsWith("B")) {
+            text = text.substring(0, text.length() - 1).trim();
+        }
+        try {
+            long value = Long.parseLong(text);
+            if (value <= 0) {
+                throw new IllegalArgumentException("Size must be positive: " + size);
+            }
+            return Math.multiplyExact(value, multiplier);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid size: " + size, e);
+        }
+    }
+
+    /**
+     * Command line entry point.
+     * Usage: {@code CampusDataGenerator <output> <object|array|ndjson> <size> [seed]}
+     *
+     * @param args The output path, layout, target size and optional seed
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: CampusDataGenerator <output> <object|array|ndjson> <size> [seed]");
+            System.exit(2);
+        }
+        Layout layout;
+        switch (args[1].toLowerCase(Locale.ROOT)) {
+            case "object":
+                layout = Layout.OBJECT_ROOT;
+                break;
+            case "array":
+                layout = Layout.ARRAY_ROOT;
+                break;
+            case "ndjson":
+                layout = Layout.NDJSON;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown layout: " + args[1]);
+        }
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42L;
+        long written = new CampusDataGenerator(seed).generate(Paths.get(args[0]), layout, parseSize(args[2]));
+        System.out.println("Generated " + written + " bytes into " + args[0]);
+    }
+
+    /**
+     * A writer that counts the characters passing through it.
+     */
+    private static final class CountingWriter extends FilterWriter {
+
+        private long count;
+
+        CountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            out.write(c);
+            count++;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            out.write(cbuf, off, len);
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            out.write(str, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package org.jsoncsvconverter.Logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A selection of output columns, given as flattened paths or {@code __}-style globs.
+ * Readers consult the projection while they read the input so that unselected subtrees are
+ * skipped at the token level and never built, and writers use it to choose and order the columns.
+ *
+ * <p>Pattern syntax, applied to the segments between {@code __} separators:</p>
+ * <ul>
+ *   <li>{@code address__city} - exactly that column</li>
+ *   <li>{@code address__*} - any column one level below {@code address}; {@code *} never crosses a separator</li>
+ *   <li>{@code courses__**} - any column at any depth below {@code courses}</li>
+ *   <li>{@code *_id} - {@code *} may also match part of a segment</li>
+ * </ul>
+ *
+ * <p>Column order: exact paths appear in the order they were given, even when the input never
+ * contains them (the column is then left empty); columns matched by a glob appear in the order
+ * they were discovered, at the position of the glob.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * ConversionOptions options = new ConversionOptions()
+ *         .setProjection(ColumnProjection.parse("id, status, address__*, courses__code"));
+ * }</pre>
+ *
+ * <p>Instances are immutable and may be shared between threads.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public final class ColumnProjection {
+
+    /** Pattern segment that matches any number of segments */
+    private static final String ANY_DEPTH = "**";
+
+    private final List<String> patterns;
+    private final Set<String> exactPaths = new HashSet<>();
+
+    /** Every proper prefix of an exact path, cut at separators */
+    private final Set<String> exactPrefixes = new HashSet<>();
+
+    /** Glob patterns split into segments */
+    private final List<String[]> globs = new ArrayList<>();
+
+    /** Memoized answers; the number of distinct paths is bounded by the input schema */
+    private final Map<String, Boolean> matchCache = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> containCache = new ConcurrentHashMap<>();
+
+    private ColumnProjection(List<String> patterns) {
+        if (patterns.isEmpty()) {
+            throw new IllegalArgumentException("A projection needs at least one column.");
+        }
+        this.patterns = Collections.unmodifiableList(new ArrayList<>(patterns));
+        for (String pattern : patterns) {
+            if (pattern.contains("*")) {
+                globs.add(segments(pattern));
+            } else {
+                exactPaths.add(pattern);
+                int end = pattern.indexOf(JsonFlattener.SEPARATOR);
+                while (end >= 0) {
+                    exactPrefixes.add(pattern.substring(0, end));
+                    end = pattern.indexOf(JsonFlattener.SEPARATOR, end + JsonFlattener.SEPARATOR.length());
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a projection from a list of paths and globs.
+     *
+     * @param patterns The column paths or globs, in output order
+     * @return The projection
+     * @throws IllegalArgumentException if no pattern is given or a pattern is blank
+     */
+    public static ColumnProjection of(List<String> patterns) {
+        List<String> cleaned = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (pattern == null || pattern.trim().isEmpty()) {
+                throw new IllegalArgumentException("Projection patterns cannot be blank.");
+            }
+            cleaned.add(pattern.trim());
+        }
+        return new ColumnProjection(cleaned);
+    }
+
+    /**
+     * Creates a projection from paths and globs.
+     *
+     * @param patterns The column paths or globs, in output order
+     * @return The projection
+     * @throws IllegalArgumentException if no pattern is given or a pattern is blank
+     */
+    public static ColumnProjection of(String... patterns) {
+        return of(Arrays.asList(patterns));
+    }
+
+    /**
+     * Creates a projection from a comma-separated list such as {@code "id, status, address__*"}.
+     *
+     * @param commaSeparated The patterns separated by commas
+     * @return The projection
+     * @throws IllegalArgumentException if the list is empty or contains a blank pattern
+     */
+    public static ColumnProjection parse(String commaSeparated) {
+        return of(Arrays.asList(commaSeparated.split(",")));
+    }
+
+    /**
+     * Returns the patterns of this projection in output order.
+     *
+     * @return An unmodifiable list of paths and globs
+     */
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * Tells whether a flattened column is selected.
+     *
+     * @param column The flattened column name
+     * @return true if an exact path or a glob selects the column
+     */
+    public boolean matches(String column) {
+        if (exactPaths.contains(column)) {
+            return true;
+        }
+        if (globs.isEmpty()) {
+            return false;
+        }
+        Boolean cached = matchCache.get(column);
+        if (cached == null) {
+            cached = matchGlobs(column, false);
+            matchCache.put(column, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Tells whether a value at the given path may produce a selected column, either the path
+     * itself or a column nested below it. Readers skip values for which this returns false.
+     *
+     * @param prefix The flattened path of an object or array, empty at the document root
+     * @return false only when no selected column can come from the value
+     */
+    public boolean mayContain(String prefix) {
+        if (prefix.isEmpty() || exactPaths.contains(prefix) || exactPrefixes.contains(prefix)) {
+            return true;
+        }
+        if (globs.isEmpty()) {
+            return false;
+        }
+        Boolean cached = containCache.get(prefix);
+        if (cached == null) {
+            cached = matchGlobs(prefix, true);
+            containCache.put(prefix, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Chooses and orders the output columns from the columns discovered in the input.
+     *
+     * @param discovered The discovered columns, in discovery order
+     * @return The selected columns in output order, without duplicates
+     */
+    public List<String> selectHeaders(List<String> discovered) {
+        Set<String> selected = new LinkedHashSet<>();
+        for (String pattern : patterns) {
+            if (!pattern.contains("*")) {
+                selected.add(pattern);
+                continue;
+            }
+            String[] glob = segments(pattern);
+            for (String column : discovered) {
+                if (match(glob, 0, segments(column), 0, false)) {
+                    selected.add(column);
+                }
+            }
+        }
+        return new ArrayList<>(selected);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(", ", patterns);
+    }
+
+    private boolean matchGlobs(String path, boolean prefixOnly) {
+        String[] pathSegments = segments(path);
+        for (String[] glob : globs) {
+            if (match(glob, 0, pathSegments, 0, prefixOnly)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches path segments against pattern segments. In prefix mode the path only has to match
+     * the beginning of the pattern, since deeper columns may still complete it.
+     */
+    private static boolean match(String[] pattern, int p, String[] path, int q, boolean prefixOnly) {
+        while (true) {
+            if (q == path.length) {
+                if (prefixOnly) {
+                    return true;
+                }
+                while (p < pattern.length && pattern[p].equals(ANY_DEPTH)) {
+                    p++;
+                }
+                return p == pattern.length;
+            }
+            if (p == pattern.length) {
+                return false;
+            }
+            if (pattern[p].equals(ANY_DEPTH)) {
+                // Either the wildcard ends here or it swallows one more segment
+                return match(pattern, p + 1, path, q, prefixOnly) || match(pattern, p, path, q + 1, prefixOnly);
+            }
+            if (!matchSegment(pattern[p], path[q])) {
+                return false;
+            }
+            p++;
+            q++;
+        }
+    }
+
+    /**
+     * Matches one segment against a pattern segment in which {@code *} stands for any characters.
+     */
+    private static boolean matchSegment(String pattern, String text) {
+        int p = 0;
+        int t = 0;
+        int star = -1;
+        int resume = 0;
+        while (t < text.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                resume = t;
+            } else if (p < pattern.length() && pattern.charAt(p) == text.charAt(t)) {
+                p++;
+                t++;
+            } else if (star >= 0) {
+                p = star + 1;
+                t = ++resume;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    private static String[] segments(String path) {
+        return path.split(JsonFlattener.SEPARATOR, -1);
+    }
+}
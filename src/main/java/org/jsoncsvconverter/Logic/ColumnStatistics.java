@@ -0,0 +1,507 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Per-column statistics of a CSV file, gathered in one pass while its rows are written: the
+ * number of empty cells, the smallest and largest value and an approximate number of distinct
+ * values. Memory does not grow with the row count; each column holds its extremes and a
+ * {@link HyperLogLog} sketch of {@value HyperLogLog#REGISTERS} bytes, created with its first
+ * value.
+ *
+ * <p>Extremes follow the {@link ColumnType} inferred for the column: numeric columns compare
+ * their values as numbers and report them with their original text, any other column compares
+ * them as text. Empty cells count as nulls, since the CSV cannot tell the two apart.</p>
+ *
+ * <p>The converters gather statistics when {@link ConversionOptions#isStatisticsEnabled()} is
+ * set and write them next to the CSV with {@link #write(String)}, for example
+ * {@code campus.stats.json} for {@code campus.csv}:</p>
+ * <pre>{@code
+ * {
+ *   "rowCount": 2,
+ *   "columns": [
+ *     {"name": "id", "type": "LONG", "nullCount": 0, "min": 1, "max": 2, "distinctCount": 2},
+ *     {"name": "advisor", "type": "STRING", "nullCount": 2, "min": null, "max": null, "distinctCount": 0}
+ *   ]
+ * }
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public final class ColumnStatistics {
+
+    /** Extension replacing {@code .csv} in the name of the statistics file */
+    public static final String SIDECAR_EXTENSION = ".stats.json";
+
+    private final String[] headers;
+    private long rowCount = 0;
+
+    private final long[] nonNull;
+    private final ColumnType[] types;
+    private final HyperLogLog[] sketches;
+    /** Extremes compared as text */
+    private final String[] textMin;
+    private final String[] textMax;
+    /** Extremes of the whole numbers, exact while the column is LONG */
+    private final long[] longMin;
+    private final long[] longMax;
+    /** Extremes of every number as a double, with their original text */
+    private final double[] doubleMin;
+    private final double[] doubleMax;
+    private final String[] doubleMinText;
+    private final String[] doubleMaxText;
+
+    /** Reusable text of values that are not strings already */
+    private final Text scratch = new Text();
+
+    /**
+     * Constructs empty statistics for the given columns.
+     *
+     * @param headers The column names, in output order
+     * @throws IllegalArgumentException if headers is null
+     */
+    public ColumnStatistics(String[] headers) {
+        if (headers == null) {
+            throw new IllegalArgumentException("Headers cannot be null.");
+        }
+        this.headers = headers.clone();
+        int width = headers.length;
+        nonNull = new long[width];
+        types = new ColumnType[width];
+        sketches = new HyperLogLog[width];
+        textMin = new String[width];
+        textMax = new String[width];
+        longMin = new long[width];
+        longMax = new long[width];
+        doubleMin = new double[width];
+        doubleMax = new double[width];
+        doubleMinText = new String[width];
+        doubleMaxText = new String[width];
+    }
+
+    /**
+     * Adds one dense row.
+     *
+     * @param row The values in header order; missing trailing values count as empty
+     */
+    public void acceptRow(String[] row) {
+        for (int i = 0; i < row.length && i < headers.length; i++) {
+            acceptCell(i, row[i]);
+        }
+        endRow();
+    }
+
+    /**
+     * Adds one sparse row. Number cells are read as the text they are written as, without
+     * creating strings for whole numbers.
+     *
+     * @param row The row, laid out for the headers
+     */
+    public void acceptRow(SparseRow row) {
+        for (int i = 0; i < row.size(); i++) {
+            int column = row.getColumn(i);
+            if (row.isNumber(i) && !row.isDouble(i)) {
+                acceptCell(column, scratch.setLong(row.getNumber(i)));
+            } else {
+                acceptCell(column, row.getValue(i));
+            }
+        }
+        endRow();
+    }
+
+    /**
+     * Adds one cell of the current row. Each column may be given at most once per row.
+     */
+    void acceptCell(int column, CharSequence value) {
+        if (value == null || value.length() == 0) {
+            return;
+        }
+        ColumnType type = ColumnType.infer(value);
+        types[column] = ColumnType.merge(types[column], type);
+        if (sketches[column] == null) {
+            sketches[column] = new HyperLogLog();
+        }
+        sketches[column].add(HyperLogLog.hash(value));
+
+        if (nonNull[column]++ == 0) {
+            String text = value.toString();
+            textMin[column] = text;
+            textMax[column] = text;
+        } else if (compare(value, textMin[column]) < 0) {
+            textMin[column] = value.toString();
+        } else if (compare(value, textMax[column]) > 0) {
+            textMax[column] = value.toString();
+        }
+
+        if (type == ColumnType.LONG) {
+            long number = Long.parseLong(value, 0, value.length(), 10);
+            boolean first = doubleMinText[column] == null;
+            if (first || number < longMin[column]) {
+                longMin[column] = number;
+            }
+            if (first || number > longMax[column]) {
+                longMax[column] = number;
+            }
+            acceptNumber(column, number, value);
+        } else if (type == ColumnType.DOUBLE) {
+            acceptNumber(column, Double.parseDouble(value.toString()), value);
+        }
+    }
+
+    /**
+     * Adds one cell of the current row given as ASCII bytes, such as a value copied from the
+     * input by the byte-level converter.
+     */
+    void acceptAscii(int column, byte[] bytes, int start, int length) {
+        acceptCell(column, scratch.setAscii(bytes, start, length));
+    }
+
+    /**
+     * Ends the current row; the columns given no value in it count as empty.
+     */
+    void endRow() {
+        rowCount++;
+    }
+
+    /**
+     * Adds the rows of other statistics over the same columns, as if they had been added to
+     * these after the rows already added.
+     *
+     * @param other Statistics with the same headers
+     * @throws IllegalArgumentException if the headers differ
+     */
+    void merge(ColumnStatistics other) {
+        if (!Arrays.equals(headers, other.headers)) {
+            throw new IllegalArgumentException("Statistics of different columns cannot be merged.");
+        }
+        rowCount += other.rowCount;
+        for (int column = 0; column < headers.length; column++) {
+            if (other.nonNull[column] == 0) {
+                continue;
+            }
+            types[column] = ColumnType.merge(types[column], other.types[column]);
+            if (sketches[column] == null) {
+                sketches[column] = new HyperLogLog();
+            }
+            sketches[column].merge(other.sketches[column]);
+            if (nonNull[column] == 0 || compare(other.textMin[column], textMin[column]) < 0) {
+                textMin[column] = other.textMin[column];
+            }
+            if (nonNull[column] == 0 || compare(other.textMax[column], textMax[column]) > 0) {
+                textMax[column] = other.textMax[column];
+            }
+            nonNull[column] += other.nonNull[column];
+            if (other.doubleMinText[column] == null) {
+                continue;
+            }
+            boolean first = doubleMinText[column] == null;
+            // The whole-number extremes are only read while every number of the column is whole
+            if (first || other.longMin[column] < longMin[column]) {
+                longMin[column] = other.longMin[column];
+            }
+            if (first || other.longMax[column] > longMax[column]) {
+                longMax[column] = other.longMax[column];
+            }
+            if (first || other.doubleMin[column] < doubleMin[column]) {
+                doubleMin[column] = other.doubleMin[column];
+                doubleMinText[column] = other.doubleMinText[column];
+            }
+            if (first || other.doubleMax[column] > doubleMax[column]) {
+                doubleMax[column] = other.doubleMax[column];
+                doubleMaxText[column] = other.doubleMaxText[column];
+            }
+        }
+    }
+
+    private void acceptNumber(int column, double number, CharSequence text) {
+        if (doubleMinText[column] == null) {
+            doubleMin[column] = number;
+            doubleMax[column] = number;
+            doubleMinText[column] = text.toString();
+            doubleMaxText[column] = doubleMinText[column];
+        } else if (number < doubleMin[column]) {
+            doubleMin[column] = number;
+            doubleMinText[column] = text.toString();
+        } else if (number > doubleMax[column]) {
+            doubleMax[column] = number;
+            doubleMaxText[column] = text.toString();
+        }
+    }
+
+    /**
+     * Returns the number of rows added.
+     *
+     * @return The row count
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the column names.
+     *
+     * @return The headers, in output order
+     */
+    public String[] getHeaders() {
+        return headers.clone();
+    }
+
+    /**
+     * Returns the type inferred from the values of a column.
+     *
+     * @param column The column position
+     * @return The type, {@link ColumnType#STRING} for a column without values
+     */
+    public ColumnType getColumnType(int column) {
+        return types[column] == null ? ColumnType.STRING : types[column];
+    }
+
+    /**
+     * Returns the number of empty cells of a column.
+     *
+     * @param column The column position
+     * @return The null count
+     */
+    public long getNullCount(int column) {
+        return rowCount - nonNull[column];
+    }
+
+    /**
+     * Returns the smallest value of a column, compared as numbers for numeric columns and as
+     * text for any other.
+     *
+     * @param column The column position
+     * @return The value as written in the CSV, or null for a column without values
+     */
+    public String getMin(int column) {
+        if (types[column] == ColumnType.LONG) {
+            return Long.toString(longMin[column]);
+        }
+        return types[column] == ColumnType.DOUBLE ? doubleMinText[column] : textMin[column];
+    }
+
+    /**
+     * Returns the largest value of a column, compared as numbers for numeric columns and as
+     * text for any other.
+     *
+     * @param column The column position
+     * @return The value as written in the CSV, or null for a column without values
+     */
+    public String getMax(int column) {
+        if (types[column] == ColumnType.LONG) {
+            return Long.toString(longMax[column]);
+        }
+        return types[column] == ColumnType.DOUBLE ? doubleMaxText[column] : textMax[column];
+    }
+
+    /**
+     * Returns the approximate number of distinct non-empty values of a column.
+     *
+     * @param column The column position
+     * @return The estimate, exact for small counts and within a few percent otherwise
+     */
+    public long getDistinctCount(int column) {
+        return sketches[column] == null ? 0 : sketches[column].estimate();
+    }
+
+    /**
+     * Writes the statistics as a JSON document encoded in UTF-8.
+     *
+     * @param filePathOutput The file to create, see {@link #sidecarPath(String)}
+     * @throws RuntimeException if the file cannot be written
+     */
+    public void write(String filePathOutput) {
+        try (Writer output = new OutputStreamWriter(new FileOutputStream(new File(filePathOutput)),
+                StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(output)) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("rowCount").value(rowCount);
+            json.name("columns").beginArray();
+            for (int i = 0; i < headers.length; i++) {
+                boolean numeric = types[i] == ColumnType.LONG || types[i] == ColumnType.DOUBLE;
+                json.beginObject();
+                json.name("name").value(headers[i]);
+                json.name("type").value(getColumnType(i).name());
+                json.name("nullCount").value(getNullCount(i));
+                json.name("min");
+                if (numeric) {
+                    json.jsonValue(getMin(i));
+                } else {
+                    json.value(getMin(i));
+                }
+                json.name("max");
+                if (numeric) {
+                    json.jsonValue(getMax(i));
+                } else {
+                    json.value(getMax(i));
+                }
+                json.name("distinctCount").value(getDistinctCount(i));
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        } catch (IOException e) {
+            throw new RuntimeException("Error while creating statistics file: " + filePathOutput, e);
+        }
+    }
+
+    /**
+     * Returns the statistics file kept next to a CSV file.
+     *
+     * @param csvPath The path of the CSV file
+     * @return The path with {@code .csv} replaced by {@value #SIDECAR_EXTENSION}, or with the
+     *         extension appended if it does not end in {@code .csv}
+     */
+    public static String sidecarPath(String csvPath) {
+        if (csvPath.regionMatches(true, csvPath.length() - 4, ".csv", 0, 4)) {
+            return csvPath.substring(0, csvPath.length() - 4) + SIDECAR_EXTENSION;
+        }
+        return csvPath + SIDECAR_EXTENSION;
+    }
+
+    /**
+     * Saves the state of the statistics, so that a resumed conversion can go on gathering them.
+     *
+     * @see ConversionCheckpoint
+     */
+    void save(DataOutputStream out) throws IOException {
+        out.writeInt(headers.length);
+        for (String header : headers) {
+            ConversionCheckpoint.writeString(out, header);
+        }
+        out.writeLong(rowCount);
+        for (int i = 0; i < headers.length; i++) {
+            out.writeLong(nonNull[i]);
+            out.writeByte(types[i] == null ? -1 : types[i].ordinal());
+            if (nonNull[i] == 0) {
+                continue;
+            }
+            out.write(sketches[i].getRegisters());
+            ConversionCheckpoint.writeString(out, textMin[i]);
+            ConversionCheckpoint.writeString(out, textMax[i]);
+            out.writeLong(longMin[i]);
+            out.writeLong(longMax[i]);
+            out.writeBoolean(doubleMinText[i] != null);
+            if (doubleMinText[i] != null) {
+                out.writeDouble(doubleMin[i]);
+                out.writeDouble(doubleMax[i]);
+                ConversionCheckpoint.writeString(out, doubleMinText[i]);
+                ConversionCheckpoint.writeString(out, doubleMaxText[i]);
+            }
+        }
+    }
+
+    /**
+     * Loads statistics saved by {@link #save(DataOutputStream)}.
+     */
+    static ColumnStatistics load(DataInputStream in) throws IOException {
+        String[] headers = new String[in.readInt()];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = ConversionCheckpoint.readString(in);
+        }
+        ColumnStatistics stats = new ColumnStatistics(headers);
+        stats.rowCount = in.readLong();
+        byte[] registers = new byte[HyperLogLog.REGISTERS];
+        for (int i = 0; i < headers.length; i++) {
+            stats.nonNull[i] = in.readLong();
+            int type = in.readByte();
+            stats.types[i] = type < 0 ? null : ColumnType.values()[type];
+            if (stats.nonNull[i] == 0) {
+                continue;
+            }
+            in.readFully(registers);
+            stats.sketches[i] = new HyperLogLog(registers);
+            stats.textMin[i] = ConversionCheckpoint.readString(in);
+            stats.textMax[i] = ConversionCheckpoint.readString(in);
+            stats.longMin[i] = in.readLong();
+            stats.longMax[i] = in.readLong();
+            if (in.readBoolean()) {
+                stats.doubleMin[i] = in.readDouble();
+                stats.doubleMax[i] = in.readDouble();
+                stats.doubleMinText[i] = ConversionCheckpoint.readString(in);
+                stats.doubleMaxText[i] = ConversionCheckpoint.readString(in);
+            }
+        }
+        return stats;
+    }
+
+    private static int compare(CharSequence value, String other) {
+        int length = Math.min(value.length(), other.length());
+        for (int i = 0; i < length; i++) {
+            int difference = value.charAt(i) - other.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return value.length() - other.length();
+    }
+
+    /**
+     * Reusable text for values read as bytes or numbers, so that only new extremes become strings.
+     */
+    private static final class Text implements CharSequence {
+
+        private char[] chars = new char[32];
+        private int length;
+
+        Text setAscii(byte[] bytes, int start, int count) {
+            if (count > chars.length) {
+                chars = new char[Math.max(count, chars.length * 2)];
+            }
+            for (int i = 0; i < count; i++) {
+                chars[i] = (char) bytes[start + i];
+            }
+            length = count;
+            return this;
+        }
+
+        Text setLong(long value) {
+            // Digits are produced from the negative magnitude, which also holds Long.MIN_VALUE
+            long negative = value < 0 ? value : -value;
+            int position = chars.length;
+            do {
+                chars[--position] = (char) ('0' - negative % 10);
+                negative /= 10;
+            } while (negative != 0);
+            if (value < 0) {
+                chars[--position] = '-';
+            }
+            length = chars.length - position;
+            System.arraycopy(chars, position, chars, 0, length);
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.jsoncsvconverter.Logic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The type of a flattened column, inferred from the text of its values in a single pass. Every
+ * non-empty value is classified on its own and the classes are merged as the column grows: a
+ * column of whole numbers is {@link #LONG}, one that also holds fractions or exponents is
+ * {@link #DOUBLE}, one of {@code true} and {@code false} is {@link #BOOLEAN}, and any other mix
+ * is {@link #STRING}. Empty cells do not affect the type.
+ *
+ * <p>Numbers follow the JSON grammar, so values such as {@code 007}, {@code +1} or {@code NaN}
+ * are strings. Whole numbers outside the range of a {@code long} are doubles.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * ColumnType type = null;
+ * for (String value : new String[]{"1", "2.5", ""}) {
+ *     type = ColumnType.merge(type, ColumnType.infer(value));
+ * }
+ * // type is DOUBLE
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public enum ColumnType {
+
+    /** Whole numbers that fit in a {@code long} */
+    LONG,
+
+    /** Numbers with a fraction or an exponent, or whole numbers too large for a {@code long} */
+    DOUBLE,
+
+    /** The literals {@code true} and {@code false} */
+    BOOLEAN,
+
+    /** Any other text */
+    STRING;
+
+    /**
+     * Classifies one value.
+     *
+     * @param value The text of the value
+     * @return The type of the value, or null for an empty or null value
+     */
+    public static ColumnType infer(CharSequence value) {
+        if (value == null || value.length() == 0) {
+            return null;
+        }
+        if ("true".contentEquals(value) || "false".contentEquals(value)) {
+            return BOOLEAN;
+        }
+        return inferNumber(value);
+    }
+
+    /**
+     * Classifies one value given as ASCII bytes, without decoding text that cannot be a number
+     * or a boolean.
+     */
+    static ColumnType infer(byte[] bytes, int start, int length) {
+        if (length == 0) {
+            return null;
+        }
+        byte first = bytes[start];
+        if (first != '-' && first != 't' && first != 'f' && (first < '0' || first > '9')) {
+            return STRING;
+        }
+        return infer(new String(bytes, start, length, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Returns the type of a column holding values of two types.
+     *
+     * @param a The type of some values, or null if there are none
+     * @param b The type of the other values, or null if there are none
+     * @return The narrowest type covering both, or null if both are null
+     */
+    public static ColumnType merge(ColumnType a, ColumnType b) {
+        if (a == null || a == b) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if ((a == LONG || a == DOUBLE) && (b == LONG || b == DOUBLE)) {
+            return DOUBLE;
+        }
+        return STRING;
+    }
+
+    /**
+     * Merges the types of the values of a row into a map of column types.
+     */
+    static void inferInto(Map<String, ColumnType> types, Map<String, String> row) {
+        for (Map.Entry<String, String> entry : row.entrySet()) {
+            ColumnType type = infer(entry.getValue());
+            if (type != null) {
+                types.merge(entry.getKey(), type, ColumnType::merge);
+            }
+        }
+    }
+
+    /**
+     * Merges one map of column types into another.
+     */
+    static void mergeInto(Map<String, ColumnType> types, Map<String, ColumnType> more) {
+        for (Map.Entry<String, ColumnType> entry : more.entrySet()) {
+            types.merge(entry.getKey(), entry.getValue(), ColumnType::merge);
+        }
+    }
+
+    /**
+     * Lays out column types for the output headers, typing columns without values as strings.
+     *
+     * @return An unmodifiable map in header order
+     */
+    static Map<String, ColumnType> schema(String[] headers, Map<String, ColumnType> types) {
+        Map<String, ColumnType> schema = new LinkedHashMap<>();
+        for (String header : headers) {
+            ColumnType type = types.get(header);
+            schema.put(header, type == null ? STRING : type);
+        }
+        return Collections.unmodifiableMap(schema);
+    }
+
+    /**
+     * Matches the JSON number grammar: an optional minus, an integer part without leading zeros,
+     * an optional fraction and an optional exponent.
+     */
+    private static ColumnType inferNumber(CharSequence value) {
+        int length = value.length();
+        int i = value.charAt(0) == '-' ? 1 : 0;
+        int integerStart = i;
+        while (i < length && isDigit(value.charAt(i))) {
+            i++;
+        }
+        int integerDigits = i - integerStart;
+        if (integerDigits == 0 || (integerDigits > 1 && value.charAt(integerStart) == '0')) {
+            return STRING;
+        }
+        boolean whole = true;
+        if (i < length && value.charAt(i) == '.') {
+            whole = false;
+            int fractionStart = ++i;
+            while (i < length && isDigit(value.charAt(i))) {
+                i++;
+            }
+            if (i == fractionStart) {
+                return STRING;
+            }
+        }
+        if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            whole = false;
+            i++;
+            if (i < length && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+                i++;
+            }
+            int exponentStart = i;
+            while (i < length && isDigit(value.charAt(i))) {
+                i++;
+            }
+            if (i == exponentStart) {
+                return STRING;
+            }
+        }
+        if (i != length) {
+            return STRING;
+        }
+        if (!whole) {
+            return DOUBLE;
+        }
+        if (integerDigits < 19) {
+            return LONG;
+        }
+        try {
+            Long.parseLong(value.toString());
+            return LONG;
+        } catch (NumberFormatException e) {
+            return DOUBLE;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
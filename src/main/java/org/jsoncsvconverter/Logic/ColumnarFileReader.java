@@ -0,0 +1,350 @@
+package org.jsoncsvconverter.Logic;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reader of the binary columnar files written by {@link ColumnarFileWriter}. Opening a file
+ * reads only its footer; each column of each row group is then read on its own, so a job
+ * reading two columns of a wide file reads two chunks per row group, and the statistics of the
+ * footer let it skip row groups without reading them at all.
+ *
+ * <p>Values read back typed by the column types of the file: {@link Long}, {@link Double},
+ * {@link Boolean} or {@link String}, and null for empty cells. Chunks are read at their offset
+ * without moving a shared position, so one reader can serve several threads.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * try (ColumnarFileReader reader = new ColumnarFileReader("output/campus.cols")) {
+ *     for (int group = 0; group < reader.getRowGroupCount(); group++) {
+ *         Object[] credits = reader.readColumn(group, "credits");
+ *     }
+ * }
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ColumnarFileReader implements Closeable {
+
+    private final String path;
+    private final FileChannel channel;
+    private final String[] headers;
+    private final ColumnType[] types;
+    private final Map<String, Integer> positions = new LinkedHashMap<>();
+    private final int[] rowGroupRows;
+    private final Chunk[][] chunks;
+    private final long rowCount;
+
+    /**
+     * Where a column chunk lies in the file and what the footer says about it.
+     */
+    private static final class Chunk {
+        long offset;
+        int length;
+        ColumnarFileWriter.Encoding encoding;
+        int nullCount;
+        Object min;
+        Object max;
+    }
+
+    /**
+     * Opens a columnar file and reads its footer.
+     *
+     * @param path The file to read
+     * @throws RuntimeException if the file cannot be read or is not a columnar file
+     */
+    public ColumnarFileReader(String path) {
+        this.path = path;
+        try {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while reading columnar file: " + path, e);
+        }
+        try {
+            long size = channel.size();
+            if (size < 16) {
+                throw new IOException("Not a columnar file: " + path);
+            }
+            ByteBuffer tail = read(size - 8, 8);
+            int footerLength = tail.getInt();
+            if (tail.getInt() != ColumnarFileWriter.MAGIC || footerLength < 0 || footerLength > size - 16) {
+                throw new IOException("Not a columnar file: " + path);
+            }
+            ByteBuffer head = read(0, 8);
+            if (head.getInt() != ColumnarFileWriter.MAGIC || head.getInt() != ColumnarFileWriter.VERSION) {
+                throw new IOException("Unsupported columnar file: " + path);
+            }
+            DataInputStream in = stream(read(size - 8 - footerLength, footerLength));
+            int columnCount = (int) ColumnarFileWriter.readVarLong(in);
+            headers = new String[columnCount];
+            types = new ColumnType[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                headers[c] = ColumnarFileWriter.readString(in);
+                types[c] = ColumnType.values()[in.readUnsignedByte()];
+                positions.put(headers[c], c);
+            }
+            int groupCount = (int) ColumnarFileWriter.readVarLong(in);
+            rowGroupRows = new int[groupCount];
+            chunks = new Chunk[groupCount][columnCount];
+            long rows = 0;
+            for (int g = 0; g < groupCount; g++) {
+                rowGroupRows[g] = (int) ColumnarFileWriter.readVarLong(in);
+                rows += rowGroupRows[g];
+                for (int c = 0; c < columnCount; c++) {
+                    Chunk chunk = new Chunk();
+                    chunk.offset = in.readLong();
+                    chunk.length = (int) ColumnarFileWriter.readVarLong(in);
+                    chunk.encoding = ColumnarFileWriter.Encoding.values()[in.readUnsignedByte()];
+                    chunk.nullCount = (int) ColumnarFileWriter.readVarLong(in);
+                    if (chunk.nullCount < rowGroupRows[g]) {
+                        chunk.min = readValue(in, types[c]);
+                        chunk.max = readValue(in, types[c]);
+                    }
+                    chunks[g][c] = chunk;
+                }
+            }
+            rowCount = rows;
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new RuntimeException("Error while reading columnar file: " + path, e);
+        }
+    }
+
+    /**
+     * @return The column headers, in file order
+     */
+    public String[] getHeadersArray() {
+        return headers.clone();
+    }
+
+    /**
+     * @return An unmodifiable map from header to the type of its values, in file order
+     */
+    public Map<String, ColumnType> getColumnTypes() {
+        Map<String, ColumnType> columnTypes = new LinkedHashMap<>();
+        for (int c = 0; c < headers.length; c++) {
+            columnTypes.put(headers[c], types[c]);
+        }
+        return Collections.unmodifiableMap(columnTypes);
+    }
+
+    /**
+     * @return The number of rows of the file
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return The number of row groups of the file
+     */
+    public int getRowGroupCount() {
+        return rowGroupRows.length;
+    }
+
+    /**
+     * @param rowGroup The row group, from 0
+     * @return The number of rows of the row group
+     */
+    public int getRowGroupRowCount(int rowGroup) {
+        return rowGroupRows[rowGroup];
+    }
+
+    /**
+     * @param rowGroup The row group, from 0
+     * @param column The column header
+     * @return The encoding of the values of the column in the row group
+     * @throws IllegalArgumentException if the column is unknown
+     */
+    public ColumnarFileWriter.Encoding getEncoding(int rowGroup, String column) {
+        return chunk(rowGroup, column).encoding;
+    }
+
+    /**
+     * @param rowGroup The row group, from 0
+     * @param column The column header
+     * @return The number of empty cells of the column in the row group
+     * @throws IllegalArgumentException if the column is unknown
+     */
+    public int getNullCount(int rowGroup, String column) {
+        return chunk(rowGroup, column).nullCount;
+    }
+
+    /**
+     * @param rowGroup The row group, from 0
+     * @param column The column header
+     * @return The smallest value of the column in the row group, or null if it has none
+     * @throws IllegalArgumentException if the column is unknown
+     */
+    public Object getMin(int rowGroup, String column) {
+        return chunk(rowGroup, column).min;
+    }
+
+    /**
+     * @param rowGroup The row group, from 0
+     * @param column The column header
+     * @return The largest value of the column in the row group, or null if it has none
+     * @throws IllegalArgumentException if the column is unknown
+     */
+    public Object getMax(int rowGroup, String column) {
+        return chunk(rowGroup, column).max;
+    }
+
+    /**
+     * Reads the values of one column in one row group.
+     *
+     * @param rowGroup The row group, from 0
+     * @param column The column header
+     * @return One value per row of the group, null for empty cells
+     * @throws IllegalArgumentException if the column is unknown
+     * @throws RuntimeException if the file cannot be read
+     */
+    public Object[] readColumn(int rowGroup, String column) {
+        Chunk chunk = chunk(rowGroup, column);
+        try {
+            return decode(read(chunk.offset, chunk.length), types[positions.get(column)],
+                    rowGroupRows[rowGroup], chunk);
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Error while reading columnar file: " + path, e);
+        }
+    }
+
+    /**
+     * Reads the rows of one row group, assembled from every column.
+     *
+     * @param rowGroup The row group, from 0
+     * @return The rows, each with one value per header
+     * @throws RuntimeException if the file cannot be read
+     */
+    public List<Object[]> readRows(int rowGroup) {
+        int count = rowGroupRows[rowGroup];
+        List<Object[]> rows = new ArrayList<>(count);
+        for (int r = 0; r < count; r++) {
+            rows.add(new Object[headers.length]);
+        }
+        for (int c = 0; c < headers.length; c++) {
+            Object[] values = readColumn(rowGroup, headers[c]);
+            for (int r = 0; r < count; r++) {
+                rows.get(r)[c] = values[r];
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Chunk chunk(int rowGroup, String column) {
+        Integer position = positions.get(column);
+        if (position == null) {
+            throw new IllegalArgumentException("Unknown column: " + column);
+        }
+        return chunks[rowGroup][position];
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Truncated columnar file: " + path);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static DataInputStream stream(ByteBuffer buffer) {
+        return new DataInputStream(new ByteArrayInputStream(buffer.array(), buffer.position(), buffer.remaining()));
+    }
+
+    private static Object[] decode(ByteBuffer bytes, ColumnType type, int rowCount, Chunk chunk) throws IOException {
+        DataInputStream in = stream(bytes);
+        long[] presence = null;
+        if (chunk.nullCount > 0) {
+            presence = new long[(rowCount + 63) >>> 6];
+            for (int w = 0; w < presence.length; w++) {
+                presence[w] = in.readLong();
+            }
+        }
+        int count = rowCount - chunk.nullCount;
+        Object[] values = new Object[count];
+        switch (chunk.encoding) {
+            case DICTIONARY:
+                Object[] dictionary = new Object[(int) ColumnarFileWriter.readVarLong(in)];
+                for (int d = 0; d < dictionary.length; d++) {
+                    dictionary[d] = readValue(in, type);
+                }
+                int[] codes = ColumnarFileWriter.readPacked(in, count, in.readUnsignedByte());
+                for (int i = 0; i < count; i++) {
+                    values[i] = dictionary[codes[i]];
+                }
+                break;
+            case RUN_LENGTH:
+                for (int i = 0; i < count; ) {
+                    int run = (int) ColumnarFileWriter.readVarLong(in);
+                    Object value = readValue(in, type);
+                    Arrays.fill(values, i, i + run, value);
+                    i += run;
+                }
+                break;
+            default:
+                if (type == ColumnType.BOOLEAN) {
+                    int[] bits = ColumnarFileWriter.readPacked(in, count, 1);
+                    for (int i = 0; i < count; i++) {
+                        values[i] = bits[i] != 0;
+                    }
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        values[i] = readValue(in, type);
+                    }
+                }
+        }
+        if (presence == null) {
+            return values;
+        }
+        Object[] column = new Object[rowCount];
+        int next = 0;
+        for (int r = 0; r < rowCount; r++) {
+            if ((presence[r >>> 6] & (1L << r)) != 0) {
+                column[r] = values[next++];
+            }
+        }
+        return column;
+    }
+
+    private static Object readValue(DataInputStream in, ColumnType type) throws IOException {
+        switch (type) {
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case BOOLEAN:
+                return in.readUnsignedByte() != 0;
+            default:
+                return ColumnarFileWriter.readString(in);
+        }
+    }
+}
@@ -0,0 +1,720 @@
+package org.jsoncsvconverter.Logic;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.RFC4180Parser;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A writer of compact binary columnar files, an alternative to {@link CSVWriterFile} for jobs
+ * that read the output back by column. Instead of text to parse, the file holds the typed values
+ * of every column, as given by the column types of a conversion, so a reader gets numbers and
+ * booleans directly and reads only the columns it needs.
+ *
+ * <p>Rows are written in row groups of up to {@link #DEFAULT_ROW_GROUP_SIZE} rows, fewer when
+ * their buffered values reach {@value #ROW_GROUP_BUDGET_BYTES} bytes, so heap use is bounded
+ * whatever the number of rows. Within a row group every column is stored as one chunk: a bitmap
+ * of the rows holding a value when some rows are empty, then the values in the smallest of three
+ * encodings:</p>
+ * <ul>
+ *   <li>{@link Encoding#PLAIN}: the values one after the other, booleans packed eight per byte</li>
+ *   <li>{@link Encoding#DICTIONARY}: the distinct values once, then one bit-packed code per
+ *   value, for columns such as {@code campus} or {@code term}</li>
+ *   <li>{@link Encoding#RUN_LENGTH}: each value once with the number of times it repeats, for
+ *   sorted or constant columns</li>
+ * </ul>
+ *
+ * <p>A footer at the end of the file describes the columns and, for every row group, where each
+ * chunk starts, its encoding, and the number of empty cells and the smallest and largest value
+ * of each column, so a reader can skip row groups without reading them. The file layout is:</p>
+ * <pre>
+ * file     := MAGIC version rowGroup* footer footerLength MAGIC
+ * rowGroup := chunk*                              one per column, in header order
+ * chunk    := presenceBitmap? values
+ * footer   := columnCount (name type)* rowGroupCount (rowCount (offset length encoding nullCount min? max?)*)*
+ * </pre>
+ *
+ * <p>Numbers are stored as 64-bit {@code long} and {@code double} values, so a decimal reads
+ * back as its value rather than its text: {@code 1.50} reads as {@code 1.5}. Empty cells read
+ * back as null.</p>
+ *
+ * <p>Columnar files are not timed by {@link ConversionMetrics}: its {@code WRITE} stage counts
+ * the CSV output only, so a columnar copy does not count its rows twice.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * ColumnarFileWriter writer = new ColumnarFileWriter(converter.getHeadersArray(), converter.getColumnTypes());
+ * writer.createColumnarFileFromCsv("output/campus.csv", "output/campus.cols");
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ *
+ * @see ColumnarFileReader
+ */
+public class ColumnarFileWriter {
+
+    /** Extension replacing {@code .csv} in the name of the columnar copy of a conversion */
+    public static final String SIDECAR_EXTENSION = ".cols";
+
+    /** Default largest number of rows per row group */
+    public static final int DEFAULT_ROW_GROUP_SIZE = 1 << 16;
+
+    /** Estimated heap of buffered values that closes a row group before it is full */
+    public static final long ROW_GROUP_BUDGET_BYTES = 32L << 20;
+
+    /** Largest dictionary of a chunk; chunks with more distinct values are not dictionary encoded */
+    static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    static final int MAGIC = 0x43444346;
+    static final int VERSION = 1;
+
+    /**
+     * The encodings of the values of a column chunk.
+     */
+    public enum Encoding {
+
+        /** The values one after the other */
+        PLAIN,
+
+        /** The distinct values, then a bit-packed code per value */
+        DICTIONARY,
+
+        /** Each run of equal values as its length and the value */
+        RUN_LENGTH
+    }
+
+    /** Estimated heap cost of one buffered value, excluding the characters of text */
+    private static final long VALUE_OVERHEAD = 12;
+
+    /** Estimated fixed heap cost of a string object, excluding its characters */
+    private static final long STRING_OVERHEAD = 40;
+
+    private final String[] headers;
+    private final ColumnType[] types;
+    private int rowGroupSize = DEFAULT_ROW_GROUP_SIZE;
+
+    /**
+     * Constructs a writer for the given columns.
+     *
+     * @param headers The column headers. Must not be null or empty.
+     * @param columnTypes The type of every column, as returned by the converters; columns
+     *                    without a type are written as text
+     * @throws IllegalArgumentException if headers is null or has zero length
+     */
+    public ColumnarFileWriter(String[] headers, Map<String, ColumnType> columnTypes) {
+        if (headers == null || headers.length == 0) {
+            throw new IllegalArgumentException("Headers cannot be null or empty.");
+        }
+        this.headers = headers.clone();
+        this.types = new ColumnType[headers.length];
+        for (int c = 0; c < headers.length; c++) {
+            ColumnType type = columnTypes == null ? null : columnTypes.get(headers[c]);
+            types[c] = type == null ? ColumnType.STRING : type;
+        }
+    }
+
+    /**
+     * Sets the largest number of rows per row group. Larger groups encode better; smaller ones
+     * let readers skip more precisely.
+     *
+     * @param rowGroupSize The number of rows. Must be positive.
+     * @return This writer
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public ColumnarFileWriter setRowGroupSize(int rowGroupSize) {
+        if (rowGroupSize <= 0) {
+            throw new IllegalArgumentException("Row group size must be positive.");
+        }
+        this.rowGroupSize = rowGroupSize;
+        return this;
+    }
+
+    /**
+     * Returns the path of the columnar copy of a CSV file: the file name with {@code .csv}
+     * replaced by {@value #SIDECAR_EXTENSION}, or with {@value #SIDECAR_EXTENSION} appended.
+     *
+     * @param csvPath The path of the CSV file
+     * @return The path of its columnar copy
+     */
+    public static String sidecarPath(String csvPath) {
+        if (csvPath.regionMatches(true, csvPath.length() - 4, ".csv", 0, 4)) {
+            return csvPath.substring(0, csvPath.length() - 4) + SIDECAR_EXTENSION;
+        }
+        return csvPath + SIDECAR_EXTENSION;
+    }
+
+    /**
+     * Creates a columnar file from dense rows.
+     *
+     * @param path The file to create
+     * @param rows The rows, laid out for the headers of this writer. Can be null or empty.
+     * @throws IllegalArgumentException if a row is wider than the headers, or a value does not
+     *                                  match the type of its column
+     * @throws RuntimeException if an I/O error occurs
+     */
+    public void createColumnarFile(String path, List<String[]> rows) {
+        try (Output output = open(path)) {
+            if (rows != null) {
+                for (String[] row : rows) {
+                    output.addRow(row);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error while creating columnar file: " + path, e);
+        }
+    }
+
+    /**
+     * Creates a columnar file from rows that store only their populated cells. Number cells
+     * read from primitive JSON values are stored without formatting them as text.
+     *
+     * @param path The file to create
+     * @param rows The rows, laid out for the headers of this writer. Can be null or empty.
+     * @throws IllegalArgumentException if a row is wider than the headers, or a value does not
+     *                                  match the type of its column
+     * @throws RuntimeException if an I/O error occurs
+     */
+    public void createColumnarFileWithSparseRows(String path, List<SparseRow> rows) {
+        try (Output output = open(path)) {
+            if (rows != null) {
+                for (SparseRow row : rows) {
+                    output.addRow(row);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error while creating columnar file: " + path, e);
+        }
+    }
+
+    /**
+     * Creates a columnar file from a CSV file with the headers of this writer, reading it one
+     * row at a time.
+     *
+     * @param csvPath The CSV file, encoded in the platform charset
+     * @param path The file to create
+     * @return The number of rows written
+     * @throws IllegalArgumentException if a value does not match the type of its column
+     * @throws RuntimeException if the CSV file cannot be read, does not start with the headers
+     *                          of this writer, or the columnar file cannot be written
+     */
+    public long createColumnarFileFromCsv(String csvPath, String path) {
+        long rows = 0;
+        try (CSVReader reader = new CSVReaderBuilder(new BufferedReader(
+                new InputStreamReader(new FileInputStream(csvPath), Charset.defaultCharset())))
+                .withCSVParser(new RFC4180Parser()).build();
+             Output output = open(path)) {
+            if (!Arrays.equals(headers, reader.readNext())) {
+                throw new IOException("Unexpected header in CSV file: " + csvPath);
+            }
+            for (String[] row = reader.readNext(); row != null; row = reader.readNext()) {
+                output.addRow(row);
+                rows++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error while creating columnar file: " + path, e);
+        }
+        return rows;
+    }
+
+    /**
+     * Opens a columnar file to which rows are added one at a time. Closing it writes the last
+     * row group and the footer.
+     *
+     * @param path The file to create
+     * @return The open file
+     * @throws IOException if the file cannot be created
+     */
+    Output open(String path) throws IOException {
+        File file = new File(path);
+        File parentDir = file.getParentFile();
+        if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
+            throw new IOException("Failed to create parent directories: " + parentDir.getAbsolutePath());
+        }
+        return new Output(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    /**
+     * A columnar file being written, one row at a time.
+     */
+    final class Output implements Closeable {
+
+        private final DataOutputStream out;
+        private final ColumnBuffer[] columns = new ColumnBuffer[headers.length];
+        private final ByteArrayOutputStream groups = new ByteArrayOutputStream();
+        private final DataOutputStream groupsOut = new DataOutputStream(groups);
+        private long position;
+        private int groupCount = 0;
+        private int rows = 0;
+        private long bufferedBytes = 0;
+
+        private Output(OutputStream stream) throws IOException {
+            this.out = new DataOutputStream(stream);
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = new ColumnBuffer(headers[c], types[c]);
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            position = 8;
+        }
+
+        /**
+         * Adds a dense row; empty and missing cells are stored as empty.
+         *
+         * @throws IllegalArgumentException if the row is wider than the headers, or a value does
+         *                                  not match the type of its column
+         */
+        void addRow(String[] row) throws IOException {
+            checkWidth(row.length);
+            for (int c = 0; c < row.length; c++) {
+                if (row[c] != null && !row[c].isEmpty()) {
+                    bufferedBytes += columns[c].add(rows, row[c]);
+                }
+            }
+            endRow();
+        }
+
+        /**
+         * Adds a sparse row.
+         *
+         * @throws IllegalArgumentException if the row is wider than the headers, or a value does
+         *                                  not match the type of its column
+         */
+        void addRow(SparseRow row) throws IOException {
+            checkWidth(row.getWidth());
+            for (int i = 0; i < row.size(); i++) {
+                ColumnBuffer column = columns[row.getColumn(i)];
+                if (row.isNumber(i) && column.type == ColumnType.LONG && !row.isDouble(i)) {
+                    bufferedBytes += column.addNumber(rows, row.getNumber(i));
+                } else if (row.isNumber(i) && column.type == ColumnType.DOUBLE) {
+                    double value = row.isDouble(i) ? Double.longBitsToDouble(row.getNumber(i)) : row.getNumber(i);
+                    bufferedBytes += column.addNumber(rows, Double.doubleToLongBits(value));
+                } else {
+                    String value = row.getValue(i);
+                    if (!value.isEmpty()) {
+                        bufferedBytes += column.add(rows, value);
+                    }
+                }
+            }
+            endRow();
+        }
+
+        private void checkWidth(int width) {
+            if (width > headers.length) {
+                throw new IllegalArgumentException("Row of " + width
+                        + " columns does not fit " + headers.length + " headers.");
+            }
+        }
+
+        private void endRow() throws IOException {
+            rows++;
+            if (rows >= rowGroupSize || bufferedBytes >= ROW_GROUP_BUDGET_BYTES) {
+                writeRowGroup();
+            }
+        }
+
+        private void writeRowGroup() throws IOException {
+            writeVarLong(groupsOut, rows);
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            DataOutputStream chunkOut = new DataOutputStream(chunk);
+            for (ColumnBuffer column : columns) {
+                chunk.reset();
+                Encoding encoding = column.encode(chunkOut, rows);
+                chunk.writeTo(out);
+                groupsOut.writeLong(position);
+                writeVarLong(groupsOut, chunk.size());
+                groupsOut.writeByte(encoding.ordinal());
+                writeVarLong(groupsOut, rows - column.count);
+                column.writeRange(groupsOut);
+                position += chunk.size();
+                column.clear();
+            }
+            groupCount++;
+            rows = 0;
+            bufferedBytes = 0;
+        }
+
+        /**
+         * Writes the last row group and the footer, and closes the file.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (rows > 0) {
+                    writeRowGroup();
+                }
+                ByteArrayOutputStream footer = new ByteArrayOutputStream();
+                DataOutputStream footerOut = new DataOutputStream(footer);
+                writeVarLong(footerOut, headers.length);
+                for (int c = 0; c < headers.length; c++) {
+                    writeString(footerOut, headers[c]);
+                    footerOut.writeByte(types[c].ordinal());
+                }
+                writeVarLong(footerOut, groupCount);
+                groups.writeTo(footerOut);
+                footer.writeTo(out);
+                out.writeInt(footer.size());
+                out.writeInt(MAGIC);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * The values of one column in the current row group: the row of every value, and the value
+     * as a long, the bits of a double, 0 or 1 for a boolean, or text.
+     */
+    private static final class ColumnBuffer {
+
+        private final String name;
+        private final ColumnType type;
+        private int[] rows = new int[16];
+        private long[] numbers;
+        private String[] strings;
+        private int count = 0;
+
+        ColumnBuffer(String name, ColumnType type) {
+            this.name = name;
+            this.type = type;
+            if (type == ColumnType.STRING) {
+                strings = new String[16];
+            } else {
+                numbers = new long[16];
+            }
+        }
+
+        /**
+         * Adds a value given as text.
+         *
+         * @return The estimated heap taken by the value
+         * @throws IllegalArgumentException if the value does not match the type of the column
+         */
+        long add(int row, String value) {
+            try {
+                switch (type) {
+                    case LONG:
+                        return addNumber(row, Long.parseLong(value));
+                    case DOUBLE:
+                        return addNumber(row, Double.doubleToLongBits(Double.parseDouble(value)));
+                    case BOOLEAN:
+                        if ("true".equals(value) || "false".equals(value)) {
+                            return addNumber(row, "true".equals(value) ? 1 : 0);
+                        }
+                        break;
+                    default:
+                        grow();
+                        rows[count] = row;
+                        strings[count++] = value;
+                        return VALUE_OVERHEAD + STRING_OVERHEAD + 2L * value.length();
+                }
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+            throw new IllegalArgumentException("Value \"" + value + "\" of column " + name + " is not a " + type + ".");
+        }
+
+        /**
+         * Adds a long, the bits of a double, or 0 or 1 for a boolean.
+         *
+         * @return The estimated heap taken by the value
+         */
+        long addNumber(int row, long value) {
+            grow();
+            rows[count] = row;
+            numbers[count++] = value;
+            return VALUE_OVERHEAD;
+        }
+
+        private void grow() {
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, count * 2);
+                if (numbers != null) {
+                    numbers = Arrays.copyOf(numbers, count * 2);
+                } else {
+                    strings = Arrays.copyOf(strings, count * 2);
+                }
+            }
+        }
+
+        void clear() {
+            count = 0;
+            if (strings != null) {
+                Arrays.fill(strings, null);
+            }
+        }
+
+        /**
+         * Writes the chunk of a row group of the given number of rows in its smallest encoding.
+         *
+         * @return The encoding used
+         */
+        Encoding encode(DataOutputStream out, int rowCount) throws IOException {
+            if (count < rowCount) {
+                long[] presence = new long[(rowCount + 63) >>> 6];
+                for (int i = 0; i < count; i++) {
+                    presence[rows[i] >>> 6] |= 1L << rows[i];
+                }
+                for (long word : presence) {
+                    out.writeLong(word);
+                }
+            }
+            byte[][] text = null;
+            if (strings != null) {
+                text = new byte[count][];
+                for (int i = 0; i < count; i++) {
+                    text[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+                }
+            }
+
+            long plainBytes = type == ColumnType.BOOLEAN ? (count + 7) / 8 : 0;
+            long runBytes = 0;
+            long dictionaryBytes = 0;
+            int[] codes = new int[count];
+            int[] firstIndex = new int[Math.min(count, 16)];
+            Map<Object, Integer> dictionary = new HashMap<>();
+            boolean dictionaryFits = true;
+            int runStart = 0;
+            for (int i = 0; i < count; i++) {
+                long size = valueSize(i, text);
+                if (type != ColumnType.BOOLEAN) {
+                    plainBytes += size;
+                }
+                if (i > 0 && !same(i, i - 1)) {
+                    runBytes += varLongSize(i - runStart) + valueSize(runStart, text);
+                    runStart = i;
+                }
+                if (dictionaryFits) {
+                    Object key = strings != null ? strings[i] : (Object) numbers[i];
+                    Integer code = dictionary.get(key);
+                    if (code == null) {
+                        if (dictionary.size() == MAX_DICTIONARY_SIZE) {
+                            dictionaryFits = false;
+                            continue;
+                        }
+                        code = dictionary.size();
+                        dictionary.put(key, code);
+                        if (code == firstIndex.length) {
+                            firstIndex = Arrays.copyOf(firstIndex, code * 2);
+                        }
+                        firstIndex[code] = i;
+                        dictionaryBytes += size;
+                    }
+                    codes[i] = code;
+                }
+            }
+            if (count > 0) {
+                runBytes += varLongSize(count - runStart) + valueSize(runStart, text);
+            }
+            int bits = bitWidth(dictionary.size());
+            dictionaryBytes += varLongSize(dictionary.size()) + 1 + ((long) count * bits + 7) / 8;
+
+            if (dictionaryFits && dictionaryBytes < plainBytes && dictionaryBytes < runBytes) {
+                writeVarLong(out, dictionary.size());
+                for (int code = 0; code < dictionary.size(); code++) {
+                    writeValue(out, firstIndex[code], text);
+                }
+                out.writeByte(bits);
+                writePacked(out, codes, count, bits);
+                return Encoding.DICTIONARY;
+            }
+            if (runBytes < plainBytes) {
+                for (int i = 0; i < count; ) {
+                    int end = i + 1;
+                    while (end < count && same(end, i)) {
+                        end++;
+                    }
+                    writeVarLong(out, end - i);
+                    writeValue(out, i, text);
+                    i = end;
+                }
+                return Encoding.RUN_LENGTH;
+            }
+            if (type == ColumnType.BOOLEAN) {
+                for (int i = 0; i < count; i++) {
+                    codes[i] = (int) numbers[i];
+                }
+                writePacked(out, codes, count, 1);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    writeValue(out, i, text);
+                }
+            }
+            return Encoding.PLAIN;
+        }
+
+        /**
+         * Writes the smallest and largest value of the chunk, if it has values.
+         */
+        void writeRange(DataOutputStream out) throws IOException {
+            if (count == 0) {
+                return;
+            }
+            int min = 0;
+            int max = 0;
+            for (int i = 1; i < count; i++) {
+                if (compare(i, min) < 0) {
+                    min = i;
+                }
+                if (compare(i, max) > 0) {
+                    max = i;
+                }
+            }
+            writeValue(out, min, null);
+            writeValue(out, max, null);
+        }
+
+        private int compare(int i, int j) {
+            switch (type) {
+                case STRING:
+                    return strings[i].compareTo(strings[j]);
+                case DOUBLE:
+                    return Double.compare(Double.longBitsToDouble(numbers[i]), Double.longBitsToDouble(numbers[j]));
+                default:
+                    return Long.compare(numbers[i], numbers[j]);
+            }
+        }
+
+        private boolean same(int i, int j) {
+            return strings != null ? strings[i].equals(strings[j]) : numbers[i] == numbers[j];
+        }
+
+        private long valueSize(int i, byte[][] text) {
+            switch (type) {
+                case STRING:
+                    return varLongSize(text[i].length) + text[i].length;
+                case BOOLEAN:
+                    return 1;
+                default:
+                    return 8;
+            }
+        }
+
+        /**
+         * Writes one value: 8 bytes for numbers, a byte for booleans, a length and UTF-8 bytes
+         * for text.
+         */
+        private void writeValue(DataOutputStream out, int i, byte[][] text) throws IOException {
+            switch (type) {
+                case STRING:
+                    byte[] bytes = text != null ? text[i] : strings[i].getBytes(StandardCharsets.UTF_8);
+                    writeVarLong(out, bytes.length);
+                    out.write(bytes);
+                    break;
+                case BOOLEAN:
+                    out.writeByte((int) numbers[i]);
+                    break;
+                default:
+                    out.writeLong(numbers[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bits of the codes of a dictionary of the given size.
+     */
+    static int bitWidth(int size) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    /**
+     * Writes values of the given bit width back to back, lowest bits first.
+     */
+    static void writePacked(DataOutput out, int[] values, int count, int bits) throws IOException {
+        long buffer = 0;
+        int filled = 0;
+        for (int i = 0; i < count; i++) {
+            buffer |= (long) values[i] << filled;
+            filled += bits;
+            while (filled >= 8) {
+                out.writeByte((int) buffer);
+                buffer >>>= 8;
+                filled -= 8;
+            }
+        }
+        if (filled > 0) {
+            out.writeByte((int) buffer);
+        }
+    }
+
+    /**
+     * Reads values written by {@link #writePacked(DataOutput, int[], int, int)}.
+     */
+    static int[] readPacked(DataInput in, int count, int bits) throws IOException {
+        int[] values = new int[count];
+        long buffer = 0;
+        int filled = 0;
+        int mask = (1 << bits) - 1;
+        for (int i = 0; i < count; i++) {
+            while (filled < bits) {
+                buffer |= (long) in.readUnsignedByte() << filled;
+                filled += 8;
+            }
+            values[i] = (int) (buffer & mask);
+            buffer >>>= bits;
+            filled -= bits;
+        }
+        return values;
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
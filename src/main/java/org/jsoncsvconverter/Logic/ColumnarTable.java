@@ -0,0 +1,778 @@
+package org.jsoncsvconverter.Logic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory table of string cells stored column by column. Each column keeps its values as
+ * integer codes into a dictionary of its distinct values, so a column such as {@code campus} or
+ * {@code term} holds one string per distinct value and one small code per row. Codes start one
+ * byte wide and widen only when the dictionary outgrows them.
+ *
+ * <p>A column whose values are mostly distinct gains nothing from a dictionary. Once a column
+ * has seen {@value #CARDINALITY_SAMPLE} values and more than half of them were distinct, or its
+ * dictionary exceeds the configured limit, it switches to plain storage: the UTF-8 bytes of its
+ * values back to back in one array, with one end offset per row, so a distinct value costs its
+ * encoded length plus four bytes instead of a string object.</p>
+ *
+ * <p>Columns are addressed by integer ids assigned by the caller. A column starts at the first
+ * row that populates it, so columns discovered late cost nothing for earlier rows. Empty and
+ * missing cells are the same: both read back as an empty string.</p>
+ *
+ * <p>Each column also infers a {@link ColumnType} from its values as they are added. A
+ * high-cardinality column of whole numbers or decimals switches to an array of primitive
+ * {@code long} or {@code double} values instead of plain text, provided every value formats back
+ * to exactly its original text; the first value that does not sends the column to plain storage.
+ * Booleans and low-cardinality numbers stay dictionary encoded, where a code costs one byte.</p>
+ *
+ * <p>A column populated in only a few of its rows, as flattened records with many optional
+ * fields produce, is stored sparsely: one code or offset per populated cell plus the row it
+ * belongs to, instead of one per row. Each column picks the cheaper of the two layouts as it
+ * grows, so a wide table of mostly empty rows costs memory in proportion to its populated
+ * cells.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * ColumnarTable table = new ColumnarTable();
+ * table.addRow(new int[]{0, 1}, new String[]{"North", "2024"}, 2);
+ * String campus = table.get(0, 0);
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ColumnarTable {
+
+    /** Values a column must have seen before its cardinality is judged */
+    public static final int CARDINALITY_SAMPLE = 1024;
+
+    /** Default largest dictionary before a column switches to plain storage */
+    public static final int DEFAULT_MAX_DICTIONARY_SIZE = 1 << 16;
+
+    /** Estimated fixed heap cost of a string object, excluding its characters */
+    private static final long STRING_OVERHEAD = 40;
+
+    /** Estimated heap cost of one dictionary lookup entry */
+    private static final long DICTIONARY_ENTRY_OVERHEAD = 48;
+
+    /** Marks an empty dense slot of a long column; the value itself is stored as text instead */
+    private static final long EMPTY_LONG = Long.MIN_VALUE;
+
+    /** Marks an empty dense slot of a double column; NaN is never stored as a number */
+    private static final long EMPTY_DOUBLE = Double.doubleToRawLongBits(Double.NaN);
+
+    /** Slots allocated for a new column */
+    private static final int INITIAL_SLOTS = 16;
+
+    /** Estimated fixed heap cost of one column */
+    private static final long COLUMN_OVERHEAD = 96;
+
+    private final int maxDictionarySize;
+    private final List<Column> columns = new ArrayList<>();
+    private int rowCount = 0;
+    private long estimatedBytes = 0;
+
+    /**
+     * Constructs an empty table with the default dictionary limit.
+     */
+    public ColumnarTable() {
+        this(DEFAULT_MAX_DICTIONARY_SIZE);
+    }
+
+    /**
+     * Constructs an empty table.
+     *
+     * @param maxDictionarySize The largest number of distinct values a column may encode before
+     *                          it switches to plain storage. Must be positive.
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public ColumnarTable(int maxDictionarySize) {
+        if (maxDictionarySize <= 0) {
+            throw new IllegalArgumentException("Dictionary size must be positive.");
+        }
+        this.maxDictionarySize = maxDictionarySize;
+    }
+
+    /**
+     * Appends one row given as populated cells.
+     *
+     * @param columnIds The column id of each cell, each id at most once
+     * @param values The value of each cell; null or empty for an empty cell
+     * @param count The number of cells to read from the arrays
+     */
+    public void addRow(int[] columnIds, String[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            String value = values[i];
+            if (value != null && !value.isEmpty()) {
+                column(columnIds[i]).set(rowCount, value);
+            }
+        }
+        rowCount++;
+    }
+
+    /**
+     * Returns one cell.
+     *
+     * @param row The row position
+     * @param columnId The column id
+     * @return The value, or an empty string when the cell is empty or the column is unknown
+     * @throws IndexOutOfBoundsException if the row is out of range
+     */
+    public String get(int row, int columnId) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row index " + row + " out of range for " + rowCount + " rows");
+        }
+        Column column = columnId < columns.size() ? columns.get(columnId) : null;
+        return column == null ? "" : column.get(row);
+    }
+
+    /**
+     * Copies one row into a dense array indexed by column id. Positions beyond the table's
+     * columns are left untouched.
+     *
+     * @param row The row position
+     * @param target The array to fill, with empty strings for empty cells
+     */
+    public void copyRow(int row, String[] target) {
+        int limit = Math.min(target.length, columns.size());
+        for (int id = 0; id < limit; id++) {
+            Column column = columns.get(id);
+            target[id] = column == null ? "" : column.get(row);
+        }
+    }
+
+    /**
+     * Copies the non-empty cells of one row, in column id order.
+     *
+     * @param row The row position
+     * @param columnIds Receives the column id of each cell; needs room for every column
+     * @param values Receives the value of each cell; needs room for every column
+     * @return The number of cells copied
+     */
+    public int copyCells(int row, int[] columnIds, String[] values) {
+        int count = 0;
+        for (int id = 0; id < columns.size(); id++) {
+            Column column = columns.get(id);
+            String value = column == null ? "" : column.get(row);
+            if (!value.isEmpty()) {
+                columnIds[count] = id;
+                values[count++] = value;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copies the non-empty cells of one row as {@link #copyCells(int, int[], String[])} does, but
+     * leaves the cells of primitive columns as numbers: their value is null, and the number holds
+     * the long, or the bits of the double when the double flag is set.
+     */
+    int copyCells(int row, int[] columnIds, String[] values, long[] numbers, boolean[] doubles) {
+        int count = 0;
+        for (int id = 0; id < columns.size(); id++) {
+            Column column = columns.get(id);
+            if (column == null) {
+                continue;
+            }
+            if (column.numbers != null) {
+                int slot = column.numberSlot(row);
+                if (slot >= 0) {
+                    columnIds[count] = id;
+                    values[count] = null;
+                    numbers[count] = column.numbers[slot];
+                    doubles[count++] = column.doubles;
+                }
+                continue;
+            }
+            String value = column.get(row);
+            if (!value.isEmpty()) {
+                columnIds[count] = id;
+                values[count++] = value;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return The row count
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns one more than the largest column id seen.
+     *
+     * @return The column count
+     */
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    /**
+     * Tells whether a column is still dictionary encoded.
+     *
+     * @param columnId The column id
+     * @return true if the column stores codes, false if it switched to plain or primitive storage
+     *         or is unknown
+     */
+    public boolean isDictionaryEncoded(int columnId) {
+        Column column = columnId < columns.size() ? columns.get(columnId) : null;
+        return column != null && column.dictionary != null;
+    }
+
+    /**
+     * Tells whether a column stores only its populated cells.
+     *
+     * @param columnId The column id
+     * @return true if the column is stored sparsely, false if it is dense or unknown
+     */
+    public boolean isSparse(int columnId) {
+        Column column = columnId < columns.size() ? columns.get(columnId) : null;
+        return column != null && column.positions != null;
+    }
+
+    /**
+     * Returns the type inferred from the values stored in a column.
+     *
+     * @param columnId The column id
+     * @return The type, or null if the column is unknown or holds no non-empty value
+     */
+    public ColumnType getColumnType(int columnId) {
+        Column column = columnId < columns.size() ? columns.get(columnId) : null;
+        return column == null ? null : column.type;
+    }
+
+    /**
+     * Tells whether a column stores its values as primitive longs or doubles.
+     *
+     * @param columnId The column id
+     * @return true if the column switched to primitive storage, false otherwise
+     */
+    public boolean isPrimitive(int columnId) {
+        Column column = columnId < columns.size() ? columns.get(columnId) : null;
+        return column != null && column.numbers != null;
+    }
+
+    /**
+     * Returns the number of distinct non-empty values a dictionary-encoded column holds.
+     *
+     * @param columnId The column id
+     * @return The dictionary size, or 0 if the column is not dictionary encoded
+     */
+    public int getDictionarySize(int columnId) {
+        return isDictionaryEncoded(columnId) ? columns.get(columnId).dictionary.size() - 1 : 0;
+    }
+
+    /**
+     * Returns the estimated heap used by the table's cells, dictionaries and code arrays.
+     *
+     * @return The estimate in bytes
+     */
+    public long getEstimatedHeapBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Removes every row and column.
+     */
+    public void clear() {
+        columns.clear();
+        rowCount = 0;
+        estimatedBytes = 0;
+    }
+
+    private Column column(int id) {
+        while (columns.size() <= id) {
+            columns.add(null);
+        }
+        Column column = columns.get(id);
+        if (column == null) {
+            column = new Column(rowCount);
+            columns.set(id, column);
+            estimatedBytes += COLUMN_OVERHEAD;
+        }
+        return column;
+    }
+
+    private static long stringBytes(String value) {
+        return STRING_OVERHEAD + 2L * value.length();
+    }
+
+    /**
+     * One column from its first populated row onwards. Every stored value occupies a slot: the
+     * code of a dictionary-encoded column, in the narrowest of three arrays that fits the
+     * dictionary, or the end offset of a plain column's bytes. A dense column has one slot per
+     * row, with code 0 or an empty byte range for an empty cell. A sparse column has one slot per
+     * non-empty cell and a parallel array of the rows they belong to. The layout is chosen again,
+     * by comparing the two footprints, whenever the slots are full.
+     */
+    private final class Column {
+
+        /** Row of position 0 */
+        private final int base;
+        /** One more than the last position written */
+        private int size = 0;
+        /** Non-empty values stored, and their number when the cardinality was last judged */
+        private int valueCount = 0;
+        private int valuesChecked = 0;
+
+        /** Position of each slot while the column is sparse, null while it is dense */
+        private int[] positions;
+        /** Slot of the last sparse lookup, where sequential reads continue */
+        private int cursor = 0;
+
+        private List<String> dictionary = new ArrayList<>();
+        private Map<String, Integer> codes = new HashMap<>();
+        private byte[] narrow = new byte[INITIAL_SLOTS];
+        private char[] medium;
+        private int[] wide;
+
+        /**
+         * Values once the column switched to plain storage, null until then: the UTF-8 bytes of
+         * every value back to back, and the end offset of each slot
+         */
+        private byte[] plain;
+        private int[] plainEnds;
+        private int plainSize = 0;
+
+        /** Type of the values stored so far, null while the column has none */
+        private ColumnType type;
+
+        /**
+         * Values once a numeric column switched to primitive storage, null otherwise: a long, or
+         * the bits of a double, per slot, with an empty dense slot holding {@link #emptyNumber()}
+         */
+        private long[] numbers;
+        private boolean doubles;
+
+        Column(int base) {
+            this.base = base;
+            dictionary.add("");
+            estimatedBytes += footprint();
+        }
+
+        String get(int row) {
+            int position = row - base;
+            if (position < 0 || position >= size) {
+                return "";
+            }
+            int slot = positions == null ? position : find(position);
+            if (slot < 0) {
+                return "";
+            }
+            if (numbers != null) {
+                long bits = numbers[slot];
+                if (bits == emptyNumber()) {
+                    return "";
+                }
+                return doubles ? Double.toString(Double.longBitsToDouble(bits)) : Long.toString(bits);
+            }
+            if (plain != null) {
+                int start = slot == 0 ? 0 : plainEnds[slot - 1];
+                return start == plainEnds[slot] ? ""
+                        : new String(plain, start, plainEnds[slot] - start, StandardCharsets.UTF_8);
+            }
+            return dictionary.get(code(slot));
+        }
+
+        /**
+         * Returns the slot of a row in a primitive column, or -1 when its cell is empty.
+         */
+        int numberSlot(int row) {
+            int position = row - base;
+            if (position < 0 || position >= size) {
+                return -1;
+            }
+            int slot = positions == null ? position : find(position);
+            return slot >= 0 && numbers[slot] != emptyNumber() ? slot : -1;
+        }
+
+        /**
+         * Appends a value at a position past every stored one.
+         */
+        void set(int row, String value) {
+            if (type != ColumnType.STRING) {
+                type = ColumnType.merge(type, ColumnType.infer(value));
+            }
+            int position = row - base;
+            int slot = slotFor(position);
+            size = position + 1;
+            valueCount++;
+            if (numbers != null) {
+                long bits = toNumber(value);
+                if (bits != emptyNumber()) {
+                    numbers[slot] = bits;
+                    return;
+                }
+                // A value the numbers cannot reproduce exactly sends the whole column to plain
+                numbers[slot] = emptyNumber();
+                switchToPlain();
+            }
+            if (plain != null) {
+                long before = footprint();
+                appendPlain(value.getBytes(StandardCharsets.UTF_8));
+                plainEnds[slot] = plainSize;
+                estimatedBytes += footprint() - before;
+                return;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                codes.put(value, code);
+                estimatedBytes += stringBytes(value) + DICTIONARY_ENTRY_OVERHEAD;
+                widenFor(code);
+            }
+            setCode(slot, code);
+            if ((dictionary.size() - 1 > maxDictionarySize || isHighCardinality()) && !switchToNumbers()) {
+                switchToPlain();
+            }
+        }
+
+        /**
+         * Returns the number stored for a value, or {@link #emptyNumber()} when the number would
+         * not format back to exactly the same text.
+         */
+        private long toNumber(String value) {
+            try {
+                if (doubles) {
+                    double number = Double.parseDouble(value);
+                    return Double.toString(number).equals(value) ? Double.doubleToRawLongBits(number) : EMPTY_DOUBLE;
+                }
+                long number = Long.parseLong(value);
+                return Long.toString(number).equals(value) ? number : EMPTY_LONG;
+            } catch (NumberFormatException e) {
+                return emptyNumber();
+            }
+        }
+
+        private long emptyNumber() {
+            return doubles ? EMPTY_DOUBLE : EMPTY_LONG;
+        }
+
+        /**
+         * Finds the slot of a position in a sparse column, starting from the previous lookup so
+         * that reading rows in order costs constant time.
+         */
+        private int find(int position) {
+            if (cursor < valueCount && positions[cursor] <= position) {
+                if (positions[cursor] == position) {
+                    return cursor;
+                }
+                if (cursor + 1 >= valueCount || positions[cursor + 1] > position) {
+                    return -1;
+                }
+                if (positions[cursor + 1] == position) {
+                    return ++cursor;
+                }
+            }
+            int slot = Arrays.binarySearch(positions, 0, valueCount, position);
+            cursor = slot >= 0 ? slot : Math.max(0, -slot - 2);
+            return slot >= 0 ? slot : -1;
+        }
+
+        /**
+         * Makes room for a value at a position past every stored one, choosing the cheaper layout
+         * whenever the slots are full, and returns the slot of the value.
+         */
+        private int slotFor(int position) {
+            if (needed(position) > capacity()) {
+                long before = footprint();
+                int width = slotWidth();
+                long dense = (long) (position + 1) * width;
+                long sparse = (long) (valueCount + 1) * (width + 4);
+                if (positions == null && sparse * 2 < dense) {
+                    toSparse();
+                } else if (positions != null && dense < sparse) {
+                    toDense(position + 1);
+                }
+                if (needed(position) > capacity()) {
+                    resize(Math.max(needed(position), capacity() + (capacity() >> 1)));
+                }
+                estimatedBytes += footprint() - before;
+            }
+            if (positions == null) {
+                if (plain != null) {
+                    Arrays.fill(plainEnds, size, position, plainSize);
+                } else if (numbers != null) {
+                    Arrays.fill(numbers, size, position, emptyNumber());
+                }
+                return position;
+            }
+            positions[valueCount] = position;
+            return valueCount;
+        }
+
+        private int needed(int position) {
+            return positions == null ? position + 1 : valueCount + 1;
+        }
+
+        private int capacity() {
+            if (numbers != null) {
+                return numbers.length;
+            }
+            return plain != null ? plainEnds.length
+                    : narrow != null ? narrow.length : medium != null ? medium.length : wide.length;
+        }
+
+        private int slotWidth() {
+            if (numbers != null) {
+                return 8;
+            }
+            return narrow != null ? 1 : medium != null ? 2 : 4;
+        }
+
+        /**
+         * Returns the bytes held by the arrays of the column, excluding its dictionary.
+         */
+        private long footprint() {
+            long bytes = positions == null ? 0 : 4L * positions.length;
+            if (plain != null) {
+                return bytes + plain.length + 4L * plainEnds.length;
+            }
+            return bytes + (long) slotWidth() * capacity();
+        }
+
+        /**
+         * Judges the column once per sample of values: it is high-cardinality when more than half
+         * of the values seen so far are distinct.
+         */
+        private boolean isHighCardinality() {
+            if (valueCount - valuesChecked < CARDINALITY_SAMPLE) {
+                return false;
+            }
+            valuesChecked = valueCount;
+            return (dictionary.size() - 1) * 2L > valueCount;
+        }
+
+        private int code(int slot) {
+            if (narrow != null) {
+                return narrow[slot] & 0xFF;
+            }
+            return medium != null ? medium[slot] : wide[slot];
+        }
+
+        private void setCode(int slot, int code) {
+            if (narrow != null) {
+                narrow[slot] = (byte) code;
+            } else if (medium != null) {
+                medium[slot] = (char) code;
+            } else {
+                wide[slot] = code;
+            }
+        }
+
+        /**
+         * Reallocates the slot arrays, and the positions of a sparse column, to a new capacity.
+         */
+        private void resize(int capacity) {
+            if (numbers != null) {
+                numbers = Arrays.copyOf(numbers, capacity);
+            } else if (plain != null) {
+                plainEnds = Arrays.copyOf(plainEnds, capacity);
+            } else if (narrow != null) {
+                narrow = Arrays.copyOf(narrow, capacity);
+            } else if (medium != null) {
+                medium = Arrays.copyOf(medium, capacity);
+            } else {
+                wide = Arrays.copyOf(wide, capacity);
+            }
+            if (positions != null) {
+                positions = Arrays.copyOf(positions, capacity);
+            }
+        }
+
+        /**
+         * Keeps only the slots of non-empty cells and records their positions.
+         */
+        private void toSparse() {
+            int[] slotPositions = new int[capacity()];
+            int count = 0;
+            int previousEnd = 0;
+            for (int position = 0; position < size; position++) {
+                boolean empty;
+                if (numbers != null) {
+                    empty = numbers[position] == emptyNumber();
+                } else if (plain != null) {
+                    empty = plainEnds[position] == previousEnd;
+                    previousEnd = plainEnds[position];
+                } else {
+                    empty = code(position) == 0;
+                }
+                if (!empty) {
+                    // Slots only move down, and a plain slot's end is read before it is replaced
+                    if (numbers != null) {
+                        numbers[count] = numbers[position];
+                    } else if (plain != null) {
+                        plainEnds[count] = plainEnds[position];
+                    } else {
+                        setCode(count, code(position));
+                    }
+                    slotPositions[count++] = position;
+                }
+            }
+            positions = slotPositions;
+            valueCount = count;
+            cursor = 0;
+            resize(Math.max(INITIAL_SLOTS, count + (count >> 1) + 1));
+        }
+
+        /**
+         * Spreads the slots of a sparse column back to one slot per position.
+         */
+        private void toDense(int minimumSize) {
+            int capacity = Math.max(minimumSize, size + (size >> 1));
+            if (numbers != null) {
+                long[] values = new long[capacity];
+                Arrays.fill(values, emptyNumber());
+                for (int slot = 0; slot < valueCount; slot++) {
+                    values[positions[slot]] = numbers[slot];
+                }
+                numbers = values;
+            } else if (plain != null) {
+                int[] ends = new int[capacity];
+                int slot = 0;
+                int end = 0;
+                for (int position = 0; position < size; position++) {
+                    if (slot < valueCount && positions[slot] == position) {
+                        end = plainEnds[slot++];
+                    }
+                    ends[position] = end;
+                }
+                plainEnds = ends;
+            } else {
+                byte[] narrowCodes = narrow != null ? new byte[capacity] : null;
+                char[] mediumCodes = medium != null ? new char[capacity] : null;
+                int[] wideCodes = wide != null ? new int[capacity] : null;
+                for (int slot = 0; slot < valueCount; slot++) {
+                    int position = positions[slot];
+                    if (narrowCodes != null) {
+                        narrowCodes[position] = narrow[slot];
+                    } else if (mediumCodes != null) {
+                        mediumCodes[position] = medium[slot];
+                    } else {
+                        wideCodes[position] = wide[slot];
+                    }
+                }
+                narrow = narrowCodes;
+                medium = mediumCodes;
+                wide = wideCodes;
+            }
+            positions = null;
+        }
+
+        private void appendPlain(byte[] bytes) {
+            if (plainSize + bytes.length > plain.length) {
+                plain = Arrays.copyOf(plain, Math.max(plainSize + bytes.length, plain.length + (plain.length >> 1)));
+            }
+            System.arraycopy(bytes, 0, plain, plainSize, bytes.length);
+            plainSize += bytes.length;
+        }
+
+        /**
+         * Moves the codes to a wider array when a new code does not fit the current one.
+         */
+        private void widenFor(int code) {
+            long before = footprint();
+            if (narrow != null && code > 0xFF) {
+                medium = new char[narrow.length];
+                for (int i = 0; i < narrow.length; i++) {
+                    medium[i] = (char) (narrow[i] & 0xFF);
+                }
+                narrow = null;
+            } else if (medium != null && code > Character.MAX_VALUE) {
+                wide = new int[medium.length];
+                for (int i = 0; i < medium.length; i++) {
+                    wide[i] = medium[i];
+                }
+                medium = null;
+            }
+            estimatedBytes += footprint() - before;
+        }
+
+        /**
+         * Replaces the codes and the dictionary of a whole-number or decimal column with one
+         * primitive per slot, provided every value formats back to exactly its text.
+         *
+         * @return true if the column switched, false if it must store text
+         */
+        private boolean switchToNumbers() {
+            if (type != ColumnType.LONG && type != ColumnType.DOUBLE) {
+                return false;
+            }
+            doubles = type == ColumnType.DOUBLE;
+            long[] values = new long[dictionary.size()];
+            values[0] = emptyNumber();
+            for (int code = 1; code < values.length; code++) {
+                values[code] = toNumber(dictionary.get(code));
+                if (values[code] == emptyNumber()) {
+                    return false;
+                }
+            }
+            long before = footprint();
+            releaseDictionary();
+            int slots = positions == null ? size : valueCount;
+            long[] slotValues = new long[capacity()];
+            Arrays.fill(slotValues, emptyNumber());
+            for (int slot = 0; slot < slots; slot++) {
+                slotValues[slot] = values[code(slot)];
+            }
+            narrow = null;
+            medium = null;
+            wide = null;
+            numbers = slotValues;
+            estimatedBytes += footprint() - before;
+            return true;
+        }
+
+        /**
+         * Replaces the codes and the dictionary, or the numbers, with the encoded values of every
+         * slot.
+         */
+        private void switchToPlain() {
+            long before = footprint();
+            int slots = positions == null ? size : valueCount;
+            int[] ends = new int[capacity()];
+            plain = new byte[Math.max(INITIAL_SLOTS, slots * 8)];
+            for (int slot = 0; slot < slots; slot++) {
+                String value;
+                if (numbers != null) {
+                    long bits = numbers[slot];
+                    value = bits == emptyNumber() ? ""
+                            : doubles ? Double.toString(Double.longBitsToDouble(bits)) : Long.toString(bits);
+                } else {
+                    value = dictionary.get(code(slot));
+                }
+                if (!value.isEmpty()) {
+                    appendPlain(value.getBytes(StandardCharsets.UTF_8));
+                }
+                ends[slot] = plainSize;
+            }
+            plainEnds = ends;
+            if (dictionary != null) {
+                releaseDictionary();
+            }
+            narrow = null;
+            medium = null;
+            wide = null;
+            numbers = null;
+            estimatedBytes += footprint() - before;
+        }
+
+        private void releaseDictionary() {
+            for (int code = 1; code < dictionary.size(); code++) {
+                estimatedBytes -= stringBytes(dictionary.get(code)) + DICTIONARY_ENTRY_OVERHEAD;
+            }
+            dictionary = null;
+            codes = null;
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * An on-disk cache of converted files, so that inputs converted again without changes are not
+ * parsed again. An entry is keyed by a hash of the input content together with the options that
+ * affect the output, and holds the CSV, the statistics file when one was written, and the
+ * results the converters report. Entries are evicted least recently used first once their files
+ * exceed the size limit.
+ *
+ * <p>The converters use the cache set with {@link ConversionOptions#setConversionCache}: on a hit
+ * the CSV is restored from the cache instead of being converted, and on a miss the new output is
+ * added to it. Options that only affect how a file is converted, such as the parallelism or the
+ * row buffer budget, are not part of the key, so a file converted in parallel hits the entry of
+ * the same file converted sequentially.</p>
+ *
+ * <p>The content hash reads the input at disk speed: a 64-bit multiply-rotate hash over 8-byte
+ * words, combined with a CRC-32C of the same bytes and the file length.</p>
+ *
+ * <p>Outputs are restored by copying by default. With {@link RestoreMode#LINK} the cache and the
+ * outputs share their files through hard links, which costs neither time nor space; the outputs
+ * must then be treated as read-only. An output is always deleted, never truncated, before it is
+ * converted again, and a cached file whose size changed is discarded.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * ConversionCache cache = new ConversionCache(new File("/var/cache/campus"), 10L << 30);
+ * ConversionOptions options = new ConversionOptions().setConversionCache(cache);
+ * new StreamingJsonConverter(options).convert("data/campus.json", "output/campus.csv");
+ * }</pre>
+ *
+ * <p>The index is loaded once and rewritten after every change; one process at a time may use a
+ * cache directory. Instances are thread-safe.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public final class ConversionCache {
+
+    /**
+     * How a cached file is placed at the output path.
+     */
+    public enum RestoreMode {
+        /** Copy the cached file */
+        COPY,
+        /** Hard-link the cached file, copying when the file system cannot link it */
+        LINK
+    }
+
+    /** Name of the index file in the cache directory */
+    static final String INDEX_FILE = "index.json";
+
+    /**
+     * Names of the files this cache writes: the CSV and statistics files of a key, their
+     * temporary names while they are stored, and the temporary name of the index
+     */
+    private static final Pattern CACHE_FILE = Pattern.compile(
+            "([0-9a-f]{24}-[0-9a-f]{16}(\\.csv|" + Pattern.quote(ColumnStatistics.SIDECAR_EXTENSION) + ")"
+                    + "|" + Pattern.quote(INDEX_FILE) + ")(\\.tmp)?");
+
+    /** Version of the key layout, changed whenever the output of a conversion changes */
+    private static final String KEY_VERSION = "4";
+
+    /** Bytes read per call while hashing an input */
+    private static final int HASH_BUFFER_SIZE = 1 << 20;
+
+    private static final long K1 = 0x9e3779b97f4a7c15L;
+    private static final long K2 = 0xc2b2ae3d27d4eb4fL;
+
+    private final File directory;
+    private final long maxBytes;
+    private RestoreMode restoreMode = RestoreMode.COPY;
+
+    /** Entries by key, least recently used first */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * Opens a cache directory, creating it if needed. Cache files of the directory that the
+     * index does not reference, such as the leftovers of an interrupted store, are deleted; an
+     * unreadable index empties the cache. Files with other names are left alone, so the cache
+     * can share a directory with them.
+     *
+     * @param directory The directory holding the cached files and the index
+     * @param maxBytes The total size of the cached files above which entries are evicted. Must be
+     *                 positive.
+     * @throws IllegalArgumentException if the directory is null or the size is not positive
+     * @throws RuntimeException if the directory cannot be created or read
+     */
+    public ConversionCache(File directory, long maxBytes) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Cache directory cannot be null.");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive.");
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory.toPath());
+            load();
+        } catch (IOException e) {
+            throw new RuntimeException("Error while opening conversion cache: " + directory, e);
+        }
+    }
+
+    /**
+     * Sets how cached files are placed at the output path. Defaults to {@link RestoreMode#COPY}.
+     *
+     * @param restoreMode The restore mode
+     * @return This cache
+     * @throws IllegalArgumentException if the mode is null
+     */
+    public synchronized ConversionCache setRestoreMode(RestoreMode restoreMode) {
+        if (restoreMode == null) {
+            throw new IllegalArgumentException("Restore mode cannot be null.");
+        }
+        this.restoreMode = restoreMode;
+        return this;
+    }
+
+    /**
+     * Returns how cached files are placed at the output path.
+     *
+     * @return The restore mode
+     */
+    public synchronized RestoreMode getRestoreMode() {
+        return restoreMode;
+    }
+
+    /**
+     * Returns the number of conversions restored from the cache since it was opened.
+     *
+     * @return The hit count
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of conversions not found in the cache since it was opened.
+     *
+     * @return The miss count
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of cached conversions.
+     *
+     * @return The entry count
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total size of the cached files.
+     *
+     * @return The size in bytes, at most the limit given to the constructor
+     */
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Removes every entry and its files.
+     *
+     * @throws RuntimeException if the files or the index cannot be written
+     */
+    public synchronized void clear() {
+        try {
+            for (String key : new ArrayList<>(entries.keySet())) {
+                remove(key);
+            }
+            saveIndex();
+        } catch (IOException e) {
+            throw new RuntimeException("Error while clearing conversion cache: " + directory, e);
+        }
+    }
+
+    /**
+     * Computes the key of converting a file with the given options.
+     *
+     * @param inputPath The JSON file
+     * @param options The options of the conversion
+     * @return The key, made of the content hash and the hash of the options
+     * @throws IOException if the file cannot be read
+     */
+    String key(String inputPath, ConversionOptions options) throws IOException {
+        long hash = K1;
+        long length = 0;
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(new File(inputPath).toPath(), StandardOpenOption.READ)) {
+            for (int read = channel.read(buffer); read >= 0; read = channel.read(buffer)) {
+                crc.update(buffer.array(), buffer.position() - read, read);
+                length += read;
+                buffer.flip();
+                while (buffer.remaining() >= 8) {
+                    hash = Long.rotateLeft(hash ^ buffer.getLong() * K2, 31) * K1;
+                }
+                buffer.compact();
+            }
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            hash = Long.rotateLeft(hash ^ (buffer.get() & 0xff) * K2, 31) * K1;
+        }
+        hash ^= length;
+        hash ^= hash >>> 33;
+        hash *= K2;
+        hash ^= hash >>> 29;
+        return String.format("%016x%08x-%016x", hash, crc.getValue(), HyperLogLog.hash(describe(options)));
+    }
+
+    /**
+     * Restores a cached conversion to the output path. On a miss in {@link RestoreMode#LINK}
+     * the output is deleted, so that writing it cannot change a file it shares with the cache.
+     *
+     * @param key The key from {@link #key(String, ConversionOptions)}
+     * @param outputPath The CSV file to create; its statistics file is restored next to it
+     * @return The results of the cached conversion, or null on a miss
+     * @throws IOException if the output cannot be written
+     */
+    synchronized Entry restore(String key, String outputPath) throws IOException {
+        Entry entry = entries.get(key);
+        if (entry != null && csvFile(key).length() != entry.csvBytes) {
+            // Changed through a link to an output
+            remove(key);
+            saveIndex();
+            entry = null;
+        }
+        Path output = new File(outputPath).toPath();
+        if (entry == null) {
+            missCount++;
+            if (restoreMode == RestoreMode.LINK) {
+                Files.deleteIfExists(output);
+            }
+            return null;
+        }
+        File parent = output.toAbsolutePath().getParent().toFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create parent directories: " + parent.getAbsolutePath());
+        }
+        place(csvFile(key).toPath(), output);
+        if (entry.statistics) {
+            place(statisticsFile(key).toPath(), new File(ColumnStatistics.sidecarPath(outputPath)).toPath());
+        }
+        hitCount++;
+        saveIndex();
+        return entry;
+    }
+
+    /**
+     * Adds a finished conversion, evicting the least recently used entries beyond the size
+     * limit. A conversion larger than the limit is not cached.
+     *
+     * @param key The key from {@link #key(String, ConversionOptions)}
+     * @param outputPath The CSV file written; its statistics file is cached when the entry has one
+     * @param entry The results of the conversion
+     * @throws IOException if the files cannot be cached
+     */
+    synchronized void store(String key, String outputPath, Entry entry) throws IOException {
+        File csv = new File(outputPath);
+        File stats = new File(ColumnStatistics.sidecarPath(outputPath));
+        long bytes = csv.length() + (entry.statistics ? stats.length() : 0);
+        if (bytes > maxBytes) {
+            return;
+        }
+        if (entries.containsKey(key)) {
+            remove(key);
+        }
+        adopt(csv.toPath(), csvFile(key).toPath());
+        if (entry.statistics) {
+            adopt(stats.toPath(), statisticsFile(key).toPath());
+        }
+        entry.csvBytes = csv.length();
+        entry.statisticsBytes = entry.statistics ? stats.length() : 0;
+        entries.put(key, entry);
+        sizeBytes += entry.size();
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (sizeBytes > maxBytes) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            eldest.remove();
+            sizeBytes -= evicted.getValue().size();
+            deleteFiles(evicted.getKey());
+        }
+        saveIndex();
+    }
+
+    /**
+     * Describes the options that affect the output of a conversion, together with the charset
+     * the CSV is encoded in.
+     */
+    static String describe(ConversionOptions options) {
+        return KEY_VERSION
+                + "|charset=" + Charset.defaultCharset().name()
+                + "|depth=" + options.getMaxNestingDepth()
+                + "|projection=" + options.getProjection()
+                + "|filter=" + options.getFilter()
+                + "|statistics=" + options.isStatisticsEnabled()
+                + "|arrayDelimiter=" + options.getPrimitiveArrayDelimiter()
+                + "|arrayEscape=" + options.getPrimitiveArrayEscape()
+                + "|sort=" + options.getSortColumns()
+                + "|dedup=" + (options.isDeduplicationEnabled() ? String.valueOf(options.getDeduplicationColumns()) : "off")
+                + "|rowIndex=" + options.getRowIndexInterval() + ":" + options.getRowIndexKeyColumn()
+                + "|columnar=" + options.isColumnarOutputEnabled();
+    }
+
+    /**
+     * Places a cached file at an output path, replacing the output.
+     */
+    private void place(Path cached, Path output) throws IOException {
+        if (restoreMode == RestoreMode.LINK) {
+            Files.deleteIfExists(output);
+            try {
+                Files.createLink(output, cached);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                // Another file system, or no hard links: copy instead
+            }
+        }
+        Files.copy(cached, output, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Places an output file in the cache through a temporary name, so that an interrupted store
+     * leaves no entry behind.
+     */
+    private void adopt(Path output, Path cached) throws IOException {
+        Path temporary = cached.resolveSibling(cached.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        boolean linked = false;
+        if (restoreMode == RestoreMode.LINK) {
+            try {
+                Files.createLink(temporary, output);
+                linked = true;
+            } catch (IOException | UnsupportedOperationException e) {
+                // Another file system, or no hard links: copy instead
+            }
+        }
+        if (!linked) {
+            Files.copy(output, temporary);
+        }
+        move(temporary, cached);
+    }
+
+    private File csvFile(String key) {
+        return new File(directory, key + ".csv");
+    }
+
+    private File statisticsFile(String key) {
+        return new File(directory, key + ColumnStatistics.SIDECAR_EXTENSION);
+    }
+
+    private void remove(String key) throws IOException {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            sizeBytes -= entry.size();
+            deleteFiles(key);
+        }
+    }
+
+    private void deleteFiles(String key) throws IOException {
+        Files.deleteIfExists(csvFile(key).toPath());
+        Files.deleteIfExists(statisticsFile(key).toPath());
+    }
+
+    private void load() throws IOException {
+        File index = new File(directory, INDEX_FILE);
+        if (index.exists()) {
+            try (Reader reader = Files.newBufferedReader(index.toPath(), StandardCharsets.UTF_8)) {
+                for (JsonElement element : JsonParser.parseReader(reader).getAsJsonObject().getAsJsonArray("entries")) {
+                    JsonObject object = element.getAsJsonObject();
+                    String key = object.get("key").getAsString();
+                    Entry entry = Entry.fromJson(object);
+                    if (csvFile(key).length() == entry.csvBytes
+                            && (!entry.statistics || statisticsFile(key).length() == entry.statisticsBytes)) {
+                        entries.put(key, entry);
+                        sizeBytes += entry.size();
+                    }
+                }
+            } catch (JsonParseException | IllegalStateException | IllegalArgumentException | NullPointerException e) {
+                // An unreadable index leaves every file unreferenced
+                entries.clear();
+                sizeBytes = 0;
+            }
+        }
+
+        Set<String> referenced = new HashSet<>();
+        referenced.add(INDEX_FILE);
+        for (String key : entries.keySet()) {
+            referenced.add(csvFile(key).getName());
+            referenced.add(statisticsFile(key).getName());
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && !referenced.contains(file.getName())
+                        && CACHE_FILE.matcher(file.getName()).matches()) {
+                    Files.delete(file.toPath());
+                }
+            }
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        Path index = new File(directory, INDEX_FILE).toPath();
+        Path temporary = index.resolveSibling(INDEX_FILE + ".tmp");
+        try (Writer output = new OutputStreamWriter(new FileOutputStream(temporary.toFile()), StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(output)) {
+            json.beginObject();
+            json.name("entries").beginArray();
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                entry.getValue().toJson(json, entry.getKey());
+            }
+            json.endArray();
+            json.endObject();
+        }
+        move(temporary, index);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The results of one cached conversion, as reported by the converters.
+     */
+    static final class Entry {
+
+        final String[] headers;
+        final Map<String, ColumnType> columnTypes;
+        final long rowCount;
+        final long rejectedRecordCount;
+        final int maxRowExplosion;
+        final boolean statistics;
+        long csvBytes;
+        long statisticsBytes;
+
+        Entry(String[] headers, Map<String, ColumnType> columnTypes, long rowCount, long rejectedRecordCount,
+              int maxRowExplosion, boolean statistics) {
+            this.headers = headers.clone();
+            this.columnTypes = columnTypes;
+            this.rowCount = rowCount;
+            this.rejectedRecordCount = rejectedRecordCount;
+            this.maxRowExplosion = maxRowExplosion;
+            this.statistics = statistics;
+        }
+
+        long size() {
+            return csvBytes + statisticsBytes;
+        }
+
+        void toJson(JsonWriter json, String key) throws IOException {
+            json.beginObject();
+            json.name("key").value(key);
+            json.name("csvBytes").value(csvBytes);
+            json.name("statisticsBytes").value(statistics ? statisticsBytes : -1);
+            json.name("rowCount").value(rowCount);
+            json.name("rejectedRecordCount").value(rejectedRecordCount);
+            json.name("maxRowExplosion").value(maxRowExplosion);
+            json.name("columns").beginArray();
+            for (String header : headers) {
+                ColumnType type = columnTypes.get(header);
+                json.beginObject();
+                json.name("name").value(header);
+                json.name("type").value((type == null ? ColumnType.STRING : type).name());
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+
+        static Entry fromJson(JsonObject object) {
+            JsonArray columns = object.getAsJsonArray("columns");
+            List<String> headers = new ArrayList<>();
+            Map<String, ColumnType> types = new LinkedHashMap<>();
+            for (JsonElement column : columns) {
+                String name = column.getAsJsonObject().get("name").getAsString();
+                headers.add(name);
+                types.put(name, ColumnType.valueOf(column.getAsJsonObject().get("type").getAsString()));
+            }
+            long statisticsBytes = object.get("statisticsBytes").getAsLong();
+            Entry entry = new Entry(headers.toArray(new String[0]), Collections.unmodifiableMap(types),
+                    object.get("rowCount").getAsLong(), object.get("rejectedRecordCount").getAsLong(),
+                    object.get("maxRowExplosion").getAsInt(), statisticsBytes >= 0);
+            entry.csvBytes = object.get("csvBytes").getAsLong();
+            entry.statisticsBytes = Math.max(0, statisticsBytes);
+            return entry;
+        }
+    }
+}
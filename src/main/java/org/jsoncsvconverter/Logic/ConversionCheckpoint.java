@@ -0,0 +1,268 @@
+package org.jsoncsvconverter.Logic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A consistent point of a conversion being written by {@link Utf8CsvConverter}, saved next to the
+ * CSV so that an interrupted conversion resumes from it instead of starting over. A checkpoint
+ * records the input offset just after a record together with the state of the tokenizer there,
+ * the output offset of the rows written up to that record, and everything the first pass
+ * discovered: the header set, the column types and the row count.
+ *
+ * <p>Two files are kept beside the output: {@code <output>.checkpoint}, rewritten atomically at
+ * every checkpoint, and {@code <output>.checkpoint.rows}, written once before the first row with
+ * the leading and trailing rows of an object root, which the first pass completes and the second
+ * pass writes first and last. A checkpoint is only used for the same input, unchanged since, and
+ * the same options affecting the output.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+final class ConversionCheckpoint {
+
+    /**
+     * Where the second pass stood when the checkpoint was taken.
+     */
+    enum Context {
+        /** Before the first value; the pass starts over with the output after the headers */
+        START,
+        /** Between two top-level values */
+        TOP_LEVEL,
+        /** Between two elements of a top-level array */
+        TOP_ARRAY,
+        /** Between two elements of an array member of the root object */
+        ROOT_ARRAY
+    }
+
+    /** Extension of the checkpoint file, appended to the output path */
+    static final String EXTENSION = ".checkpoint";
+
+    /** Extension of the file holding the rows of an object root */
+    static final String ROWS_EXTENSION = ".checkpoint.rows";
+
+    private static final int MAGIC = 0x4a434350;
+    private static final int VERSION = 1;
+
+    /** Results of the first pass */
+    final String[] headers;
+    final Map<String, ColumnType> columnTypes;
+    final long rowCount;
+    final int maxRowExplosion;
+    final boolean sequence;
+
+    /** Position of the second pass */
+    Context context = Context.START;
+    long inputOffset = 0;
+    byte[] scopes = new byte[0];
+    /** Name of the root member whose elements are being written, for {@link Context#ROOT_ARRAY} */
+    String member = "";
+    /** Rows of the root object arrays seen so far, for {@link Context#ROOT_ARRAY} */
+    long rootRows = 0;
+    long outputOffset = 0;
+    ColumnStatistics statistics;
+
+    ConversionCheckpoint(String[] headers, Map<String, ColumnType> columnTypes, long rowCount,
+                         int maxRowExplosion, boolean sequence) {
+        this.headers = headers;
+        this.columnTypes = columnTypes;
+        this.rowCount = rowCount;
+        this.maxRowExplosion = maxRowExplosion;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Saves the checkpoint through a temporary file, so that a crash while saving leaves the
+     * previous checkpoint in place.
+     */
+    void save(String inputPath, String outputPath, ConversionOptions options) throws IOException {
+        Path target = new File(outputPath + EXTENSION).toPath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temporary.toFile())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeIdentity(out, inputPath, options);
+            out.writeInt(headers.length);
+            for (String header : headers) {
+                writeString(out, header);
+                ColumnType type = columnTypes.get(header);
+                out.writeByte(type == null ? -1 : type.ordinal());
+            }
+            out.writeLong(rowCount);
+            out.writeInt(maxRowExplosion);
+            out.writeBoolean(sequence);
+
+            out.writeByte(context.ordinal());
+            out.writeLong(inputOffset);
+            out.writeInt(scopes.length);
+            out.write(scopes);
+            writeString(out, member);
+            out.writeLong(rootRows);
+            out.writeLong(outputOffset);
+            out.writeBoolean(statistics != null);
+            if (statistics != null) {
+                statistics.save(out);
+            }
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Loads the checkpoint of a conversion.
+     *
+     * @return The checkpoint, or null if there is none, it is unreadable, or it was taken for
+     *         another input, other options or an output that has since been shortened
+     */
+    static ConversionCheckpoint load(String inputPath, String outputPath, ConversionOptions options) {
+        File file = new File(outputPath + EXTENSION);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            File input = new File(inputPath);
+            if (in.readLong() != input.length() || in.readLong() != input.lastModified()
+                    || !readString(in).equals(ConversionCache.describe(options))) {
+                return null;
+            }
+            String[] headers = new String[in.readInt()];
+            Map<String, ColumnType> types = new LinkedHashMap<>();
+            ColumnType[] values = ColumnType.values();
+            for (int i = 0; i < headers.length; i++) {
+                headers[i] = readString(in);
+                int type = in.readByte();
+                types.put(headers[i], type < 0 ? ColumnType.STRING : values[type]);
+            }
+            ConversionCheckpoint checkpoint = new ConversionCheckpoint(headers, Collections.unmodifiableMap(types),
+                    in.readLong(), in.readInt(), in.readBoolean());
+            checkpoint.context = Context.values()[in.readByte()];
+            checkpoint.inputOffset = in.readLong();
+            checkpoint.scopes = new byte[in.readInt()];
+            in.readFully(checkpoint.scopes);
+            checkpoint.member = readString(in);
+            checkpoint.rootRows = in.readLong();
+            checkpoint.outputOffset = in.readLong();
+            if (in.readBoolean()) {
+                checkpoint.statistics = ColumnStatistics.load(in);
+            }
+            if (new File(outputPath).length() < checkpoint.outputOffset
+                    || !new File(outputPath + ROWS_EXTENSION).isFile()) {
+                return null;
+            }
+            return checkpoint;
+        } catch (IOException | RuntimeException e) {
+            // A checkpoint cut short by a crash, or from another version, is ignored
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the files of a conversion's checkpoint.
+     */
+    static void delete(String outputPath) throws IOException {
+        Files.deleteIfExists(new File(outputPath + EXTENSION).toPath());
+        Files.deleteIfExists(new File(outputPath + ROWS_EXTENSION).toPath());
+    }
+
+    /**
+     * Saves the leading row and the trailing rows of an object root.
+     *
+     * @param leading The leading row, or null
+     * @param tail The trailing rows, or null
+     */
+    static void saveRows(String outputPath, SparseRow leading, Iterable<SparseRow> tail) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(outputPath + ROWS_EXTENSION)))) {
+            out.writeBoolean(leading != null);
+            if (leading != null) {
+                leading.write(out);
+            }
+            if (tail != null) {
+                for (SparseRow row : tail) {
+                    out.writeBoolean(true);
+                    row.write(out);
+                }
+            }
+            out.writeBoolean(false);
+        }
+    }
+
+    /**
+     * Reads the rows saved by {@link #saveRows}, passing the leading row, if any, and then the
+     * trailing rows to the given consumers.
+     *
+     * @param tail The consumer of the trailing rows, or null to read only the leading row
+     */
+    static void readRows(String outputPath, int width, RowConsumer leading, RowConsumer tail) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(outputPath + ROWS_EXTENSION)))) {
+            if (in.readBoolean()) {
+                leading.accept(SparseRow.read(in, width));
+            }
+            if (tail == null) {
+                return;
+            }
+            while (in.readBoolean()) {
+                tail.accept(SparseRow.read(in, width));
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated checkpoint rows: " + outputPath + ROWS_EXTENSION, e);
+        }
+    }
+
+    /**
+     * Receives the rows read back by {@link #readRows}.
+     */
+    interface RowConsumer {
+        void accept(SparseRow row) throws IOException;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes what a checkpoint must match to be used: the input's length and modification time
+     * and the options affecting the output.
+     */
+    private static void writeIdentity(DataOutputStream out, String inputPath, ConversionOptions options)
+            throws IOException {
+        File input = new File(inputPath);
+        out.writeLong(input.length());
+        out.writeLong(input.lastModified());
+        writeString(out, ConversionCache.describe(options));
+    }
+}
@@ -0,0 +1,352 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.JsonObject;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Process-wide registry of per-stage conversion metrics.
+ * Every conversion is broken into the stages listed in {@link Stage}; the components performing
+ * each stage ({@link JsonFileReader}, {@link JSONParser}, {@link CSVWriterFile}) time themselves
+ * with a {@link StageTimer} and add their byte, row and column counts to the registry.
+ *
+ * <p>Key features:</p>
+ * <ul>
+ *   <li>Wall-clock time, bytes, rows, columns and allocated heap bytes for every stage</li>
+ *   <li>Each stage exported as a JMX MBean under {@code org.jsoncsvconverter:type=ConversionMetrics}</li>
+ *   <li>Each stage emitted as a Flight Recorder event (see {@link ConversionEvents}) when recording</li>
+ *   <li>Point-in-time {@link Snapshot}s that can be diffed to summarise a single run as JSON</li>
+ *   <li>Low overhead: one timer per stage invocation, lock-free counters, no per-row work</li>
+ * </ul>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * ConversionMetrics.Snapshot before = ConversionMetrics.getInstance().snapshot();
+ * // ... read, parse and write a file ...
+ * System.out.println(ConversionMetrics.getInstance().snapshot().since(before).toJson());
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public final class ConversionMetrics {
+
+    /**
+     * The stages of a conversion, in pipeline order.
+     */
+    public enum Stage {
+        /** Reading the JSON input from disk or a stream */
+        READ,
+        /** Parsing JSON text into a tree or tokens */
+        PARSE,
+        /** Flattening the JSON structure into rows and columns */
+        FLATTEN,
+        /** Encoding rows as CSV and writing them out */
+        WRITE
+    }
+
+    /** JMX domain under which the stage MBeans are registered */
+    public static final String JMX_DOMAIN = "org.jsoncsvconverter";
+
+    private static final ConversionMetrics INSTANCE = new ConversionMetrics();
+
+    private final Map<Stage, StageMetrics> stages = new EnumMap<>(Stage.class);
+
+    /** Thread MXBean with allocation counters, or null when the JVM does not support them */
+    private final com.sun.management.ThreadMXBean allocationBean;
+
+    private ConversionMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new StageMetrics());
+        }
+        this.allocationBean = lookupAllocationBean();
+        registerMBeans();
+    }
+
+    /**
+     * Returns the process-wide metrics registry.
+     *
+     * @return The shared ConversionMetrics instance
+     */
+    public static ConversionMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts timing one invocation of a stage on the current thread.
+     * The returned timer must be closed, ideally with try-with-resources; an invocation that is
+     * closed without calling {@link StageTimer#complete(long, long, long)} is recorded as a failure.
+     *
+     * @param stage The stage being executed
+     * @return A running timer
+     */
+    public StageTimer start(Stage stage) {
+        return start(stage, null);
+    }
+
+    /**
+     * Starts timing one invocation of a stage that works on a known file.
+     * The file name is attached to the Flight Recorder event of the stage.
+     *
+     * @param stage The stage being executed
+     * @param fileName The input or output file handled by the stage, or null when unknown
+     * @return A running timer
+     */
+    public StageTimer start(Stage stage, String fileName) {
+        return new StageTimer(stages.get(stage), stage, fileName, currentThreadAllocatedBytes());
+    }
+
+    /**
+     * Returns the live counters of a stage.
+     *
+     * @param stage The stage to look up
+     * @return The cumulative metrics of the stage
+     */
+    public StageMetrics getStage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Captures the current value of every counter.
+     *
+     * @return An immutable snapshot of all stages
+     */
+    public Snapshot snapshot() {
+        Map<Stage, long[]> values = new EnumMap<>(Stage.class);
+        for (Map.Entry<Stage, StageMetrics> entry : stages.entrySet()) {
+            StageMetrics m = entry.getValue();
+            values.put(entry.getKey(), new long[]{
+                    m.getInvocations(), m.getFailures(), m.getTotalNanos(), m.getBytes(),
+                    m.getRows(), m.getColumns(), m.getAllocatedBytes()
+            });
+        }
+        return new Snapshot(values);
+    }
+
+    /**
+     * Resets the counters of every stage.
+     */
+    public void reset() {
+        for (StageMetrics metrics : stages.values()) {
+            metrics.reset();
+        }
+    }
+
+    private long currentThreadAllocatedBytes() {
+        return allocationBean == null ? 0L : allocationBean.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean lookupAllocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registers one MBean per stage with the platform MBean server. Registration problems are
+     * reported on stderr but never prevent conversions from running.
+     */
+    private void registerMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (Map.Entry<Stage, StageMetrics> entry : stages.entrySet()) {
+                ObjectName name = new ObjectName(JMX_DOMAIN + ":type=ConversionMetrics,stage="
+                        + stageLabel(entry.getKey()));
+                try {
+                    server.registerMBean(entry.getValue(), name);
+                } catch (InstanceAlreadyExistsException e) {
+                    // Another class loader in this JVM already exported the metrics
+                }
+            }
+        } catch (JMException | SecurityException e) {
+            System.err.println("Conversion metrics are not available through JMX: " + e.getMessage());
+        }
+    }
+
+    private static String stageLabel(Stage stage) {
+        String name = stage.name().toLowerCase(Locale.ROOT);
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * Measures one invocation of a stage. Timers are cheap, single-use and not thread-safe.
+     */
+    public final class StageTimer implements AutoCloseable {
+
+        private final StageMetrics target;
+        private final String fileName;
+        private final long startNanos;
+        private final long startAllocated;
+        private ConversionEvents.StageEvent event;
+        private boolean closed;
+
+        private StageTimer(StageMetrics target, Stage stage, String fileName, long startAllocated) {
+            this.target = target;
+            this.fileName = fileName;
+            this.startAllocated = startAllocated;
+
+            ConversionEvents.StageEvent stageEvent = ConversionEvents.create(stage);
+            if (stageEvent.isEnabled()) {
+                stageEvent.begin();
+                this.event = stageEvent;
+            }
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Marks the invocation as successful and records its counts.
+         *
+         * @param bytes The bytes read or written by the invocation
+         * @param rows The rows produced or consumed by the invocation
+         * @param columns The columns produced or consumed by the invocation
+         */
+        public void complete(long bytes, long rows, long columns) {
+            finish(bytes, rows, columns, 0, false);
+        }
+
+        /**
+         * Marks the invocation as successful and records its counts, including the largest number
+         * of rows a single array element expanded into (reported only to Flight Recorder).
+         *
+         * @param bytes The bytes read or written by the invocation
+         * @param rows The rows produced or consumed by the invocation
+         * @param columns The columns produced or consumed by the invocation
+         * @param maxRowExplosion The largest row count produced from one array element
+         */
+        public void complete(long bytes, long rows, long columns, long maxRowExplosion) {
+            finish(bytes, rows, columns, maxRowExplosion, false);
+        }
+
+        /**
+         * Records the invocation as failed unless {@link #complete(long, long, long)} was called.
+         */
+        @Override
+        public void close() {
+            finish(0, 0, 0, 0, true);
+        }
+
+        private void finish(long bytes, long rows, long columns, long maxRowExplosion, boolean failed) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            long nanos = System.nanoTime() - startNanos;
+            long allocated = Math.max(0L, currentThreadAllocatedBytes() - startAllocated);
+            target.record(nanos, bytes, rows, columns, allocated, failed);
+
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.fileName = fileName;
+                    event.bytes = bytes;
+                    event.rowCount = rows;
+                    event.columnCount = columns;
+                    event.maxRowExplosion = maxRowExplosion;
+                    event.failed = failed;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * An immutable copy of all stage counters at one point in time.
+     * The difference between two snapshots summarises everything that happened in between,
+     * which is how a single run is reported.
+     */
+    public static final class Snapshot {
+
+        private static final String[] FIELDS = {
+                "invocations", "failures", "nanos", "bytes", "rows", "columns", "allocatedBytes"
+        };
+
+        private final Map<Stage, long[]> values;
+
+        private Snapshot(Map<Stage, long[]> values) {
+            this.values = values;
+        }
+
+        /**
+         * Returns the counters accumulated since an earlier snapshot.
+         *
+         * @param earlier A snapshot taken before this one
+         * @return A snapshot holding the per-stage differences
+         */
+        public Snapshot since(Snapshot earlier) {
+            Map<Stage, long[]> delta = new EnumMap<>(Stage.class);
+            for (Map.Entry<Stage, long[]> entry : values.entrySet()) {
+                long[] now = entry.getValue();
+                long[] before = earlier.values.get(entry.getKey());
+                long[] diff = new long[now.length];
+                for (int i = 0; i < now.length; i++) {
+                    diff[i] = now[i] - before[i];
+                }
+                delta.put(entry.getKey(), diff);
+            }
+            return new Snapshot(delta);
+        }
+
+        /** @return The wall-clock nanoseconds recorded for the stage */
+        public long getNanos(Stage stage) {
+            return values.get(stage)[2];
+        }
+
+        /** @return The number of invocations recorded for the stage */
+        public long getInvocations(Stage stage) {
+            return values.get(stage)[0];
+        }
+
+        /** @return The bytes recorded for the stage */
+        public long getBytes(Stage stage) {
+            return values.get(stage)[3];
+        }
+
+        /** @return The rows recorded for the stage */
+        public long getRows(Stage stage) {
+            return values.get(stage)[4];
+        }
+
+        /** @return The columns recorded for the stage */
+        public long getColumns(Stage stage) {
+            return values.get(stage)[5];
+        }
+
+        /**
+         * Renders the snapshot as a single-line JSON object keyed by stage name, for example
+         * {@code {"read":{"invocations":1,"failures":0,"nanos":1200,...},"parse":{...}}}.
+         *
+         * @return The machine-readable summary
+         */
+        public String toJson() {
+            JsonObject root = new JsonObject();
+            for (Map.Entry<Stage, long[]> entry : values.entrySet()) {
+                JsonObject stage = new JsonObject();
+                long[] counters = entry.getValue();
+                for (int i = 0; i < FIELDS.length; i++) {
+                    stage.addProperty(FIELDS[i], counters[i]);
+                }
+                root.add(entry.getKey().name().toLowerCase(Locale.ROOT), stage);
+            }
+            return root.toString();
+        }
+
+        @Override
+        public String toString() {
+            return toJson();
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package org.jsoncsvconverter.Logic;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tunable settings shared by the conversion components.
+ * A default instance reproduces the original behaviour of the converter; each setter returns
+ * the same instance so options can be configured in a single expression.
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * ConversionOptions options = new ConversionOptions()
+ *         .setRowBufferBudgetBytes(256L * 1024 * 1024)
+ *         .setSpillDirectory(new File("/data/tmp"));
+ * JSONParser parser = new JSONParser(jsonString, options);
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ConversionOptions {
+
+    /** Estimated heap the flattened rows may use before they are spilled to disk */
+    private long rowBufferBudgetBytes = Runtime.getRuntime().maxMemory() / 4;
+
+    /** Directory for temporary spill files, or null for the system temporary directory */
+    private File spillDirectory = null;
+
+    /** Maximum nesting of objects and arrays accepted in the input */
+    private int maxNestingDepth = 1024;
+
+    /** Columns selected for output, or null for every column */
+    private ColumnProjection projection = null;
+
+    /** Filter deciding which records are converted, or null for every record */
+    private RecordFilter filter = null;
+
+    /** Number of threads parsing one large input file */
+    private int parallelism = 1;
+    private boolean byteTokenizerEnabled = true;
+
+    /** Whether converters write per-column statistics next to the CSV */
+    private boolean statisticsEnabled = false;
+
+    /** Cache of converted files, or null to convert every file */
+    private ConversionCache conversionCache = null;
+
+    /** Input bytes converted between two checkpoints, or 0 for none */
+    private long checkpointIntervalBytes = 0;
+
+    /** Delimiter joining the elements of a primitive array into one cell, or null for a row each */
+    private String primitiveArrayDelimiter = null;
+    private char primitiveArrayEscape = '\\';
+
+    /** Columns the output rows are sorted by, or null to keep the input order */
+    private List<String> sortColumns = null;
+
+    /** Whether duplicate output rows are dropped, and the columns compared, or null for all */
+    private boolean deduplicationEnabled = false;
+    private List<String> deduplicationColumns = null;
+
+    /** Rows per indexed offset of the row index written next to the output, 0 for none */
+    private int rowIndexInterval = 0;
+    private String rowIndexKeyColumn = null;
+
+    /** Whether a columnar copy of the output is written next to it */
+    private boolean columnarOutputEnabled = false;
+
+    /**
+     * Returns the estimated heap, in bytes, that flattened rows may occupy before they are
+     * written to temporary files. Defaults to a quarter of the maximum heap.
+     *
+     * @return The row buffer budget in bytes
+     */
+    public long getRowBufferBudgetBytes() {
+        return rowBufferBudgetBytes;
+    }
+
+    /**
+     * Sets the estimated heap, in bytes, that flattened rows may occupy before they are spilled.
+     *
+     * @param rowBufferBudgetBytes The budget in bytes. Must be positive.
+     * @return This options instance
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    public ConversionOptions setRowBufferBudgetBytes(long rowBufferBudgetBytes) {
+        if (rowBufferBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Row buffer budget must be positive.");
+        }
+        this.rowBufferBudgetBytes = rowBufferBudgetBytes;
+        return this;
+    }
+
+    /**
+     * Returns the directory used for temporary spill files.
+     *
+     * @return The spill directory, or null when the system temporary directory is used
+     */
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Sets the directory used for temporary spill files.
+     *
+     * @param spillDirectory The directory, or null for the system temporary directory
+     * @return This options instance
+     */
+    public ConversionOptions setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+        return this;
+    }
+
+    /**
+     * Returns the maximum nesting of objects and arrays accepted in the input. Deeper documents
+     * are rejected with a message naming the path where the limit was hit. Defaults to 1024.
+     *
+     * @return The nesting depth limit
+     */
+    public int getMaxNestingDepth() {
+        return maxNestingDepth;
+    }
+
+    /**
+     * Sets the maximum nesting of objects and arrays accepted in the input.
+     *
+     * @param maxNestingDepth The depth limit. Must be positive.
+     * @return This options instance
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public ConversionOptions setMaxNestingDepth(int maxNestingDepth) {
+        if (maxNestingDepth <= 0) {
+            throw new IllegalArgumentException("Maximum nesting depth must be positive.");
+        }
+        this.maxNestingDepth = maxNestingDepth;
+        return this;
+    }
+
+    /**
+     * Returns the columns selected for output.
+     *
+     * @return The projection, or null when every column is converted
+     */
+    public ColumnProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * Selects the columns to convert. Readers skip input subtrees that cannot produce a selected
+     * column without building them, and writers output only the selected columns and only the
+     * rows with a value in one of them.
+     *
+     * @param projection The selected columns, or null to convert every column
+     * @return This options instance
+     */
+    public ConversionOptions setProjection(ColumnProjection projection) {
+        this.projection = projection;
+        return this;
+    }
+
+    /**
+     * Returns the filter deciding which records are converted.
+     *
+     * @return The filter, or null when every record is converted
+     */
+    public RecordFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Sets the filter deciding which records are converted. Readers evaluate it while a record
+     * is read and skip the remaining tokens of a record as soon as it is rejected.
+     *
+     * @param filter The filter, or null to convert every record
+     * @return This options instance
+     */
+    public ConversionOptions setFilter(RecordFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Returns the number of threads that may parse one input file at once. Defaults to 1.
+     *
+     * @return The parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads that may parse one input file at once. Only
+     * {@link ParallelJsonConverter} uses more than one.
+     *
+     * @param parallelism The number of threads. Must be positive.
+     * @return This options instance
+     * @throws IllegalArgumentException if the number is not positive
+     */
+    public ConversionOptions setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Tells whether {@link StreamingJsonConverter} may convert files with its byte-level UTF-8
+     * tokenizer. Defaults to true.
+     *
+     * @return true if the byte-level path is enabled
+     */
+    public boolean isByteTokenizerEnabled() {
+        return byteTokenizerEnabled;
+    }
+
+    /**
+     * Enables or disables the byte-level UTF-8 path of {@link StreamingJsonConverter}. It is only
+     * taken for files converted without a projection or a filter, and it falls back to the Gson
+     * reader by itself for input it does not reproduce exactly, so disabling it is only useful to
+     * compare the two.
+     *
+     * @param byteTokenizerEnabled true to allow the byte-level path
+     * @return This options instance
+     */
+    public ConversionOptions setByteTokenizerEnabled(boolean byteTokenizerEnabled) {
+        this.byteTokenizerEnabled = byteTokenizerEnabled;
+        return this;
+    }
+
+    /**
+     * Tells whether the converters gather per-column statistics while writing and save them
+     * next to the CSV. Defaults to false.
+     *
+     * @return true if statistics are written
+     * @see ColumnStatistics
+     */
+    public boolean isStatisticsEnabled() {
+        return statisticsEnabled;
+    }
+
+    /**
+     * Enables or disables the statistics file. When enabled, {@link StreamingJsonConverter} and
+     * {@link ParallelJsonConverter} write {@link ColumnStatistics#sidecarPath(String)} after the
+     * CSV, with the null count, extremes and approximate distinct count of every column.
+     *
+     * @param statisticsEnabled true to write the statistics file
+     * @return This options instance
+     */
+    public ConversionOptions setStatisticsEnabled(boolean statisticsEnabled) {
+        this.statisticsEnabled = statisticsEnabled;
+        return this;
+    }
+
+    /**
+     * Returns the cache consulted before converting a file. Defaults to null.
+     *
+     * @return The conversion cache, or null if every file is converted
+     */
+    public ConversionCache getConversionCache() {
+        return conversionCache;
+    }
+
+    /**
+     * Sets the cache consulted by {@link StreamingJsonConverter} and {@link ParallelJsonConverter}
+     * before converting a file: a file converted before with the same content and the same
+     * output options is restored from the cache instead of being parsed again.
+     *
+     * @param conversionCache The cache, or null to convert every file
+     * @return This options instance
+     */
+    public ConversionOptions setConversionCache(ConversionCache conversionCache) {
+        this.conversionCache = conversionCache;
+        return this;
+    }
+
+    /**
+     * Returns the number of input bytes converted between two checkpoints. Defaults to 0, which
+     * takes no checkpoint.
+     *
+     * @return The checkpoint interval in bytes
+     */
+    public long getCheckpointIntervalBytes() {
+        return checkpointIntervalBytes;
+    }
+
+    /**
+     * Sets the number of input bytes converted between two checkpoints of
+     * {@link StreamingJsonConverter}. A checkpoint records where the conversion stands in the
+     * input and the output; converting the same file to the same output again after a crash, or
+     * after the converting thread was interrupted, resumes from the last checkpoint instead of
+     * starting over. Checkpoints are taken while the rows are written by the byte-level path,
+     * after the columns have been discovered.
+     *
+     * @param checkpointIntervalBytes The interval in bytes, or 0 for no checkpoints. Must not be
+     *                                negative.
+     * @return This options instance
+     * @throws IllegalArgumentException if the interval is negative
+     */
+    public ConversionOptions setCheckpointIntervalBytes(long checkpointIntervalBytes) {
+        if (checkpointIntervalBytes < 0) {
+            throw new IllegalArgumentException("Checkpoint interval cannot be negative.");
+        }
+        this.checkpointIntervalBytes = checkpointIntervalBytes;
+        return this;
+    }
+
+    /**
+     * Returns the delimiter joining the elements of a primitive array into a single cell.
+     * Defaults to null, which gives every element a row of its own.
+     *
+     * @return The delimiter, or null if primitive arrays are spread over rows
+     */
+    public String getPrimitiveArrayDelimiter() {
+        return primitiveArrayDelimiter;
+    }
+
+    /**
+     * Sets the delimiter joining the elements of a primitive array into a single cell, so that
+     * arrays such as {@code "skills": ["java", "sql"]} are written as {@code java;sql} in one
+     * row instead of one row per element. Occurrences of the delimiter and of the escape
+     * character inside an element are preceded by the escape character, see
+     * {@link #setPrimitiveArrayEscape(char)}. Applies to {@link JSONParser},
+     * {@link StreamingJsonConverter} and {@link ParallelJsonConverter}.
+     *
+     * @param primitiveArrayDelimiter The delimiter, or null for one row per element. Must not be
+     *                                empty or contain the escape character.
+     * @return This options instance
+     * @throws IllegalArgumentException if the delimiter is empty or contains the escape character
+     */
+    public ConversionOptions setPrimitiveArrayDelimiter(String primitiveArrayDelimiter) {
+        if (primitiveArrayDelimiter != null && primitiveArrayDelimiter.isEmpty()) {
+            throw new IllegalArgumentException("Primitive array delimiter cannot be empty.");
+        }
+        if (primitiveArrayDelimiter != null && primitiveArrayDelimiter.indexOf(primitiveArrayEscape) >= 0) {
+            throw new IllegalArgumentException("Primitive array delimiter cannot contain the escape character.");
+        }
+        this.primitiveArrayDelimiter = primitiveArrayDelimiter;
+        return this;
+    }
+
+    /**
+     * Returns the character escaping the delimiter and itself inside joined primitive array
+     * elements. Defaults to a backslash.
+     *
+     * @return The escape character
+     */
+    public char getPrimitiveArrayEscape() {
+        return primitiveArrayEscape;
+    }
+
+    /**
+     * Sets the character escaping the delimiter and itself inside joined primitive array
+     * elements.
+     *
+     * @param primitiveArrayEscape The escape character. Must not occur in the delimiter.
+     * @return This options instance
+     * @throws IllegalArgumentException if the delimiter contains the character
+     */
+    public ConversionOptions setPrimitiveArrayEscape(char primitiveArrayEscape) {
+        if (primitiveArrayDelimiter != null && primitiveArrayDelimiter.indexOf(primitiveArrayEscape) >= 0) {
+            throw new IllegalArgumentException("Primitive array delimiter cannot contain the escape character.");
+        }
+        this.primitiveArrayEscape = primitiveArrayEscape;
+        return this;
+    }
+
+    /**
+     * Returns the columns the output rows are sorted by. Defaults to null.
+     *
+     * @return The key columns, most significant first, or null if rows keep their input order
+     */
+    public List<String> getSortColumns() {
+        return sortColumns;
+    }
+
+    /**
+     * Sets the columns {@link StreamingJsonConverter} and {@link ParallelJsonConverter} sort the
+     * output rows by, for example the student ID. Every record is sorted by the keys of its first
+     * row and keeps the rows its nested arrays exploded into together, in their order. Records
+     * are sorted in runs of up to the row buffer budget that are spilled to the spill directory
+     * and merged while the CSV is written, so files of any size are sorted in a fixed heap.
+     * Numeric columns sort as numbers, others as text, empty cells first, and records with equal
+     * keys keep their input order. A key column missing from the output is empty in every row.
+     *
+     * @param sortColumns The flattened key columns, most significant first, or null or empty to
+     *                    keep the input order. Must not hold null or empty names.
+     * @return This options instance
+     * @throws IllegalArgumentException if a column name is null or empty
+     */
+    public ConversionOptions setSortColumns(List<String> sortColumns) {
+        if (sortColumns == null || sortColumns.isEmpty()) {
+            this.sortColumns = null;
+            return this;
+        }
+        for (String column : sortColumns) {
+            if (column == null || column.isEmpty()) {
+                throw new IllegalArgumentException("Sort column names cannot be empty.");
+            }
+        }
+        this.sortColumns = Collections.unmodifiableList(new ArrayList<>(sortColumns));
+        return this;
+    }
+
+    /**
+     * Returns whether duplicate output rows are dropped. Defaults to false.
+     *
+     * @return true if only the first of duplicate rows is written
+     */
+    public boolean isDeduplicationEnabled() {
+        return deduplicationEnabled;
+    }
+
+    /**
+     * Sets whether {@link StreamingJsonConverter} and {@link ParallelJsonConverter} drop records
+     * whose rows repeat those of an earlier record, or its deduplication columns when they are
+     * set. A record is kept or dropped with every row its nested arrays exploded into. Records
+     * are compared by 64-bit fingerprints kept within the row buffer budget and partitioned to
+     * the spill directory beyond it, so outputs of any size are deduplicated during conversion.
+     * The first of duplicate records is kept, before the rows are sorted.
+     *
+     * @param deduplicationEnabled true to drop duplicate rows
+     * @return This options instance
+     */
+    public ConversionOptions setDeduplicationEnabled(boolean deduplicationEnabled) {
+        this.deduplicationEnabled = deduplicationEnabled;
+        return this;
+    }
+
+    /**
+     * Returns the columns compared to find duplicate rows. Defaults to null.
+     *
+     * @return The key columns, or null if whole rows are compared
+     */
+    public List<String> getDeduplicationColumns() {
+        return deduplicationColumns;
+    }
+
+    /**
+     * Sets the columns compared to find duplicate rows, for example the student ID, so that only
+     * the first record of every student is written. A row with a key starts a record, and the
+     * following rows whose key columns are all empty continue it and are kept or dropped with
+     * it. Setting columns enables deduplication. A key column missing from the output is empty
+     * in every row.
+     *
+     * @param deduplicationColumns The flattened key columns, or null or empty to compare whole
+     *                             rows. Must not hold null or empty names.
+     * @return This options instance
+     * @throws IllegalArgumentException if a column name is null or empty
+     */
+    public ConversionOptions setDeduplicationColumns(List<String> deduplicationColumns) {
+        if (deduplicationColumns == null || deduplicationColumns.isEmpty()) {
+            this.deduplicationColumns = null;
+            return this;
+        }
+        for (String column : deduplicationColumns) {
+            if (column == null || column.isEmpty()) {
+                throw new IllegalArgumentException("Deduplication column names cannot be empty.");
+            }
+        }
+        this.deduplicationColumns = Collections.unmodifiableList(new ArrayList<>(deduplicationColumns));
+        this.deduplicationEnabled = true;
+        return this;
+    }
+
+    /**
+     * Returns the number of rows between two offsets of the row index saved next to the
+     * output. Defaults to 0.
+     *
+     * @return The row index interval, or 0 if no index is written
+     */
+    public int getRowIndexInterval() {
+        return rowIndexInterval;
+    }
+
+    /**
+     * Sets whether {@link StreamingJsonConverter} and {@link ParallelJsonConverter} save a
+     * {@link CsvRowIndex} next to the output, with the byte offset of every
+     * {@code rowIndexInterval}-th row, for reading any row or range of rows without scanning the
+     * file. Smaller intervals skip fewer rows per read and make larger indexes.
+     *
+     * @param rowIndexInterval The number of rows per indexed offset, or 0 to write no index
+     * @return This options instance
+     * @throws IllegalArgumentException if the interval is negative
+     */
+    public ConversionOptions setRowIndexInterval(int rowIndexInterval) {
+        if (rowIndexInterval < 0) {
+            throw new IllegalArgumentException("Row index interval cannot be negative.");
+        }
+        this.rowIndexInterval = rowIndexInterval;
+        return this;
+    }
+
+    /**
+     * Returns the column whose smallest and largest value are recorded for every block of the
+     * row index. Defaults to null.
+     *
+     * @return The key column of the row index, or null for none
+     */
+    public String getRowIndexKeyColumn() {
+        return rowIndexKeyColumn;
+    }
+
+    /**
+     * Sets the column whose smallest and largest value are recorded for every block of the row
+     * index, so that {@link CsvRowIndex#readKeyRange(String, String, int)} reads only the blocks
+     * that may hold a key. Works best on output sorted by that column.
+     *
+     * @param rowIndexKeyColumn The flattened key column, or null for none
+     * @return This options instance
+     * @throws IllegalArgumentException if the column name is empty
+     */
+    public ConversionOptions setRowIndexKeyColumn(String rowIndexKeyColumn) {
+        if (rowIndexKeyColumn != null && rowIndexKeyColumn.isEmpty()) {
+            throw new IllegalArgumentException("Row index key column cannot be empty.");
+        }
+        this.rowIndexKeyColumn = rowIndexKeyColumn;
+        return this;
+    }
+
+    /**
+     * Returns whether a columnar copy of the output is written next to it. Defaults to false.
+     *
+     * @return true if a columnar copy is written
+     */
+    public boolean isColumnarOutputEnabled() {
+        return columnarOutputEnabled;
+    }
+
+    /**
+     * Sets whether {@link StreamingJsonConverter} and {@link ParallelJsonConverter} also write
+     * the output rows, typed by the inferred column types, to a binary columnar file next to the
+     * CSV, at {@link ColumnarFileWriter#sidecarPath(String)}, for jobs that read it back with
+     * {@link ColumnarFileReader} instead of parsing the CSV. Both files are written in the same
+     * pass over the rows.
+     *
+     * @param columnarOutputEnabled true to write a columnar copy
+     * @return This options instance
+     */
+    public ConversionOptions setColumnarOutputEnabled(boolean columnarOutputEnabled) {
+        this.columnarOutputEnabled = columnarOutputEnabled;
+        return this;
+    }
+}
@@ -0,0 +1,417 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A local HTTP service running conversions inside one long-lived JVM, so tools that convert
+ * often need not start a JVM per conversion. It listens on the loopback address only and serves:
+ * <ul>
+ *   <li>{@code POST /convert}: converts the JSON request body, in UTF-8 and optionally
+ *   gzip-compressed, and returns the CSV in UTF-8 with chunked transfer encoding, written to the
+ *   connection as the rows are produced rather than assembled first. Malformed JSON is answered
+ *   with status 400 and the error message.</li>
+ *   <li>{@code GET /metrics}: a JSON object with the request counters of the server under
+ *   {@code server} and a {@link ConversionMetrics} snapshot under {@code stages}.</li>
+ * </ul>
+ *
+ * <p>Each conversion holds the row buffer budget of the options, and one more for each of
+ * deduplication and sorting when they are enabled, so the server runs at most as many
+ * conversions at once as those budgets fit in its memory budget. Further requests wait up
+ * to the queue timeout for a running conversion to finish, then are answered with status 503.</p>
+ *
+ * <p>Requests are handled on virtual threads when the runtime provides them, and on a pool of
+ * platform threads otherwise. The CSV header depends on every record, so a response starts once
+ * its request body has been read; rows beyond the row buffer budget spill to the spill directory
+ * as in any conversion.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * ConversionServer server = new ConversionServer(new ConversionOptions()).setPort(8765);
+ * server.start();
+ * // curl --data-binary @campus.json http://localhost:8765/convert > campus.csv
+ * server.close();
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ConversionServer implements Closeable {
+
+    /** Path of the conversion endpoint */
+    public static final String CONVERT_PATH = "/convert";
+
+    /** Path of the metrics endpoint */
+    public static final String METRICS_PATH = "/metrics";
+
+    /** Default port */
+    public static final int DEFAULT_PORT = 8765;
+
+    /** Default time a request waits for a conversion slot, in milliseconds */
+    public static final long DEFAULT_QUEUE_TIMEOUT_MILLIS = 30_000;
+
+    /** Buffer size for reading request bodies */
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final ConversionOptions options;
+    private int port = DEFAULT_PORT;
+    private long memoryBudgetBytes = Runtime.getRuntime().maxMemory() / 2;
+    private long queueTimeoutMillis = DEFAULT_QUEUE_TIMEOUT_MILLIS;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private Semaphore slots;
+    private int concurrencyLimit;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong rowsOut = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * Constructs a server running conversions with the given options.
+     *
+     * @param options The options of every conversion
+     * @throws IllegalArgumentException if the options ask for a row index or a columnar copy,
+     *                                  which describe an output file
+     */
+    public ConversionServer(ConversionOptions options) {
+        if (options.getRowIndexInterval() > 0 || options.isColumnarOutputEnabled()) {
+            throw new IllegalArgumentException("Row indexes and columnar copies need an output file.");
+        }
+        this.options = options;
+    }
+
+    /**
+     * Sets the port to listen on, on the loopback address.
+     *
+     * @param port The port, or 0 for any free port. Defaults to {@value #DEFAULT_PORT}.
+     * @return This server
+     * @throws IllegalArgumentException if the port is out of range
+     */
+    public ConversionServer setPort(int port) {
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("Port must be between 0 and 65535.");
+        }
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * Sets the heap that running conversions may use together. Each one is counted at the row
+     * buffer budget of the options, once more when deduplication is enabled and once more when
+     * the options have sort columns, and at least one conversion always runs. Defaults to half
+     * of the maximum heap.
+     *
+     * @param memoryBudgetBytes The memory budget in bytes. Must be positive.
+     * @return This server
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    public ConversionServer setMemoryBudgetBytes(long memoryBudgetBytes) {
+        if (memoryBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive.");
+        }
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        return this;
+    }
+
+    /**
+     * Sets how long a request waits for a running conversion to finish when the memory budget
+     * is in use, before it is answered with status 503.
+     *
+     * @param queueTimeoutMillis The wait in milliseconds, 0 to answer at once. Must not be
+     *                           negative.
+     * @return This server
+     * @throws IllegalArgumentException if the timeout is negative
+     */
+    public ConversionServer setQueueTimeoutMillis(long queueTimeoutMillis) {
+        if (queueTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Queue timeout cannot be negative.");
+        }
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Starts listening.
+     *
+     * @throws IllegalStateException if the server is already started
+     * @throws RuntimeException if the port cannot be bound
+     */
+    public synchronized void start() {
+        if (server != null) {
+            throw new IllegalStateException("The conversion server is already started.");
+        }
+        long perConversion = Math.max(1, conversionBudgetBytes(options));
+        concurrencyLimit = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudgetBytes / perConversion));
+        slots = new Semaphore(concurrencyLimit, true);
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while starting conversion server on port " + port, e);
+        }
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext(CONVERT_PATH, this::handleConvert);
+        server.createContext(METRICS_PATH, this::handleMetrics);
+        server.start();
+    }
+
+    /**
+     * @return The port the server listens on, once started
+     * @throws IllegalStateException if the server is not started
+     */
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("The conversion server is not started.");
+        }
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return The number of conversions run at once, once started
+     */
+    public synchronized int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * Stops listening, abandoning the requests in progress.
+     */
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * Returns the heap a conversion may hold at once: the row buffer budget of its rows, and one
+     * more budget each for the deduplicator and the sorter when the options enable them, as
+     * both buffer the rows within their own budget.
+     */
+    static long conversionBudgetBytes(ConversionOptions options) {
+        int budgets = 1;
+        if (options.isDeduplicationEnabled()) {
+            budgets++;
+        }
+        if (options.getSortColumns() != null) {
+            budgets++;
+        }
+        return options.getRowBufferBudgetBytes() * budgets;
+    }
+
+    /**
+     * Returns an executor running each task on a new virtual thread when the runtime provides
+     * them, looked up reflectively so the project still builds for runtimes without them, and a
+     * pool of daemon platform threads otherwise.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger threads = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "conversion-server-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            sendText(exchange, 405, "Only POST is supported.");
+            return;
+        }
+        boolean acquired;
+        try {
+            acquired = slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendText(exchange, 503, "Conversion capacity exhausted, retry later.");
+            return;
+        }
+        active.incrementAndGet();
+        ResponseStream output = new ResponseStream(exchange);
+        try {
+            long rows;
+            try {
+                InputStream body = new CountingInputStream(exchange.getRequestBody());
+                if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                    body = new GZIPInputStream(body, READ_BUFFER_SIZE);
+                }
+                Reader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8),
+                        READ_BUFFER_SIZE);
+                rows = new StreamingJsonConverter(options).convert(reader, CONVERT_PATH, output, StandardCharsets.UTF_8);
+            } finally {
+                // The rows are released once the conversion returns, before the response ends
+                active.decrementAndGet();
+                slots.release();
+            }
+            output.close();
+            rowsOut.addAndGet(rows);
+            completed.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            if (output.isStarted()) {
+                // Leaving the chunked body unterminated tells the client the CSV is incomplete
+                throw e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+            boolean clientError = e instanceof JsonSyntaxException || e instanceof JsonIOException
+                    || e instanceof IOException;
+            sendText(exchange, clientError ? 400 : 500, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            sendText(exchange, 405, "Only GET is supported.");
+            return;
+        }
+        JsonObject counters = new JsonObject();
+        counters.addProperty("requests", requests.get());
+        counters.addProperty("completed", completed.get());
+        counters.addProperty("rejected", rejected.get());
+        counters.addProperty("failed", failed.get());
+        counters.addProperty("active", active.get());
+        counters.addProperty("concurrencyLimit", concurrencyLimit);
+        counters.addProperty("bytesIn", bytesIn.get());
+        counters.addProperty("bytesOut", bytesOut.get());
+        counters.addProperty("rowsOut", rowsOut.get());
+        JsonObject root = new JsonObject();
+        root.add("server", counters);
+        root.add("stages", JsonParser.parseString(ConversionMetrics.getInstance().snapshot().toJson()));
+        send(exchange, 200, "application/json; charset=UTF-8", root.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, "text/plain; charset=UTF-8", message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Counts the bytes of a request body.
+     */
+    private final class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                bytesIn.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count > 0) {
+                bytesIn.addAndGet(count);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * The body of a conversion response, sending the status and headers of a chunked CSV
+     * response on its first write, so that errors found before any output can still be
+     * answered with an error status.
+     */
+    private final class ResponseStream extends OutputStream {
+
+        private final HttpExchange exchange;
+        private OutputStream body;
+
+        ResponseStream(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        boolean isStarted() {
+            return body != null;
+        }
+
+        private OutputStream body() throws IOException {
+            if (body == null) {
+                exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=UTF-8");
+                exchange.sendResponseHeaders(200, 0);
+                body = exchange.getResponseBody();
+            }
+            return body;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            body().write(b);
+            bytesOut.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            body().write(b, off, len);
+            bytesOut.addAndGet(len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (body != null) {
+                body.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            body().close();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.jsoncsvconverter.Logic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes CSV bytes in exactly the format of {@link CSVWriterFile}: every field quoted, embedded
+ * quotes doubled, fields separated by commas and rows ended by a line feed. The charset must
+ * encode ASCII as itself, as the platform charsets that {@code FileWriter} uses do. Values taken
+ * from a {@link JsonTape} are copied byte for byte when they are plain ASCII without escape
+ * sequences, which is the common case, and decoded and encoded again only otherwise.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+final class CsvByteWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count = 0;
+    /** Bytes passed to the stream so far */
+    private long flushed = 0;
+    private boolean firstField = true;
+    /** Cell index of each column of the sparse row being written, -1 for an empty cell */
+    private int[] cellAt = new int[0];
+    /** Digits of a number being formatted, right-aligned */
+    private final byte[] digits = new byte[20];
+
+    /**
+     * Constructs a writer. The stream is closed by {@link #close()}.
+     *
+     * @param out The destination
+     * @param charset The charset of the CSV text, compatible with ASCII
+     */
+    CsvByteWriter(OutputStream out, Charset charset) {
+        this.out = out;
+        this.charset = charset;
+    }
+
+    /**
+     * Writes a whole row of strings.
+     *
+     * @param fields The fields; null is written as an empty field
+     * @throws IOException if writing fails
+     */
+    void writeRow(String[] fields) throws IOException {
+        for (String field : fields) {
+            writeField(field);
+        }
+        endRow();
+    }
+
+    /**
+     * Tells whether a charset encodes ASCII as itself, as this writer requires.
+     *
+     * @param charset The charset of the CSV text
+     * @return true if the writer can encode in the charset
+     */
+    static boolean supports(Charset charset) {
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+        return charset.canEncode()
+                && Arrays.equals(new String(ascii, StandardCharsets.US_ASCII).getBytes(charset), ascii);
+    }
+
+    /**
+     * Writes a sparse row expanded to its full width. Number cells are formatted straight into
+     * the output buffer.
+     *
+     * @param row The populated cells of the row
+     * @throws IOException if writing fails
+     */
+    void writeRow(SparseRow row) throws IOException {
+        if (cellAt.length != row.getWidth()) {
+            cellAt = new int[row.getWidth()];
+            Arrays.fill(cellAt, -1);
+        }
+        for (int i = 0; i < row.size(); i++) {
+            cellAt[row.getColumn(i)] = i;
+        }
+        for (int cell : cellAt) {
+            if (cell < 0) {
+                beginField();
+                write('"');
+            } else if (!row.isNumber(cell)) {
+                writeField(row.getValue(cell));
+            } else if (row.isDouble(cell)) {
+                writeDouble(Double.longBitsToDouble(row.getNumber(cell)));
+            } else {
+                writeLong(row.getNumber(cell));
+            }
+        }
+        endRow();
+        for (int i = 0; i < row.size(); i++) {
+            cellAt[row.getColumn(i)] = -1;
+        }
+    }
+
+    /**
+     * Writes a long field as its decimal digits, without creating its text.
+     */
+    void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeField(Long.toString(value));
+            return;
+        }
+        beginField();
+        long remaining = Math.abs(value);
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        if (value < 0) {
+            digits[--start] = '-';
+        }
+        write(digits, start, digits.length - start);
+        write('"');
+    }
+
+    /**
+     * Writes a double field as {@link Double#toString(double)} spells it; the text is ASCII
+     * without quotes, so its characters are copied as bytes.
+     */
+    void writeDouble(double value) throws IOException {
+        String text = Double.toString(value);
+        beginField();
+        for (int i = 0; i < text.length(); i++) {
+            write(text.charAt(i));
+        }
+        write('"');
+    }
+
+    /**
+     * Writes one string field.
+     */
+    void writeField(String field) throws IOException {
+        byte[] bytes = field == null ? new byte[0] : field.getBytes(charset);
+        beginField();
+        writeEscaped(bytes, 0, bytes.length);
+        write('"');
+    }
+
+    /**
+     * Writes the value of a tape node, or an empty field when the node is negative.
+     */
+    void writeField(JsonTape tape, int node) throws IOException {
+        beginField();
+        if (node >= 0 && tape.kind(node) != JsonTape.NULL) {
+            int flags = tape.flags(node);
+            if (flags == 0) {
+                // ASCII without escapes cannot contain a quote
+                write(tape.arena(), tape.start(node), tape.length(node));
+            } else if ((flags & JsonTape.ESCAPED) == 0) {
+                // Decode as a reader would, replacing malformed UTF-8, and encode as a writer would
+                byte[] bytes = new String(tape.arena(), tape.start(node), tape.length(node),
+                        StandardCharsets.UTF_8).getBytes(charset);
+                writeEscaped(bytes, 0, bytes.length);
+            } else {
+                byte[] bytes = tape.text(node).getBytes(charset);
+                writeEscaped(bytes, 0, bytes.length);
+            }
+        }
+        write('"');
+    }
+
+    /**
+     * Ends the current row.
+     */
+    void endRow() throws IOException {
+        write('\n');
+        firstField = true;
+    }
+
+    /**
+     * @return The number of bytes written so far, buffered or not; the offset of the next row
+     *         when a row has just ended
+     */
+    long getPosition() {
+        return flushed + count;
+    }
+
+    /**
+     * Writes out the buffered bytes.
+     */
+    void flush() throws IOException {
+        out.write(buffer, 0, count);
+        flushed += count;
+        count = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void beginField() throws IOException {
+        if (!firstField) {
+            write(',');
+        }
+        firstField = false;
+        write('"');
+    }
+
+    private void writeEscaped(byte[] bytes, int start, int length) throws IOException {
+        int from = start;
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == '"') {
+                write(bytes, from, i + 1 - from);
+                from = i;
+            }
+        }
+        write(bytes, from, end - from);
+    }
+
+    private void write(int b) throws IOException {
+        if (count == buffer.length) {
+            out.write(buffer, 0, count);
+            flushed += count;
+            count = 0;
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    private void write(byte[] bytes, int start, int length) throws IOException {
+        if (length > buffer.length - count) {
+            out.write(buffer, 0, count);
+            flushed += count;
+            count = 0;
+            if (length > buffer.length) {
+                out.write(bytes, start, length);
+                flushed += length;
+                return;
+            }
+        }
+        System.arraycopy(bytes, start, buffer, count, length);
+        count += length;
+    }
+}
@@ -0,0 +1,605 @@
+package org.jsoncsvconverter.Logic;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.RFC4180Parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A sidecar index of a CSV file for random access: the byte offset of every K-th data row,
+ * and optionally the smallest and largest value of a key column within each block of K rows.
+ * Reading row N seeks to the offset of its block and skips fewer than K rows, instead of
+ * scanning the file from the start; reading a key range skips every block whose keys cannot
+ * fall in it, which leaves exactly the matching blocks when the file is sorted by the key, as
+ * with {@link ConversionOptions#setSortColumns(List)}. Blocks are independent, so ranges of rows
+ * are read by several threads at once.
+ *
+ * <p>The index is written by {@link CSVWriterFile} while it writes the file, see
+ * {@link CSVWriterFile#setRowIndex(int, String)}, or built later from any CSV file by
+ * {@link #build(String, int, String)}, and saved next to the file under the name given by
+ * {@link #sidecarPath(String)}. It records the length of the file it describes and is refused
+ * once the file has changed.</p>
+ *
+ * <p>Keys compare as numbers when both read as JSON numbers, numbers come before text, and text
+ * compares by its characters. A row with an empty key continues the record of the row before
+ * it, such as a row flattened from a nested array, and is read along with that row.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * CsvRowIndex index = CsvRowIndex.load("output/campus.csv");
+ * List<String[]> page = index.readRows(1_000_000, 50);
+ * List<String[]> students = index.readKeyRange("2020000", "2020999", 4);
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public final class CsvRowIndex {
+
+    /** Extension replacing {@code .csv} in the name of the index file */
+    public static final String SIDECAR_EXTENSION = ".idx";
+
+    private static final int MAGIC = 0x43535649;
+    private static final int VERSION = 1;
+
+    /** Buffer size for reading the CSV file and the index */
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final String csvPath;
+    private final int interval;
+    private final long rowCount;
+    private final String keyColumn;
+    /** Position of the key column in the header, -1 when there is none or it is missing */
+    private final int keyIndex;
+    /** Byte offset of the first row of every block */
+    private final long[] offsets;
+    /** Extremes of the keys of every block, null for blocks without keys or without a key column */
+    private final String[] minKeys;
+    private final String[] maxKeys;
+
+    private CsvRowIndex(String csvPath, int interval, long rowCount, String keyColumn, int keyIndex,
+                        long[] offsets, String[] minKeys, String[] maxKeys) {
+        this.csvPath = csvPath;
+        this.interval = interval;
+        this.rowCount = rowCount;
+        this.keyColumn = keyColumn;
+        this.keyIndex = keyIndex;
+        this.offsets = offsets;
+        this.minKeys = minKeys;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Returns the path of the index of a CSV file: the file name with {@code .csv} replaced by
+     * {@value #SIDECAR_EXTENSION}, or with {@value #SIDECAR_EXTENSION} appended.
+     *
+     * @param csvPath The path of the CSV file
+     * @return The path of its index
+     */
+    public static String sidecarPath(String csvPath) {
+        if (csvPath.regionMatches(true, csvPath.length() - 4, ".csv", 0, 4)) {
+            return csvPath.substring(0, csvPath.length() - 4) + SIDECAR_EXTENSION;
+        }
+        return csvPath + SIDECAR_EXTENSION;
+    }
+
+    /**
+     * Loads the index saved next to a CSV file.
+     *
+     * @param csvPath The CSV file
+     * @return The index
+     * @throws RuntimeException if the index cannot be read, or does not describe the file as it is
+     */
+    public static CsvRowIndex load(String csvPath) {
+        String path = sidecarPath(csvPath);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a row index: " + path);
+            }
+            if (in.readLong() != new File(csvPath).length()) {
+                throw new IOException("Row index does not match its CSV file: " + csvPath);
+            }
+            int interval = in.readInt();
+            long rowCount = in.readLong();
+            String keyColumn = in.readBoolean() ? readString(in) : null;
+            int keyIndex = in.readInt();
+            int blocks = in.readInt();
+            long[] offsets = new long[blocks];
+            long offset = 0;
+            for (int b = 0; b < blocks; b++) {
+                offset += readVarLong(in);
+                offsets[b] = offset;
+            }
+            String[] minKeys = keyColumn == null ? null : new String[blocks];
+            String[] maxKeys = keyColumn == null ? null : new String[blocks];
+            for (int b = 0; keyColumn != null && b < blocks; b++) {
+                if (in.readBoolean()) {
+                    minKeys[b] = readString(in);
+                    maxKeys[b] = readString(in);
+                }
+            }
+            return new CsvRowIndex(csvPath, interval, rowCount, keyColumn, keyIndex, offsets, minKeys, maxKeys);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while reading row index: " + path, e);
+        }
+    }
+
+    /**
+     * Builds the index of an existing CSV file by reading it once, and saves it next to the
+     * file. The file must be encoded in the platform charset, which must encode ASCII as itself.
+     *
+     * @param csvPath The CSV file, starting with its header
+     * @param interval The number of rows per indexed offset. Must be positive.
+     * @param keyColumn The column whose extremes are recorded per block, or null for none
+     * @return The index
+     * @throws IllegalArgumentException if the interval is not positive
+     * @throws RuntimeException if the file cannot be read or the index written
+     */
+    public static CsvRowIndex build(String csvPath, int interval, String keyColumn) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Row index interval must be positive.");
+        }
+        Charset charset = Charset.defaultCharset();
+        if (!CsvByteWriter.supports(charset)) {
+            throw new IllegalStateException("Row indexes need a charset compatible with ASCII, not " + charset);
+        }
+        Builder builder = null;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(csvPath), IO_BUFFER_SIZE)) {
+            List<String> fields = new ArrayList<>();
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            String key = null;
+            long position = 0;
+            long rowStart = 0;
+            int field = 0;
+            boolean quoted = false;
+            boolean afterQuote = false;
+            for (int b = in.read(); b >= 0; b = in.read()) {
+                position++;
+                boolean collect = builder == null || field == builder.keyIndex;
+                if (quoted) {
+                    if (b == '"') {
+                        quoted = false;
+                        afterQuote = true;
+                    } else if (collect) {
+                        value.write(b);
+                    }
+                    continue;
+                }
+                if (b == '"') {
+                    quoted = true;
+                    if (afterQuote && collect) {
+                        value.write(b);
+                    }
+                } else if (b == ',' || b == '\n') {
+                    if (builder == null) {
+                        fields.add(value.toString(charset.name()));
+                    } else if (collect) {
+                        key = value.toString(charset.name());
+                    }
+                    value.reset();
+                    field++;
+                    if (b == '\n') {
+                        if (builder == null) {
+                            builder = new Builder(interval, fields.toArray(new String[0]), keyColumn);
+                        } else {
+                            builder.addRow(rowStart, key);
+                        }
+                        key = null;
+                        field = 0;
+                        rowStart = position;
+                    }
+                } else if (b != '\r' && collect) {
+                    value.write(b);
+                }
+                afterQuote = false;
+            }
+            if (position > rowStart) {
+                if (builder == null) {
+                    fields.add(value.toString(charset.name()));
+                    builder = new Builder(interval, fields.toArray(new String[0]), keyColumn);
+                } else {
+                    builder.addRow(rowStart, field == builder.keyIndex ? value.toString(charset.name()) : key);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error while reading CSV file: " + csvPath, e);
+        }
+        if (builder == null) {
+            builder = new Builder(interval, new String[0], keyColumn);
+        }
+        return builder.write(csvPath);
+    }
+
+    /**
+     * @return The number of rows between two indexed offsets
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return The number of data rows of the file
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return The column whose extremes are recorded per block, or null if there is none
+     */
+    public String getKeyColumn() {
+        return keyColumn;
+    }
+
+    /**
+     * Returns the byte offset from which a data row is found by reading fewer than
+     * {@link #getInterval()} rows: the offset of the first row of its block.
+     *
+     * @param row The position of the row, from 0
+     * @return The byte offset of the block holding the row
+     * @throws IndexOutOfBoundsException if there is no such row
+     */
+    public long getBlockOffset(long row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+        return offsets[(int) (row / interval)];
+    }
+
+    /**
+     * Reads consecutive data rows.
+     *
+     * @param firstRow The position of the first row, from 0
+     * @param count The number of rows
+     * @return The rows, in order
+     * @throws IndexOutOfBoundsException if the range goes beyond the rows of the file
+     * @throws RuntimeException if the file cannot be read
+     */
+    public List<String[]> readRows(long firstRow, int count) {
+        return readRows(firstRow, count, 1);
+    }
+
+    /**
+     * Reads consecutive data rows, splitting the range between several threads that each seek to
+     * their part.
+     *
+     * @param firstRow The position of the first row, from 0
+     * @param count The number of rows
+     * @param parallelism The number of threads. Must be positive.
+     * @return The rows, in order
+     * @throws IllegalArgumentException if the parallelism is not positive
+     * @throws IndexOutOfBoundsException if the range goes beyond the rows of the file
+     * @throws RuntimeException if the file cannot be read
+     */
+    public List<String[]> readRows(long firstRow, int count, int parallelism) {
+        if (firstRow < 0 || count < 0 || firstRow + count > rowCount) {
+            throw new IndexOutOfBoundsException("Rows " + firstRow + " to " + (firstRow + count) + " of " + rowCount);
+        }
+        int parts = Math.max(1, Math.min(parallelism, (count - 1) / interval + 1));
+        List<Callable<List<String[]>>> tasks = new ArrayList<>();
+        for (int p = 0; p < parts; p++) {
+            long start = firstRow + (long) count * p / parts;
+            long end = firstRow + (long) count * (p + 1) / parts;
+            tasks.add(() -> read(start, end - start, null, null));
+        }
+        return run(tasks, parallelism);
+    }
+
+    /**
+     * Reads the data rows whose key lies in a range, each followed by its continuation rows,
+     * skipping the blocks whose keys are all outside it. The blocks left are read by several
+     * threads.
+     *
+     * @param fromKey The smallest key, inclusive
+     * @param toKey The largest key, inclusive
+     * @param parallelism The number of threads. Must be positive.
+     * @return The matching rows and their continuation rows, in file order
+     * @throws IllegalArgumentException if the parallelism is not positive
+     * @throws IllegalStateException if the index has no key column
+     * @throws RuntimeException if the file cannot be read
+     */
+    public List<String[]> readKeyRange(String fromKey, String toKey, int parallelism) {
+        if (keyColumn == null) {
+            throw new IllegalStateException("The row index of " + csvPath + " has no key column.");
+        }
+        List<Callable<List<String[]>>> tasks = new ArrayList<>();
+        for (int b = 0; b < offsets.length; b++) {
+            if (minKeys[b] != null && compareKeys(maxKeys[b], fromKey) >= 0 && compareKeys(minKeys[b], toKey) <= 0) {
+                long start = (long) b * interval;
+                long end = Math.min(rowCount, start + interval);
+                tasks.add(() -> read(start, end - start, fromKey, toKey));
+            }
+        }
+        return run(tasks, parallelism);
+    }
+
+    /**
+     * Orders keys: numbers by value, then text by its characters.
+     */
+    static int compareKeys(String a, String b) {
+        boolean numberA = isNumber(a);
+        boolean numberB = isNumber(b);
+        if (numberA && numberB) {
+            return new BigDecimal(a).compareTo(new BigDecimal(b));
+        }
+        if (numberA != numberB) {
+            return numberA ? -1 : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static boolean isNumber(String key) {
+        ColumnType type = ColumnType.infer(key);
+        return type == ColumnType.LONG || type == ColumnType.DOUBLE;
+    }
+
+    /**
+     * Reads rows from the block holding the first of them, keeping those whose key is in the
+     * range when one is given, with the continuation rows that follow them, even past the last
+     * of the rows asked for. Continuation rows at the start are left to the rows before them.
+     */
+    private List<String[]> read(long firstRow, long count, String fromKey, String toKey) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        if (count == 0) {
+            return rows;
+        }
+        int block = (int) (firstRow / interval);
+        try (FileInputStream in = new FileInputStream(csvPath)) {
+            in.getChannel().position(offsets[block]);
+            CSVReader reader = new CSVReaderBuilder(new BufferedReader(
+                    new InputStreamReader(in, Charset.defaultCharset()), IO_BUFFER_SIZE))
+                    .withCSVParser(new RFC4180Parser()).build();
+            for (long skip = firstRow - (long) block * interval; skip > 0; skip--) {
+                reader.readNext();
+            }
+            boolean matching = false;
+            for (long r = 0; r < count || matching; r++) {
+                String[] row = reader.readNext();
+                if (row == null) {
+                    if (r >= count) {
+                        break;
+                    }
+                    throw new IOException("CSV file shorter than its row index: " + csvPath);
+                }
+                if (fromKey == null) {
+                    rows.add(row);
+                    continue;
+                }
+                if (hasKey(row)) {
+                    if (r >= count) {
+                        break;
+                    }
+                    matching = inRange(row, fromKey, toKey);
+                }
+                if (matching) {
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private boolean hasKey(String[] row) {
+        return keyIndex >= 0 && keyIndex < row.length && !row[keyIndex].isEmpty();
+    }
+
+    private boolean inRange(String[] row, String fromKey, String toKey) {
+        String key = row[keyIndex];
+        return compareKeys(key, fromKey) >= 0 && compareKeys(key, toKey) <= 0;
+    }
+
+    private List<String[]> run(List<Callable<List<String[]>>> tasks, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        List<String[]> rows = new ArrayList<>();
+        if (tasks.size() <= 1 || parallelism == 1) {
+            try {
+                for (Callable<List<String[]>> task : tasks) {
+                    rows.addAll(task.call());
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Error while reading CSV file: " + csvPath, e);
+            }
+            return rows;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+        try {
+            for (Future<List<String[]>> future : executor.invokeAll(tasks)) {
+                rows.addAll(future.get());
+            }
+            return rows;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading CSV file: " + csvPath, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error while reading CSV file: " + csvPath, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Collects the index of a CSV file while its data rows are written, in order.
+     */
+    static final class Builder {
+
+        private final int interval;
+        private final String keyColumn;
+        final int keyIndex;
+        private long rows = 0;
+        private long[] offsets = new long[16];
+        private int blocks = 0;
+        private final List<String> minKeys = new ArrayList<>();
+        private final List<String> maxKeys = new ArrayList<>();
+
+        /**
+         * @param interval The number of rows per indexed offset. Must be positive.
+         * @param headers The header of the file
+         * @param keyColumn The key column, or null for none; a column missing from the header is
+         *                  empty in every row
+         */
+        Builder(int interval, String[] headers, String keyColumn) {
+            if (interval <= 0) {
+                throw new IllegalArgumentException("Row index interval must be positive.");
+            }
+            this.interval = interval;
+            this.keyColumn = keyColumn;
+            this.keyIndex = keyColumn == null ? -1 : Arrays.asList(headers).indexOf(keyColumn);
+        }
+
+        /**
+         * @return true if the next row starts a block, so that its offset is recorded
+         */
+        boolean isBlockStart() {
+            return rows % interval == 0;
+        }
+
+        /**
+         * Adds a row given as a dense array.
+         *
+         * @param offset The byte offset of the row, read only when it starts a block
+         */
+        void addRow(long offset, String[] row) {
+            addRow(offset, keyIndex >= 0 && keyIndex < row.length ? row[keyIndex] : null);
+        }
+
+        /**
+         * Adds a sparse row.
+         *
+         * @param offset The byte offset of the row, read only when it starts a block
+         */
+        void addRow(long offset, SparseRow row) {
+            String key = null;
+            for (int i = 0; i < row.size() && keyIndex >= 0; i++) {
+                if (row.getColumn(i) == keyIndex) {
+                    key = row.getValue(i);
+                }
+            }
+            addRow(offset, key);
+        }
+
+        /**
+         * Adds a row by its key.
+         *
+         * @param offset The byte offset of the row, read only when it starts a block
+         * @param key The key of the row, or null
+         */
+        void addRow(long offset, String key) {
+            if (isBlockStart()) {
+                if (blocks == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, blocks * 2);
+                }
+                offsets[blocks++] = offset;
+                if (keyColumn != null) {
+                    minKeys.add(null);
+                    maxKeys.add(null);
+                }
+            }
+            if (keyColumn != null && key != null && !key.isEmpty()) {
+                int block = blocks - 1;
+                if (minKeys.get(block) == null || compareKeys(key, minKeys.get(block)) < 0) {
+                    minKeys.set(block, key);
+                }
+                if (maxKeys.get(block) == null || compareKeys(key, maxKeys.get(block)) > 0) {
+                    maxKeys.set(block, key);
+                }
+            }
+            rows++;
+        }
+
+        /**
+         * Saves the index next to the finished CSV file.
+         *
+         * @return The index
+         * @throws RuntimeException if the index cannot be written
+         */
+        CsvRowIndex write(String csvPath) {
+            String path = sidecarPath(csvPath);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(new File(csvPath).length());
+                out.writeInt(interval);
+                out.writeLong(rows);
+                out.writeBoolean(keyColumn != null);
+                if (keyColumn != null) {
+                    writeString(out, keyColumn);
+                }
+                out.writeInt(keyIndex);
+                out.writeInt(blocks);
+                for (int b = 0; b < blocks; b++) {
+                    writeVarLong(out, offsets[b] - (b == 0 ? 0 : offsets[b - 1]));
+                }
+                for (int b = 0; keyColumn != null && b < blocks; b++) {
+                    out.writeBoolean(minKeys.get(b) != null);
+                    if (minKeys.get(b) != null) {
+                        writeString(out, minKeys.get(b));
+                        writeString(out, maxKeys.get(b));
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error while writing row index: " + path, e);
+            }
+            return new CsvRowIndex(csvPath, interval, rows, keyColumn, keyIndex, Arrays.copyOf(offsets, blocks),
+                    keyColumn == null ? null : minKeys.toArray(new String[0]),
+                    keyColumn == null ? null : maxKeys.toArray(new String[0]));
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.stream.JsonWriter;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.RFC4180Parser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts a CSV file written by the converters of this package back to nested JSON: an array
+ * of records whose members follow the {@link JsonFlattener#SEPARATOR}-separated paths of the
+ * header. The header is parsed once into a nesting plan, a tree of the objects the paths name;
+ * the rows are then read one at a time and regrouped into records, and every record is written
+ * through a {@link JsonWriter} as soon as the next one starts. Only the record being rebuilt is
+ * held, so heap use follows the largest record, not the file.
+ *
+ * <p>Regrouping undoes the flattening rules of {@link JSONParser}: the first row of a record
+ * carries its values and the first element of each of its arrays, and the following rows, the
+ * continuation rows, carry only the cells of further elements. Rows are therefore matched
+ * against the record being rebuilt from the root down:</p>
+ * <ul>
+ *   <li>A row that sets a value already set in an object starts a new instance of that object:
+ *   a new record at the root, a new array element below it. The object becomes an array once it
+ *   has a second element.</li>
+ *   <li>Any other cell is added to the current instance of its object.</li>
+ * </ul>
+ *
+ * <p>The CSV cannot tell every shape apart, so some need to be declared with
+ * {@link #setArrayPaths(Collection)}: an object array with a single element, which is otherwise
+ * written as an object, and a primitive array, which is otherwise taken for a scalar. Values of a
+ * declared primitive array are collected from the continuation rows, or split on the primitive
+ * array delimiter of the options when the CSV was written with one. Empty cells are left out,
+ * since empty strings, nulls and missing members all flatten to them, and the elements of arrays
+ * nested directly in arrays come back as one array.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * CsvToJsonConverter converter = new CsvToJsonConverter(new ConversionOptions())
+ *         .setArrayPaths(Arrays.asList("courses", "skills"));
+ * long records = converter.convert("output/campus.csv", "output/campus.json");
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class CsvToJsonConverter {
+
+    /** Characters buffered between the files and the CSV reader or JSON writer */
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final ConversionOptions options;
+    private Set<String> arrayPaths = Collections.emptySet();
+    private boolean typedValues = true;
+
+    /** Results of the last conversion */
+    private long recordCount = 0;
+    private long rowCount = 0;
+
+    /**
+     * Constructs a converter with the given options.
+     *
+     * @param options The options whose primitive array delimiter and escape character the CSV
+     *                was written with
+     */
+    public CsvToJsonConverter(ConversionOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Declares the flattened paths that are arrays, such as {@code courses} for an object array
+     * or {@code courses__days} for a primitive array, so that they are written as arrays even
+     * with a single element.
+     *
+     * @param arrayPaths The paths, or null for none. Must not hold null or empty paths.
+     * @return This converter
+     * @throws IllegalArgumentException if a path is null or empty
+     */
+    public CsvToJsonConverter setArrayPaths(Collection<String> arrayPaths) {
+        if (arrayPaths == null) {
+            this.arrayPaths = Collections.emptySet();
+            return this;
+        }
+        for (String path : arrayPaths) {
+            if (path == null || path.isEmpty()) {
+                throw new IllegalArgumentException("Array paths cannot be empty.");
+            }
+        }
+        this.arrayPaths = Collections.unmodifiableSet(new HashSet<>(arrayPaths));
+        return this;
+    }
+
+    /**
+     * Sets whether values that read as JSON numbers or booleans are written as such rather than
+     * as strings. Defaults to true.
+     *
+     * @param typedValues false to write every value as a string
+     * @return This converter
+     */
+    public CsvToJsonConverter setTypedValues(boolean typedValues) {
+        this.typedValues = typedValues;
+        return this;
+    }
+
+    /**
+     * Converts a CSV file to a JSON file.
+     *
+     * @param inputPath The CSV file to read, in the platform charset as {@link CSVWriterFile}
+     *                  writes it
+     * @param outputPath The JSON file to create, encoded in UTF-8
+     * @return The number of records written
+     * @throws RuntimeException if the CSV file cannot be read or the JSON file written
+     */
+    public long convert(String inputPath, String outputPath) {
+        File output = new File(outputPath);
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new RuntimeException("Error while creating JSON file: " + outputPath,
+                    new IOException("Failed to create directory: " + parent));
+        }
+        try (Reader input = new BufferedReader(new InputStreamReader(
+                new FileInputStream(inputPath), Charset.defaultCharset()), IO_BUFFER_SIZE);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(output), StandardCharsets.UTF_8), IO_BUFFER_SIZE)) {
+            return convert(input, inputPath, writer);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while creating JSON file: " + outputPath, e);
+        }
+    }
+
+    /**
+     * Converts CSV read from a character stream to JSON written to another. Neither stream is
+     * closed; the output is flushed.
+     *
+     * @param input The CSV text, starting with its header
+     * @param sourceName The name of the input for diagnostics, or null when unknown
+     * @param output The destination of the JSON text
+     * @return The number of records written
+     * @throws RuntimeException if the CSV cannot be read or the JSON written
+     */
+    public long convert(Reader input, String sourceName, Writer output) {
+        recordCount = 0;
+        rowCount = 0;
+        // CSVWriter doubles quotes and leaves backslashes alone, as RFC 4180 does
+        CSVReader csv = new CSVReaderBuilder(input).withCSVParser(new RFC4180Parser()).build();
+        String[] row;
+        try {
+            String[] headers = csv.readNext();
+            JsonWriter json = new JsonWriter(output);
+            json.beginArray();
+            if (headers != null) {
+                Node root = plan(headers);
+                Element record = null;
+                while ((row = csv.readNext()) != null) {
+                    rowCount++;
+                    if (row.length > headers.length) {
+                        throw new IOException("Row " + rowCount + " has " + row.length
+                                + " cells for " + headers.length + " columns");
+                    }
+                    if (!root.hasValue(row)) {
+                        continue;
+                    }
+                    if (record == null || conflicts(root, record, row)) {
+                        if (record != null) {
+                            write(json, root, record);
+                        }
+                        record = new Element();
+                        recordCount++;
+                    }
+                    place(root, record, row);
+                }
+                if (record != null) {
+                    write(json, root, record);
+                }
+            }
+            json.endArray();
+            json.flush();
+            return recordCount;
+        } catch (IOException e) {
+            throw new RuntimeException("Error while converting CSV file: " + sourceName, e);
+        }
+    }
+
+    /**
+     * Returns the number of records written by the last conversion.
+     *
+     * @return The record count
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the number of data rows read by the last conversion.
+     *
+     * @return The row count
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Builds the nesting plan of a header: one node per path prefix, holding the column whose
+     * values the path names, if any, and the nodes one key deeper.
+     *
+     * @throws IOException if a column appears twice
+     */
+    private Node plan(String[] headers) throws IOException {
+        Node root = new Node("", "");
+        for (int column = 0; column < headers.length; column++) {
+            Node node = root;
+            for (String key : headers[column].split(JsonFlattener.SEPARATOR, -1)) {
+                node.subtree.add(column);
+                Node child = node.children.get(key);
+                if (child == null) {
+                    String path = JsonFlattener.childPrefix(node.path, key);
+                    child = new Node(key, path);
+                    child.array = arrayPaths.contains(path);
+                    node.children.put(key, child);
+                }
+                node = child;
+            }
+            if (node.column >= 0) {
+                throw new IOException("Duplicate column: " + headers[column]);
+            }
+            node.column = column;
+        }
+        return root;
+    }
+
+    /**
+     * Tells whether a row sets a value of an object that its current instance already holds.
+     */
+    private boolean conflicts(Node object, Element element, String[] row) {
+        for (Node child : object.children.values()) {
+            if (child.column >= 0 && isSet(row, child.column) && element.values.containsKey(child)
+                    && !collectsRows(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the cells of a row to an instance of an object, starting new instances of the objects
+     * below it where the row conflicts with the current ones.
+     */
+    private void place(Node object, Element element, String[] row) {
+        for (Node child : object.children.values()) {
+            if (child.column >= 0 && isSet(row, child.column)) {
+                addValue(element, child, row[child.column]);
+            }
+            if (!child.children.isEmpty() && child.hasValue(row)) {
+                List<Element> instances = element.objects.computeIfAbsent(child, key -> new ArrayList<>());
+                if (instances.isEmpty() || conflicts(child, instances.get(instances.size() - 1), row)) {
+                    instances.add(new Element());
+                }
+                place(child, instances.get(instances.size() - 1), row);
+            }
+        }
+    }
+
+    private void addValue(Element element, Node node, String value) {
+        String delimiter = options.getPrimitiveArrayDelimiter();
+        if (node.array && delimiter != null) {
+            element.values.put(node, JsonFlattener.split(value, delimiter, options.getPrimitiveArrayEscape()));
+            return;
+        }
+        element.values.computeIfAbsent(node, key -> new ArrayList<>(1)).add(value);
+    }
+
+    /**
+     * Tells whether a path collects one value per row: a declared primitive array written
+     * without a delimiter.
+     */
+    private boolean collectsRows(Node node) {
+        return node.array && options.getPrimitiveArrayDelimiter() == null;
+    }
+
+    /**
+     * Writes an instance of an object. A path holding both a value and an object is written as
+     * the object when the instance has one.
+     */
+    private void write(JsonWriter json, Node object, Element element) throws IOException {
+        json.beginObject();
+        for (Node child : object.children.values()) {
+            List<Element> instances = element.objects.get(child);
+            List<String> values = element.values.get(child);
+            if (instances != null) {
+                json.name(child.key);
+                if (child.array || instances.size() > 1) {
+                    json.beginArray();
+                    for (Element instance : instances) {
+                        write(json, child, instance);
+                    }
+                    json.endArray();
+                } else {
+                    write(json, child, instances.get(0));
+                }
+            } else if (values != null) {
+                json.name(child.key);
+                if (child.array) {
+                    json.beginArray();
+                    for (String value : values) {
+                        writeValue(json, value);
+                    }
+                    json.endArray();
+                } else {
+                    writeValue(json, values.get(0));
+                }
+            }
+        }
+        json.endObject();
+    }
+
+    private void writeValue(JsonWriter json, String value) throws IOException {
+        ColumnType type = typedValues ? ColumnType.infer(value) : ColumnType.STRING;
+        if (type == ColumnType.LONG || type == ColumnType.DOUBLE) {
+            json.jsonValue(value);
+        } else if (type == ColumnType.BOOLEAN) {
+            json.value(Boolean.parseBoolean(value));
+        } else {
+            json.value(value);
+        }
+    }
+
+    private static boolean isSet(String[] row, int column) {
+        return column < row.length && row[column] != null && !row[column].isEmpty();
+    }
+
+    /**
+     * One path of the nesting plan.
+     */
+    private static final class Node {
+        final String key;
+        final String path;
+        /** Column holding the values of the path, or -1 if it only names an object */
+        int column = -1;
+        boolean array;
+        final Map<String, Node> children = new LinkedHashMap<>();
+        /** Columns of the paths below this one */
+        final List<Integer> subtree = new ArrayList<>();
+
+        Node(String key, String path) {
+            this.key = key;
+            this.path = path;
+        }
+
+        /**
+         * Tells whether a row sets any column below this path.
+         */
+        boolean hasValue(String[] row) {
+            for (int column : subtree) {
+                if (isSet(row, column)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * One instance of an object of the plan being rebuilt: the values of its paths, several for
+     * primitive arrays, and the instances of the objects below it.
+     */
+    private static final class Element {
+        final Map<Node, List<String>> values = new LinkedHashMap<>();
+        final Map<Node, List<Element>> objects = new LinkedHashMap<>();
+    }
+}
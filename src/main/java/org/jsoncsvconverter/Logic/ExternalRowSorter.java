@@ -0,0 +1,416 @@
+package org.jsoncsvconverter.Logic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts output records by key columns within a heap budget. A record is sorted with all of the
+ * rows its nested arrays exploded into, in their order, by the keys of its first row. Records
+ * are collected until their estimated size exceeds the budget, sorted and spilled as a run file;
+ * the runs are then merged with a k-way merge while the rows are read, so the sorted rows go
+ * straight to the writer and never have to fit in memory together. When every record fits, no
+ * file is written.
+ *
+ * <p>Keys are compared in the order of the key columns. Columns typed {@link ColumnType#LONG} or
+ * {@link ColumnType#DOUBLE} compare as numbers, any other column as text, and empty cells come
+ * first. The sort is stable: records with equal keys keep their order.</p>
+ *
+ * <p>At most {@value #MAX_MERGE_WIDTH} runs are merged at once; when there are more, consecutive
+ * runs are first merged into longer ones, so the open files and their buffers stay bounded.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+final class ExternalRowSorter implements Closeable {
+
+    /** Largest number of runs read at the same time */
+    static final int MAX_MERGE_WIDTH = 64;
+
+    /** Buffer size for reading and writing run files */
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    /** Estimated heap of a row and of each of its cells, besides the characters */
+    private static final int ROW_OVERHEAD = 96;
+    private static final int CELL_OVERHEAD = 64;
+
+    private final int width;
+    private final int[] keyColumns;
+    private final boolean[] numeric;
+    private final long heapBudgetBytes;
+    private final File spillDirectory;
+
+    private final List<File> runFiles = new ArrayList<>();
+
+    /**
+     * Constructs a sorter for rows laid out for the given headers.
+     *
+     * @param headers The columns of the rows
+     * @param keys The key columns, most significant first; columns missing from the headers are
+     *             empty in every row
+     * @param columnTypes The type of every column, deciding how its cells compare
+     * @param heapBudgetBytes The estimated heap the records of one run may use. Must be positive.
+     * @param spillDirectory The directory for run files, or null for the system temporary directory
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    ExternalRowSorter(String[] headers, List<String> keys, Map<String, ColumnType> columnTypes,
+                      long heapBudgetBytes, File spillDirectory) {
+        if (heapBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Heap budget must be positive.");
+        }
+        this.width = headers.length;
+        this.keyColumns = new int[keys.size()];
+        this.numeric = new boolean[keys.size()];
+        List<String> columns = Arrays.asList(headers);
+        for (int k = 0; k < keys.size(); k++) {
+            keyColumns[k] = columns.indexOf(keys.get(k));
+            ColumnType type = columnTypes.get(keys.get(k));
+            numeric[k] = type == ColumnType.LONG || type == ColumnType.DOUBLE;
+        }
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Sorts the records of rows. The rows are read once, in order; the result is read from the
+     * runs, which are deleted by {@link #close()}.
+     *
+     * @param rows The rows to sort
+     * @param recordStarts The positions of the rows that start a record, or null when every row
+     *                     is a record of its own
+     * @return The sorted rows, to be read in order by iteration
+     * @throws RuntimeException if the runs cannot be written or read
+     */
+    List<SparseRow> sort(Iterable<SparseRow> rows, BitSet recordStarts) {
+        List<Entry> run = new ArrayList<>();
+        long runBytes = 0;
+        int count = 0;
+        Entry entry = null;
+        for (SparseRow row : rows) {
+            if (entry == null || recordStarts == null || recordStarts.get(count)) {
+                if (runBytes > heapBudgetBytes) {
+                    spill(run);
+                    run.clear();
+                    runBytes = 0;
+                }
+                entry = new Entry(keysOf(row));
+                run.add(entry);
+            }
+            entry.rows.add(row);
+            runBytes += estimate(row);
+            count++;
+        }
+        if (runFiles.isEmpty()) {
+            run.sort(this::compare);
+            List<SparseRow> sorted = new ArrayList<>(count);
+            for (Entry record : run) {
+                sorted.addAll(record.rows);
+            }
+            return sorted;
+        }
+        if (!run.isEmpty()) {
+            spill(run);
+        }
+        try {
+            while (runFiles.size() > MAX_MERGE_WIDTH) {
+                mergeRuns();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error while merging sorted rows: " + e.getMessage(), e);
+        }
+        return new MergedRows(new ArrayList<>(runFiles), count);
+    }
+
+    /**
+     * @return The number of runs written by the last sort, 0 if every record fitted in the budget
+     */
+    int getRunCount() {
+        return runFiles.size();
+    }
+
+    /**
+     * Deletes the run files.
+     */
+    @Override
+    public void close() {
+        for (File file : runFiles) {
+            file.delete();
+        }
+        runFiles.clear();
+    }
+
+    private Comparable<?>[] keysOf(SparseRow row) {
+        Comparable<?>[] keys = new Comparable<?>[keyColumns.length];
+        for (int i = 0; i < row.size(); i++) {
+            for (int k = 0; k < keyColumns.length; k++) {
+                if (row.getColumn(i) == keyColumns[k]) {
+                    String value = row.getValue(i);
+                    keys[k] = value.isEmpty() ? null : numeric[k] ? new BigDecimal(value) : value;
+                }
+            }
+        }
+        return keys;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private int compare(Entry a, Entry b) {
+        for (int k = 0; k < keyColumns.length; k++) {
+            Comparable x = a.keys[k];
+            Comparable y = b.keys[k];
+            if (x != y) {
+                if (x == null) {
+                    return -1;
+                }
+                if (y == null) {
+                    return 1;
+                }
+                int order = x.compareTo(y);
+                if (order != 0) {
+                    return order;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static long estimate(SparseRow row) {
+        long bytes = ROW_OVERHEAD;
+        for (int i = 0; i < row.size(); i++) {
+            bytes += CELL_OVERHEAD + 2L * row.getValue(i).length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Sorts the records of a run and writes them to a new run file.
+     */
+    private void spill(List<Entry> run) {
+        run.sort(this::compare);
+        File file = null;
+        try {
+            file = newRunFile();
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE))) {
+                for (Entry entry : run) {
+                    write(out, entry);
+                }
+                out.writeBoolean(false);
+            }
+        } catch (IOException e) {
+            if (file != null) {
+                file.delete();
+            }
+            throw new RuntimeException("Error while spilling sorted rows to disk: " + e.getMessage(), e);
+        }
+        runFiles.add(file);
+    }
+
+    /**
+     * Merges the first {@value #MAX_MERGE_WIDTH} runs into one that takes their place, which
+     * keeps records with equal keys in order.
+     */
+    private void mergeRuns() throws IOException {
+        List<File> group = new ArrayList<>(runFiles.subList(0, MAX_MERGE_WIDTH));
+        File merged = newRunFile();
+        try (Merger merger = new Merger(group);
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(merged), IO_BUFFER_SIZE))) {
+            for (Entry entry = merger.next(); entry != null; entry = merger.next()) {
+                write(out, entry);
+            }
+            out.writeBoolean(false);
+        } catch (IOException | RuntimeException e) {
+            merged.delete();
+            throw e;
+        }
+        runFiles.subList(0, MAX_MERGE_WIDTH).clear();
+        runFiles.add(0, merged);
+        for (File file : group) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes a record to a run: a marker, the number of its rows and the rows.
+     */
+    private static void write(DataOutputStream out, Entry entry) throws IOException {
+        out.writeBoolean(true);
+        out.writeInt(entry.rows.size());
+        for (SparseRow row : entry.rows) {
+            row.write(out);
+        }
+    }
+
+    private File newRunFile() throws IOException {
+        File file = File.createTempFile("rowsort-", ".run", spillDirectory);
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * The rows of a record with the parsed keys of its first row.
+     */
+    private static final class Entry {
+        final List<SparseRow> rows = new ArrayList<>(1);
+        final Comparable<?>[] keys;
+        /** Index of the run the record was read from, breaking ties while merging */
+        int run;
+
+        Entry(Comparable<?>[] keys) {
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * A k-way merge of run files: the next record of every run waits in a priority queue.
+     */
+    private final class Merger implements Closeable {
+
+        private final List<DataInputStream> inputs = new ArrayList<>();
+        private final PriorityQueue<Entry> heads = new PriorityQueue<>((a, b) -> {
+            int order = compare(a, b);
+            return order != 0 ? order : Integer.compare(a.run, b.run);
+        });
+
+        Merger(List<File> runs) throws IOException {
+            try {
+                for (File file : runs) {
+                    inputs.add(new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE)));
+                    advance(inputs.size() - 1);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return The smallest remaining record, or null once every run is exhausted
+         */
+        Entry next() throws IOException {
+            Entry entry = heads.poll();
+            if (entry != null) {
+                advance(entry.run);
+            }
+            return entry;
+        }
+
+        private void advance(int run) throws IOException {
+            DataInputStream in = inputs.get(run);
+            try {
+                if (in.readBoolean()) {
+                    int count = in.readInt();
+                    SparseRow first = SparseRow.read(in, width);
+                    Entry entry = new Entry(keysOf(first));
+                    entry.rows.add(first);
+                    for (int i = 1; i < count; i++) {
+                        entry.rows.add(SparseRow.read(in, width));
+                    }
+                    entry.run = run;
+                    heads.add(entry);
+                }
+            } catch (EOFException e) {
+                throw new IOException("Truncated sorted run", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            for (DataInputStream in : inputs) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing was written to the run; closing it cannot lose data
+                }
+            }
+        }
+    }
+
+    /**
+     * The sorted rows, merged from the runs while they are iterated. Only sequential reading is
+     * supported.
+     */
+    private final class MergedRows extends AbstractList<SparseRow> {
+
+        private final List<File> runs;
+        private final int size;
+
+        MergedRows(List<File> runs, int size) {
+            this.runs = runs;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public SparseRow get(int index) {
+            throw new UnsupportedOperationException("Sorted rows can only be iterated.");
+        }
+
+        @Override
+        public Iterator<SparseRow> iterator() {
+            final Merger merger;
+            try {
+                merger = new Merger(runs);
+            } catch (IOException e) {
+                throw new RuntimeException("Error while reading sorted rows: " + e.getMessage(), e);
+            }
+            return new Iterator<SparseRow>() {
+                private Entry next = read();
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public SparseRow next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    SparseRow row = next.rows.get(index++);
+                    if (index == next.rows.size()) {
+                        next = read();
+                        index = 0;
+                    }
+                    return row;
+                }
+
+                private Entry read() {
+                    try {
+                        Entry entry = merger.next();
+                        if (entry == null) {
+                            merger.close();
+                        }
+                        return entry;
+                    } catch (IOException e) {
+                        merger.close();
+                        throw new RuntimeException("Error while reading sorted rows: " + e.getMessage(), e);
+                    }
+                }
+            };
+        }
+    }
+}
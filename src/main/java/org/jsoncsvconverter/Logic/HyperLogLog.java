@@ -0,0 +1,128 @@
+package org.jsoncsvconverter.Logic;
+
+/**
+ * A HyperLogLog sketch estimating the number of distinct values added to it in a fixed
+ * {@value #REGISTERS} bytes, with a standard error of about 1.6%. Every value is hashed to 64
+ * bits; the first {@value #PRECISION} bits choose a register, which keeps the longest run of
+ * leading zeros seen in the remaining bits. Small counts are estimated by linear counting of
+ * the empty registers, which is close to exact.
+ *
+ * <p>Values are hashed as text, so a value hashes the same whether it is read as a string, as
+ * ASCII bytes or as the digits of a number.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+final class HyperLogLog {
+
+    /** Number of hash bits choosing a register */
+    static final int PRECISION = 12;
+
+    /** Number of registers, and bytes held by a sketch */
+    static final int REGISTERS = 1 << PRECISION;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final byte[] registers;
+
+    /**
+     * Constructs an empty sketch.
+     */
+    HyperLogLog() {
+        this.registers = new byte[REGISTERS];
+    }
+
+    /**
+     * Constructs a sketch from the registers of another, see {@link #getRegisters()}.
+     *
+     * @throws IllegalArgumentException if the array does not hold {@value #REGISTERS} registers
+     */
+    HyperLogLog(byte[] registers) {
+        if (registers.length != REGISTERS) {
+            throw new IllegalArgumentException("A sketch has " + REGISTERS + " registers.");
+        }
+        this.registers = registers.clone();
+    }
+
+    /**
+     * Adds the hash of one value.
+     *
+     * @param hash A 64-bit hash, see {@link #hash(CharSequence)}
+     */
+    void add(long hash) {
+        int register = (int) (hash >>> (64 - PRECISION));
+        // The sentinel bit bounds the run when every remaining bit is zero
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[register]) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    /**
+     * Adds the values of another sketch, as if they had been added to this one.
+     *
+     * @param other The sketch to merge
+     */
+    void merge(HyperLogLog other) {
+        for (int register = 0; register < REGISTERS; register++) {
+            if (other.registers[register] > registers[register]) {
+                registers[register] = other.registers[register];
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values added.
+     *
+     * @return The estimate, 0 when nothing was added
+     */
+    long estimate() {
+        double sum = 0;
+        int empty = 0;
+        for (byte rank : registers) {
+            sum += 1.0 / (1L << rank);
+            if (rank == 0) {
+                empty++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && empty > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / empty);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return The registers of the sketch, for saving it; not to be modified
+     */
+    byte[] getRegisters() {
+        return registers;
+    }
+
+    /**
+     * Hashes text: FNV-1a over the characters, then the finalizer of MurmurHash3 to spread
+     * similar values over every bit.
+     *
+     * @param text The value
+     * @return The 64-bit hash
+     */
+    static long hash(CharSequence text) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,6 +1,12 @@
 package org.jsoncsvconverter.Logic;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.*;
 
 /**
@@ -14,13 +20,18 @@ import java.util.*;
  *   <li>Handles primitive arrays by creating separate rows for each element</li>
  *   <li>Processes object arrays by flattening each object and creating individual rows</li>
  *   <li>Maintains consistent column structure across all rows</li>
+ *   <li>Reports parse and flatten timings to {@link ConversionMetrics}</li>
+ *   <li>Keeps rows within a heap budget, spilling the excess to temporary files</li>
+ *   <li>Flattens iteratively, so deep nesting is bounded by a configurable limit rather than the stack</li>
+ *   <li>Converts only the columns of an optional {@link ColumnProjection}, skipping the rest while parsing</li>
+ *   <li>Converts only the records accepted by an optional {@link RecordFilter}, rejecting the rest while parsing</li>
  * </ul>
  *
  * @author Miguel Fernandez
  * @version 1.0
  * @since 1.0
  */
-public class JSONParser {
+public class JSONParser implements AutoCloseable {
 
     /** The original JSON object parsed from the input string */
     private final JsonObject jsonObject;
@@ -28,8 +39,17 @@ public class JSONParser {
     /** Set of all unique column headers found during parsing */
     private final Set<String> headers = new LinkedHashSet<>();
 
-    /** List of rows, where each row is an array of string values corresponding to headers */
-    private final List<String[]> rows = new ArrayList<>();
+    /** Heap-budgeted buffer of rows, where each row is an array of string values corresponding to headers */
+    private final RowBuffer rows;
+
+    /** The rows laid out for the headers: the buffer itself, or a projected view of it */
+    private List<String[]> outputRows;
+
+    /** Largest number of rows produced from a single array element during flattening */
+    private int maxRowExplosion = 0;
+
+    /** Number of records rejected by the filter while parsing */
+    private long rejectedRecordCount = 0;
 
     /**
      * Constructs a new JSONParser and immediately processes the provided JSON string.
@@ -39,205 +59,197 @@ public class JSONParser {
      * @throws IllegalStateException if the root element is not a JSON object
      */
     public JSONParser(String jsonString) {
-        this.jsonObject = JsonParser.parseString(jsonString).getAsJsonObject();
-        processJson();
+        this(jsonString, null, new ConversionOptions());
     }
 
     /**
-     * Processes the JSON object by flattening it into tabular format.
-     * This method orchestrates the flattening process and ensures all rows have
-     * values for all discovered headers.
+     * Constructs a new JSONParser with explicit conversion options and immediately processes
+     * the provided JSON string.
      *
-     * <p>The processing involves:</p>
-     * <ol>
-     *   <li>Recursively flattening the JSON structure</li>
-     *   <li>Collecting all unique headers from all rows</li>
-     *   <li>Normalizing rows to ensure consistent column structure</li>
-     * </ol>
+     * @param jsonString A valid JSON string to be parsed and flattened
+     * @param options The options controlling the row buffer budget and spill location
+     * @throws JsonSyntaxException if the JSON string is malformed
+     * @throws IllegalStateException if the root element is not a JSON object
+     */
+    public JSONParser(String jsonString, ConversionOptions options) {
+        this(jsonString, null, options);
+    }
+
+    /**
+     * Constructs a new JSONParser for JSON read from a named source and immediately processes it.
+     * The source name is only used for diagnostics such as Flight Recorder events.
+     *
+     * @param jsonString A valid JSON string to be parsed and flattened
+     * @param sourceName The file the JSON string was read from, or null when unknown
+     * @throws JsonSyntaxException if the JSON string is malformed
+     * @throws IllegalStateException if the root element is not a JSON object
      */
-    private void processJson() {
-        List<Map<String, String>> flattenedRows = flattenJson(jsonObject, "");
+    public JSONParser(String jsonString, String sourceName) {
+        this(jsonString, sourceName, new ConversionOptions());
+    }
 
-        // Collect all unique headers
-        for (Map<String, String> row : flattenedRows) {
-            headers.addAll(row.keySet());
+    /**
+     * Constructs a new JSONParser for JSON read from a named source, with explicit conversion
+     * options, and immediately processes it.
+     *
+     * <p>Flattened rows are kept in a {@link RowBuffer} limited by
+     * {@link ConversionOptions#getRowBufferBudgetBytes()}. When a document expands into more rows
+     * than fit, the surplus is spilled to temporary files and read back transparently by
+     * {@link #getRows()}; call {@link #close()} to delete those files early.</p>
+     *
+     * <p>When the options carry a {@link ColumnProjection}, values that cannot produce a selected
+     * column are skipped while the JSON is parsed and never reach the tree returned by
+     * {@link #getJsonObject()}; headers and rows cover exactly the selected columns, and rows
+     * without a value in any of them are left out.</p>
+     *
+     * <p>When the options carry a {@link RecordFilter}, the elements of the root object's arrays
+     * are evaluated while they are parsed and rejected ones are skipped, so they never reach the
+     * tree, the rows or the headers.</p>
+     *
+     * @param jsonString A valid JSON string to be parsed and flattened
+     * @param sourceName The file the JSON string was read from, or null when unknown
+     * @param options The options controlling the row buffer budget and spill location
+     * @throws JsonSyntaxException if the JSON string is malformed
+     * @throws IllegalStateException if the root element is not a JSON object
+     * @throws IllegalArgumentException if the document is nested deeper than
+     *                                  {@link ConversionOptions#getMaxNestingDepth()}
+     */
+    public JSONParser(String jsonString, String sourceName, ConversionOptions options) {
+        this.rows = new RowBuffer(options.getRowBufferBudgetBytes(), options.getSpillDirectory());
+        ConversionMetrics metrics = ConversionMetrics.getInstance();
+
+        try (ConversionMetrics.StageTimer timer = metrics.start(ConversionMetrics.Stage.PARSE, sourceName)) {
+            this.jsonObject = parse(jsonString, options).getAsJsonObject();
+            timer.complete(utf8Length(jsonString), 0, 0);
+        }
+
+        try (ConversionMetrics.StageTimer timer = metrics.start(ConversionMetrics.Stage.FLATTEN, sourceName)) {
+            processJson(options);
+            timer.complete(0, rows.size(), headers.size(), maxRowExplosion);
         }
+    }
 
-        // Create normalized rows with all headers
-        for (Map<String, String> row : flattenedRows) {
-            List<String> rowValues = new ArrayList<>();
-            for (String header : headers) {
-                rowValues.add(row.getOrDefault(header, ""));
+    /**
+     * Counts the bytes of a string encoded in UTF-8, without encoding it.
+     *
+     * @param text The string to measure
+     * @return The length of its UTF-8 encoding; unpaired surrogates count as one byte, the
+     *         replacement the encoder writes for them
+     */
+    static long utf8Length(String text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
             }
-            rows.add(rowValues.toArray(new String[0]));
         }
+        return length;
     }
 
     /**
-     * Recursively flattens a JSON element into a list of key-value maps.
-     * This is the core method that handles the complex logic of converting
-     * nested JSON structures into tabular format.
+     * Processes the JSON object by flattening it into tabular format.
+     * This method orchestrates the flattening process and ensures all rows have
+     * values for all discovered headers.
      *
-     * <p>Handling strategy:</p>
+     * <p>The processing involves:</p>
+     * <ol>
+     *   <li>Flattening the JSON structure straight into the row buffer with {@link JsonFlattener}</li>
+     *   <li>Collecting all unique headers in the order the buffer discovered them</li>
+     *   <li>Normalizing rows to ensure consistent column structure (done by the buffer on read)</li>
+     * </ol>
+     *
+     * <p>Flattening rules:</p>
      * <ul>
      *   <li><strong>Objects:</strong> Nested objects are flattened with prefixed keys</li>
-     *   <li><strong>Primitive Arrays:</strong> Each element creates a separate row</li>
+     *   <li><strong>Primitive Arrays:</strong> Each element creates a separate row, or all
+     *   elements share one cell with {@link ConversionOptions#setPrimitiveArrayDelimiter(String)}</li>
      *   <li><strong>Object Arrays:</strong> Each object is flattened and creates separate rows</li>
      *   <li><strong>Primitives/Null:</strong> Direct key-value mapping</li>
      * </ul>
      *
-     * @param element The JSON element to flatten (object, array, primitive, or null)
-     * @param prefix The current key prefix for nested structures (uses "__" as separator)
-     * @return A list of maps, where each map represents a row with column-value pairs
+     * @param options The options holding the nesting limit, the primitive array delimiter and the
+     *                projection
      */
-    private List<Map<String, String>> flattenJson(JsonElement element, String prefix) {
-        List<Map<String, String>> result = new ArrayList<>();
-
-        if (element.isJsonObject()) {
-            JsonObject obj = element.getAsJsonObject();
-
-            // Separate different types of fields for specialized handling
-            Map<String, List<String>> primitiveArrays = new LinkedHashMap<>();
-            List<String> objectArrayKeys = new ArrayList<>();
-            Map<String, String> scalarData = new LinkedHashMap<>();
-
-            // Classify each property in the JSON object
-            for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
-                String key = entry.getKey();
-                JsonElement value = entry.getValue();
-                String newPrefix = prefix.isEmpty() ? key : prefix + "__" + key;
-
-                if (value.isJsonArray()) {
-                    JsonArray arr = value.getAsJsonArray();
-                    if (!arr.isEmpty() && arr.get(0).isJsonPrimitive()) {
-                        // This is a primitive array - collect all values
-                        List<String> arrayValues = new ArrayList<>();
-                        for (JsonElement item : arr) {
-                            arrayValues.add(item.getAsString());
-                        }
-                        primitiveArrays.put(newPrefix, arrayValues);
-                    } else {
-                        // This is an object array - handle separately
-                        objectArrayKeys.add(key);
-                    }
-                } else {
-                    // Handle scalar elements (objects, primitives, null)
-                    List<Map<String, String>> childRows = flattenJson(value, newPrefix);
-                    for (Map<String, String> childRow : childRows) {
-                        scalarData.putAll(childRow);
-                    }
-                }
+    private void processJson(ConversionOptions options) {
+        ColumnProjection projection = options.getProjection();
+        JsonFlattener flattener = new JsonFlattener(options);
+        flattener.flatten(jsonObject, "", row -> {
+            if (projection == null || hasSelectedValue(row, projection)) {
+                rows.addRow(row);
             }
+        });
+        maxRowExplosion = flattener.getMaxRowExplosion();
 
-            // Process object arrays first - each object creates its own set of rows
-            List<Map<String, String>> objectArrayRows = new ArrayList<>();
-            for (String arrayKey : objectArrayKeys) {
-                JsonArray arr = obj.get(arrayKey).getAsJsonArray();
-                String newPrefix = prefix.isEmpty() ? arrayKey : prefix + "__" + arrayKey;
+        // Collect all unique headers
+        if (projection == null) {
+            headers.addAll(rows.getColumns());
+            outputRows = rows;
+        } else {
+            List<String> selected = projection.selectHeaders(rows.getColumns());
+            headers.addAll(selected);
+            outputRows = rows.view(selected);
+        }
+    }
 
-                for (JsonElement item : arr) {
-                    List<Map<String, String>> itemRows = flattenJson(item, newPrefix);
-                    objectArrayRows.addAll(itemRows);
-                }
+    /**
+     * Tells whether a row has a value in a column the projection selects.
+     */
+    private static boolean hasSelectedValue(RowBuilder row, ColumnProjection projection) {
+        for (int i = 0; i < row.size(); i++) {
+            if (!row.getValue(i).isEmpty() && projection.matches(row.getColumn(i))) {
+                return true;
             }
+        }
+        return false;
+    }
 
-            // Merge object array rows with scalar data and handle primitive arrays
-            if (!objectArrayRows.isEmpty()) {
-                // Combine scalar data with each object array row
-                for (int i = 0; i < objectArrayRows.size(); i++) {
-                    Map<String, String> finalRow = new LinkedHashMap<>();
-
-                    // Add scalar data only to the first row to avoid duplication
-                    if (i == 0) {
-                        finalRow.putAll(scalarData);
-                    }
-
-                    // Add the object array data
-                    finalRow.putAll(objectArrayRows.get(i));
-                    result.add(finalRow);
-                }
-
-                // Handle primitive arrays - they create additional rows
-                int maxPrimitiveArrayLength = 0;
-                for (List<String> arrayValues : primitiveArrays.values()) {
-                    maxPrimitiveArrayLength = Math.max(maxPrimitiveArrayLength, arrayValues.size());
-                }
-
-                for (int i = 0; i < maxPrimitiveArrayLength; i++) {
-                    Map<String, String> rowMap = new LinkedHashMap<>();
-
-                    // Add primitive array elements at this index
-                    for (Map.Entry<String, List<String>> arrayEntry : primitiveArrays.entrySet()) {
-                        String arrayKey = arrayEntry.getKey();
-                        List<String> arrayValues = arrayEntry.getValue();
-
-                        if (i < arrayValues.size()) {
-                            rowMap.put(arrayKey, arrayValues.get(i));
-                        }
-                    }
-                    result.add(rowMap);
-                }
-
+    /**
+     * Parses a JSON document with the nesting limit, projection and filter of the options,
+     * reporting errors the same way as {@link JsonParser#parseString(String)}.
+     *
+     * @param jsonString The JSON text
+     * @param options The options holding the nesting limit, projection and filter
+     * @return The parsed element
+     * @throws JsonSyntaxException if the text is malformed or nested too deeply
+     */
+    private JsonElement parse(String jsonString, ConversionOptions options) {
+        try {
+            JsonReader reader = new JsonReader(new StringReader(jsonString));
+            reader.setNestingLimit(options.getMaxNestingDepth());
+            JsonElement element;
+            if (options.getProjection() == null && options.getFilter() == null) {
+                element = JsonParser.parseReader(reader);
             } else {
-                // No object arrays, handle primitive arrays normally
-                int maxArrayLength = 0;
-                for (List<String> arrayValues : primitiveArrays.values()) {
-                    maxArrayLength = Math.max(maxArrayLength, arrayValues.size());
-                }
-
-                if (maxArrayLength > 0) {
-                    // Create rows: one row per index across all primitive arrays
-                    for (int i = 0; i < maxArrayLength; i++) {
-                        Map<String, String> rowMap = new LinkedHashMap<>();
-
-                        // Add scalar data only to the first row
-                        if (i == 0) {
-                            rowMap.putAll(scalarData);
-                        }
-
-                        // Add primitive array elements at this index
-                        for (Map.Entry<String, List<String>> arrayEntry : primitiveArrays.entrySet()) {
-                            String arrayKey = arrayEntry.getKey();
-                            List<String> arrayValues = arrayEntry.getValue();
-
-                            if (i < arrayValues.size()) {
-                                rowMap.put(arrayKey, arrayValues.get(i));
-                            }
-                        }
-                        result.add(rowMap);
-                    }
-                } else {
-                    // No arrays at all, just return the scalar data
-                    result.add(scalarData);
+                reader.setStrictness(Strictness.LENIENT);
+                JsonTreeReader treeReader = new JsonTreeReader(options.getProjection(), options.getFilter());
+                element = treeReader.readDocument(reader);
+                rejectedRecordCount = treeReader.getRejectedRecordCount();
+                if (element == null) {
+                    element = JsonNull.INSTANCE;
                 }
             }
-
-        } else if (element.isJsonArray()) {
-            JsonArray arr = element.getAsJsonArray();
-
-            // Differentiate between primitive and object arrays
-            if (!arr.isEmpty() && arr.get(0).isJsonPrimitive()) {
-                // For primitive arrays, create one row per array element
-                for (JsonElement item : arr) {
-                    Map<String, String> map = new LinkedHashMap<>();
-                    map.put(prefix, item.getAsString());
-                    result.add(map);
-                }
-            } else {
-                // For object arrays, flatten each object and create separate rows
-                for (JsonElement item : arr) {
-                    result.addAll(flattenJson(item, prefix));
-                }
+            if (!element.isJsonNull() && reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("Did not consume the entire document.");
             }
-
-        } else if (element.isJsonPrimitive() || element.isJsonNull()) {
-            // Handle primitive values and null
-            Map<String, String> map = new LinkedHashMap<>();
-            map.put(prefix, element.isJsonNull() ? "" : element.getAsString());
-            result.add(map);
+            return element;
+        } catch (MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
         }
-
-        return result;
     }
 
     /**
@@ -268,10 +280,62 @@ public class JSONParser {
      * <p>Missing values are represented as empty strings to maintain consistent
      * column structure across all rows.</p>
      *
+     * <p>The list is read-only and backed by the row buffer; rows that were spilled to disk are
+     * read back on access, so iterating it in order is the cheapest way to consume it.</p>
+     *
      * @return A list of rows, where each row is a string array of column values
      */
     public List<String[]> getRows() {
-        return rows;
+        return outputRows;
+    }
+
+    /**
+     * Returns all parsed rows holding only their populated cells, laid out for the headers
+     * returned by {@link #getHeadersArray()}. Wide outputs with mostly empty rows should be
+     * written from this list with {@link CSVWriterFile#createCSVWithSparseRows(String, List)},
+     * which expands each row only while writing it.
+     *
+     * @return A read-only list of sparse rows, backed by the row buffer like {@link #getRows()}
+     */
+    public List<SparseRow> getSparseRows() {
+        return rows.sparseView(new ArrayList<>(headers));
+    }
+
+    /**
+     * Returns the type of every column, inferred from its values while flattening.
+     *
+     * @return An unmodifiable map from header to type, in the order of {@link #getHeaders()}
+     * @see ColumnType
+     */
+    public Map<String, ColumnType> getColumnTypes() {
+        return ColumnType.schema(getHeadersArray(), rows.getColumnTypes());
+    }
+
+    /**
+     * Deletes any temporary files holding spilled rows. The rows are no longer available afterwards.
+     */
+    @Override
+    public void close() {
+        rows.close();
+    }
+
+    /**
+     * Returns the largest number of rows that a single element of an object array expanded into.
+     * A high value points at records whose nested arrays multiply the output size.
+     *
+     * @return The largest per-element row count seen while flattening, or 0 if there were no arrays
+     */
+    public int getMaxRowExplosion() {
+        return maxRowExplosion;
+    }
+
+    /**
+     * Returns the number of records the filter rejected while the JSON was parsed.
+     *
+     * @return The rejected record count, 0 when no filter is set
+     */
+    public long getRejectedRecordCount() {
+        return rejectedRecordCount;
     }
 
     /**
@@ -1,6 +1,7 @@
 package org.jsoncsvconverter.Logic;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 
@@ -15,6 +16,7 @@ import java.io.IOException;
  *   <li>Efficiently reads files using BufferedReader</li>
  *   <li>Handles I/O errors gracefully with proper exception management</li>
  *   <li>Preserves line breaks in the original JSON format</li>
+ *   <li>Reports read time and size to {@link ConversionMetrics} under the READ stage</li>
  * </ul>
  *
  * <p>Usage example:</p>
@@ -82,11 +84,13 @@ public class JsonFileReader {
     public String getJsonString() {
         StringBuilder content = new StringBuilder();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+        try (ConversionMetrics.StageTimer timer = ConversionMetrics.getInstance().start(ConversionMetrics.Stage.READ, filename);
+             BufferedReader br = new BufferedReader(new FileReader(filename))) {
             String line;
             while ((line = br.readLine()) != null) {
                 content.append(line).append("\n");
             }
+            timer.complete(new File(filename).length(), 0, 0);
         } catch (IOException e) {
             System.out.println("Error reading file: " + e.getMessage());
         }
@@ -0,0 +1,498 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An iterative flattener that turns a JSON tree into rows using an explicit stack of frames.
+ * It applies exactly the flattening rules documented on {@link JSONParser}, but instead of
+ * recursing once per nesting level and returning a new list of rows from every level, it walks
+ * the tree with a reusable stack and writes each finished row into one shared {@link RowBuilder}
+ * that is handed to a {@link RowSink}.
+ *
+ * <p>Key features:</p>
+ * <ul>
+ *   <li>No recursion: nesting depth is limited only by the configured limit, never by the thread stack</li>
+ *   <li>Frames are pooled and reused between elements and between calls</li>
+ *   <li>Exactly one row is in flight at a time; rows are never copied between levels</li>
+ *   <li>Depth-limit diagnostics that name the offending path, plus the deepest nesting seen</li>
+ * </ul>
+ *
+ * <p>How rows travel: every frame remembers how its rows reach its parent. A row produced inside
+ * a plain nested object is merged into the parent's scalar data (collapse); a row produced by an
+ * element of an object array gets the parent's scalar data merged in front if it is the parent's
+ * first row; a row produced by an element of an array is passed through and counted. Rows that
+ * reach the root frame go to the sink.</p>
+ *
+ * <p>With a primitive array delimiter, the elements of a primitive array are joined into a single
+ * cell instead of being spread over rows, see {@link ConversionOptions#setPrimitiveArrayDelimiter(String)}.</p>
+ *
+ * <p>Instances are not thread-safe; use one flattener per thread.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class JsonFlattener {
+
+    /** Separator placed between the keys of nested fields in flattened column names */
+    public static final String SEPARATOR = "__";
+
+    /**
+     * Receives flattened rows in output order. The row builder is reused for the next row as
+     * soon as {@link #accept(RowBuilder)} returns, so implementations must copy what they keep.
+     */
+    public interface RowSink {
+        void accept(RowBuilder row);
+    }
+
+    /** How the rows produced by a frame reach its parent */
+    private enum Mode {
+        /** The frame is the root; rows go to the sink */
+        ROOT,
+        /** The frame is a nested object value; rows are merged into the parent's scalar data */
+        COLLAPSE,
+        /** The frame is an element of an object array; the parent's scalar data joins its first row */
+        OBJECT_ARRAY_ITEM,
+        /** The frame is an element of an array; rows pass through and are counted */
+        ARRAY_ITEM
+    }
+
+    /** Object frame phases */
+    private static final int CLASSIFY = 0;
+    private static final int OBJECT_ARRAYS = 1;
+
+    /**
+     * The state of one object or array being flattened.
+     */
+    private static final class Frame {
+        Mode mode;
+        String prefix;
+        boolean isObject;
+        int phase;
+
+        /** Rows that reached this frame from object-array or array elements */
+        long emitted;
+        /** Value of {@link #emitted} when the current element started */
+        long itemStart;
+
+        Iterator<Map.Entry<String, JsonElement>> entries;
+        JsonObject object;
+        final Map<String, String> scalarData = new LinkedHashMap<>();
+        final Map<String, List<String>> primitiveArrays = new LinkedHashMap<>();
+        final List<String> objectArrayKeys = new ArrayList<>();
+        int arrayKeyIndex;
+
+        /** The array being iterated: the frame itself, or the current object array of an object */
+        JsonArray array;
+        String arrayPrefix;
+        int itemIndex;
+
+        void release() {
+            entries = null;
+            object = null;
+            array = null;
+            scalarData.clear();
+            primitiveArrays.clear();
+            objectArrayKeys.clear();
+        }
+    }
+
+    private final int maxDepth;
+    /** Delimiter joining primitive arrays into one cell, or null for one row per element */
+    private final String arrayDelimiter;
+    private final char arrayEscape;
+    private final List<Frame> stack = new ArrayList<>();
+    private final RowBuilder row = new RowBuilder();
+    private int depth = 0;
+    private RowSink sink;
+
+    private int maxRowExplosion = 0;
+    private int maxDepthSeen = 0;
+
+    /**
+     * Constructs a flattener that rejects documents nested deeper than the given limit.
+     *
+     * @param maxDepth The maximum number of nested objects and arrays. Must be positive.
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public JsonFlattener(int maxDepth) {
+        this(maxDepth, null, '\\');
+    }
+
+    /**
+     * Constructs a flattener with the nesting limit and the primitive array handling of the
+     * given options.
+     *
+     * @param options The conversion options
+     */
+    public JsonFlattener(ConversionOptions options) {
+        this(options.getMaxNestingDepth(), options.getPrimitiveArrayDelimiter(), options.getPrimitiveArrayEscape());
+    }
+
+    private JsonFlattener(int maxDepth, String arrayDelimiter, char arrayEscape) {
+        if (maxDepth <= 0) {
+            throw new IllegalArgumentException("Maximum depth must be positive.");
+        }
+        this.maxDepth = maxDepth;
+        this.arrayDelimiter = arrayDelimiter;
+        this.arrayEscape = arrayEscape;
+    }
+
+    /**
+     * Flattens one JSON element, sending each resulting row to the sink in order.
+     *
+     * @param element The JSON element to flatten (object, array, primitive, or null)
+     * @param prefix The column prefix of the element, or an empty string at the document root
+     * @param rowSink The destination of the rows
+     * @throws IllegalArgumentException if the element is nested deeper than the configured limit
+     * @throws UnsupportedOperationException if a primitive array contains an object or array
+     */
+    public void flatten(JsonElement element, String prefix, RowSink rowSink) {
+        this.sink = rowSink;
+        try {
+            if (element.isJsonObject() || element.isJsonArray()) {
+                push(element, prefix, Mode.ROOT);
+            } else {
+                emitLeaf(element, prefix, -1, Mode.ROOT);
+            }
+
+            while (depth > 0) {
+                Frame frame = stack.get(depth - 1);
+                if (frame.isObject) {
+                    stepObject(frame, depth - 1);
+                } else {
+                    stepArray(frame, depth - 1);
+                }
+            }
+        } finally {
+            while (depth > 0) {
+                stack.get(--depth).release();
+            }
+            this.sink = null;
+        }
+    }
+
+    /**
+     * Returns the largest number of rows that a single array element expanded into, across all
+     * calls to {@link #flatten(JsonElement, String, RowSink)}.
+     *
+     * @return The largest per-element row count, or 0 if no arrays were seen
+     */
+    public int getMaxRowExplosion() {
+        return maxRowExplosion;
+    }
+
+    /**
+     * Returns the deepest nesting of objects and arrays seen so far.
+     *
+     * @return The maximum depth reached
+     */
+    public int getMaxDepthSeen() {
+        return maxDepthSeen;
+    }
+
+    /**
+     * Performs one step of an object frame: classifies one property, or starts one element of
+     * an object array, or finishes the object.
+     */
+    private void stepObject(Frame frame, int index) {
+        if (frame.phase == CLASSIFY) {
+            if (frame.entries.hasNext()) {
+                Map.Entry<String, JsonElement> entry = frame.entries.next();
+                String key = entry.getKey();
+                JsonElement value = entry.getValue();
+                String newPrefix = childPrefix(frame.prefix, key);
+
+                if (value.isJsonArray()) {
+                    JsonArray arr = value.getAsJsonArray();
+                    if (!arr.isEmpty() && arr.get(0).isJsonPrimitive()) {
+                        // This is a primitive array - collect all values
+                        List<String> arrayValues = new ArrayList<>(arr.size());
+                        for (JsonElement item : arr) {
+                            arrayValues.add(item.getAsString());
+                        }
+                        if (arrayDelimiter != null) {
+                            frame.scalarData.put(newPrefix, join(arrayValues, arrayDelimiter, arrayEscape));
+                        } else {
+                            frame.primitiveArrays.put(newPrefix, arrayValues);
+                        }
+                    } else {
+                        // This is an object array - handle after all properties are classified
+                        frame.objectArrayKeys.add(key);
+                    }
+                } else if (value.isJsonObject()) {
+                    // Nested object - every row it produces is merged into the scalar data
+                    push(value, newPrefix, Mode.COLLAPSE);
+                } else {
+                    frame.scalarData.put(newPrefix, value.isJsonNull() ? "" : value.getAsString());
+                }
+                return;
+            }
+            frame.phase = OBJECT_ARRAYS;
+            frame.arrayKeyIndex = 0;
+            frame.array = null;
+        }
+
+        // Object arrays: each element creates its own rows; the first row receives the scalar data
+        if (frame.array == null || frame.itemIndex >= frame.array.size()) {
+            if (frame.arrayKeyIndex < frame.objectArrayKeys.size()) {
+                String key = frame.objectArrayKeys.get(frame.arrayKeyIndex++);
+                frame.array = frame.object.get(key).getAsJsonArray();
+                frame.arrayPrefix = childPrefix(frame.prefix, key);
+                frame.itemIndex = 0;
+            } else {
+                finishObject(frame, index);
+                pop();
+            }
+            return;
+        }
+
+        JsonElement item = frame.array.get(frame.itemIndex++);
+        frame.itemStart = frame.emitted;
+        if (item.isJsonObject() || item.isJsonArray()) {
+            push(item, frame.arrayPrefix, Mode.OBJECT_ARRAY_ITEM);
+        } else {
+            emitLeaf(item, frame.arrayPrefix, index, Mode.OBJECT_ARRAY_ITEM);
+            maxRowExplosion = Math.max(maxRowExplosion, 1);
+        }
+    }
+
+    /**
+     * Emits the rows an object produces after its object arrays: the primitive array rows, with
+     * the scalar data on the first one when no object array produced a row, or the scalar data
+     * alone when there are no arrays at all.
+     */
+    private void finishObject(Frame frame, int index) {
+        int maxArrayLength = 0;
+        for (List<String> arrayValues : frame.primitiveArrays.values()) {
+            maxArrayLength = Math.max(maxArrayLength, arrayValues.size());
+        }
+
+        if (frame.emitted > 0 || maxArrayLength > 0) {
+            for (int i = 0; i < maxArrayLength; i++) {
+                row.clear();
+                if (i == 0 && frame.emitted == 0) {
+                    row.putAll(frame.scalarData);
+                }
+                for (Map.Entry<String, List<String>> arrayEntry : frame.primitiveArrays.entrySet()) {
+                    List<String> arrayValues = arrayEntry.getValue();
+                    if (i < arrayValues.size()) {
+                        row.put(arrayEntry.getKey(), arrayValues.get(i));
+                    }
+                }
+                deliver(index - 1, frame.mode);
+            }
+        } else {
+            row.clear();
+            row.putAll(frame.scalarData);
+            deliver(index - 1, frame.mode);
+        }
+    }
+
+    /**
+     * Performs one step of an array frame: emits a primitive array in one go, or starts one
+     * element of an object array, or finishes the array.
+     */
+    private void stepArray(Frame frame, int index) {
+        JsonArray arr = frame.array;
+        if (frame.itemIndex == 0 && !arr.isEmpty() && arr.get(0).isJsonPrimitive() && arrayDelimiter != null) {
+            // Joined primitive array - one row holding every element
+            List<String> arrayValues = new ArrayList<>(arr.size());
+            for (JsonElement item : arr) {
+                arrayValues.add(item.getAsString());
+            }
+            row.clear();
+            row.put(frame.prefix, join(arrayValues, arrayDelimiter, arrayEscape));
+            deliver(index - 1, frame.mode);
+            pop();
+            return;
+        }
+        if (frame.itemIndex == 0 && !arr.isEmpty() && arr.get(0).isJsonPrimitive()) {
+            // For primitive arrays, create one row per array element
+            for (JsonElement item : arr) {
+                row.clear();
+                row.put(frame.prefix, item.getAsString());
+                deliver(index - 1, frame.mode);
+            }
+            pop();
+            return;
+        }
+
+        if (frame.itemIndex >= arr.size()) {
+            pop();
+            return;
+        }
+
+        // For object arrays, flatten each element and create separate rows
+        JsonElement item = arr.get(frame.itemIndex++);
+        frame.itemStart = frame.emitted;
+        if (item.isJsonObject() || item.isJsonArray()) {
+            push(item, frame.prefix, Mode.ARRAY_ITEM);
+        } else {
+            emitLeaf(item, frame.prefix, index, Mode.ARRAY_ITEM);
+            maxRowExplosion = Math.max(maxRowExplosion, 1);
+        }
+    }
+
+    /**
+     * Emits the single row produced by a primitive or null value.
+     *
+     * @param value The primitive or null value
+     * @param column The column of the value
+     * @param parentIndex The stack index of the frame receiving the row, or -1 at the root
+     * @param mode How the row reaches that frame
+     */
+    private void emitLeaf(JsonElement value, String column, int parentIndex, Mode mode) {
+        row.clear();
+        row.put(column, value.isJsonNull() ? "" : value.getAsString());
+        deliver(parentIndex, mode);
+    }
+
+    /**
+     * Carries the current row upwards until it is merged into scalar data or reaches the sink.
+     *
+     * @param parentIndex The stack index of the frame receiving the row, or -1 at the root
+     * @param mode How the row reaches that frame
+     */
+    private void deliver(int parentIndex, Mode mode) {
+        int index = parentIndex;
+        while (true) {
+            if (mode == Mode.ROOT) {
+                sink.accept(row);
+                return;
+            }
+            Frame parent = stack.get(index);
+            if (mode == Mode.COLLAPSE) {
+                row.copyInto(parent.scalarData);
+                return;
+            }
+            if (mode == Mode.OBJECT_ARRAY_ITEM && parent.emitted == 0) {
+                row.prepend(parent.scalarData);
+            }
+            parent.emitted++;
+            mode = parent.mode;
+            index--;
+        }
+    }
+
+    private void push(JsonElement element, String prefix, Mode mode) {
+        if (depth >= maxDepth) {
+            throw new IllegalArgumentException("JSON nesting depth exceeds the limit of " + maxDepth
+                    + " at '" + (prefix.isEmpty() ? "(root)" : prefix) + "'");
+        }
+        if (depth == stack.size()) {
+            stack.add(new Frame());
+        }
+        Frame frame = stack.get(depth++);
+        maxDepthSeen = Math.max(maxDepthSeen, depth);
+
+        frame.mode = mode;
+        frame.prefix = prefix;
+        frame.emitted = 0;
+        frame.itemStart = 0;
+        frame.itemIndex = 0;
+        frame.phase = CLASSIFY;
+        frame.isObject = element.isJsonObject();
+        if (frame.isObject) {
+            frame.object = element.getAsJsonObject();
+            frame.entries = frame.object.entrySet().iterator();
+            frame.array = null;
+        } else {
+            frame.array = element.getAsJsonArray();
+        }
+    }
+
+    private void pop() {
+        Frame frame = stack.get(--depth);
+        if (depth > 0 && (frame.mode == Mode.OBJECT_ARRAY_ITEM || frame.mode == Mode.ARRAY_ITEM)) {
+            Frame parent = stack.get(depth - 1);
+            maxRowExplosion = (int) Math.max(maxRowExplosion, parent.emitted - parent.itemStart);
+        }
+        frame.release();
+    }
+
+    /**
+     * Joins the elements of a primitive array into one cell, preceding every occurrence of the
+     * delimiter or of the escape character inside an element with the escape character.
+     *
+     * @param values The elements
+     * @param delimiter The delimiter placed between elements
+     * @param escape The escape character
+     * @return The joined cell
+     */
+    static String join(List<String> values, String delimiter, char escape) {
+        StringBuilder cell = new StringBuilder();
+        for (int v = 0; v < values.size(); v++) {
+            if (v > 0) {
+                cell.append(delimiter);
+            }
+            String value = values.get(v);
+            for (int i = 0; i < value.length(); ) {
+                if (value.startsWith(delimiter, i)) {
+                    cell.append(escape).append(delimiter);
+                    i += delimiter.length();
+                } else {
+                    char c = value.charAt(i++);
+                    if (c == escape) {
+                        cell.append(escape);
+                    }
+                    cell.append(c);
+                }
+            }
+        }
+        return cell.toString();
+    }
+
+    /**
+     * Splits a cell joined by {@link #join(List, String, char)} back into its elements.
+     *
+     * @param cell The joined cell
+     * @param delimiter The delimiter placed between elements
+     * @param escape The escape character
+     * @return The elements
+     */
+    static List<String> split(String cell, String delimiter, char escape) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < cell.length(); ) {
+            char c = cell.charAt(i);
+            if (c == escape && i + 1 < cell.length()) {
+                if (cell.startsWith(delimiter, i + 1)) {
+                    value.append(delimiter);
+                    i += 1 + delimiter.length();
+                } else {
+                    value.append(cell.charAt(i + 1));
+                    i += 2;
+                }
+            } else if (cell.startsWith(delimiter, i)) {
+                values.add(value.toString());
+                value.setLength(0);
+                i += delimiter.length();
+            } else {
+                value.append(c);
+                i++;
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    /**
+     * Builds the flattened column name of a property.
+     *
+     * @param prefix The prefix of the enclosing object, empty at the root
+     * @param key The property name
+     * @return The column name
+     */
+    static String childPrefix(String prefix, String key) {
+        return prefix.isEmpty() ? key : prefix + SEPARATOR + key;
+    }
+}
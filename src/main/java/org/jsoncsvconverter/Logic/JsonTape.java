@@ -0,0 +1,194 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * One JSON value laid out as a flat array of nodes in document order, read from a
+ * {@link Utf8JsonTokenizer}. Every node records its kind, the name id under which it appears in
+ * its parent object, the index just after its last descendant, and for scalars the position of
+ * its bytes in a shared byte arena. The children of a container are found by hopping from one
+ * node to the end of the previous one.
+ *
+ * <p>The tape is cleared and refilled for every record, so reading a record allocates nothing
+ * once the arrays have grown to the size of the largest record.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+final class JsonTape {
+
+    /** Node kinds */
+    static final byte OBJECT = 1;
+    static final byte ARRAY = 2;
+    static final byte STRING = 3;
+    static final byte LITERAL = 4;
+    static final byte NULL = 5;
+
+    /** Flags of scalar nodes */
+    static final byte ESCAPED = 1;
+    static final byte NON_ASCII = 2;
+
+    private byte[] kinds = new byte[256];
+    private byte[] flags = new byte[256];
+    private int[] names = new int[256];
+    private int[] ends = new int[256];
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private int size = 0;
+
+    private byte[] arena = new byte[4096];
+    private int arenaSize = 0;
+
+    private int[] open = new int[32];
+
+    /**
+     * Reads one value into the tape, replacing its previous contents.
+     *
+     * @param in The tokenizer
+     * @param first The first token of the value, already returned by the tokenizer
+     * @param maxDepth The maximum nesting of objects and arrays
+     * @throws MalformedJsonException if the value is nested too deeply or is malformed
+     * @throws IOException if the input cannot be read
+     */
+    void read(Utf8JsonTokenizer in, Utf8JsonTokenizer.Token first, int maxDepth) throws IOException {
+        size = 0;
+        arenaSize = 0;
+        int depth = 0;
+        int name = -1;
+        Utf8JsonTokenizer.Token token = first;
+        while (true) {
+            switch (token) {
+                case NAME:
+                    name = in.getNameId();
+                    break;
+                case BEGIN_OBJECT:
+                case BEGIN_ARRAY:
+                    if (depth >= maxDepth) {
+                        throw new MalformedJsonException("Nesting limit " + maxDepth + " reached at byte "
+                                + in.getPosition());
+                    }
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth++] = add(token == Utf8JsonTokenizer.Token.BEGIN_OBJECT ? OBJECT : ARRAY, name);
+                    name = -1;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    ends[open[--depth]] = size;
+                    break;
+                case NULL:
+                    ends[add(NULL, name)] = size;
+                    name = -1;
+                    break;
+                case STRING:
+                case NUMBER:
+                case TRUE:
+                case FALSE:
+                    int node = add(token == Utf8JsonTokenizer.Token.STRING ? STRING : LITERAL, name);
+                    ends[node] = size;
+                    copyValue(in, node);
+                    name = -1;
+                    break;
+                default:
+                    throw new MalformedJsonException("Unexpected end of input at byte " + in.getPosition());
+            }
+            if (depth == 0) {
+                return;
+            }
+            token = in.next();
+        }
+    }
+
+    private int add(byte kind, int name) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            names = Arrays.copyOf(names, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        kinds[size] = kind;
+        flags[size] = 0;
+        names[size] = name;
+        return size++;
+    }
+
+    private void copyValue(Utf8JsonTokenizer in, int node) {
+        int length = in.getValueLength();
+        if (arenaSize + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+        }
+        System.arraycopy(in.getBuffer(), in.getValueStart(), arena, arenaSize, length);
+        starts[node] = arenaSize;
+        lengths[node] = length;
+        flags[node] = (byte) ((in.isValueEscaped() ? ESCAPED : 0) | (in.isValueAscii() ? 0 : NON_ASCII));
+        arenaSize += length;
+    }
+
+    /**
+     * @return The number of nodes
+     */
+    int size() {
+        return size;
+    }
+
+    byte kind(int node) {
+        return kinds[node];
+    }
+
+    boolean isContainer(int node) {
+        return kinds[node] == OBJECT || kinds[node] == ARRAY;
+    }
+
+    /**
+     * Tells whether a node is a string, number or boolean, which Gson calls a primitive.
+     */
+    boolean isPrimitive(int node) {
+        return kinds[node] == STRING || kinds[node] == LITERAL;
+    }
+
+    int name(int node) {
+        return names[node];
+    }
+
+    /**
+     * @return The index just after the last descendant of the node, which is the next sibling
+     */
+    int end(int node) {
+        return ends[node];
+    }
+
+    int flags(int node) {
+        return flags[node];
+    }
+
+    byte[] arena() {
+        return arena;
+    }
+
+    int start(int node) {
+        return starts[node];
+    }
+
+    int length(int node) {
+        return lengths[node];
+    }
+
+    /**
+     * Returns the text of a scalar node as Gson's tree model would: the decoded string, the
+     * number or boolean text, or an empty string for null.
+     */
+    String text(int node) throws MalformedJsonException {
+        if (kinds[node] == NULL) {
+            return "";
+        }
+        return Utf8JsonTokenizer.decode(arena, starts[node], lengths[node], (flags[node] & ESCAPED) != 0);
+    }
+}
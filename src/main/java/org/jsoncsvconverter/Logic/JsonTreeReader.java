@@ -0,0 +1,364 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.internal.LazilyParsedNumber;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds JSON trees from a token stream, keeping only the parts selected by a
+ * {@link ColumnProjection} and only the records accepted by a {@link RecordFilter}. Values that
+ * cannot produce a selected column are skipped with {@link JsonReader#skipValue()}, so they cost
+ * a scan of their tokens but no objects, strings or numbers are created for them.
+ *
+ * <p>The resulting tree is what {@link com.google.gson.JsonParser#parseReader(JsonReader)} would
+ * return with the unselected members and array elements, and the rejected records, removed;
+ * flattening it yields only selected columns. Numbers keep their original text, exactly as
+ * Gson's own tree model does.</p>
+ *
+ * <p>Records are evaluated while they are read. Fields the filter needs are read even when the
+ * projection does not select them, but they are not added to the tree. As soon as the fields
+ * read so far reject the record, the rest of its tokens are skipped.</p>
+ *
+ * <p>Like {@link JsonFlattener}, the reader walks the input with an explicit stack instead of
+ * recursion; the nesting limit of the {@link JsonReader} bounds the depth. Instances are not
+ * thread-safe.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ *
+ * @see com.google.gson.JsonParser
+ */
+public class JsonTreeReader {
+
+    /** The selected columns, or null to keep everything */
+    private final ColumnProjection projection;
+
+    /** The record filter and its evaluation state, or null to keep every record */
+    private final RecordFilter filter;
+    private final RecordFilter.Evaluation evaluation;
+
+    /** Open containers (null when visited only for the filter), their prefixes and kinds, innermost last */
+    private final List<JsonElement> containers = new ArrayList<>();
+    private final List<String> prefixes = new ArrayList<>();
+    private final List<Boolean> objects = new ArrayList<>();
+
+    /** Number of open arrays; values below an array may repeat within a record */
+    private int arrayDepth = 0;
+
+    /** True while the current record still has to be evaluated */
+    private boolean evaluating = false;
+    private boolean rejected = false;
+    private long rejectedRecords = 0;
+
+    /**
+     * Constructs a reader that keeps only what the projection selects.
+     *
+     * @param projection The selected columns, or null to keep every value
+     */
+    public JsonTreeReader(ColumnProjection projection) {
+        this(projection, null);
+    }
+
+    /**
+     * Constructs a reader that keeps only what the projection selects, from the records the
+     * filter accepts.
+     *
+     * @param projection The selected columns, or null to keep every value
+     * @param filter The record filter, or null to keep every record
+     */
+    public JsonTreeReader(ColumnProjection projection, RecordFilter filter) {
+        this.projection = projection;
+        this.filter = filter;
+        this.evaluation = filter == null ? null : filter.newEvaluation();
+    }
+
+    /**
+     * Tells whether the next value, found at the given column prefix, is selected. The value is
+     * not consumed.
+     *
+     * @param in The reader positioned before the value
+     * @param prefix The flattened path of the value
+     * @return true if the value may produce a selected column
+     * @throws IOException if the input cannot be read
+     */
+    public boolean isSelected(JsonReader in, String prefix) throws IOException {
+        if (projection == null) {
+            return true;
+        }
+        JsonToken token = in.peek();
+        boolean nested = token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY;
+        return nested ? projection.mayContain(prefix) : projection.matches(prefix);
+    }
+
+    /**
+     * Reads a whole document. When the root is an object, the elements of its array members are
+     * records; when the root is an array, its elements are records.
+     *
+     * @param in The reader positioned before the document
+     * @return The document without unselected values and rejected records
+     * @throws IOException if the input cannot be read or is malformed
+     */
+    public JsonElement readDocument(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.BEGIN_ARRAY) {
+            return readRecords(in, "");
+        }
+        if (token != JsonToken.BEGIN_OBJECT) {
+            return readValue(in, "");
+        }
+        JsonObject root = new JsonObject();
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            JsonElement value = in.peek() == JsonToken.BEGIN_ARRAY && isSelected(in, key)
+                    ? readRecords(in, key)
+                    : readValue(in, key);
+            if (value != null) {
+                root.add(key, value);
+            }
+        }
+        in.endObject();
+        return root;
+    }
+
+    private JsonArray readRecords(JsonReader in, String prefix) throws IOException {
+        JsonArray array = new JsonArray();
+        in.beginArray();
+        while (in.hasNext()) {
+            JsonElement record = readRecord(in, prefix);
+            if (record != null) {
+                array.add(record);
+            }
+        }
+        in.endArray();
+        return array;
+    }
+
+    /**
+     * Reads the next value as one record: the filter, if it applies to records at this prefix,
+     * decides whether the record is kept.
+     *
+     * @param in The reader positioned before the record
+     * @param prefix The flattened path of the record, empty for top-level records
+     * @return The record with its unselected parts removed, or null if it was rejected or skipped
+     * @throws IOException if the input cannot be read or is malformed
+     */
+    public JsonElement readRecord(JsonReader in, String prefix) throws IOException {
+        if (filter == null || !filter.appliesTo(prefix)) {
+            return readValue(in, prefix);
+        }
+        evaluation.begin();
+        evaluating = true;
+        rejected = false;
+        try {
+            JsonElement record = readValue(in, prefix);
+            if (rejected || !evaluation.finish()) {
+                rejectedRecords++;
+                return null;
+            }
+            return record;
+        } finally {
+            evaluating = false;
+        }
+    }
+
+    /**
+     * Reads the next value if it is selected, or skips it otherwise. The filter is not applied.
+     *
+     * @param in The reader positioned before the value
+     * @param prefix The flattened path of the value, empty at the document root
+     * @return The value with its unselected parts removed, or null if the whole value was skipped
+     * @throws IOException if the input cannot be read or is malformed
+     */
+    public JsonElement read(JsonReader in, String prefix) throws IOException {
+        return readValue(in, prefix);
+    }
+
+    /**
+     * Returns the number of records the filter has rejected so far.
+     *
+     * @return The rejected record count
+     */
+    public long getRejectedRecordCount() {
+        return rejectedRecords;
+    }
+
+    private JsonElement readValue(JsonReader in, String prefix) throws IOException {
+        JsonToken token = in.peek();
+        boolean nested = token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY;
+        boolean build = isSelected(in, prefix);
+        if (!nested) {
+            if (!build && !needsValue(prefix)) {
+                in.skipValue();
+                return null;
+            }
+            JsonElement value = readPrimitive(in, token);
+            if (!consider(prefix, value)) {
+                return null;
+            }
+            return build ? value : null;
+        }
+        if (!build && !needsContainer(prefix)) {
+            in.skipValue();
+            return null;
+        }
+
+        JsonElement root = begin(in, token, build);
+        open(root, prefix, token == JsonToken.BEGIN_OBJECT);
+        try {
+            while (!containers.isEmpty()) {
+                int top = containers.size() - 1;
+                JsonElement container = containers.get(top);
+                boolean isObject = objects.get(top);
+                if (!in.hasNext()) {
+                    if (isObject) {
+                        in.endObject();
+                    } else {
+                        in.endArray();
+                        arrayDepth--;
+                    }
+                    containers.remove(top);
+                    prefixes.remove(top);
+                    objects.remove(top);
+                    continue;
+                }
+
+                String key = null;
+                String childPrefix = prefixes.get(top);
+                if (isObject) {
+                    key = in.nextName();
+                    childPrefix = JsonFlattener.childPrefix(childPrefix, key);
+                }
+
+                token = in.peek();
+                nested = token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY;
+                build = container != null && isSelected(in, childPrefix);
+                if (!build && !(nested ? needsContainer(childPrefix) : needsValue(childPrefix))) {
+                    in.skipValue();
+                    continue;
+                }
+
+                JsonElement value = nested ? begin(in, token, build) : readPrimitive(in, token);
+                if (!nested && !consider(childPrefix, value)) {
+                    skipRest(in);
+                    return null;
+                }
+                if (build) {
+                    if (key != null) {
+                        container.getAsJsonObject().add(key, value);
+                    } else {
+                        container.getAsJsonArray().add(value);
+                    }
+                }
+                if (nested) {
+                    open(value, childPrefix, token == JsonToken.BEGIN_OBJECT);
+                }
+            }
+        } finally {
+            containers.clear();
+            prefixes.clear();
+            objects.clear();
+            arrayDepth = 0;
+        }
+        return root;
+    }
+
+    private boolean needsValue(String path) {
+        return evaluating && filter.needsValue(path);
+    }
+
+    private boolean needsContainer(String prefix) {
+        return evaluating && filter.needsContainer(prefix);
+    }
+
+    /**
+     * Feeds a scalar to the record evaluation.
+     *
+     * @return false if the record has just been rejected
+     */
+    private boolean consider(String path, JsonElement value) {
+        if (!needsValue(path)) {
+            return true;
+        }
+        if (!evaluation.accept(path, value, arrayDepth > 0)) {
+            rejected = true;
+            evaluating = false;
+            return false;
+        }
+        if (evaluation.isDecided()) {
+            // Accepted whatever follows; the remaining fields need no evaluation
+            evaluating = false;
+        }
+        return true;
+    }
+
+    /**
+     * Skips the remaining tokens of every open container, leaving the reader after the record.
+     */
+    private void skipRest(JsonReader in) throws IOException {
+        for (int i = containers.size() - 1; i >= 0; i--) {
+            boolean isObject = objects.get(i);
+            while (in.hasNext()) {
+                if (isObject) {
+                    in.nextName();
+                }
+                in.skipValue();
+            }
+            if (isObject) {
+                in.endObject();
+            } else {
+                in.endArray();
+            }
+        }
+    }
+
+    private void open(JsonElement container, String prefix, boolean isObject) {
+        containers.add(container);
+        prefixes.add(prefix);
+        objects.add(isObject);
+        if (!isObject) {
+            arrayDepth++;
+        }
+    }
+
+    /**
+     * Consumes the start of an object or array and creates it, unless it is only visited.
+     */
+    private static JsonElement begin(JsonReader in, JsonToken token, boolean build) throws IOException {
+        if (token == JsonToken.BEGIN_OBJECT) {
+            in.beginObject();
+            return build ? new JsonObject() : null;
+        }
+        in.beginArray();
+        return build ? new JsonArray() : null;
+    }
+
+    /**
+     * Reads a string, number, boolean or null the same way Gson's tree model does.
+     */
+    static JsonElement readPrimitive(JsonReader in, JsonToken token) throws IOException {
+        switch (token) {
+            case STRING:
+                return new JsonPrimitive(in.nextString());
+            case NUMBER:
+                return new JsonPrimitive(new LazilyParsedNumber(in.nextString()));
+            case BOOLEAN:
+                return new JsonPrimitive(in.nextBoolean());
+            case NULL:
+                in.nextNull();
+                return JsonNull.INSTANCE;
+            default:
+                throw new IllegalStateException("Unexpected token " + token + " at " + in.getPath());
+        }
+    }
+}
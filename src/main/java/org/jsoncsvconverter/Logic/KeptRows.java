@@ -0,0 +1,103 @@
+package org.jsoncsvconverter.Logic;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The rows left after dropping some of them by position, read from the original rows while
+ * iterated, so the dropped rows are never copied out of a spilled buffer. Only sequential
+ * reading is supported.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+final class KeptRows extends AbstractList<SparseRow> {
+
+    private final List<SparseRow> rows;
+    private final BitSet dropped;
+    private final int size;
+
+    /**
+     * Constructs the rows kept from the given rows.
+     *
+     * @param rows The original rows
+     * @param dropped The positions of the rows to drop
+     */
+    KeptRows(List<SparseRow> rows, BitSet dropped) {
+        this.rows = rows;
+        this.dropped = dropped;
+        this.size = rows.size() - dropped.cardinality();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public SparseRow get(int index) {
+        throw new UnsupportedOperationException("Kept rows can only be iterated.");
+    }
+
+    /**
+     * Maps positions among the original rows to positions among the kept rows. The position of
+     * a dropped row maps to the kept row that follows it, so that a record whose first row was
+     * dropped still starts at its first kept row.
+     *
+     * @param positions Positions among the original rows
+     * @return The positions among the kept rows
+     */
+    BitSet keptPositions(BitSet positions) {
+        BitSet kept = new BitSet();
+        int droppedBefore = 0;
+        int next = dropped.nextSetBit(0);
+        for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+            while (next >= 0 && next < i) {
+                droppedBefore++;
+                next = dropped.nextSetBit(next + 1);
+            }
+            if (i - droppedBefore < size) {
+                kept.set(i - droppedBefore);
+            }
+        }
+        return kept;
+    }
+
+    @Override
+    public Iterator<SparseRow> iterator() {
+        final Iterator<SparseRow> all = rows.iterator();
+        return new Iterator<SparseRow>() {
+            private int index = 0;
+            private SparseRow next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public SparseRow next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                SparseRow row = next;
+                next = advance();
+                return row;
+            }
+
+            private SparseRow advance() {
+                while (all.hasNext()) {
+                    SparseRow row = all.next();
+                    if (!dropped.get(index++)) {
+                        return row;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,177 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges many JSON files into one CSV file whose header is the union of the columns of every
+ * file, such as the per-campus exports of one term. The files are read in two passes:
+ * <ol>
+ *   <li>The first pass only discovers the columns of every file, with the same rules as
+ *   {@link StreamingJsonConverter}, and joins them in order of first appearance: the columns of
+ *   the first file, then the new columns of the second, and so on.</li>
+ *   <li>The second pass writes the joined header once, then converts every file in turn and
+ *   writes its rows, laid out for the joined columns, straight after the rows of the file
+ *   before.</li>
+ * </ol>
+ *
+ * <p>One file is converted at a time, within the row buffer budget of the options, and only the
+ * joined columns are kept between files, so heap use depends on the largest file and the width
+ * of the header but not on the number or the total size of the files.</p>
+ *
+ * <p>Every option of {@link StreamingJsonConverter} applies to each file except the conversion
+ * cache, checkpoints, sort columns, deduplication, the row index and the columnar copy, which
+ * concern the whole output.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * MultiFileJsonConverter converter = new MultiFileJsonConverter(new ConversionOptions());
+ * long rows = converter.merge(Arrays.asList("data/north.json", "data/south.json"), "output/campus.csv");
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class MultiFileJsonConverter {
+
+    private final ConversionOptions options;
+
+    /** Results of the last merge */
+    private String[] headers = new String[0];
+    private Map<String, ColumnType> columnTypes = Collections.emptyMap();
+    private long rowCount = 0;
+    private long rejectedRecordCount = 0;
+    private ColumnStatistics statistics = null;
+
+    /**
+     * Constructs a converter with the given options.
+     *
+     * @param options The options applied to every file
+     * @throws IllegalArgumentException if the options sort or deduplicate the rows, index the
+     *                                  output or copy it to a columnar file, which would span
+     *                                  every file
+     */
+    public MultiFileJsonConverter(ConversionOptions options) {
+        if (options.getSortColumns() != null || options.isDeduplicationEnabled()
+                || options.getRowIndexInterval() > 0 || options.isColumnarOutputEnabled()) {
+            throw new IllegalArgumentException(
+                    "Sorting, deduplication, row indexes and columnar copies are not supported when merging files.");
+        }
+        this.options = options;
+    }
+
+    /**
+     * Merges JSON files into one CSV file.
+     *
+     * @param inputPaths The JSON files to read, encoded in UTF-8, in output order
+     * @param outputPath The CSV file to create
+     * @return The number of data rows written
+     * @throws IllegalArgumentException if there are no input files, or if they produce no column
+     * @throws JsonSyntaxException if an input is malformed
+     * @throws JsonIOException if an input cannot be read
+     * @throws RuntimeException if the CSV file cannot be written
+     */
+    public long merge(List<String> inputPaths, String outputPath) {
+        if (inputPaths == null || inputPaths.isEmpty()) {
+            throw new IllegalArgumentException("At least one input file is required.");
+        }
+        StreamingJsonConverter discovery = new StreamingJsonConverter(options);
+        Set<String> union = new LinkedHashSet<>();
+        for (String inputPath : inputPaths) {
+            union.addAll(Arrays.asList(discovery.discoverHeaders(inputPath)));
+        }
+        headers = union.toArray(new String[0]);
+
+        StreamingJsonConverter converter = new StreamingJsonConverter(options);
+        converter.setLayout(headers);
+        Map<String, ColumnType> types = new HashMap<>();
+        ColumnStatistics stats = options.isStatisticsEnabled() ? new ColumnStatistics(headers) : null;
+        rowCount = 0;
+        rejectedRecordCount = 0;
+        File parent = new File(outputPath).getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new RuntimeException("Error while merging CSV file: " + outputPath,
+                    new IOException("Failed to create directory: " + parent));
+        }
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(outputPath))) {
+            new CSVWriterFile(headers).writeCSVWithSparseRows(output, null, Charset.defaultCharset());
+            for (String inputPath : inputPaths) {
+                rowCount += converter.appendRows(inputPath, output);
+                rejectedRecordCount += converter.getRejectedRecordCount();
+                ColumnType.mergeInto(types, converter.getInferredTypes());
+                if (stats != null) {
+                    stats.merge(converter.getStatistics());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error while merging CSV file: " + outputPath, e);
+        }
+        columnTypes = ColumnType.schema(headers, types);
+        statistics = stats;
+        if (stats != null) {
+            stats.write(ColumnStatistics.sidecarPath(outputPath));
+        }
+        return rowCount;
+    }
+
+    /**
+     * Returns the columns written by the last merge: the union of the columns of every file.
+     *
+     * @return The CSV headers
+     */
+    public String[] getHeadersArray() {
+        return headers.clone();
+    }
+
+    /**
+     * Returns the type of every column written by the last merge, over the values of every file.
+     *
+     * @return An unmodifiable map from header to type, in output order
+     */
+    public Map<String, ColumnType> getColumnTypes() {
+        return columnTypes;
+    }
+
+    /**
+     * Returns the statistics of the columns written by the last merge, which were also saved
+     * next to the CSV file, or null unless statistics are enabled in the options.
+     *
+     * @return The column statistics of the merged output
+     */
+    public ColumnStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns the number of data rows written by the last merge.
+     *
+     * @return The row count
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of records the filter rejected during the last merge, over every file.
+     *
+     * @return The rejected record count
+     */
+    public long getRejectedRecordCount() {
+        return rejectedRecordCount;
+    }
+}
@@ -0,0 +1,415 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts a JSON file to several related CSV files instead of one wide table: every array path
+ * becomes a table of its own, linked to the table holding the array by generated keys. Nested
+ * objects are still flattened into the row of the object that holds them, with the
+ * {@link JsonFlattener#SEPARATOR} between keys, but the rows of one array are never combined with
+ * the rows of another, so the output grows with the input instead of with the product of its
+ * array lengths.
+ *
+ * <p>Tables and keys:</p>
+ * <ul>
+ *   <li>The <strong>root table</strong>, named after the input file, holds one row per record:
+ *   the root object, every element of a root array, or every value of newline-delimited
+ *   JSON.</li>
+ *   <li>An array found at column {@code c} of a table {@code t} is written to the table
+ *   {@code t__c}, or {@code c} when {@code t} is the root table; for example
+ *   {@code students.csv} and {@code students__courses.csv}. Its columns are named relative to
+ *   its elements. Arrays directly inside arrays add their elements to the same table.</li>
+ *   <li>Every row starts with {@value #ID_COLUMN}, its number within its table from 1, and every
+ *   row of an array table with {@value #PARENT_ID_COLUMN}, the {@value #ID_COLUMN} of the row
+ *   holding the array. Primitive elements are written to the {@value #VALUE_COLUMN} column.</li>
+ * </ul>
+ *
+ * <p>The input is read once as a token stream; no record is built as a tree. Rows are collected
+ * per table in {@link RowBuffer}s that share the row buffer budget of the options, the largest
+ * being spilled when they exceed it, and every table is written once the input has been read.
+ * Tables without rows are not written.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * NormalizedJsonConverter converter = new NormalizedJsonConverter(new ConversionOptions());
+ * converter.convert("data/campus.json", "output/campus");
+ * File courses = converter.getTableFiles().get("students__courses");
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class NormalizedJsonConverter {
+
+    /** Column holding the number of a row within its table */
+    public static final String ID_COLUMN = "_id";
+
+    /** Column holding the {@value #ID_COLUMN} of the row whose array produced a row */
+    public static final String PARENT_ID_COLUMN = "_parent_id";
+
+    /** Column holding the primitive elements of an array */
+    public static final String VALUE_COLUMN = "value";
+
+    /** Characters buffered between the input file and the JSON reader */
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final ConversionOptions options;
+
+    /** Tables of the conversion in progress: the root table, then the array tables by path */
+    private Table root;
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+
+    /** Results of the last conversion */
+    private final Map<String, File> tableFiles = new LinkedHashMap<>();
+    private final Map<String, String[]> tableHeaders = new LinkedHashMap<>();
+    private final Map<String, Long> tableRowCounts = new LinkedHashMap<>();
+
+    /**
+     * Constructs a converter with the given options.
+     *
+     * @param options The options controlling the row buffer, nesting limit and statistics
+     * @throws IllegalArgumentException if the options set a projection or a filter, which
+     *                                  select columns of the single wide table
+     */
+    public NormalizedJsonConverter(ConversionOptions options) {
+        if (options.getProjection() != null || options.getFilter() != null) {
+            throw new IllegalArgumentException("Projections and filters are not supported by normalized output.");
+        }
+        this.options = options;
+    }
+
+    /**
+     * Converts a JSON file to one CSV file per table in the given directory.
+     *
+     * @param inputPath The JSON file to read, encoded in UTF-8
+     * @param outputDirectory The directory receiving the CSV files, created if needed
+     * @return The number of data rows written, over all tables
+     * @throws JsonSyntaxException if the input is malformed
+     * @throws JsonIOException if the input cannot be read
+     * @throws RuntimeException if a CSV file cannot be written
+     */
+    public long convert(String inputPath, String outputDirectory) {
+        String name = new File(inputPath).getName();
+        int extension = name.lastIndexOf('.');
+        try (Reader input = new BufferedReader(new InputStreamReader(
+                new FileInputStream(inputPath), StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+            return convert(input, extension > 0 ? name.substring(0, extension) : name, outputDirectory);
+        } catch (IOException e) {
+            throw new JsonIOException("Error while reading JSON file: " + inputPath, e);
+        }
+    }
+
+    /**
+     * Converts JSON read from a character stream to one CSV file per table in the given
+     * directory. The stream is not closed.
+     *
+     * @param input The JSON text
+     * @param rootTable The name of the root table
+     * @param outputDirectory The directory receiving the CSV files, created if needed
+     * @return The number of data rows written, over all tables
+     * @throws JsonSyntaxException if the input is malformed
+     * @throws JsonIOException if the input cannot be read
+     * @throws RuntimeException if a CSV file cannot be written
+     */
+    public long convert(Reader input, String rootTable, String outputDirectory) {
+        tableFiles.clear();
+        tableHeaders.clear();
+        tableRowCounts.clear();
+        root = new Table(rootTable, new RowBuffer(options.getRowBufferBudgetBytes(), options.getSpillDirectory()));
+        try {
+            try (ConversionMetrics.StageTimer timer =
+                         ConversionMetrics.getInstance().start(ConversionMetrics.Stage.FLATTEN, rootTable)) {
+                read(input);
+                long rows = 0;
+                for (Table table : allTables()) {
+                    rows += table.rows.size();
+                }
+                timer.complete(0, rows, tables.size() + 1);
+            }
+            return write(new File(outputDirectory));
+        } finally {
+            for (Table table : allTables()) {
+                table.rows.close();
+            }
+            tables.clear();
+            root = null;
+        }
+    }
+
+    /**
+     * Returns the CSV file written for every table by the last conversion.
+     *
+     * @return An unmodifiable map from table name to file: the root table first, then the array
+     *         tables in discovery order
+     */
+    public Map<String, File> getTableFiles() {
+        return Collections.unmodifiableMap(tableFiles);
+    }
+
+    /**
+     * Returns the columns written to a table by the last conversion.
+     *
+     * @param table The table name
+     * @return The CSV headers, or null if the table was not written
+     */
+    public String[] getHeaders(String table) {
+        String[] headers = tableHeaders.get(table);
+        return headers == null ? null : headers.clone();
+    }
+
+    /**
+     * Returns the number of data rows written to a table by the last conversion.
+     *
+     * @param table The table name
+     * @return The row count, 0 if the table was not written
+     */
+    public long getRowCount(String table) {
+        Long rows = tableRowCounts.get(table);
+        return rows == null ? 0 : rows;
+    }
+
+    /**
+     * Reads every top-level value of the input, walking it with an explicit stack of the open
+     * objects and arrays.
+     */
+    private void read(Reader input) {
+        JsonReader in = new JsonReader(input);
+        in.setStrictness(Strictness.LENIENT);
+        in.setNestingLimit(options.getMaxNestingDepth());
+        List<Frame> stack = new ArrayList<>();
+        try {
+            for (JsonToken token = in.peek(); token != JsonToken.END_DOCUMENT; token = in.peek()) {
+                Frame top = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+                switch (token) {
+                    case NAME:
+                        top.name = in.nextName();
+                        break;
+                    case BEGIN_OBJECT:
+                        in.beginObject();
+                        if (top != null && top.row != null) {
+                            // Nested object - flattened into the row of the enclosing object
+                            stack.add(Frame.nested(top, column(top.prefix, top.name)));
+                        } else {
+                            stack.add(Frame.row(top == null ? root : top.table, top == null ? 0 : top.parentId));
+                        }
+                        break;
+                    case END_OBJECT:
+                        in.endObject();
+                        stack.remove(stack.size() - 1);
+                        if (top.owner) {
+                            top.table.rows.addRow(top.row);
+                            enforceBudget();
+                        }
+                        break;
+                    case BEGIN_ARRAY:
+                        in.beginArray();
+                        if (top == null) {
+                            stack.add(Frame.array(root, 0));
+                        } else if (top.row == null) {
+                            stack.add(Frame.array(top.table, top.parentId));
+                        } else {
+                            stack.add(Frame.array(child(top.table, column(top.prefix, top.name)), top.id));
+                        }
+                        break;
+                    case END_ARRAY:
+                        in.endArray();
+                        stack.remove(stack.size() - 1);
+                        break;
+                    default:
+                        String value;
+                        if (token == JsonToken.NULL) {
+                            in.nextNull();
+                            value = "";
+                        } else if (token == JsonToken.BOOLEAN) {
+                            value = String.valueOf(in.nextBoolean());
+                        } else {
+                            value = in.nextString();
+                        }
+                        if (top != null && top.row != null) {
+                            top.row.put(column(top.prefix, top.name), value);
+                        } else {
+                            Frame element = Frame.row(top == null ? root : top.table, top == null ? 0 : top.parentId);
+                            element.row.put(VALUE_COLUMN, value);
+                            element.table.rows.addRow(element.row);
+                            enforceBudget();
+                        }
+                        break;
+                }
+            }
+        } catch (MalformedJsonException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Returns the table of an array found at a column of another table.
+     */
+    private Table child(Table parent, String column) {
+        return table(parent == root ? column : parent.name + JsonFlattener.SEPARATOR + column);
+    }
+
+    private Table table(String name) {
+        Table table = tables.get(name);
+        if (table == null) {
+            table = new Table(name, new RowBuffer(options.getRowBufferBudgetBytes(), options.getSpillDirectory()));
+            tables.put(name, table);
+        }
+        return table;
+    }
+
+    private List<Table> allTables() {
+        List<Table> all = new ArrayList<>();
+        if (root != null) {
+            all.add(root);
+        }
+        all.addAll(tables.values());
+        return all;
+    }
+
+    /**
+     * Keeps the rows held by all tables within the budget by spilling the largest tables.
+     */
+    private void enforceBudget() {
+        long held = 0;
+        Table largest = null;
+        for (Table table : allTables()) {
+            long bytes = table.rows.getEstimatedHeapBytes();
+            held += bytes;
+            if (largest == null || bytes > largest.rows.getEstimatedHeapBytes()) {
+                largest = table;
+            }
+        }
+        if (held > options.getRowBufferBudgetBytes()) {
+            largest.rows.spillHeldRows();
+        }
+    }
+
+    /**
+     * Writes every table with rows to its own CSV file, named after the table with characters
+     * unsafe in file names replaced. The root table is renamed with a {@code _root} suffix if an
+     * array table has its name.
+     *
+     * @return The number of rows written
+     */
+    private long write(File directory) {
+        long rowCount = 0;
+        Set<String> fileNames = new HashSet<>();
+        for (Table table : allTables()) {
+            if (table.rows.isEmpty()) {
+                continue;
+            }
+            String name = table == root && tables.containsKey(root.name) ? root.name + "_root" : table.name;
+            String base = name.replaceAll("[^A-Za-z0-9._-]", "_");
+            String fileName = base + ".csv";
+            for (int i = 2; !fileNames.add(fileName.toLowerCase()); i++) {
+                fileName = base + "_" + i + ".csv";
+            }
+            File file = new File(directory, fileName);
+            String[] headers = table.rows.getColumns().toArray(new String[0]);
+            ColumnStatistics stats = options.isStatisticsEnabled() ? new ColumnStatistics(headers) : null;
+            new CSVWriterFile(headers).setStatistics(stats)
+                    .createCSVWithSparseRows(file.getPath(), table.rows.sparseView(table.rows.getColumns()));
+            if (stats != null) {
+                stats.write(ColumnStatistics.sidecarPath(file.getPath()));
+            }
+            tableFiles.put(name, file);
+            tableHeaders.put(name, headers);
+            tableRowCounts.put(name, (long) table.rows.size());
+            rowCount += table.rows.size();
+        }
+        return rowCount;
+    }
+
+    private static String column(String prefix, String key) {
+        return prefix.isEmpty() ? key : prefix + JsonFlattener.SEPARATOR + key;
+    }
+
+    /**
+     * One table being collected.
+     */
+    private static final class Table {
+        final String name;
+        final RowBuffer rows;
+        long nextId = 1;
+
+        Table(String name, RowBuffer rows) {
+            this.name = name;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * An open object or array.
+     */
+    private static final class Frame {
+        /** The table of the row being built, or of the elements of an array */
+        Table table;
+        /** The row being built by an object, shared with its nested objects; null for an array */
+        Map<String, String> row;
+        /** True for the object that owns the row, false for its nested objects */
+        boolean owner;
+        /** Column prefix of the members of a nested object */
+        String prefix = "";
+        /** Name of the member being read */
+        String name;
+        /** Key of the row being built */
+        long id;
+        /** Key of the row holding the array, or 0 at the root */
+        long parentId;
+
+        /**
+         * Starts a row of a table, with its keys.
+         */
+        static Frame row(Table table, long parentId) {
+            Frame frame = new Frame();
+            frame.table = table;
+            frame.owner = true;
+            frame.id = table.nextId++;
+            frame.row = new LinkedHashMap<>();
+            frame.row.put(ID_COLUMN, String.valueOf(frame.id));
+            if (parentId > 0) {
+                frame.row.put(PARENT_ID_COLUMN, String.valueOf(parentId));
+            }
+            return frame;
+        }
+
+        static Frame nested(Frame parent, String prefix) {
+            Frame frame = new Frame();
+            frame.table = parent.table;
+            frame.row = parent.row;
+            frame.id = parent.id;
+            frame.prefix = prefix;
+            return frame;
+        }
+
+        static Frame array(Table table, long parentId) {
+            Frame frame = new Frame();
+            frame.table = table;
+            frame.parentId = parentId;
+            return frame;
+        }
+    }
+}
@@ -0,0 +1,814 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts one large JSON file to CSV on several threads. A {@link StructuralIndex} pre-pass
+ * finds the record boundaries, the records are cut into byte ranges of similar size, and every
+ * range is parsed and flattened on its own thread into its own {@link RowBuffer}. The ranges are
+ * then merged in document order under the union of their headers, so the CSV is identical to the
+ * one {@link StreamingJsonConverter} writes for the same options.
+ *
+ * <p>What runs in parallel depends on the layout of the file:</p>
+ * <ul>
+ *   <li><strong>Array root and newline-delimited JSON:</strong> all records.</li>
+ *   <li><strong>Object root:</strong> the elements of root-level arrays of objects. The other
+ *   members (scalars, nested objects and primitive arrays) are read on the calling thread.</li>
+ * </ul>
+ * <p>Any other input, input the index cannot {@linkplain StructuralIndex#isSplittable() split},
+ * or a parallelism of one, is converted by {@link StreamingJsonConverter}.</p>
+ *
+ * <p>The row buffer budget of the options is shared equally by the ranges. Threads are started
+ * per conversion and stopped when it ends.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * ConversionOptions options = new ConversionOptions()
+ *         .setParallelism(Runtime.getRuntime().availableProcessors());
+ * long rows = new ParallelJsonConverter(options).convert("data/students.json", "output/students.csv");
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ParallelJsonConverter {
+
+    /** Ranges per thread, so a slow range does not leave the other threads idle */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /** Bytes read from the file per positional read of a range */
+    private static final int RANGE_BUFFER_SIZE = 1 << 16;
+
+    private final ConversionOptions options;
+    private long granularity = StructuralIndex.DEFAULT_GRANULARITY;
+
+    /** Results of the last conversion */
+    private String[] headers = new String[0];
+    private Map<String, ColumnType> columnTypes = Collections.emptyMap();
+    private long rowCount = 0;
+    private long rejectedRecordCount = 0;
+    private int maxRowExplosion = 0;
+    private int rangeCount = 0;
+    private ColumnStatistics statistics = null;
+
+    /**
+     * Constructs a converter with the given options.
+     *
+     * @param options The options; {@link ConversionOptions#getParallelism()} sets the thread count
+     */
+    public ParallelJsonConverter(ConversionOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Sets the minimum distance between the boundaries recorded by the pre-pass, which is also
+     * the smallest range handed to a thread.
+     *
+     * @param granularity The distance in bytes. Must be positive.
+     * @return This converter
+     */
+    public ParallelJsonConverter setGranularity(long granularity) {
+        if (granularity <= 0) {
+            throw new IllegalArgumentException("Granularity must be positive.");
+        }
+        this.granularity = granularity;
+        return this;
+    }
+
+    /**
+     * Converts a JSON file to a CSV file.
+     *
+     * @param inputPath The JSON file to read, encoded in UTF-8
+     * @param outputPath The CSV file to create
+     * @return The number of data rows written
+     * @throws JsonSyntaxException if the input is malformed
+     * @throws JsonIOException if the input cannot be read
+     * @throws RuntimeException if the CSV file cannot be written
+     * @see ConversionOptions#setConversionCache(ConversionCache)
+     */
+    public long convert(String inputPath, String outputPath) {
+        ConversionCache cache = options.getConversionCache();
+        if (cache == null) {
+            return convertUncached(inputPath, outputPath);
+        }
+        String key = StreamingJsonConverter.cacheKey(cache, inputPath, options);
+        ConversionCache.Entry cached = StreamingJsonConverter.restoreFromCache(cache, key, outputPath, options);
+        if (cached != null) {
+            headers = cached.headers.clone();
+            columnTypes = cached.columnTypes;
+            rowCount = cached.rowCount;
+            rejectedRecordCount = cached.rejectedRecordCount;
+            maxRowExplosion = cached.maxRowExplosion;
+            rangeCount = 0;
+            statistics = null;
+            return rowCount;
+        }
+        convertUncached(inputPath, outputPath);
+        StreamingJsonConverter.addToCache(cache, key, outputPath, new ConversionCache.Entry(headers, columnTypes,
+                rowCount, rejectedRecordCount, maxRowExplosion, statistics != null));
+        return rowCount;
+    }
+
+    private long convertUncached(String inputPath, String outputPath) {
+        Path file = Paths.get(inputPath);
+        StructuralIndex index;
+        StructuralIndex.Layout layout;
+        try {
+            index = options.getParallelism() > 1 ? StructuralIndex.build(file, granularity) : null;
+            layout = index == null ? null : index.getLayout();
+            if (layout == StructuralIndex.Layout.SEQUENCE && !Utf8CsvConverter.isSequence(inputPath)) {
+                // A second value past the lookahead, which the streaming converter rejects
+                layout = null;
+            }
+        } catch (IOException e) {
+            throw new JsonIOException("Error while reading JSON file: " + inputPath, e);
+        }
+        if ((layout != StructuralIndex.Layout.ARRAY && layout != StructuralIndex.Layout.SEQUENCE
+                && layout != StructuralIndex.Layout.OBJECT) || !index.isSplittable()) {
+            return convertSequentially(inputPath, outputPath);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(options.getParallelism());
+        Merge merge = new Merge();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            try (ConversionMetrics.StageTimer timer =
+                         ConversionMetrics.getInstance().start(ConversionMetrics.Stage.FLATTEN, inputPath)) {
+                if (layout == StructuralIndex.Layout.OBJECT) {
+                    convertRootObject(index, channel, executor, merge);
+                } else {
+                    merge.submitted.addAll(submit(index.getElements(), "",
+                            layout == StructuralIndex.Layout.ARRAY, 1, channel, executor));
+                    merge.collect();
+                }
+                headers = merge.collectColumns().toArray(new String[0]);
+                columnTypes = ColumnType.schema(headers, merge.collectTypes());
+                rowCount = merge.rowCount();
+                rejectedRecordCount = merge.rejected;
+                maxRowExplosion = merge.maxRowExplosion;
+                rangeCount = merge.ranges.size();
+                timer.complete(index.getFileSize(), rowCount, headers.length, maxRowExplosion);
+            }
+            ColumnStatistics stats = options.isStatisticsEnabled() ? new ColumnStatistics(headers) : null;
+            rowCount = StreamingJsonConverter.writeRows(outputPath, headers, columnTypes, merge.rows(headers),
+                    merge.recordStarts(), stats, options);
+            statistics = stats;
+            if (stats != null) {
+                stats.write(ColumnStatistics.sidecarPath(outputPath));
+            }
+            return rowCount;
+        } catch (IOException e) {
+            throw new JsonIOException("Error while reading JSON file: " + inputPath, e);
+        } finally {
+            executor.shutdownNow();
+            merge.close();
+        }
+    }
+
+    /**
+     * Returns the columns written by the last conversion, in output order.
+     *
+     * @return The CSV headers
+     */
+    public String[] getHeadersArray() {
+        return headers.clone();
+    }
+
+    /**
+     * Returns the type of every column written by the last conversion, merged across ranges.
+     *
+     * @return An unmodifiable map from header to type, in output order
+     * @see StreamingJsonConverter#getColumnTypes()
+     */
+    public Map<String, ColumnType> getColumnTypes() {
+        return columnTypes;
+    }
+
+    /**
+     * Returns the statistics of the columns written by the last conversion, which were also
+     * saved next to the CSV.
+     *
+     * @return The statistics, or null unless {@link ConversionOptions#isStatisticsEnabled()} or
+     *         after a cache hit
+     * @see StreamingJsonConverter#getStatistics()
+     */
+    public ColumnStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns the number of data rows written by the last conversion.
+     *
+     * @return The row count
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of records the filter rejected during the last conversion.
+     *
+     * @return The rejected record count, 0 when no filter is set
+     */
+    public long getRejectedRecordCount() {
+        return rejectedRecordCount;
+    }
+
+    /**
+     * Returns the largest number of rows that a single record expanded into during the last
+     * conversion.
+     *
+     * @return The largest per-record row count
+     */
+    public int getMaxRowExplosion() {
+        return maxRowExplosion;
+    }
+
+    /**
+     * Returns the number of byte ranges parsed in parallel by the last conversion.
+     *
+     * @return The range count, 0 when the file was converted sequentially
+     */
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    private long convertSequentially(String inputPath, String outputPath) {
+        StreamingJsonConverter converter = new StreamingJsonConverter(options);
+        long rows = converter.convertUncached(inputPath, outputPath);
+        headers = converter.getHeadersArray();
+        columnTypes = converter.getColumnTypes();
+        statistics = converter.getStatistics();
+        rowCount = rows;
+        rejectedRecordCount = converter.getRejectedRecordCount();
+        maxRowExplosion = converter.getMaxRowExplosion();
+        rangeCount = 0;
+        return rows;
+    }
+
+    /**
+     * Converts an object root. Arrays whose first element is an object, an array or null hold
+     * records and are split into ranges; every other member is read here, in document order,
+     * while the ranges are being parsed.
+     */
+    private void convertRootObject(StructuralIndex index, FileChannel channel, ExecutorService executor,
+                                   Merge merge) throws IOException {
+        JsonTreeReader treeReader = newTreeReader();
+        JsonFlattener flattener = new JsonFlattener(options);
+        Map<String, String> scalarData = new LinkedHashMap<>();
+        Map<String, List<String>> primitiveArrays = new LinkedHashMap<>();
+        int recordArrays = 0;
+        for (StructuralIndex.Member member : index.getMembers()) {
+            if (member.getElements() != null && holdsRecords(member.getElements().getFirstByte())) {
+                recordArrays++;
+            }
+        }
+
+        for (StructuralIndex.Member member : index.getMembers()) {
+            JsonReader in = newJsonReader(channel, member.getStart(), member.getEnd(), '{', '}');
+            try {
+                in.beginObject();
+                String key = in.nextName();
+                if (!treeReader.isSelected(in, key)) {
+                    continue;
+                }
+                StructuralIndex.Elements elements = member.getElements();
+                JsonToken token = in.peek();
+                if (elements != null && holdsRecords(elements.getFirstByte())) {
+                    merge.submitted.addAll(submit(elements, key, true, recordArrays, channel, executor));
+                } else if (token == JsonToken.BEGIN_ARRAY) {
+                    readRootArray(in, key, treeReader, flattener, primitiveArrays, merge, recordArrays + 1);
+                    StreamingJsonConverter.joinPrimitiveArray(key, scalarData, primitiveArrays, options);
+                } else if (token == JsonToken.BEGIN_OBJECT) {
+                    flattener.flatten(treeReader.read(in, key), key, row -> row.copyInto(scalarData));
+                } else {
+                    JsonElement value = treeReader.read(in, key);
+                    scalarData.put(key, value.isJsonNull() ? "" : value.getAsString());
+                }
+            } catch (MalformedJsonException | NumberFormatException | IllegalStateException e) {
+                throw new JsonSyntaxException(e);
+            } finally {
+                in.close();
+            }
+        }
+        merge.rejected += treeReader.getRejectedRecordCount();
+
+        merge.collect();
+        boolean objectRows = merge.hasRows();
+        merge.tail = new RowBuffer(options.getRowBufferBudgetBytes(), options.getSpillDirectory());
+        merge.leadingRow = StreamingJsonConverter.finishRootObject(scalarData, primitiveArrays,
+                merge.firstRow(), objectRows, merge.tail);
+    }
+
+    /**
+     * Reads a root-level array that the index did not classify as records. As in
+     * {@link StreamingJsonConverter}, the first element that survives the projection and the
+     * filter decides the kind of array: primitive values are collected, while the records of an
+     * array whose first kept element is an object become a range of their own.
+     */
+    private void readRootArray(JsonReader in, String key, JsonTreeReader treeReader, JsonFlattener flattener,
+                               Map<String, List<String>> primitiveArrays, Merge merge, int recordArrays)
+            throws IOException {
+        List<String> values = null;
+        RangeResult records = null;
+        in.beginArray();
+        while (in.hasNext()) {
+            JsonElement item = treeReader.readRecord(in, key);
+            if (item == null) {
+                continue;
+            }
+            if (values == null && records == null) {
+                if (item.isJsonPrimitive()) {
+                    values = new ArrayList<>();
+                } else {
+                    records = new RangeResult(new RowBuffer(rangeBudget(1, recordArrays), options.getSpillDirectory()));
+                    merge.submitted.add(CompletableFuture.completedFuture(records));
+                }
+            }
+            if (values != null) {
+                values.add(item.getAsString());
+            } else {
+                records.add(flattener, item, key);
+            }
+        }
+        in.endArray();
+        if (values != null) {
+            primitiveArrays.put(key, values);
+        }
+    }
+
+    /**
+     * Tells whether an array starting with the given byte holds records rather than primitive
+     * values. Null elements count as records, as they do for {@link JsonFlattener}.
+     */
+    private static boolean holdsRecords(byte firstByte) {
+        return firstByte == '{' || firstByte == '[' || firstByte == 'n';
+    }
+
+    private List<Future<RangeResult>> submit(StructuralIndex.Elements elements, String prefix, boolean array,
+                                             int arrays,
+                                             FileChannel channel, ExecutorService executor) {
+        List<StructuralIndex.Range> ranges = elements.split(options.getParallelism() * RANGES_PER_THREAD);
+        long budget = rangeBudget(ranges.size(), arrays);
+        List<Future<RangeResult>> futures = new ArrayList<>(ranges.size());
+        for (StructuralIndex.Range range : ranges) {
+            if (range.getElementCount() == 0) {
+                // Only whitespace, which a sequence reader would reject as an empty document
+                continue;
+            }
+            futures.add(executor.submit(() -> parseRange(channel, range, prefix, array, budget)));
+        }
+        return futures;
+    }
+
+    /**
+     * Parses the records of one range with its own reader, flattener and buffer. The first row is
+     * kept apart because, for an object root, the first row of the first range becomes the
+     * leading row.
+     */
+    private RangeResult parseRange(FileChannel channel, StructuralIndex.Range range, String prefix,
+                                   boolean array, long budget) throws IOException {
+        JsonTreeReader treeReader = newTreeReader();
+        JsonFlattener flattener = new JsonFlattener(options);
+        RangeResult result = new RangeResult(new RowBuffer(budget, options.getSpillDirectory()));
+        JsonReader in = newJsonReader(channel, range.getStart(), range.getEnd(),
+                array ? '[' : 0, array ? ']' : 0);
+        try {
+            if (array) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    checkInterrupted();
+                    result.add(flattener, treeReader.readRecord(in, prefix), prefix);
+                }
+                in.endArray();
+            } else {
+                for (JsonToken token = in.peek(); token != JsonToken.END_DOCUMENT; token = in.peek()) {
+                    checkInterrupted();
+                    if (token == JsonToken.BEGIN_ARRAY) {
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            result.add(flattener, treeReader.readRecord(in, prefix), prefix);
+                        }
+                        in.endArray();
+                    } else {
+                        result.add(flattener, treeReader.readRecord(in, prefix), prefix);
+                    }
+                }
+            }
+            result.rejected = treeReader.getRejectedRecordCount();
+            return result;
+        } catch (MalformedJsonException | NumberFormatException e) {
+            result.rows.close();
+            throw new JsonSyntaxException(e);
+        } catch (IOException | RuntimeException e) {
+            result.rows.close();
+            throw e;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Stops a range early once the conversion has failed elsewhere.
+     */
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Parallel conversion cancelled");
+        }
+    }
+
+    /**
+     * Shares the row buffer budget equally between the arrays of records and then between the
+     * ranges of each array, since every range keeps its rows until the merge.
+     */
+    private long rangeBudget(int ranges, int arrays) {
+        long parts = (long) Math.max(ranges, options.getParallelism() * RANGES_PER_THREAD) * Math.max(1, arrays);
+        return Math.max(1, options.getRowBufferBudgetBytes() / parts);
+    }
+
+    private JsonTreeReader newTreeReader() {
+        return new JsonTreeReader(options.getProjection(), options.getFilter());
+    }
+
+    private JsonReader newJsonReader(FileChannel channel, long start, long end, int before, int after) {
+        JsonReader in = new JsonReader(new BufferedReader(new InputStreamReader(
+                new RangeInputStream(channel, start, end, before, after), StandardCharsets.UTF_8)));
+        in.setStrictness(Strictness.LENIENT);
+        in.setNestingLimit(options.getMaxNestingDepth());
+        return in;
+    }
+
+    /**
+     * Waits for a range, rethrowing what its parsing threw.
+     */
+    private static RangeResult await(Future<RangeResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JsonIOException("Interrupted while converting in parallel", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * The rows flattened from one range: the first row, kept as a map, and the others.
+     */
+    private static final class RangeResult {
+
+        private final RowBuffer rows;
+        private Map<String, String> firstRow;
+        private long rejected;
+        private int maxRowExplosion;
+        private int itemRows;
+
+        RangeResult(RowBuffer rows) {
+            this.rows = rows;
+        }
+
+        void add(JsonFlattener flattener, JsonElement record, String prefix) {
+            if (record == null) {
+                return;
+            }
+            itemRows = 0;
+            if (firstRow != null) {
+                rows.startRecord();
+            }
+            flattener.flatten(record, prefix, row -> {
+                if (firstRow == null) {
+                    firstRow = row.toMap();
+                } else {
+                    rows.addRow(row);
+                }
+                itemRows++;
+            });
+            maxRowExplosion = Math.max(maxRowExplosion, itemRows);
+        }
+
+        long rowCount() {
+            return rows.size() + (firstRow == null ? 0 : 1);
+        }
+    }
+
+    /**
+     * The range results in document order, followed for an object root by the rows completed on
+     * the calling thread.
+     */
+    private final class Merge {
+
+        private final List<Future<RangeResult>> submitted = new ArrayList<>();
+        private final List<RangeResult> ranges = new ArrayList<>();
+        private Map<String, String> leadingRow;
+        private RowBuffer tail;
+        private long rejected;
+        private int maxRowExplosion;
+
+        /**
+         * Waits for the submitted ranges in document order.
+         */
+        void collect() throws IOException {
+            for (int i = ranges.size(); i < submitted.size(); i++) {
+                RangeResult result = await(submitted.get(i));
+                ranges.add(result);
+                rejected += result.rejected;
+                maxRowExplosion = Math.max(maxRowExplosion, result.maxRowExplosion);
+            }
+        }
+
+        boolean hasRows() {
+            for (RangeResult range : ranges) {
+                if (range.firstRow != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Removes and returns the first row of the first non-empty range.
+         */
+        Map<String, String> firstRow() {
+            for (RangeResult range : ranges) {
+                if (range.firstRow != null) {
+                    Map<String, String> first = range.firstRow;
+                    range.firstRow = null;
+                    return first;
+                }
+            }
+            return null;
+        }
+
+        long rowCount() {
+            long count = leadingRow == null ? 0 : 1;
+            for (RangeResult range : ranges) {
+                count += range.rowCount();
+            }
+            return count + (tail == null ? 0 : tail.size());
+        }
+
+        Map<String, ColumnType> collectTypes() {
+            Map<String, ColumnType> types = new LinkedHashMap<>();
+            if (leadingRow != null) {
+                ColumnType.inferInto(types, leadingRow);
+            }
+            for (RangeResult range : ranges) {
+                if (range.firstRow != null) {
+                    ColumnType.inferInto(types, range.firstRow);
+                }
+                ColumnType.mergeInto(types, range.rows.getColumnTypes());
+            }
+            if (tail != null) {
+                ColumnType.mergeInto(types, tail.getColumnTypes());
+            }
+            return types;
+        }
+
+        List<String> collectColumns() {
+            Set<String> discovered = new LinkedHashSet<>();
+            if (leadingRow != null) {
+                discovered.addAll(leadingRow.keySet());
+            }
+            for (RangeResult range : ranges) {
+                if (range.firstRow != null) {
+                    discovered.addAll(range.firstRow.keySet());
+                }
+                discovered.addAll(range.rows.getColumns());
+            }
+            if (tail != null) {
+                discovered.addAll(tail.getColumns());
+            }
+            List<String> columns = new ArrayList<>(discovered);
+            ColumnProjection projection = options.getProjection();
+            return projection == null ? columns : projection.selectHeaders(columns);
+        }
+
+        List<SparseRow> rows(String[] columns) {
+            List<String> order = Arrays.asList(columns);
+            List<List<SparseRow>> parts = new ArrayList<>();
+            if (leadingRow != null) {
+                parts.add(Collections.singletonList(SparseRow.of(leadingRow, columns)));
+            }
+            for (RangeResult range : ranges) {
+                if (range.firstRow != null) {
+                    parts.add(Collections.singletonList(SparseRow.of(range.firstRow, columns)));
+                }
+                parts.add(range.rows.sparseView(order));
+            }
+            if (tail != null) {
+                parts.add(tail.sparseView(order));
+            }
+            return new ConcatenatedList<>(parts);
+        }
+
+        /**
+         * Returns the positions of the rows that start a record, in the order of {@link #rows}.
+         */
+        BitSet recordStarts() {
+            BitSet starts = new BitSet();
+            int offset = 0;
+            if (leadingRow != null) {
+                starts.set(offset++);
+            }
+            for (RangeResult range : ranges) {
+                if (range.firstRow != null) {
+                    starts.set(offset++);
+                }
+                range.rows.copyRecordStarts(starts, offset);
+                offset += range.rows.size();
+            }
+            if (tail != null) {
+                tail.copyRecordStarts(starts, offset);
+            }
+            return starts;
+        }
+
+        /**
+         * Releases the buffers of every range, including ranges that finished after a failure.
+         */
+        void close() {
+            for (RangeResult range : ranges) {
+                range.rows.close();
+            }
+            for (int i = ranges.size(); i < submitted.size(); i++) {
+                Future<RangeResult> future = submitted.get(i);
+                future.cancel(true);
+                if (future.isDone() && !future.isCancelled()) {
+                    try {
+                        future.get().rows.close();
+                    } catch (InterruptedException | ExecutionException e) {
+                        // The range released its own buffer when it failed
+                    }
+                }
+            }
+            if (tail != null) {
+                tail.close();
+            }
+        }
+    }
+
+    /**
+     * A read-only list made of several lists one after the other.
+     */
+    private static final class ConcatenatedList<T> extends AbstractList<T> {
+
+        private final List<List<T>> parts;
+        private final int size;
+
+        ConcatenatedList(List<List<T>> parts) {
+            this.parts = parts;
+            long total = 0;
+            for (List<T> part : parts) {
+                total += part.size();
+            }
+            this.size = (int) Math.min(Integer.MAX_VALUE, total);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public T get(int index) {
+            for (List<T> part : parts) {
+                if (index < part.size()) {
+                    return part.get(index);
+                }
+                index -= part.size();
+            }
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            final Iterator<List<T>> remaining = parts.iterator();
+            return new Iterator<T>() {
+                private Iterator<T> current = Collections.emptyIterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!current.hasNext() && remaining.hasNext()) {
+                        current = remaining.next().iterator();
+                    }
+                    return current.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return current.next();
+                }
+            };
+        }
+    }
+
+    /**
+     * Reads a byte range of a file with positional reads, so several ranges can be read through
+     * one channel at once, optionally surrounded by one byte before and one after.
+     */
+    private static final class RangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long end;
+        private final ByteBuffer buffer = ByteBuffer.allocate(RANGE_BUFFER_SIZE);
+        private long position;
+        private int before;
+        private int after;
+
+        RangeInputStream(FileChannel channel, long start, long end, int before, int after) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            this.before = before;
+            this.after = after;
+            buffer.limit(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (before != 0) {
+                target[offset] = (byte) before;
+                before = 0;
+                return 1;
+            }
+            if (!buffer.hasRemaining() && position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("File ended before byte " + end);
+                }
+                position += read;
+                buffer.flip();
+            }
+            if (buffer.hasRemaining()) {
+                int count = Math.min(length, buffer.remaining());
+                buffer.get(target, offset, count);
+                return count;
+            }
+            if (after != 0) {
+                target[offset] = (byte) after;
+                after = 0;
+                return 1;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.JsonIOException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs conversions as a filter in a shell pipeline: JSON from standard input or a file, CSV to
+ * standard output or a file, for example
+ * {@code zcat campus.json.gz | java -jar converter.jar - - | split -l 1000000}.
+ *
+ * <p>Either side given as {@value #STANDARD_STREAM} is read from or written to the standard
+ * stream through its file descriptor, with buffers of {@value #STREAM_BUFFER_SIZE} bytes, rather
+ * than through {@link System#in} and {@link System#out}, whose small buffers and per-call locking
+ * slow down large transfers. Nothing but the CSV text is written to the output, so it can feed the
+ * next command; errors go to the error stream and the exit status.</p>
+ *
+ * <p>Streams are converted with the Gson path of {@link StreamingJsonConverter}, which reads its
+ * input once; the CSV header depends on every record, so rows are held until the input ends,
+ * within the row buffer budget of the options. File to file conversions run as usual, including
+ * the byte-level path and the conversion cache.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * PipelineConverter converter = new PipelineConverter(new ConversionOptions());
+ * long rows = converter.convert(System.in, System.out);
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class PipelineConverter {
+
+    /** The path that stands for standard input or standard output */
+    public static final String STANDARD_STREAM = "-";
+
+    /** Buffer size for the standard streams */
+    public static final int STREAM_BUFFER_SIZE = 1 << 20;
+
+    private static final String USAGE = "Usage: [input.json|-] [output.csv|-]"
+            + " (reads standard input and writes standard output when omitted)";
+
+    private final ConversionOptions options;
+
+    /**
+     * Constructs a converter with the given options.
+     *
+     * @param options The conversion options
+     */
+    public PipelineConverter(ConversionOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Converts JSON read from a stream to CSV written to a stream. Neither stream is closed;
+     * the output is flushed.
+     *
+     * @param input The JSON text, encoded in UTF-8
+     * @param output The stream receiving the CSV text
+     * @return The number of data rows written
+     * @throws com.google.gson.JsonSyntaxException if the input is malformed
+     * @throws JsonIOException if the input cannot be read
+     * @throws RuntimeException if the CSV cannot be written
+     */
+    public long convert(InputStream input, OutputStream output) {
+        Reader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), STREAM_BUFFER_SIZE);
+        OutputStream buffered = new BufferedOutputStream(output, STREAM_BUFFER_SIZE);
+        long rows = new StreamingJsonConverter(options).convert(reader, STANDARD_STREAM, buffered);
+        try {
+            buffered.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Error while writing CSV stream", e);
+        }
+        return rows;
+    }
+
+    /**
+     * Converts between files or standard streams.
+     *
+     * @param inputPath The JSON file to read, or {@value #STANDARD_STREAM} for the given input
+     * @param outputPath The CSV file to create, or {@value #STANDARD_STREAM} for the given output
+     * @param standardInput The stream read for {@value #STANDARD_STREAM} input
+     * @param standardOutput The stream written for {@value #STANDARD_STREAM} output
+     * @return The number of data rows written
+     * @throws com.google.gson.JsonSyntaxException if the input is malformed
+     * @throws JsonIOException if the input cannot be read
+     * @throws RuntimeException if the CSV cannot be written
+     */
+    public long convert(String inputPath, String outputPath, InputStream standardInput, OutputStream standardOutput) {
+        boolean fromStream = STANDARD_STREAM.equals(inputPath);
+        boolean toStream = STANDARD_STREAM.equals(outputPath);
+        if (!fromStream && !toStream) {
+            return new StreamingJsonConverter(options).convert(inputPath, outputPath);
+        }
+        if (fromStream && toStream) {
+            return convert(standardInput, standardOutput);
+        }
+        if (fromStream) {
+            Reader reader = new BufferedReader(new InputStreamReader(standardInput, StandardCharsets.UTF_8),
+                    STREAM_BUFFER_SIZE);
+            return new StreamingJsonConverter(options).convert(reader, STANDARD_STREAM, outputPath);
+        }
+        try (InputStream input = new BufferedInputStream(new FileInputStream(inputPath), STREAM_BUFFER_SIZE)) {
+            return convert(input, standardOutput);
+        } catch (IOException e) {
+            throw new JsonIOException("Error while reading JSON file: " + inputPath, e);
+        }
+    }
+
+    /**
+     * Runs a conversion from command line arguments, with the standard streams of the process.
+     *
+     * @param args The input and output paths, each {@value #STANDARD_STREAM} or omitted for the
+     *             standard stream
+     * @return The exit status: 0 on success, 1 if the conversion failed, 2 for invalid arguments
+     */
+    public static int run(String[] args) {
+        return run(args, new FileInputStream(FileDescriptor.in), new FileOutputStream(FileDescriptor.out),
+                System.err);
+    }
+
+    /**
+     * Runs a conversion from command line arguments, with the given streams.
+     *
+     * @param args The input and output paths, each {@value #STANDARD_STREAM} or omitted for the
+     *             standard stream
+     * @param standardInput The stream read for {@value #STANDARD_STREAM} input
+     * @param standardOutput The stream written for {@value #STANDARD_STREAM} output
+     * @param errors The stream receiving usage and error messages
+     * @return The exit status: 0 on success, 1 if the conversion failed, 2 for invalid arguments
+     */
+    public static int run(String[] args, InputStream standardInput, OutputStream standardOutput, PrintStream errors) {
+        if (args.length == 1 && ("--help".equals(args[0]) || "-h".equals(args[0]))) {
+            errors.println(USAGE);
+            return 0;
+        }
+        if (args.length > 2) {
+            errors.println(USAGE);
+            return 2;
+        }
+        String inputPath = args.length > 0 ? args[0] : STANDARD_STREAM;
+        String outputPath = args.length > 1 ? args[1] : STANDARD_STREAM;
+        try {
+            new PipelineConverter(new ConversionOptions()).convert(inputPath, outputPath, standardInput, standardOutput);
+            return 0;
+        } catch (RuntimeException e) {
+            errors.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+}
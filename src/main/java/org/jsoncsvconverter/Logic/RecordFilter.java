@@ -0,0 +1,604 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A filter expression over flattened paths that decides which records are converted.
+ * Readers evaluate it while a record is being read: as soon as the fields read so far decide the
+ * outcome, a rejected record is abandoned and the rest of its tokens are skipped, so discarded
+ * records are never built, flattened or written.
+ *
+ * <p>Grammar (keywords are case-insensitive):</p>
+ * <pre>
+ * expression := term ( ( "or" | "||" ) term )*
+ * term       := factor ( ( "and" | "&amp;&amp;" ) factor )*
+ * factor     := ( "not" | "!" ) factor | "(" expression ")" | comparison
+ * comparison := path ( "==" | "!=" | "&lt;" | "&lt;=" | "&gt;" | "&gt;=" ) literal
+ *             | path [ "not" ] "in" "(" literal ( "," literal )* ")"
+ * literal    := "string" | number | true | false | null
+ * </pre>
+ *
+ * <p>Paths are flattened column names, exactly as they appear in the CSV header, e.g.
+ * {@code status == "active" and campus in ("North", "South")} for array-root input, or
+ * {@code students__gpa >= 3.5} for a campus document whose records sit in a root-level
+ * {@code students} array.</p>
+ *
+ * <p>Semantics:</p>
+ * <ul>
+ *   <li>A record is an element of an array at the document root, an element of an array member
+ *   of the root object, or a top-level value of newline-delimited input. Records whose path has
+ *   nothing in common with the paths of the expression are not filtered.</li>
+ *   <li>A missing field or JSON null only satisfies {@code == null}; every other comparison with
+ *   it is false.</li>
+ *   <li>Numbers compare numerically, strings lexicographically, booleans only for equality.</li>
+ *   <li>A path below an array of the record may have several values; a comparison on it is true
+ *   when any value satisfies it.</li>
+ * </ul>
+ *
+ * <p>Instances are immutable and may be shared between threads; each reader evaluates records
+ * through its own {@link Evaluation}.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public final class RecordFilter {
+
+    /** Three-valued results of a partially evaluated expression */
+    static final int FALSE = 0;
+    static final int TRUE = 1;
+    static final int UNKNOWN = 2;
+
+    private final String expression;
+    private final Node root;
+    private final List<Comparison> comparisons;
+    private final Map<String, int[]> comparisonsByPath = new HashMap<>();
+    private final Set<String> pathPrefixes = new LinkedHashSet<>();
+
+    private RecordFilter(String expression, Node root, List<Comparison> comparisons) {
+        this.expression = expression;
+        this.root = root;
+        this.comparisons = comparisons;
+
+        Map<String, List<Integer>> byPath = new HashMap<>();
+        for (Comparison comparison : comparisons) {
+            byPath.computeIfAbsent(comparison.path, k -> new ArrayList<>()).add(comparison.index);
+            String path = comparison.path;
+            int end = path.indexOf(JsonFlattener.SEPARATOR);
+            while (end >= 0) {
+                pathPrefixes.add(path.substring(0, end));
+                end = path.indexOf(JsonFlattener.SEPARATOR, end + JsonFlattener.SEPARATOR.length());
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : byPath.entrySet()) {
+            int[] indexes = new int[entry.getValue().size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = entry.getValue().get(i);
+            }
+            comparisonsByPath.put(entry.getKey(), indexes);
+        }
+    }
+
+    /**
+     * Parses a filter expression.
+     *
+     * @param expression The expression, e.g. {@code status == "active" and gpa >= 3}
+     * @return The filter
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    public static RecordFilter parse(String expression) {
+        Parser parser = new Parser(expression);
+        Node root = parser.parseExpression();
+        parser.expectEnd();
+        return new RecordFilter(expression, root, Collections.unmodifiableList(parser.comparisons));
+    }
+
+    /**
+     * Returns the paths the expression reads.
+     *
+     * @return The distinct paths, in no particular order
+     */
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(comparisonsByPath.keySet());
+    }
+
+    /**
+     * Tells whether records found at the given path are subject to this filter, which is the
+     * case when one of the expression's paths lies at or below it.
+     *
+     * @param recordPrefix The flattened path of the record, empty for top-level records
+     * @return true if the record must be evaluated
+     */
+    public boolean appliesTo(String recordPrefix) {
+        return recordPrefix.isEmpty() || comparisonsByPath.containsKey(recordPrefix)
+                || pathPrefixes.contains(recordPrefix);
+    }
+
+    /**
+     * Tells whether a container at the given path may hold a field the expression reads.
+     *
+     * @param prefix The flattened path of an object or array
+     * @return true if the reader has to look inside
+     */
+    public boolean needsContainer(String prefix) {
+        return prefix.isEmpty() || comparisonsByPath.containsKey(prefix) || pathPrefixes.contains(prefix);
+    }
+
+    /**
+     * Tells whether the expression reads a scalar at the given path.
+     *
+     * @param path The flattened column name
+     * @return true if a comparison uses the path
+     */
+    public boolean needsValue(String path) {
+        return comparisonsByPath.containsKey(path);
+    }
+
+    /**
+     * Creates the mutable state used to evaluate records one after the other.
+     *
+     * @return A new evaluation
+     */
+    public Evaluation newEvaluation() {
+        return new Evaluation();
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * The state of one record's evaluation: which comparisons are already decided.
+     * Not thread-safe; use one per reader.
+     */
+    public final class Evaluation {
+
+        private final int[] states = new int[comparisons.size()];
+        private final boolean[] seen = new boolean[comparisons.size()];
+        private int result = UNKNOWN;
+
+        private Evaluation() {
+        }
+
+        /**
+         * Starts the evaluation of a new record.
+         */
+        public void begin() {
+            Arrays.fill(states, UNKNOWN);
+            Arrays.fill(seen, false);
+            result = UNKNOWN;
+        }
+
+        /**
+         * Tells whether the outcome of the current record is already known.
+         *
+         * @return true once the record is accepted or rejected regardless of the fields still unread
+         */
+        public boolean isDecided() {
+            return result != UNKNOWN;
+        }
+
+        /**
+         * Feeds a scalar read from the current record.
+         *
+         * @param path The flattened column name of the value
+         * @param value The primitive or null value
+         * @param repeated true if the value lies below an array of the record and the path may
+         *                 therefore have further values
+         * @return false if the record is now known to be rejected
+         */
+        public boolean accept(String path, JsonElement value, boolean repeated) {
+            int[] indexes = comparisonsByPath.get(path);
+            if (indexes == null || result != UNKNOWN) {
+                return result != FALSE;
+            }
+            for (int index : indexes) {
+                if (states[index] != UNKNOWN) {
+                    continue;
+                }
+                seen[index] = true;
+                boolean matched = comparisons.get(index).test(value);
+                if (matched) {
+                    states[index] = TRUE;
+                } else if (!repeated) {
+                    states[index] = FALSE;
+                }
+            }
+            result = root.evaluate(states);
+            return result != FALSE;
+        }
+
+        /**
+         * Completes the current record: comparisons on fields that never appeared are evaluated
+         * as if the field were null, and repeated fields without a matching value are false.
+         *
+         * @return true if the record is accepted
+         */
+        public boolean finish() {
+            if (result == UNKNOWN) {
+                for (int i = 0; i < states.length; i++) {
+                    if (states[i] == UNKNOWN) {
+                        states[i] = !seen[i] && comparisons.get(i).test(null) ? TRUE : FALSE;
+                    }
+                }
+                result = root.evaluate(states);
+            }
+            return result == TRUE;
+        }
+    }
+
+    /**
+     * A node of the expression tree, evaluated with three-valued logic over the comparison states.
+     */
+    private interface Node {
+        int evaluate(int[] states);
+    }
+
+    private static final class And implements Node {
+        private final Node left;
+        private final Node right;
+
+        And(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public int evaluate(int[] states) {
+            int a = left.evaluate(states);
+            if (a == FALSE) {
+                return FALSE;
+            }
+            int b = right.evaluate(states);
+            if (b == FALSE) {
+                return FALSE;
+            }
+            return a == TRUE && b == TRUE ? TRUE : UNKNOWN;
+        }
+    }
+
+    private static final class Or implements Node {
+        private final Node left;
+        private final Node right;
+
+        Or(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public int evaluate(int[] states) {
+            int a = left.evaluate(states);
+            if (a == TRUE) {
+                return TRUE;
+            }
+            int b = right.evaluate(states);
+            if (b == TRUE) {
+                return TRUE;
+            }
+            return a == FALSE && b == FALSE ? FALSE : UNKNOWN;
+        }
+    }
+
+    private static final class Not implements Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public int evaluate(int[] states) {
+            int value = operand.evaluate(states);
+            return value == UNKNOWN ? UNKNOWN : 1 - value;
+        }
+    }
+
+    /**
+     * A comparison of one path with one or more literals.
+     */
+    private static final class Comparison implements Node {
+        private final int index;
+        private final String path;
+        private final String operator;
+        private final List<Object> literals;
+
+        Comparison(int index, String path, String operator, List<Object> literals) {
+            this.index = index;
+            this.path = path;
+            this.operator = operator;
+            this.literals = literals;
+        }
+
+        @Override
+        public int evaluate(int[] states) {
+            return states[index];
+        }
+
+        /**
+         * Tests one value of the path.
+         *
+         * @param value The value, or null when the field is missing
+         */
+        boolean test(JsonElement value) {
+            boolean isNull = value == null || value.isJsonNull();
+            switch (operator) {
+                case "in":
+                    for (Object literal : literals) {
+                        if (equalTo(value, isNull, literal)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case "not in":
+                    if (isNull) {
+                        return false;
+                    }
+                    for (Object literal : literals) {
+                        if (equalTo(value, false, literal)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                case "==":
+                    return equalTo(value, isNull, literals.get(0));
+                case "!=":
+                    return !isNull && literals.get(0) != null && !equalTo(value, false, literals.get(0));
+                default:
+                    if (isNull || literals.get(0) == null) {
+                        return false;
+                    }
+                    Integer order = compare(value.getAsJsonPrimitive(), literals.get(0));
+                    if (order == null) {
+                        return false;
+                    }
+                    switch (operator) {
+                        case "<":
+                            return order < 0;
+                        case "<=":
+                            return order <= 0;
+                        case ">":
+                            return order > 0;
+                        default:
+                            return order >= 0;
+                    }
+            }
+        }
+
+        private static boolean equalTo(JsonElement value, boolean isNull, Object literal) {
+            if (literal == null || isNull) {
+                return literal == null && isNull;
+            }
+            if (!value.isJsonPrimitive()) {
+                return false;
+            }
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (literal instanceof Boolean) {
+                return literal.toString().equals(primitive.getAsString());
+            }
+            Integer order = compare(primitive, literal);
+            return order != null && order == 0;
+        }
+
+        /**
+         * Orders a value against a literal, or returns null when they cannot be compared.
+         */
+        private static Integer compare(JsonPrimitive value, Object literal) {
+            if (literal instanceof BigDecimal) {
+                try {
+                    return new BigDecimal(value.getAsString().trim()).compareTo((BigDecimal) literal);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            if (literal instanceof String) {
+                return Integer.signum(value.getAsString().compareTo((String) literal));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Recursive-descent parser for the filter grammar.
+     */
+    private static final class Parser {
+        private final String text;
+        private int position = 0;
+        private final List<Comparison> comparisons = new ArrayList<>();
+
+        Parser(String text) {
+            if (text == null || text.trim().isEmpty()) {
+                throw new IllegalArgumentException("Filter expression cannot be empty.");
+            }
+            this.text = text;
+        }
+
+        Node parseExpression() {
+            Node node = parseTerm();
+            while (acceptKeyword("or") || accept("||")) {
+                node = new Or(node, parseTerm());
+            }
+            return node;
+        }
+
+        private Node parseTerm() {
+            Node node = parseFactor();
+            while (acceptKeyword("and") || accept("&&")) {
+                node = new And(node, parseFactor());
+            }
+            return node;
+        }
+
+        private Node parseFactor() {
+            if (acceptKeyword("not") || (!lookingAt("!=") && accept("!"))) {
+                return new Not(parseFactor());
+            }
+            if (accept("(")) {
+                Node node = parseExpression();
+                expect(")");
+                return node;
+            }
+            return parseComparison();
+        }
+
+        private Node parseComparison() {
+            String path = parsePath();
+            String operator;
+            List<Object> literals = new ArrayList<>();
+            if (acceptKeyword("not")) {
+                expectKeyword("in");
+                operator = "not in";
+            } else if (acceptKeyword("in")) {
+                operator = "in";
+            } else {
+                operator = null;
+                for (String candidate : new String[]{"==", "!=", "<=", ">=", "<", ">"}) {
+                    if (accept(candidate)) {
+                        operator = candidate;
+                        break;
+                    }
+                }
+                if (operator == null) {
+                    throw error("Expected a comparison operator after '" + path + "'");
+                }
+                literals.add(parseLiteral());
+            }
+            if (literals.isEmpty()) {
+                expect("(");
+                do {
+                    literals.add(parseLiteral());
+                } while (accept(","));
+                expect(")");
+            }
+            Comparison comparison = new Comparison(comparisons.size(), path, operator, literals);
+            comparisons.add(comparison);
+            return comparison;
+        }
+
+        private String parsePath() {
+            skipWhitespace();
+            int start = position;
+            while (position < text.length() && isPathChar(text.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw error("Expected a field path");
+            }
+            return text.substring(start, position);
+        }
+
+        private Object parseLiteral() {
+            skipWhitespace();
+            if (position >= text.length()) {
+                throw error("Expected a value");
+            }
+            char c = text.charAt(position);
+            if (c == '"' || c == '\'') {
+                StringBuilder value = new StringBuilder();
+                position++;
+                while (position < text.length() && text.charAt(position) != c) {
+                    char ch = text.charAt(position++);
+                    if (ch == '\\' && position < text.length()) {
+                        ch = text.charAt(position++);
+                    }
+                    value.append(ch);
+                }
+                if (position >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                position++;
+                return value.toString();
+            }
+            if (acceptKeyword("true")) {
+                return Boolean.TRUE;
+            }
+            if (acceptKeyword("false")) {
+                return Boolean.FALSE;
+            }
+            if (acceptKeyword("null")) {
+                return null;
+            }
+            int start = position;
+            while (position < text.length() && "+-.0123456789eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            try {
+                return new BigDecimal(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                position = start;
+                throw error("Expected a string, number, true, false or null");
+            }
+        }
+
+        void expectEnd() {
+            skipWhitespace();
+            if (position < text.length()) {
+                throw error("Unexpected input");
+            }
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw error("Expected '" + token + "'");
+            }
+        }
+
+        private void expectKeyword(String keyword) {
+            if (!acceptKeyword(keyword)) {
+                throw error("Expected '" + keyword + "'");
+            }
+        }
+
+        private boolean lookingAt(String token) {
+            skipWhitespace();
+            return text.startsWith(token, position);
+        }
+
+        private boolean accept(String token) {
+            if (lookingAt(token)) {
+                position += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            skipWhitespace();
+            int end = position + keyword.length();
+            if (end <= text.length()
+                    && text.substring(position, end).toLowerCase(Locale.ROOT).equals(keyword)
+                    && (end == text.length() || !isPathChar(text.charAt(end)))) {
+                position = end;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private static boolean isPathChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == '$' || c == '@';
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + " of filter: " + text);
+        }
+    }
+}
@@ -0,0 +1,671 @@
+package org.jsoncsvconverter.Logic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A heap-budgeted accumulator for flattened rows that spills to temporary files when full.
+ * Rows are added as column-to-value maps while the set of columns is still being discovered;
+ * they are read back as dense {@code String[]} rows covering every column seen, with missing
+ * values filled with empty strings.
+ *
+ * <p>Key features:</p>
+ * <ul>
+ *   <li>Tracks the estimated heap used by buffered rows against a configurable budget</li>
+ *   <li>Spills buffered rows as runs to temporary files in a compact binary format</li>
+ *   <li>Holds buffered rows in a {@link ColumnarTable}, so repeated values are stored once per
+ *   column and referenced by small codes</li>
+ *   <li>Stores only populated cells on disk</li>
+ *   <li>Behaves as a read-only {@link List} so writers consume spilled rows transparently</li>
+ *   <li>Infers the {@link ColumnType} of every column as rows are added, across spills</li>
+ *   <li>Reads rows back as {@link SparseRow}s too, so wide and mostly empty rows are never
+ *   expanded before they are written</li>
+ * </ul>
+ *
+ * <p>Each run file holds a consecutive range of rows in insertion order. A row is encoded as a
+ * variable-length cell count followed by, for each populated cell, the variable-length column
+ * index, the variable-length UTF-8 byte length and the UTF-8 bytes of the value.</p>
+ *
+ * <p>Reading is optimised for sequential access: iteration streams the run files one after the
+ * other, and {@link #get(int)} keeps a cursor so ascending lookups do not rescan the files.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class RowBuffer extends AbstractList<String[]> implements Closeable {
+
+    /** Buffer size for reading and writing run files */
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final long heapBudgetBytes;
+    private final File spillDirectory;
+
+    /** Column names in discovery order; the list index is the column id */
+    private final List<String> columns = new ArrayList<>();
+    private final Map<String, Integer> columnIds = new HashMap<>();
+
+    /** Rows not yet spilled */
+    private final ColumnarTable memory = new ColumnarTable();
+
+    /** Cells of the row being added from a builder */
+    private int[] scratchIds = new int[16];
+    private String[] scratchValues = new String[16];
+
+    /** Types of the columns of spilled rows, by column id */
+    private final List<ColumnType> spilledTypes = new ArrayList<>();
+
+    /** Spilled runs in order, and the number of rows they hold */
+    private final List<File> runFiles = new ArrayList<>();
+    private final List<Integer> runSizes = new ArrayList<>();
+    private int spilledRows = 0;
+
+    /** Positions of the rows marked as the first row of a record */
+    private final BitSet recordStarts = new BitSet();
+
+    /** Cursor used by {@link #get(int)} for spilled rows; its reader holds the current row */
+    private RunReader cursor;
+    private int cursorIndex = -1;
+    private int cursorCount;
+
+    /**
+     * Constructs an empty buffer that spills to the system temporary directory.
+     *
+     * @param heapBudgetBytes The estimated heap the buffered rows may use. Must be positive.
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    public RowBuffer(long heapBudgetBytes) {
+        this(heapBudgetBytes, null);
+    }
+
+    /**
+     * Constructs an empty buffer that spills to the given directory.
+     *
+     * @param heapBudgetBytes The estimated heap the buffered rows may use. Must be positive.
+     * @param spillDirectory The directory for run files, or null for the system temporary directory
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    public RowBuffer(long heapBudgetBytes, File spillDirectory) {
+        if (heapBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Heap budget must be positive.");
+        }
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Appends one flattened row. Columns not seen before are added to the end of the column list
+     * in the iteration order of the map.
+     *
+     * @param row The column-to-value pairs of the row
+     * @throws RuntimeException if spilling buffered rows to disk fails
+     */
+    public void addRow(Map<String, String> row) {
+        int[] ids = new int[row.size()];
+        String[] values = new String[row.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : row.entrySet()) {
+            ids[i] = columnId(entry.getKey());
+            values[i] = entry.getValue();
+            i++;
+        }
+        append(ids, values, i);
+    }
+
+    /**
+     * Appends one flattened row from a reusable row builder. The builder's contents are copied,
+     * so it may be cleared as soon as this method returns.
+     *
+     * @param row The column/value pairs of the row, in order
+     * @throws RuntimeException if spilling buffered rows to disk fails
+     */
+    public void addRow(RowBuilder row) {
+        int count = row.size();
+        if (count > scratchIds.length) {
+            scratchIds = new int[count];
+            scratchValues = new String[count];
+        }
+        for (int i = 0; i < count; i++) {
+            scratchIds[i] = columnId(row.getColumn(i));
+            scratchValues[i] = row.getValue(i);
+        }
+        append(scratchIds, scratchValues, count);
+    }
+
+    /**
+     * Marks the next row added as the first row of a record, so that the rows flattened from
+     * one record can be kept together when rows are deduplicated.
+     */
+    void startRecord() {
+        recordStarts.set(size());
+    }
+
+    /**
+     * Marks the rows of this buffer that start a record in a set covering more rows.
+     *
+     * @param target The set receiving the positions
+     * @param offset The position in the set of the first row of this buffer
+     */
+    void copyRecordStarts(BitSet target, int offset) {
+        for (int i = recordStarts.nextSetBit(0); i >= 0; i = recordStarts.nextSetBit(i + 1)) {
+            target.set(offset + i);
+        }
+    }
+
+    private void append(int[] ids, String[] values, int count) {
+        memory.addRow(ids, values, count);
+        if (memory.getEstimatedHeapBytes() > heapBudgetBytes) {
+            spill();
+        }
+    }
+
+    private int columnId(String column) {
+        Integer id = columnIds.get(column);
+        if (id == null) {
+            id = columns.size();
+            columns.add(column);
+            columnIds.put(column, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the columns discovered so far, in the order they were first seen.
+     *
+     * @return An unmodifiable list of column names
+     */
+    public List<String> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Returns a read-only view of the rows laid out for another column order. Columns of the
+     * order that the buffer never saw are returned as empty strings; buffered columns missing from
+     * the order are left out. The view follows later additions to the buffer.
+     *
+     * @param order The column names of the view, in output order
+     * @return A list of rows with one value per column of the order
+     */
+    public List<String[]> view(List<String> order) {
+        final List<String> viewColumns = new ArrayList<>(order);
+        return new AbstractList<String[]>() {
+            private int[] positions;
+            private int mappedColumns = -1;
+
+            @Override
+            public int size() {
+                return RowBuffer.this.size();
+            }
+
+            @Override
+            public String[] get(int index) {
+                return remap(RowBuffer.this.get(index));
+            }
+
+            @Override
+            public Iterator<String[]> iterator() {
+                final Iterator<String[]> rows = RowBuffer.this.iterator();
+                return new Iterator<String[]>() {
+                    @Override
+                    public boolean hasNext() {
+                        return rows.hasNext();
+                    }
+
+                    @Override
+                    public String[] next() {
+                        return remap(rows.next());
+                    }
+                };
+            }
+
+            private String[] remap(String[] dense) {
+                if (mappedColumns != columns.size()) {
+                    positions = new int[viewColumns.size()];
+                    for (int i = 0; i < positions.length; i++) {
+                        Integer id = columnIds.get(viewColumns.get(i));
+                        positions[i] = id == null ? -1 : id;
+                    }
+                    mappedColumns = columns.size();
+                }
+                String[] row = new String[positions.length];
+                for (int i = 0; i < positions.length; i++) {
+                    row[i] = positions[i] >= 0 ? dense[positions[i]] : "";
+                }
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Returns a read-only view of the rows laid out for another column order, holding only the
+     * populated cells of each row. Cells of columns missing from the order are left out. Unlike
+     * {@link #view(List)}, rows are never expanded to one value per column, so the memory used
+     * while iterating follows the populated cells rather than the width of the order. The view
+     * follows later additions to the buffer.
+     *
+     * @param order The column names of the view, in output order
+     * @return A list of sparse rows as wide as the order
+     */
+    public List<SparseRow> sparseView(List<String> order) {
+        final List<String> viewColumns = new ArrayList<>(order);
+        return new AbstractList<SparseRow>() {
+            private int[] positions;
+            private int mappedColumns = -1;
+            private int[] ids = new int[16];
+            private String[] values = new String[16];
+            private long[] numbers = new long[16];
+            private boolean[] doubles = new boolean[16];
+            private int[] mappedIds = new int[16];
+            private String[] mappedValues = new String[16];
+            private long[] mappedNumbers = new long[16];
+            private boolean[] mappedDoubles = new boolean[16];
+
+            @Override
+            public int size() {
+                return RowBuffer.this.size();
+            }
+
+            @Override
+            public SparseRow get(int index) {
+                if (index < 0 || index >= RowBuffer.this.size()) {
+                    throw new IndexOutOfBoundsException("Row index " + index + " out of range for " + RowBuffer.this.size() + " rows");
+                }
+                if (index >= spilledRows) {
+                    return fromMemory(index - spilledRows);
+                }
+                advanceCursor(index);
+                return remap(cursor.ids, cursor.values, cursorCount);
+            }
+
+            @Override
+            public Iterator<SparseRow> iterator() {
+                return new Iterator<SparseRow>() {
+                    private final RunReader reader = spilledRows > 0 ? new RunReader() : null;
+                    private int position = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        boolean more = position < RowBuffer.this.size();
+                        if (!more && reader != null) {
+                            reader.close();
+                        }
+                        return more;
+                    }
+
+                    @Override
+                    public SparseRow next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        SparseRow row;
+                        if (position < spilledRows) {
+                            int count = reader.read();
+                            row = remap(reader.ids, reader.values, count);
+                        } else {
+                            row = fromMemory(position - spilledRows);
+                        }
+                        position++;
+                        return row;
+                    }
+                };
+            }
+
+            private SparseRow fromMemory(int row) {
+                if (ids.length < memory.getColumnCount()) {
+                    ids = new int[memory.getColumnCount()];
+                    values = new String[memory.getColumnCount()];
+                    numbers = new long[memory.getColumnCount()];
+                    doubles = new boolean[memory.getColumnCount()];
+                }
+                return remap(ids, values, memory.copyCells(row, ids, values, numbers, doubles));
+            }
+
+            /**
+             * Lays the cells out for the order, dropping the cells of columns it leaves out. The
+             * cell arrays are not modified, since they may belong to the cursor.
+             */
+            private SparseRow remap(int[] cellIds, String[] cellValues, int count) {
+                if (mappedColumns != columns.size()) {
+                    positions = new int[columns.size()];
+                    Arrays.fill(positions, -1);
+                    for (int i = 0; i < viewColumns.size(); i++) {
+                        Integer id = columnIds.get(viewColumns.get(i));
+                        if (id != null) {
+                            positions[id] = i;
+                        }
+                    }
+                    mappedColumns = columns.size();
+                }
+                if (mappedIds.length < count) {
+                    mappedIds = new int[count];
+                    mappedValues = new String[count];
+                    mappedNumbers = new long[count];
+                    mappedDoubles = new boolean[count];
+                }
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int position = positions[cellIds[i]];
+                    if (position >= 0) {
+                        mappedIds[kept] = position;
+                        mappedValues[kept] = cellValues[i];
+                        if (cellValues[i] == null) {
+                            // Only cells of the in-memory arrays are numbers
+                            mappedNumbers[kept] = numbers[i];
+                            mappedDoubles[kept] = doubles[i];
+                        }
+                        kept++;
+                    }
+                }
+                return new SparseRow(viewColumns.size(), mappedIds, mappedValues, mappedNumbers, mappedDoubles, kept);
+            }
+        };
+    }
+
+    /**
+     * Returns the type of every column, inferred from all the rows added, spilled or not, in the
+     * order of {@link #getColumns()}. Columns that never held a non-empty value have no type yet
+     * and are left out.
+     *
+     * @return An ordered map from column name to type
+     */
+    public Map<String, ColumnType> getColumnTypes() {
+        Map<String, ColumnType> types = new LinkedHashMap<>();
+        for (int id = 0; id < columns.size(); id++) {
+            ColumnType type = ColumnType.merge(id < spilledTypes.size() ? spilledTypes.get(id) : null,
+                    memory.getColumnType(id));
+            if (type != null) {
+                types.put(columns.get(id), type);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Returns the estimated heap currently used by rows held in memory.
+     *
+     * @return The estimate in bytes
+     */
+    public long getEstimatedHeapBytes() {
+        return memory.getEstimatedHeapBytes();
+    }
+
+    /**
+     * Spills the rows held in memory now, for buffers that share one budget between them.
+     *
+     * @throws RuntimeException if spilling buffered rows to disk fails
+     */
+    void spillHeldRows() {
+        if (memory.getRowCount() > 0) {
+            spill();
+        }
+    }
+
+    /**
+     * Returns the number of run files written so far.
+     *
+     * @return The spill count, 0 if every row fitted in the budget
+     */
+    public int getSpillCount() {
+        return runFiles.size();
+    }
+
+    @Override
+    public int size() {
+        return spilledRows + memory.getRowCount();
+    }
+
+    /**
+     * Returns the row at the given position as a dense array covering every column.
+     *
+     * @param index The row position
+     * @return A new array of values, with empty strings for missing cells
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @throws RuntimeException if reading a run file fails
+     */
+    @Override
+    public String[] get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Row index " + index + " out of range for " + size() + " rows");
+        }
+        if (index >= spilledRows) {
+            String[] row = new String[columns.size()];
+            Arrays.fill(row, "");
+            memory.copyRow(index - spilledRows, row);
+            return row;
+        }
+
+        advanceCursor(index);
+        return expand(cursor.ids, cursor.values, cursorCount);
+    }
+
+    /**
+     * Moves the cursor to a spilled row, reopening the runs when the row is behind it.
+     */
+    private void advanceCursor(int index) {
+        if (cursor == null || index < cursorIndex) {
+            closeCursor();
+            cursor = new RunReader();
+            cursorIndex = -1;
+        }
+        while (cursorIndex < index) {
+            cursorCount = cursor.read();
+            cursorIndex++;
+        }
+    }
+
+    /**
+     * Returns an iterator that streams spilled runs and then the rows still held in memory.
+     *
+     * @return A sequential iterator over all rows
+     */
+    @Override
+    public Iterator<String[]> iterator() {
+        return new Iterator<String[]>() {
+            private final RunReader reader = spilledRows > 0 ? new RunReader() : null;
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                boolean more = position < size();
+                if (!more && reader != null) {
+                    reader.close();
+                }
+                return more;
+            }
+
+            @Override
+            public String[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String[] row;
+                if (position < spilledRows) {
+                    // read() may replace the arrays, so they are taken after it
+                    int count = reader.read();
+                    row = expand(reader.ids, reader.values, count);
+                } else {
+                    row = get(position);
+                }
+                position++;
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Deletes every run file and releases the buffered rows.
+     */
+    @Override
+    public void close() {
+        closeCursor();
+        for (File file : runFiles) {
+            file.delete();
+        }
+        runFiles.clear();
+        runSizes.clear();
+        memory.clear();
+        spilledTypes.clear();
+        recordStarts.clear();
+        spilledRows = 0;
+    }
+
+    private void closeCursor() {
+        if (cursor != null) {
+            cursor.close();
+            cursor = null;
+        }
+        cursorIndex = -1;
+        cursorCount = 0;
+    }
+
+    private String[] expand(int[] ids, String[] values, int count) {
+        String[] row = new String[columns.size()];
+        Arrays.fill(row, "");
+        for (int i = 0; i < count; i++) {
+            row[ids[i]] = values[i];
+        }
+        return row;
+    }
+
+    /**
+     * Writes every row held in memory to a new run file and clears the in-memory rows.
+     */
+    private void spill() {
+        File file = null;
+        try {
+            file = File.createTempFile("rowbuffer-", ".run", spillDirectory);
+            file.deleteOnExit();
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE))) {
+                int[] ids = new int[memory.getColumnCount()];
+                String[] values = new String[memory.getColumnCount()];
+                for (int r = 0; r < memory.getRowCount(); r++) {
+                    int count = memory.copyCells(r, ids, values);
+                    writeVarInt(out, count);
+                    for (int i = 0; i < count; i++) {
+                        byte[] bytes = values[i].getBytes(StandardCharsets.UTF_8);
+                        writeVarInt(out, ids[i]);
+                        writeVarInt(out, bytes.length);
+                        out.write(bytes);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (file != null) {
+                file.delete();
+            }
+            throw new RuntimeException("Error while spilling rows to disk: " + e.getMessage(), e);
+        }
+
+        for (int id = 0; id < memory.getColumnCount(); id++) {
+            if (id == spilledTypes.size()) {
+                spilledTypes.add(null);
+            }
+            spilledTypes.set(id, ColumnType.merge(spilledTypes.get(id), memory.getColumnType(id)));
+        }
+        runFiles.add(file);
+        runSizes.add(memory.getRowCount());
+        spilledRows += memory.getRowCount();
+        memory.clear();
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Sequential reader over all run files, in order. The cells of the row read last stay in
+     * {@link #ids} and {@link #values} until the next read.
+     */
+    private final class RunReader {
+
+        private int run = -1;
+        private int remainingInRun = 0;
+        private DataInputStream in;
+        private int[] ids = new int[16];
+        private String[] values = new String[16];
+
+        /**
+         * Reads the next row into the cell arrays.
+         *
+         * @return The number of cells of the row
+         */
+        int read() {
+            try {
+                while (remainingInRun == 0) {
+                    close();
+                    run++;
+                    if (run >= runFiles.size()) {
+                        throw new EOFException("No more spilled rows");
+                    }
+                    in = new DataInputStream(new BufferedInputStream(
+                            new FileInputStream(runFiles.get(run)), IO_BUFFER_SIZE));
+                    remainingInRun = runSizes.get(run);
+                }
+                int count = readVarInt(in);
+                if (count > ids.length) {
+                    ids = new int[count];
+                    values = new String[count];
+                }
+                for (int i = 0; i < count; i++) {
+                    ids[i] = readVarInt(in);
+                    byte[] bytes = new byte[readVarInt(in)];
+                    in.readFully(bytes);
+                    values[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+                remainingInRun--;
+                return count;
+            } catch (IOException e) {
+                close();
+                throw new RuntimeException("Error while reading spilled rows: " + e.getMessage(), e);
+            }
+        }
+
+        void close() {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing left to read from this run
+                }
+                in = null;
+            }
+        }
+    }
+}
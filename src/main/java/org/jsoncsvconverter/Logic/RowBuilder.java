@@ -0,0 +1,160 @@
+package org.jsoncsvconverter.Logic;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A reusable, insertion-ordered set of column/value pairs describing one flattened row.
+ * The flattener fills a single builder per row and hands it to a sink; sinks copy what they need
+ * before returning, so the same instance (and its arrays) is reused for every row.
+ *
+ * <p>Putting a column that is already present replaces its value but keeps its position, which
+ * is the same behaviour as {@link LinkedHashMap#put(Object, Object)}.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public final class RowBuilder {
+
+    private String[] columns = new String[16];
+    private String[] values = new String[16];
+    private int size = 0;
+
+    /** Position of every column in the arrays above */
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    /**
+     * Removes every pair so the builder can describe the next row.
+     */
+    public void clear() {
+        Arrays.fill(columns, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        positions.clear();
+        size = 0;
+    }
+
+    /**
+     * Sets the value of a column, appending the column if it is not present yet.
+     *
+     * @param column The flattened column name
+     * @param value The cell value
+     */
+    public void put(String column, String value) {
+        Integer position = positions.get(column);
+        if (position != null) {
+            values[position] = value;
+            return;
+        }
+        if (size == columns.length) {
+            columns = Arrays.copyOf(columns, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        columns[size] = column;
+        values[size] = value;
+        positions.put(column, size);
+        size++;
+    }
+
+    /**
+     * Puts every entry of a map, in the map's iteration order.
+     *
+     * @param entries The pairs to add
+     */
+    public void putAll(Map<String, String> entries) {
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Moves a set of leading pairs in front of the current contents. The result is ordered as if
+     * the leading map had been put first and the current pairs afterwards: columns of the leading
+     * map come first, keeping the current value when a column exists in both.
+     *
+     * @param leading The pairs that must come first
+     */
+    public void prepend(Map<String, String> leading) {
+        if (leading.isEmpty()) {
+            return;
+        }
+        String[] oldColumns = Arrays.copyOf(columns, size);
+        String[] oldValues = Arrays.copyOf(values, size);
+        Map<String, Integer> oldPositions = new HashMap<>(positions);
+        clear();
+
+        for (Map.Entry<String, String> entry : leading.entrySet()) {
+            Integer existing = oldPositions.get(entry.getKey());
+            put(entry.getKey(), existing != null ? oldValues[existing] : entry.getValue());
+        }
+        for (int i = 0; i < oldColumns.length; i++) {
+            if (!positions.containsKey(oldColumns[i])) {
+                put(oldColumns[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Copies every pair into a map, replacing values of columns already present there.
+     *
+     * @param target The map to update
+     */
+    public void copyInto(Map<String, String> target) {
+        for (int i = 0; i < size; i++) {
+            target.put(columns[i], values[i]);
+        }
+    }
+
+    /**
+     * Returns the number of populated columns.
+     *
+     * @return The number of pairs in the row
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the column name at a position.
+     *
+     * @param index The position, from 0 to {@link #size()} - 1
+     * @return The column name
+     */
+    public String getColumn(int index) {
+        return columns[index];
+    }
+
+    /**
+     * Returns the value at a position.
+     *
+     * @param index The position, from 0 to {@link #size()} - 1
+     * @return The cell value
+     */
+    public String getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns the value of a column.
+     *
+     * @param column The column name
+     * @return The value, or null when the column is not present
+     */
+    public String get(String column) {
+        Integer position = positions.get(column);
+        return position == null ? null : values[position];
+    }
+
+    /**
+     * Copies the row into a new ordered map.
+     *
+     * @return A new map holding the pairs in order
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        copyInto(map);
+        return map;
+    }
+}
@@ -0,0 +1,461 @@
+package org.jsoncsvconverter.Logic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Drops duplicate records from the output rows, or records whose key columns repeat those of an
+ * earlier record, keeping the first occurrence. A record that expands into several rows is
+ * kept or dropped with all of them: with key columns, a record is a row with a key and the
+ * following rows whose key columns are empty, which continue it; without, a record is the rows
+ * flattened from one input record. Every record is reduced to a 64-bit fingerprint of its
+ * cells and the fingerprints seen are kept in a compact open-addressed hash set, 16 bytes per
+ * distinct record. Two different records share a fingerprint, and the second is dropped, with a
+ * probability of about n²/2<sup>65</sup> for n records.
+ *
+ * <p>When the set outgrows the heap budget, its fingerprints are partitioned by their leading
+ * bits into {@value #PARTITIONS} files, and the fingerprints of the remaining records, with their
+ * row numbers, are appended to the file of their partition. Each partition is then checked on its
+ * own, partitioned again by the following bits should it still not fit. The duplicates found
+ * are marked in a bit set of one bit per row, and skipped while the rows are read back.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+final class RowDeduplicator implements Closeable {
+
+    /** Bits of the fingerprint choosing a partition at each level */
+    private static final int PARTITION_BITS = 6;
+
+    /** Partitions a set is split into when it outgrows the budget */
+    static final int PARTITIONS = 1 << PARTITION_BITS;
+
+    /** Buffer size for reading and writing partition files */
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Positions of the key columns, or null to compare whole rows */
+    private final int[] keyColumns;
+    private final long heapBudgetBytes;
+    private final File spillDirectory;
+
+    private final List<File> files = new ArrayList<>();
+    private BitSet duplicates = new BitSet();
+    private int duplicateCount = 0;
+    private int spillCount = 0;
+
+    /** The fingerprints seen by the first pass, or null once they were partitioned */
+    private FingerprintSet topLevelSeen;
+    private Partition[] topLevelPartitions;
+
+    /**
+     * Constructs a deduplicator for rows laid out for the given headers.
+     *
+     * @param headers The columns of the rows
+     * @param keys The columns deciding whether two records are duplicates, or null for every
+     *             column; columns missing from the headers are empty in every row
+     * @param heapBudgetBytes The heap the fingerprint set may use. Must be positive.
+     * @param spillDirectory The directory for partition files, or null for the system temporary
+     *                       directory
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    RowDeduplicator(String[] headers, List<String> keys, long heapBudgetBytes, File spillDirectory) {
+        if (heapBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Heap budget must be positive.");
+        }
+        if (keys == null) {
+            this.keyColumns = null;
+        } else {
+            this.keyColumns = new int[keys.size()];
+            for (int k = 0; k < keys.size(); k++) {
+                keyColumns[k] = Arrays.asList(headers).indexOf(keys.get(k));
+            }
+        }
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Finds the duplicate records among rows, reading them once, and returns the rows without
+     * them.
+     *
+     * @param rows The rows, which are read again when the result is iterated
+     * @param recordStarts The positions of the rows that start an input record, used without key
+     *                     columns, or null when every row is a record of its own
+     * @return The rows that are not duplicates, in order, to be read by iteration
+     * @throws RuntimeException if the partition files cannot be written or read
+     */
+    KeptRows deduplicate(List<SparseRow> rows, BitSet recordStarts) {
+        duplicates = new BitSet();
+        duplicateCount = 0;
+        topLevelSeen = new FingerprintSet();
+        topLevelPartitions = null;
+        try {
+            int index = 0;
+            int start = 0;
+            long fingerprint = 0;
+            for (SparseRow row : rows) {
+                if (index == 0 || startsRecord(row, index, recordStarts)) {
+                    if (index > 0) {
+                        check(fingerprint, start, index - start);
+                    }
+                    start = index;
+                    fingerprint = fingerprint(row);
+                } else if (keyColumns == null) {
+                    fingerprint = mix(fingerprint * FNV_PRIME + fingerprint(row));
+                }
+                index++;
+            }
+            if (index > 0) {
+                check(fingerprint, start, index - start);
+            }
+            if (topLevelPartitions != null) {
+                for (Partition partition : topLevelPartitions) {
+                    resolve(partition, 1);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error while deduplicating rows: " + e.getMessage(), e);
+        } finally {
+            topLevelSeen = null;
+            topLevelPartitions = null;
+            close();
+        }
+        return new KeptRows(rows, duplicates);
+    }
+
+    /**
+     * Tells whether a row starts a record: with key columns, when one of its key cells is not
+     * empty; otherwise when the input record it was flattened from starts with it.
+     */
+    private boolean startsRecord(SparseRow row, int index, BitSet recordStarts) {
+        if (keyColumns == null) {
+            return recordStarts == null || recordStarts.get(index);
+        }
+        for (int i = 0; i < row.size(); i++) {
+            if (indexOf(keyColumns, row.getColumn(i)) >= 0 && !row.getValue(i).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks the fingerprint of a record against those seen before it, partitioning them once
+     * they outgrow the budget.
+     */
+    private void check(long fingerprint, int start, int count) throws IOException {
+        if (topLevelPartitions != null) {
+            topLevelPartitions[partition(fingerprint, 0)].addRecord(fingerprint, start, count);
+        } else if (!topLevelSeen.add(fingerprint)) {
+            markDuplicate(start, count);
+        } else if (outgrows(topLevelSeen)) {
+            topLevelPartitions = split(topLevelSeen, 0);
+            topLevelSeen = null;
+        }
+    }
+
+    /**
+     * @return The number of duplicate rows dropped by the last call to
+     *         {@link #deduplicate(List, BitSet)}
+     */
+    int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * @return The number of times a fingerprint set outgrew the budget and was partitioned
+     */
+    int getSpillCount() {
+        return spillCount;
+    }
+
+    /**
+     * Deletes the partition files.
+     */
+    @Override
+    public void close() {
+        for (File file : files) {
+            file.delete();
+        }
+        files.clear();
+    }
+
+    /**
+     * Computes the fingerprint of the key cells of a row: FNV-1a over the position and the
+     * characters of every non-empty cell, mixed by the finalizer of MurmurHash3 and summed, so
+     * the fingerprint does not depend on the order in which the row stores its cells, then
+     * mixed once more.
+     */
+    long fingerprint(SparseRow row) {
+        long sum = 0;
+        for (int i = 0; i < row.size(); i++) {
+            int column = row.getColumn(i);
+            int key = keyColumns == null ? column : indexOf(keyColumns, column);
+            if (key < 0) {
+                continue;
+            }
+            String value = row.getValue(i);
+            if (value.isEmpty()) {
+                continue;
+            }
+            long hash = FNV_OFFSET;
+            hash = (hash ^ key) * FNV_PRIME;
+            hash = (hash ^ value.length()) * FNV_PRIME;
+            for (int c = 0; c < value.length(); c++) {
+                hash = (hash ^ value.charAt(c)) * FNV_PRIME;
+            }
+            sum += mix(hash);
+        }
+        return mix(sum);
+    }
+
+    /**
+     * The finalizer of MurmurHash3.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int indexOf(int[] columns, int column) {
+        for (int k = 0; k < columns.length; k++) {
+            if (columns[k] == column) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private void markDuplicate(int start, int count) {
+        duplicates.set(start, start + count);
+        duplicateCount += count;
+    }
+
+    /**
+     * Checks the records of one partition against the fingerprints seen before it was split.
+     *
+     * @param level The number of splits above the partition, choosing the bits of a new split
+     */
+    private void resolve(Partition partition, int level) throws IOException {
+        partition.finish();
+        FingerprintSet seen = new FingerprintSet();
+        try (DataInputStream in = partition.open(partition.seen)) {
+            if (in != null) {
+                while (in.readBoolean()) {
+                    seen.add(in.readLong());
+                }
+            }
+        }
+        Partition[] partitions = null;
+        try (DataInputStream in = partition.open(partition.rows)) {
+            if (in != null) {
+                while (in.readBoolean()) {
+                    long fingerprint = in.readLong();
+                    int start = in.readInt();
+                    int count = in.readInt();
+                    if (partitions != null) {
+                        partitions[partition(fingerprint, level)].addRecord(fingerprint, start, count);
+                    } else if (!seen.add(fingerprint)) {
+                        markDuplicate(start, count);
+                    } else if (outgrows(seen) && (level + 1) * PARTITION_BITS <= Long.SIZE) {
+                        partitions = split(seen, level);
+                        seen = null;
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated deduplication partition", e);
+        }
+        partition.delete();
+        if (partitions != null) {
+            for (Partition child : partitions) {
+                resolve(child, level + 1);
+            }
+        }
+    }
+
+    /**
+     * Writes the fingerprints of a set to partitions chosen by the bits of the given level.
+     */
+    private Partition[] split(FingerprintSet seen, int level) throws IOException {
+        spillCount++;
+        Partition[] partitions = new Partition[PARTITIONS];
+        for (int p = 0; p < PARTITIONS; p++) {
+            partitions[p] = new Partition();
+        }
+        seen.forEach(fingerprint -> partitions[partition(fingerprint, level)].addSeen(fingerprint));
+        return partitions;
+    }
+
+    /**
+     * Tells whether a set is over the budget and holds enough fingerprints for a split to help.
+     */
+    private boolean outgrows(FingerprintSet seen) {
+        return seen.getHeapBytes() > heapBudgetBytes && seen.size() > PARTITIONS;
+    }
+
+    private static int partition(long fingerprint, int level) {
+        return (int) ((fingerprint << (level * PARTITION_BITS)) >>> (Long.SIZE - PARTITION_BITS));
+    }
+
+    /**
+     * The fingerprints seen in one partition before it was split, and the fingerprints and rows
+     * of the records that fell into it afterwards, each in a file created when first used.
+     */
+    private final class Partition {
+        File seen;
+        File rows;
+        private DataOutputStream seenOut;
+        private DataOutputStream rowsOut;
+
+        void addSeen(long fingerprint) throws IOException {
+            if (seenOut == null) {
+                seen = newFile();
+                seenOut = create(seen);
+            }
+            seenOut.writeBoolean(true);
+            seenOut.writeLong(fingerprint);
+        }
+
+        void addRecord(long fingerprint, int start, int count) throws IOException {
+            if (rowsOut == null) {
+                rows = newFile();
+                rowsOut = create(rows);
+            }
+            rowsOut.writeBoolean(true);
+            rowsOut.writeLong(fingerprint);
+            rowsOut.writeInt(start);
+            rowsOut.writeInt(count);
+        }
+
+        void finish() throws IOException {
+            for (DataOutputStream out : new DataOutputStream[]{seenOut, rowsOut}) {
+                if (out != null) {
+                    out.writeBoolean(false);
+                    out.close();
+                }
+            }
+            seenOut = null;
+            rowsOut = null;
+        }
+
+        DataInputStream open(File file) throws IOException {
+            return file == null ? null : new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+        }
+
+        void delete() {
+            for (File file : new File[]{seen, rows}) {
+                if (file != null) {
+                    file.delete();
+                    files.remove(file);
+                }
+            }
+        }
+
+        private DataOutputStream create(File file) throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE));
+        }
+
+        private File newFile() throws IOException {
+            File file = File.createTempFile("rowdedup-", ".part", spillDirectory);
+            file.deleteOnExit();
+            files.add(file);
+            return file;
+        }
+    }
+
+    /**
+     * An open-addressed set of fingerprints kept at most half full. Zero marks a free slot, so
+     * the fingerprint zero is stored as one; that merges two fingerprints out of 2<sup>64</sup>.
+     */
+    static final class FingerprintSet {
+
+        private long[] slots = new long[1024];
+        private int size = 0;
+
+        /**
+         * Adds a fingerprint.
+         *
+         * @return true if the fingerprint was not in the set
+         */
+        boolean add(long fingerprint) {
+            if (fingerprint == 0) {
+                fingerprint = 1;
+            }
+            int mask = slots.length - 1;
+            for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+                if (slots[slot] == fingerprint) {
+                    return false;
+                }
+                if (slots[slot] == 0) {
+                    slots[slot] = fingerprint;
+                    if (++size * 2 > slots.length) {
+                        grow();
+                    }
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return The number of fingerprints in the set
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return The bytes held by the slots
+         */
+        long getHeapBytes() {
+            return (long) slots.length * Long.BYTES;
+        }
+
+        void forEach(FingerprintConsumer consumer) throws IOException {
+            for (long fingerprint : slots) {
+                if (fingerprint != 0) {
+                    consumer.accept(fingerprint);
+                }
+            }
+        }
+
+        private void grow() {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            size = 0;
+            for (long fingerprint : old) {
+                if (fingerprint != 0) {
+                    add(fingerprint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the fingerprints of a set.
+     */
+    interface FingerprintConsumer {
+        void accept(long fingerprint) throws IOException;
+    }
+}
@@ -0,0 +1,224 @@
+package org.jsoncsvconverter.Logic;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * One output row that stores only its populated cells. Flattened records with many optional
+ * fields produce wide rows that are mostly empty; a sparse row holds the position and value of
+ * each non-empty cell and leaves the empty ones implicit, so it costs memory in proportion to
+ * the cells it populates rather than to the width of the output.
+ *
+ * <p>Writers expand a sparse row while encoding it, see
+ * {@link CSVWriterFile#createCSVWithSparseRows(String, java.util.List)}. Cells read from a
+ * primitive column of a {@link ColumnarTable} stay numbers until they are written, so writers
+ * that encode bytes format them directly and never create their text.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * SparseRow row = new SparseRow(1000, new int[]{3, 998}, new String[]{"North", "2024"}, 2);
+ * String[] dense = row.toArray(); // 1000 values, all empty but two
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public final class SparseRow {
+
+    private final int width;
+    private final int[] columns;
+    private final String[] values;
+    /** The number of each cell whose value is null, or null when every cell is text */
+    private final long[] numbers;
+    private final boolean[] doubles;
+
+    /**
+     * Constructs a sparse row from the first cells of two parallel arrays, which are copied.
+     *
+     * @param width The number of columns of the row
+     * @param columns The position of each cell, each at most once
+     * @param values The value of each cell, not null
+     * @param size The number of cells to read from the arrays
+     * @throws IllegalArgumentException if the width is negative, a position is outside the row or
+     *                                  a value is null
+     */
+    public SparseRow(int width, int[] columns, String[] values, int size) {
+        this(width, columns, values, null, null, size);
+    }
+
+    /**
+     * Constructs a sparse row whose cells may be numbers: a cell with a null value holds a long,
+     * or the bits of a double when its double flag is set. The arrays are copied.
+     */
+    SparseRow(int width, int[] columns, String[] values, long[] numbers, boolean[] doubles, int size) {
+        if (width < 0) {
+            throw new IllegalArgumentException("Row width cannot be negative.");
+        }
+        boolean typed = false;
+        for (int i = 0; i < size; i++) {
+            if (columns[i] < 0 || columns[i] >= width) {
+                throw new IllegalArgumentException("Column " + columns[i] + " is outside a row of " + width + " columns.");
+            }
+            typed |= values[i] == null;
+        }
+        if (typed && numbers == null) {
+            throw new IllegalArgumentException("Cell values cannot be null.");
+        }
+        this.width = width;
+        this.columns = Arrays.copyOf(columns, size);
+        this.values = Arrays.copyOf(values, size);
+        this.numbers = typed ? Arrays.copyOf(numbers, size) : null;
+        this.doubles = typed ? Arrays.copyOf(doubles, size) : null;
+    }
+
+    /**
+     * Builds a sparse row laying out column-to-value pairs for an output column order. Null and
+     * empty values, and columns missing from the order, are left out.
+     *
+     * @param row The column-to-value pairs
+     * @param order The column names of the output, in order
+     * @return The sparse row
+     */
+    public static SparseRow of(Map<String, String> row, String[] order) {
+        int[] columns = new int[order.length];
+        String[] values = new String[order.length];
+        int size = 0;
+        for (int i = 0; i < order.length; i++) {
+            String value = row.get(order[i]);
+            if (value != null && !value.isEmpty()) {
+                columns[size] = i;
+                values[size++] = value;
+            }
+        }
+        return new SparseRow(order.length, columns, values, size);
+    }
+
+    /**
+     * Returns the number of columns of the row, populated or not.
+     *
+     * @return The row width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the number of cells stored.
+     *
+     * @return The populated cell count
+     */
+    public int size() {
+        return columns.length;
+    }
+
+    /**
+     * Returns the position of one stored cell.
+     *
+     * @param index The cell index, from 0 to {@link #size()} - 1
+     * @return The column position of the cell
+     */
+    public int getColumn(int index) {
+        return columns[index];
+    }
+
+    /**
+     * Returns the value of one stored cell.
+     *
+     * @param index The cell index, from 0 to {@link #size()} - 1
+     * @return The value of the cell
+     */
+    public String getValue(int index) {
+        if (values[index] != null) {
+            return values[index];
+        }
+        return doubles[index] ? Double.toString(Double.longBitsToDouble(numbers[index])) : Long.toString(numbers[index]);
+    }
+
+    /**
+     * Tells whether a cell holds a number rather than text.
+     */
+    boolean isNumber(int index) {
+        return values[index] == null;
+    }
+
+    /**
+     * Tells whether a number cell holds the bits of a double rather than a long.
+     */
+    boolean isDouble(int index) {
+        return doubles[index];
+    }
+
+    /**
+     * Returns the long, or the bits of the double, of a number cell.
+     */
+    long getNumber(int index) {
+        return numbers[index];
+    }
+
+    /**
+     * Writes the stored cells into a dense array, leaving every other position untouched.
+     *
+     * @param target An array of at least {@link #getWidth()} values
+     */
+    public void copyInto(String[] target) {
+        for (int i = 0; i < columns.length; i++) {
+            target[columns[i]] = getValue(i);
+        }
+    }
+
+    /**
+     * Writes the stored cells in the format of the run files of {@link RowBuffer}: the cell count,
+     * then the position, byte length and UTF-8 bytes of each cell, as variable-length integers.
+     * Number cells are written as their text.
+     *
+     * @param out The destination
+     * @throws IOException if the row cannot be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        RowBuffer.writeVarInt(out, columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            RowBuffer.writeVarInt(out, columns[i]);
+            byte[] bytes = getValue(i).getBytes(StandardCharsets.UTF_8);
+            RowBuffer.writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads a row written by {@link #write(DataOutputStream)}.
+     *
+     * @param in The source
+     * @param width The number of columns of the row
+     * @return The row
+     * @throws IOException if the row cannot be read
+     */
+    static SparseRow read(DataInputStream in, int width) throws IOException {
+        int size = RowBuffer.readVarInt(in);
+        int[] columns = new int[size];
+        String[] values = new String[size];
+        for (int i = 0; i < size; i++) {
+            columns[i] = RowBuffer.readVarInt(in);
+            byte[] bytes = new byte[RowBuffer.readVarInt(in)];
+            in.readFully(bytes);
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new SparseRow(width, columns, values, size);
+    }
+
+    /**
+     * Expands the row to one value per column.
+     *
+     * @return A new array with empty strings for the cells not stored
+     */
+    public String[] toArray() {
+        String[] row = new String[width];
+        Arrays.fill(row, "");
+        copyInto(row);
+        return row;
+    }
+}
@@ -0,0 +1,103 @@
+package org.jsoncsvconverter.Logic;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cumulative, thread-safe counters for a single conversion stage.
+ * Counters are striped {@link LongAdder}s so that concurrent conversions never contend on a
+ * shared lock, keeping the cost of recording a stage to a handful of atomic additions.
+ *
+ * <p>Instances are owned by {@link ConversionMetrics} and are exported through JMX via
+ * {@link StageMetricsMBean}.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class StageMetrics implements StageMetricsMBean {
+
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder columns = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    /**
+     * Records one completed invocation of the stage.
+     *
+     * @param nanos The wall-clock duration of the invocation
+     * @param byteCount The bytes read or written, or 0 when not applicable
+     * @param rowCount The rows produced or consumed, or 0 when not applicable
+     * @param columnCount The columns produced or consumed, or 0 when not applicable
+     * @param allocated The heap bytes allocated by the invoking thread, or 0 when unavailable
+     * @param failed Whether the invocation ended with an exception
+     */
+    void record(long nanos, long byteCount, long rowCount, long columnCount, long allocated, boolean failed) {
+        invocations.increment();
+        if (failed) {
+            failures.increment();
+        }
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        bytes.add(byteCount);
+        rows.add(rowCount);
+        columns.add(columnCount);
+        allocatedBytes.add(allocated);
+    }
+
+    @Override
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getColumns() {
+        return columns.sum();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    @Override
+    public void reset() {
+        invocations.reset();
+        failures.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        bytes.reset();
+        rows.reset();
+        columns.reset();
+        allocatedBytes.reset();
+    }
+}
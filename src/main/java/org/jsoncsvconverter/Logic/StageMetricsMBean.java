@@ -0,0 +1,44 @@
+package org.jsoncsvconverter.Logic;
+
+/**
+ * JMX management interface exposing the cumulative counters of one conversion stage.
+ * Each stage of {@link ConversionMetrics} is registered under
+ * {@code org.jsoncsvconverter:type=ConversionMetrics,stage=<Stage>} and can be inspected
+ * with JConsole, VisualVM or any other JMX client.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ *
+ * @see StageMetrics
+ * @see ConversionMetrics
+ */
+public interface StageMetricsMBean {
+
+    /** @return The number of completed invocations of the stage */
+    long getInvocations();
+
+    /** @return The number of invocations that ended with an exception */
+    long getFailures();
+
+    /** @return The total wall-clock time spent in the stage, in nanoseconds */
+    long getTotalNanos();
+
+    /** @return The longest single invocation of the stage, in nanoseconds */
+    long getMaxNanos();
+
+    /** @return The total number of bytes read or written by the stage */
+    long getBytes();
+
+    /** @return The total number of rows produced or consumed by the stage */
+    long getRows();
+
+    /** @return The total number of columns produced or consumed by the stage */
+    long getColumns();
+
+    /** @return The total number of heap bytes allocated by the thread running the stage */
+    long getAllocatedBytes();
+
+    /** Resets every counter of the stage to zero. */
+    void reset();
+}
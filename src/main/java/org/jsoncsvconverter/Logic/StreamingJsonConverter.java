@@ -0,0 +1,845 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Converts a JSON file to CSV while reading it as a token stream, so the input is never held as
+ * one string or one tree. Each record is built as a small tree, flattened into a
+ * {@link RowBuffer} and discarded; the CSV is written once the header set is known.
+ *
+ * <p>Supported layouts:</p>
+ * <ul>
+ *   <li><strong>Object root:</strong> the members of the root object are streamed one by one and
+ *   every element of a root-level array is a record. The output is identical to
+ *   {@link JSONParser}, including the root scalar data on the first row.</li>
+ *   <li><strong>Array root:</strong> every element of the root array is a record.</li>
+ *   <li><strong>Newline-delimited JSON:</strong> every top-level value is a record. The layout is
+ *   recognised when the first value ends, and a second one starts, within the first
+ *   {@value #LAYOUT_LOOKAHEAD} characters.</li>
+ * </ul>
+ * <p>Top-level values other than objects and arrays, and values following the document in any
+ * other layout, are rejected with a {@link JsonSyntaxException}.</p>
+ *
+ * <p>Files converted without a projection or a filter are read by {@link Utf8CsvConverter},
+ * which tokenizes the UTF-8 bytes directly and copies plain values from the input to the CSV
+ * without building strings; input it does not reproduce exactly is left to the Gson reader.</p>
+ *
+ * <p>With a {@link ColumnProjection} in the options, values that cannot produce a selected
+ * column are skipped at the token level by {@link JsonTreeReader}: they are scanned but never
+ * built, flattened or buffered. Rows left without a value in any selected column, such as those
+ * of a nested array none of whose columns is selected, are not written. With a
+ * {@link RecordFilter}, every record is evaluated while it is read and the remaining tokens of a
+ * rejected record are skipped the same way.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>{@code
+ * ConversionOptions options = new ConversionOptions()
+ *         .setProjection(ColumnProjection.parse("id, status, courses__code"));
+ * StreamingJsonConverter converter = new StreamingJsonConverter(options);
+ * long rows = converter.convert("data/campus.json", "output/campus.csv");
+ * }</pre>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class StreamingJsonConverter {
+
+    /** Characters buffered between the input file and the JSON reader */
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    /** Characters examined to tell a single root object from a sequence of records */
+    static final int LAYOUT_LOOKAHEAD = 1 << 16;
+
+    private final ConversionOptions options;
+    private final JsonTreeReader treeReader;
+    /** Columns written in place of the discovered ones, or null */
+    private String[] layout;
+
+    /** State of the conversion in progress */
+    private JsonFlattener flattener;
+    private RowBuffer rows;
+    private Map<String, String> leadingRow;
+    private int maxRowExplosion;
+    private long itemRows;
+    private long rootRows;
+
+    /** Results of the last conversion */
+    private String[] headers = new String[0];
+    private Map<String, ColumnType> columnTypes = Collections.emptyMap();
+    /** Types of the columns that had a value, unlike the schema which types the others too */
+    private Map<String, ColumnType> inferredTypes = Collections.emptyMap();
+    private long rowCount = 0;
+    private long rejectedRecordCount = 0;
+    private ColumnStatistics statistics = null;
+
+    /**
+     * Constructs a converter with the given options.
+     *
+     * @param options The options controlling the row buffer, nesting limit and projection
+     */
+    public StreamingJsonConverter(ConversionOptions options) {
+        this.options = options;
+        this.treeReader = new JsonTreeReader(options.getProjection(), options.getFilter());
+    }
+
+    /**
+     * Converts a JSON file to a CSV file.
+     *
+     * @param inputPath The JSON file to read, encoded in UTF-8
+     * @param outputPath The CSV file to create
+     * @return The number of data rows written
+     * @throws JsonSyntaxException if the input is malformed
+     * @throws JsonIOException if the input cannot be read
+     * @throws RuntimeException if the CSV file cannot be written
+     * @see ConversionOptions#setConversionCache(ConversionCache)
+     */
+    public long convert(String inputPath, String outputPath) {
+        ConversionCache cache = options.getConversionCache();
+        if (cache == null) {
+            return convertUncached(inputPath, outputPath);
+        }
+        String key = cacheKey(cache, inputPath, options);
+        ConversionCache.Entry cached = restoreFromCache(cache, key, outputPath, options);
+        if (cached != null) {
+            headers = cached.headers.clone();
+            columnTypes = cached.columnTypes;
+            inferredTypes = cached.columnTypes;
+            rowCount = cached.rowCount;
+            rejectedRecordCount = cached.rejectedRecordCount;
+            maxRowExplosion = cached.maxRowExplosion;
+            statistics = null;
+            return rowCount;
+        }
+        convertUncached(inputPath, outputPath);
+        addToCache(cache, key, outputPath, new ConversionCache.Entry(headers, columnTypes, rowCount,
+                rejectedRecordCount, maxRowExplosion, statistics != null));
+        return rowCount;
+    }
+
+    /**
+     * Converts a JSON file to a CSV file without consulting the conversion cache.
+     */
+    long convertUncached(String inputPath, String outputPath) {
+        if (Utf8CsvConverter.supports(options)) {
+            Utf8CsvConverter fastPath = new Utf8CsvConverter(options);
+            fastPath.setLayout(layout);
+            try {
+                if (fastPath.convert(inputPath, outputPath)) {
+                    headers = fastPath.getHeadersArray();
+                    columnTypes = fastPath.getColumnTypes();
+                    inferredTypes = fastPath.getInferredTypes();
+                    statistics = fastPath.getStatistics();
+                    rowCount = fastPath.getRowCount();
+                    rejectedRecordCount = 0;
+                    maxRowExplosion = fastPath.getMaxRowExplosion();
+                    return rowCount;
+                }
+            } catch (IOException e) {
+                throw new JsonIOException("Error while reading JSON file: " + inputPath, e);
+            }
+        }
+        try (Reader input = new BufferedReader(new InputStreamReader(
+                new FileInputStream(inputPath), StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+            return convert(input, inputPath, outputPath, null, null, true, new File(inputPath).length());
+        } catch (IOException e) {
+            throw new JsonIOException("Error while reading JSON file: " + inputPath, e);
+        }
+    }
+
+    /**
+     * Converts a JSON file and writes only its rows to a stream in the platform charset, after
+     * the rows of other files converted in the same layout, as {@link MultiFileJsonConverter}
+     * does. The stream is flushed but not closed. No checkpoint is taken, as the output is
+     * shared, and the statistics are gathered but not saved.
+     *
+     * @param inputPath The JSON file to read, encoded in UTF-8
+     * @param output The stream receiving the rows
+     * @return The number of data rows written
+     * @throws JsonSyntaxException if the input is malformed
+     * @throws JsonIOException if the input cannot be read
+     * @throws RuntimeException if the rows cannot be written
+     */
+    long appendRows(String inputPath, OutputStream output) {
+        if (Utf8CsvConverter.supports(options)) {
+            Utf8CsvConverter fastPath = new Utf8CsvConverter(options);
+            fastPath.setLayout(layout);
+            try {
+                if (fastPath.appendRows(inputPath, output)) {
+                    headers = fastPath.getHeadersArray();
+                    columnTypes = fastPath.getColumnTypes();
+                    inferredTypes = fastPath.getInferredTypes();
+                    statistics = fastPath.getStatistics();
+                    rowCount = fastPath.getRowCount();
+                    rejectedRecordCount = 0;
+                    maxRowExplosion = fastPath.getMaxRowExplosion();
+                    return rowCount;
+                }
+            } catch (IOException e) {
+                throw new JsonIOException("Error while reading JSON file: " + inputPath, e);
+            }
+        }
+        try (Reader input = new BufferedReader(new InputStreamReader(
+                new FileInputStream(inputPath), StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+            return convert(input, inputPath, null, output, Charset.defaultCharset(), false,
+                    new File(inputPath).length());
+        } catch (IOException e) {
+            throw new JsonIOException("Error while reading JSON file: " + inputPath, e);
+        }
+    }
+
+    /**
+     * Finds the columns a conversion of a file would write, flattening its records without
+     * writing them. The byte-level path only tokenizes the file; the Gson path buffers the rows
+     * within the row buffer budget and discards them.
+     *
+     * @param inputPath The JSON file to read, encoded in UTF-8
+     * @return The columns in output order
+     * @throws JsonSyntaxException if the input is malformed
+     * @throws JsonIOException if the input cannot be read
+     */
+    String[] discoverHeaders(String inputPath) {
+        try {
+            if (Utf8CsvConverter.supports(options)) {
+                String[] found = new Utf8CsvConverter(options).discoverHeaders(inputPath);
+                if (found != null) {
+                    return found;
+                }
+            }
+            try (Reader input = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(inputPath), StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+                flattener = new JsonFlattener(options);
+                rows = new RowBuffer(options.getRowBufferBudgetBytes(), options.getSpillDirectory());
+                leadingRow = null;
+                readDocument(input);
+                return collectColumns().toArray(new String[0]);
+            } finally {
+                if (rows != null) {
+                    rows.close();
+                    rows = null;
+                }
+                leadingRow = null;
+            }
+        } catch (IOException e) {
+            throw new JsonIOException("Error while reading JSON file: " + inputPath, e);
+        }
+    }
+
+    /**
+     * Makes later conversions write the given columns, in that order, rather than the columns
+     * they discover, so that several files can share one layout. The layout must hold every
+     * column the input produces.
+     *
+     * @param layout The columns to write, or null to write the discovered columns
+     */
+    void setLayout(String[] layout) {
+        this.layout = layout == null ? null : layout.clone();
+    }
+
+    /**
+     * Computes the cache key of a file, reporting read errors as the converters do.
+     */
+    static String cacheKey(ConversionCache cache, String inputPath, ConversionOptions options) {
+        try {
+            return cache.key(inputPath, options);
+        } catch (IOException e) {
+            throw new JsonIOException("Error while reading JSON file: " + inputPath, e);
+        }
+    }
+
+    /**
+     * Restores a cached conversion, reporting write errors as the converters do. The cache keeps
+     * no row index or columnar copy, so those requested by the options are built again from the
+     * restored file.
+     *
+     * @return The cached results, or null on a miss
+     */
+    static ConversionCache.Entry restoreFromCache(ConversionCache cache, String key, String outputPath,
+                                                  ConversionOptions options) {
+        ConversionCache.Entry entry;
+        try {
+            entry = cache.restore(key, outputPath);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while creating CSV file with data: " + outputPath, e);
+        }
+        if (entry != null && options.getRowIndexInterval() > 0) {
+            CsvRowIndex.build(outputPath, options.getRowIndexInterval(), options.getRowIndexKeyColumn());
+        }
+        if (entry != null && options.isColumnarOutputEnabled()) {
+            new ColumnarFileWriter(entry.headers, entry.columnTypes)
+                    .createColumnarFileFromCsv(outputPath, ColumnarFileWriter.sidecarPath(outputPath));
+        }
+        return entry;
+    }
+
+    /**
+     * Adds a finished conversion to the cache.
+     */
+    static void addToCache(ConversionCache cache, String key, String outputPath, ConversionCache.Entry entry) {
+        try {
+            cache.store(key, outputPath, entry);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while caching CSV file: " + outputPath, e);
+        }
+    }
+
+    /**
+     * Converts JSON read from a character stream to a CSV file. The stream is not closed.
+     *
+     * @param input The JSON text
+     * @param sourceName The name of the input for diagnostics, or null when unknown
+     * @param outputPath The CSV file to create
+     * @return The number of data rows written
+     * @throws JsonSyntaxException if the input is malformed
+     * @throws JsonIOException if the input cannot be read
+     * @throws RuntimeException if the CSV file cannot be written
+     */
+    public long convert(Reader input, String sourceName, String outputPath) {
+        return convert(input, sourceName, outputPath, null, null, true, 0);
+    }
+
+    /**
+     * Converts JSON read from a character stream to CSV written to a byte stream, such as
+     * standard output in a shell pipeline. The header depends on every record, so the rows are
+     * held until the input ends, within the row buffer budget, and only spill to the spill
+     * directory beyond it. Neither stream is closed; the output is flushed. Statistics are
+     * gathered but not saved, as there is no file to save them next to.
+     *
+     * @param input The JSON text
+     * @param sourceName The name of the input for diagnostics, or null when unknown
+     * @param output The stream receiving the CSV text, in the platform charset
+     * @return The number of data rows written
+     * @throws IllegalArgumentException if the options ask for a row index or a columnar copy,
+     *                                  which describe an output file
+     * @throws JsonSyntaxException if the input is malformed
+     * @throws JsonIOException if the input cannot be read
+     * @throws RuntimeException if the CSV cannot be written
+     */
+    public long convert(Reader input, String sourceName, OutputStream output) {
+        return convert(input, sourceName, output, Charset.defaultCharset());
+    }
+
+    /**
+     * Converts JSON read from a character stream to CSV written to a byte stream in the given
+     * charset, as {@link #convert(Reader, String, OutputStream)} does in the platform charset.
+     *
+     * @param input The JSON text
+     * @param sourceName The name of the input for diagnostics, or null when unknown
+     * @param output The stream receiving the CSV text
+     * @param charset The charset of the CSV text
+     * @return The number of data rows written
+     * @throws IllegalArgumentException if the options ask for a row index or a columnar copy,
+     *                                  which describe an output file
+     * @throws JsonSyntaxException if the input is malformed
+     * @throws JsonIOException if the input cannot be read
+     * @throws RuntimeException if the CSV cannot be written
+     */
+    public long convert(Reader input, String sourceName, OutputStream output, Charset charset) {
+        if (options.getRowIndexInterval() > 0 || options.isColumnarOutputEnabled()) {
+            throw new IllegalArgumentException("Row indexes and columnar copies need an output file.");
+        }
+        return convert(input, sourceName, null, output, charset, true, 0);
+    }
+
+    /**
+     * Converts JSON read from a character stream to a CSV file, or to a stream in the given
+     * charset when no output path is given.
+     *
+     * @param header false to write only the rows to the stream, after those of an earlier file
+     */
+    private long convert(Reader input, String sourceName, String outputPath, OutputStream outputStream,
+                         Charset outputCharset, boolean header, long inputBytes) {
+        flattener = new JsonFlattener(options);
+        rows = new RowBuffer(options.getRowBufferBudgetBytes(), options.getSpillDirectory());
+        leadingRow = null;
+        maxRowExplosion = 0;
+        long rejectedBefore = treeReader.getRejectedRecordCount();
+        try {
+            try (ConversionMetrics.StageTimer timer =
+                         ConversionMetrics.getInstance().start(ConversionMetrics.Stage.FLATTEN, sourceName)) {
+                readDocument(input);
+                headers = layout != null ? layout.clone() : collectColumns().toArray(new String[0]);
+                Map<String, ColumnType> types = rows.getColumnTypes();
+                if (leadingRow != null) {
+                    ColumnType.inferInto(types, leadingRow);
+                }
+                columnTypes = ColumnType.schema(headers, types);
+                inferredTypes = types;
+                rowCount = rows.size() + (leadingRow == null ? 0 : 1);
+                rejectedRecordCount = treeReader.getRejectedRecordCount() - rejectedBefore;
+                maxRowExplosion = Math.max(maxRowExplosion, flattener.getMaxRowExplosion());
+                timer.complete(inputBytes, rowCount, headers.length, maxRowExplosion);
+            }
+
+            List<SparseRow> output = rows.sparseView(Arrays.asList(headers));
+            BitSet recordStarts = new BitSet();
+            rows.copyRecordStarts(recordStarts, leadingRow == null ? 0 : 1);
+            if (leadingRow != null) {
+                output = new LeadingRowList<>(SparseRow.of(leadingRow, headers), output);
+                recordStarts.set(0);
+            }
+            ColumnStatistics stats = options.isStatisticsEnabled() ? new ColumnStatistics(headers) : null;
+            if (outputPath == null) {
+                rowCount = writeRows(outputStream, outputCharset, header, headers, columnTypes, output, recordStarts,
+                        stats, options);
+            } else {
+                rowCount = writeRows(outputPath, headers, columnTypes, output, recordStarts, stats, options);
+            }
+            statistics = stats;
+            if (stats != null && outputPath != null) {
+                stats.write(ColumnStatistics.sidecarPath(outputPath));
+            }
+            return rowCount;
+        } finally {
+            rows.close();
+            rows = null;
+            leadingRow = null;
+        }
+    }
+
+    /**
+     * Writes the rows of a conversion, without duplicates when deduplication is enabled and
+     * sorted when the options have sort columns, with a columnar copy when it is enabled.
+     *
+     * @param recordStarts The positions of the rows that start a record
+     * @return The number of rows written
+     */
+    static long writeRows(String outputPath, String[] headers, Map<String, ColumnType> columnTypes,
+                          List<SparseRow> rows, BitSet recordStarts, ColumnStatistics stats,
+                          ConversionOptions options) {
+        String columnarPath = ColumnarFileWriter.sidecarPath(outputPath);
+        try (ColumnarFileWriter.Output columnar = options.isColumnarOutputEnabled()
+                ? new ColumnarFileWriter(headers, columnTypes).open(columnarPath) : null) {
+            CSVWriterFile writer = new CSVWriterFile(headers).setStatistics(stats)
+                    .setRowIndex(options.getRowIndexInterval(), options.getRowIndexKeyColumn())
+                    .setColumnarCopy(columnar);
+            return arrangeRows(headers, columnTypes, rows, recordStarts, options,
+                    arranged -> writer.createCSVWithSparseRows(outputPath, arranged));
+        } catch (IOException e) {
+            throw new RuntimeException("Error while creating columnar file: " + columnarPath, e);
+        }
+    }
+
+    /**
+     * Writes the rows of a conversion to a stream in the given charset, without duplicates when
+     * deduplication is enabled and sorted when the options have sort columns.
+     *
+     * @param header false to write only the rows, after those of an earlier file
+     * @param recordStarts The positions of the rows that start a record
+     * @return The number of rows written
+     */
+    static long writeRows(OutputStream output, Charset charset, boolean header, String[] headers,
+                          Map<String, ColumnType> columnTypes, List<SparseRow> rows, BitSet recordStarts,
+                          ColumnStatistics stats, ConversionOptions options) {
+        CSVWriterFile writer = new CSVWriterFile(headers).setStatistics(stats);
+        return arrangeRows(headers, columnTypes, rows, recordStarts, options, header
+                ? arranged -> writer.writeCSVWithSparseRows(output, arranged, charset)
+                : arranged -> writer.appendSparseRows(output, arranged, charset));
+    }
+
+    /**
+     * Drops the rows a projection left without a value and duplicate rows, sorts the rest as the
+     * options ask, and hands them to a writer. Whole records are deduplicated and sorted, each
+     * with all of its rows.
+     *
+     * @return The number of rows written
+     */
+    private static long arrangeRows(String[] headers, Map<String, ColumnType> columnTypes, List<SparseRow> rows,
+                                    BitSet recordStarts, ConversionOptions options,
+                                    Consumer<List<SparseRow>> write) {
+        if (options.getProjection() != null) {
+            // Rows flattened only from unselected columns, such as those of a nested array
+            BitSet empty = new BitSet();
+            int index = 0;
+            for (SparseRow row : rows) {
+                if (row.size() == 0) {
+                    empty.set(index);
+                }
+                index++;
+            }
+            if (!empty.isEmpty()) {
+                KeptRows projected = new KeptRows(rows, empty);
+                recordStarts = projected.keptPositions(recordStarts);
+                rows = projected;
+            }
+        }
+        if (options.isDeduplicationEnabled()) {
+            try (RowDeduplicator deduplicator = new RowDeduplicator(headers, options.getDeduplicationColumns(),
+                    options.getRowBufferBudgetBytes(), options.getSpillDirectory())) {
+                KeptRows unique = deduplicator.deduplicate(rows, recordStarts);
+                recordStarts = unique.keptPositions(recordStarts);
+                rows = unique;
+            }
+        }
+        if (options.getSortColumns() == null) {
+            write.accept(rows);
+            return rows.size();
+        }
+        try (ExternalRowSorter sorter = new ExternalRowSorter(headers, options.getSortColumns(), columnTypes,
+                options.getRowBufferBudgetBytes(), options.getSpillDirectory())) {
+            write.accept(sorter.sort(rows, recordStarts));
+        }
+        return rows.size();
+    }
+
+    /**
+     * Returns the columns written by the last conversion, in output order.
+     *
+     * @return The CSV headers
+     */
+    public String[] getHeadersArray() {
+        return headers.clone();
+    }
+
+    /**
+     * Returns the type of every column written by the last conversion, inferred from its values
+     * while flattening, so that consumers of the CSV need not infer it again.
+     *
+     * @return An unmodifiable map from header to type, in output order
+     * @see ColumnType
+     */
+    public Map<String, ColumnType> getColumnTypes() {
+        return columnTypes;
+    }
+
+    /**
+     * Returns the types inferred by the last conversion for the columns that had a value, so
+     * that the types of several conversions can be merged; see {@link ColumnType#mergeInto}.
+     */
+    Map<String, ColumnType> getInferredTypes() {
+        return inferredTypes;
+    }
+
+    /**
+     * Returns the statistics of the columns written by the last conversion, which were also
+     * saved next to the CSV. A conversion restored from the cache restores only the file.
+     *
+     * @return The statistics, or null unless {@link ConversionOptions#isStatisticsEnabled()} or
+     *         after a cache hit
+     */
+    public ColumnStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns the number of data rows written by the last conversion.
+     *
+     * @return The row count
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of records the filter rejected during the last conversion.
+     *
+     * @return The rejected record count, 0 when no filter is set
+     */
+    public long getRejectedRecordCount() {
+        return rejectedRecordCount;
+    }
+
+    /**
+     * Returns the largest number of rows that a single record or array element expanded into
+     * during the last conversion.
+     *
+     * @return The largest per-element row count
+     */
+    public int getMaxRowExplosion() {
+        return maxRowExplosion;
+    }
+
+    /**
+     * Reads every top-level value of the input. Only a sequence may hold more than one, and every
+     * top-level value must be an object or an array.
+     */
+    private void readDocument(Reader input) {
+        try {
+            if (!input.markSupported()) {
+                input = new BufferedReader(input, READ_BUFFER_SIZE);
+            }
+            // The first object is a root object unless more records follow it
+            boolean sequence = StructuralIndex.detectLayout(input, LAYOUT_LOOKAHEAD) == StructuralIndex.Layout.SEQUENCE;
+            boolean first = !sequence;
+            JsonReader in = new JsonReader(input);
+            in.setStrictness(Strictness.LENIENT);
+            in.setNestingLimit(options.getMaxNestingDepth());
+            for (JsonToken token = in.peek(); token != JsonToken.END_DOCUMENT; token = in.peek()) {
+                if (token != JsonToken.BEGIN_ARRAY && token != JsonToken.BEGIN_OBJECT) {
+                    throw new MalformedJsonException("Expected an object or array but was " + token + " " + in);
+                }
+                if (!sequence && !first) {
+                    throw new MalformedJsonException("Unexpected value after the end of the document " + in);
+                }
+                if (token == JsonToken.BEGIN_ARRAY) {
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        addRecord(treeReader.readRecord(in, ""));
+                    }
+                    in.endArray();
+                } else if (token == JsonToken.BEGIN_OBJECT && first) {
+                    streamRootObject(in);
+                } else {
+                    addRecord(treeReader.readRecord(in, ""));
+                }
+                first = false;
+            }
+        } catch (MalformedJsonException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Flattens one record into the buffer.
+     *
+     * @param record The record, or null when the projection skipped it
+     */
+    private void addRecord(JsonElement record) {
+        if (record == null) {
+            return;
+        }
+        itemRows = 0;
+        rows.startRecord();
+        flattener.flatten(record, "", row -> {
+            rows.addRow(row);
+            itemRows++;
+        });
+        maxRowExplosion = (int) Math.max(maxRowExplosion, itemRows);
+    }
+
+    /**
+     * Streams the members of the root object, applying the same rules as {@link JsonFlattener}:
+     * rows of root-level object arrays come first and the first of them also carries the root
+     * scalar data, which may only be complete once the whole object has been read. That row is
+     * therefore held back as the leading row and placed in front of the buffered rows at the end.
+     */
+    private void streamRootObject(JsonReader in) throws IOException {
+        Map<String, String> scalarData = new LinkedHashMap<>();
+        Map<String, List<String>> primitiveArrays = new LinkedHashMap<>();
+        rootRows = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            if (!treeReader.isSelected(in, key)) {
+                in.skipValue();
+                continue;
+            }
+            JsonToken token = in.peek();
+            if (token == JsonToken.BEGIN_ARRAY) {
+                streamRootArray(in, key, primitiveArrays);
+                joinPrimitiveArray(key, scalarData, primitiveArrays, options);
+            } else if (token == JsonToken.BEGIN_OBJECT) {
+                // Nested object - every row it produces is merged into the scalar data
+                flattener.flatten(treeReader.read(in, key), key, row -> row.copyInto(scalarData));
+            } else {
+                JsonElement value = treeReader.read(in, key);
+                scalarData.put(key, value.isJsonNull() ? "" : value.getAsString());
+            }
+        }
+        in.endObject();
+        leadingRow = finishRootObject(scalarData, primitiveArrays, leadingRow, rootRows > 0, rows);
+    }
+
+    /**
+     * Moves a root-level primitive array into the scalar data as one joined cell when the options
+     * join primitive arrays, as {@link JsonFlattener} does for the arrays of every other object.
+     */
+    static void joinPrimitiveArray(String column, Map<String, String> scalarData,
+                                   Map<String, List<String>> primitiveArrays, ConversionOptions options) {
+        String delimiter = options.getPrimitiveArrayDelimiter();
+        if (delimiter != null && primitiveArrays.containsKey(column)) {
+            scalarData.put(column, JsonFlattener.join(primitiveArrays.remove(column), delimiter,
+                    options.getPrimitiveArrayEscape()));
+        }
+    }
+
+    /**
+     * Completes the rows of a root object once all its members have been read: the root scalar
+     * data joins the first row of the object arrays, and the primitive arrays are spread over
+     * rows of their own, the first of which carries the scalar data if there was no such row.
+     *
+     * @param scalarData The flattened scalars and nested objects of the root object
+     * @param primitiveArrays The values of the root-level primitive arrays
+     * @param leadingRow The first row of the object arrays, or null if they produced none
+     * @param objectRows True if the object arrays produced any row
+     * @param rows The buffer receiving the remaining rows
+     * @return The first row with the scalar data prepended, or null if there is no such row
+     */
+    static Map<String, String> finishRootObject(Map<String, String> scalarData,
+                                                Map<String, List<String>> primitiveArrays,
+                                                Map<String, String> leadingRow, boolean objectRows,
+                                                RowBuffer rows) {
+        int maxArrayLength = 0;
+        for (List<String> arrayValues : primitiveArrays.values()) {
+            maxArrayLength = Math.max(maxArrayLength, arrayValues.size());
+        }
+        if (leadingRow != null) {
+            RowBuilder first = new RowBuilder();
+            first.putAll(leadingRow);
+            first.prepend(scalarData);
+            leadingRow = first.toMap();
+        }
+        if (objectRows || maxArrayLength > 0) {
+            if (maxArrayLength > 0) {
+                rows.startRecord();
+            }
+            for (int i = 0; i < maxArrayLength; i++) {
+                Map<String, String> row = new LinkedHashMap<>();
+                if (i == 0 && !objectRows) {
+                    row.putAll(scalarData);
+                }
+                for (Map.Entry<String, List<String>> arrayEntry : primitiveArrays.entrySet()) {
+                    if (i < arrayEntry.getValue().size()) {
+                        row.put(arrayEntry.getKey(), arrayEntry.getValue().get(i));
+                    }
+                }
+                rows.addRow(row);
+            }
+        } else {
+            rows.startRecord();
+            rows.addRow(scalarData);
+        }
+        return leadingRow;
+    }
+
+    /**
+     * Streams one array member of the root object. A primitive array is collected for the final
+     * rows; every element of any other array is flattened as soon as it has been read. The first
+     * element that survives the projection and the filter decides the kind of array.
+     */
+    private void streamRootArray(JsonReader in, String column, Map<String, List<String>> primitiveArrays)
+            throws IOException {
+        List<String> arrayValues = null;
+        boolean objectArray = false;
+        in.beginArray();
+        while (in.hasNext()) {
+            JsonElement item = treeReader.readRecord(in, column);
+            if (item == null) {
+                continue;
+            }
+            if (arrayValues == null && !objectArray) {
+                if (item.isJsonPrimitive()) {
+                    arrayValues = new ArrayList<>();
+                } else {
+                    objectArray = true;
+                }
+            }
+            if (arrayValues != null) {
+                arrayValues.add(item.getAsString());
+                continue;
+            }
+
+            itemRows = 0;
+            if (rootRows > 0) {
+                // Every element of a root array is a record; the first starts with the leading row
+                rows.startRecord();
+            }
+            flattener.flatten(item, column, row -> {
+                if (rootRows == 0) {
+                    leadingRow = row.toMap();
+                } else {
+                    rows.addRow(row);
+                }
+                rootRows++;
+                itemRows++;
+            });
+            maxRowExplosion = (int) Math.max(maxRowExplosion, itemRows);
+        }
+        in.endArray();
+        if (arrayValues != null) {
+            primitiveArrays.put(column, arrayValues);
+        }
+    }
+
+    /**
+     * Determines the output columns: the columns of the leading row, then the buffered columns in
+     * discovery order, then the projection's selection and ordering if there is one.
+     */
+    private List<String> collectColumns() {
+        Set<String> discovered = new LinkedHashSet<>();
+        if (leadingRow != null) {
+            discovered.addAll(leadingRow.keySet());
+        }
+        discovered.addAll(rows.getColumns());
+        List<String> columns = new ArrayList<>(discovered);
+        ColumnProjection projection = options.getProjection();
+        return projection == null ? columns : projection.selectHeaders(columns);
+    }
+
+    /**
+     * A read-only list made of one leading row followed by the rows of another list.
+     */
+    private static final class LeadingRowList<T> extends AbstractList<T> {
+
+        private final T first;
+        private final List<T> rest;
+
+        LeadingRowList(T first, List<T> rest) {
+            this.first = first;
+            this.rest = rest;
+        }
+
+        @Override
+        public int size() {
+            return rest.size() + 1;
+        }
+
+        @Override
+        public T get(int index) {
+            return index == 0 ? first : rest.get(index - 1);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            final Iterator<T> others = rest.iterator();
+            return new Iterator<T>() {
+                private boolean firstReturned = false;
+
+                @Override
+                public boolean hasNext() {
+                    return !firstReturned || others.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    if (!firstReturned) {
+                        firstReturned = true;
+                        return first;
+                    }
+                    return others.next();
+                }
+            };
+        }
+    }
+}
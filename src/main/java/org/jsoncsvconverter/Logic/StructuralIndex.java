@@ -0,0 +1,594 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.JsonSyntaxException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A byte-level pre-pass over a JSON file that finds where its records start and end without
+ * parsing them. The scan only follows strings (including escaped quotes) and bracket depth, so it
+ * runs close to disk speed; the offsets it records let a large file be cut into independent byte
+ * ranges that several threads parse at once.
+ *
+ * <p>What is indexed, depending on the layout of the document:</p>
+ * <ul>
+ *   <li><strong>Array root:</strong> the boundaries between the elements of the root array.</li>
+ *   <li><strong>Object root:</strong> the span of every member of the root object and, for
+ *   members whose value is an array, the boundaries between its elements.</li>
+ *   <li><strong>Sequence</strong> (newline-delimited JSON): the boundaries between top-level values.</li>
+ * </ul>
+ *
+ * <p>Boundaries are sampled: one is kept only when it lies at least the configured granularity
+ * after the previous one, so the index stays small however many records the file holds, while
+ * element counts remain exact.</p>
+ *
+ * <p>The index does not validate the JSON; malformed input is reported when the ranges are
+ * parsed. It does reject input whose strings or brackets are left open at the end of the file,
+ * and it reports a document as not {@linkplain #isSplittable() splittable} when its records or
+ * members are not separated the way it expects, such as an unquoted member name, an empty
+ * element or a trailing comma, so that a full parser accepts or rejects it instead.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public final class StructuralIndex {
+
+    /** Default minimum distance, in bytes, between two recorded boundaries */
+    public static final long DEFAULT_GRANULARITY = 256 * 1024;
+
+    /** Bytes read from the file per scan step */
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The overall shape of a JSON document.
+     */
+    public enum Layout {
+        /** A single array */
+        ARRAY,
+        /** A single object */
+        OBJECT,
+        /** Several top-level objects or arrays, such as newline-delimited JSON */
+        SEQUENCE,
+        /** A top-level string, number, boolean or null */
+        SCALAR,
+        /** No value at all */
+        EMPTY
+    }
+
+    /**
+     * A contiguous byte range holding a whole number of consecutive elements, without the
+     * enclosing brackets. For arrays the range excludes the commas at its ends.
+     */
+    public static final class Range {
+        private final long start;
+        private final long end;
+        private final long elementCount;
+
+        Range(long start, long end, long elementCount) {
+            this.start = start;
+            this.end = end;
+            this.elementCount = elementCount;
+        }
+
+        /**
+         * @return The offset of the first byte of the range
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return The offset just after the last byte of the range
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return The number of elements in the range
+         */
+        public long getElementCount() {
+            return elementCount;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ") " + elementCount + " elements";
+        }
+    }
+
+    /**
+     * The elements of one array (or of a top-level sequence) and the sampled boundaries between them.
+     */
+    public static final class Elements {
+        private final long start;
+        private final int separatorWidth;
+        private final long granularity;
+        private long end = -1;
+        private byte firstByte = 0;
+
+        private long[] boundaries = new long[16];
+        private long[] countsBefore = new long[16];
+        private int size = 0;
+        private long lastKept;
+        private long elementCount = 0;
+        private boolean pending = false;
+        private boolean afterSeparator = false;
+        private boolean irregular = false;
+
+        Elements(long start, int separatorWidth, long granularity) {
+            this.start = start;
+            this.separatorWidth = separatorWidth;
+            this.granularity = granularity;
+            this.lastKept = start;
+        }
+
+        void value(byte b) {
+            if (firstByte == 0) {
+                firstByte = b;
+            }
+            pending = true;
+            afterSeparator = false;
+        }
+
+        void separator(long position) {
+            if (pending) {
+                elementCount++;
+                pending = false;
+            } else {
+                // An empty element
+                irregular = true;
+            }
+            afterSeparator = true;
+            if (position - lastKept >= granularity) {
+                if (size == boundaries.length) {
+                    boundaries = Arrays.copyOf(boundaries, size * 2);
+                    countsBefore = Arrays.copyOf(countsBefore, size * 2);
+                }
+                boundaries[size] = position;
+                countsBefore[size] = elementCount;
+                size++;
+                lastKept = position;
+            }
+        }
+
+        void close(long position) {
+            if (pending) {
+                elementCount++;
+                pending = false;
+            } else if (afterSeparator && separatorWidth > 0) {
+                // A trailing comma
+                irregular = true;
+            }
+            end = position;
+        }
+
+        /**
+         * @return The number of elements
+         */
+        public long getElementCount() {
+            return elementCount;
+        }
+
+        /**
+         * Returns the first byte of the first element, which tells its kind: {@code {}, {@code [},
+         * {@code "}, a digit or minus sign, or the first letter of true, false or null.
+         *
+         * @return The byte, or 0 when there are no elements
+         */
+        public byte getFirstByte() {
+            return firstByte;
+        }
+
+        /**
+         * Cuts the elements into at most the given number of ranges of similar byte size. Ranges
+         * only end at recorded boundaries, so fewer ranges are returned when the elements are few
+         * or the boundaries sparse.
+         *
+         * @param parts The desired number of ranges. Must be positive.
+         * @return The ranges in document order, covering every element exactly once
+         */
+        public List<Range> split(int parts) {
+            if (parts <= 0) {
+                throw new IllegalArgumentException("Number of ranges must be positive.");
+            }
+            long target = Math.max(1, (end - start) / parts);
+            List<Range> ranges = new ArrayList<>();
+            long rangeStart = start;
+            long elementsBefore = 0;
+            for (int i = 0; i < size && ranges.size() < parts - 1; i++) {
+                if (boundaries[i] - rangeStart >= target) {
+                    ranges.add(new Range(rangeStart, boundaries[i], countsBefore[i] - elementsBefore));
+                    rangeStart = boundaries[i] + separatorWidth;
+                    elementsBefore = countsBefore[i];
+                }
+            }
+            ranges.add(new Range(rangeStart, end, elementCount - elementsBefore));
+            return ranges;
+        }
+    }
+
+    /**
+     * One member of the root object.
+     */
+    public static final class Member {
+        private final long start;
+        private final long valueStart;
+        private final long end;
+        private final Elements elements;
+
+        Member(long start, long valueStart, long end, Elements elements) {
+            this.start = start;
+            this.valueStart = valueStart;
+            this.end = end;
+            this.elements = elements;
+        }
+
+        /**
+         * @return The offset of the opening quote of the member name
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return The offset of the first byte of the value
+         */
+        public long getValueStart() {
+            return valueStart;
+        }
+
+        /**
+         * @return The offset just after the value and any whitespace following it
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return The elements of the value when it is an array, otherwise null
+         */
+        public Elements getElements() {
+            return elements;
+        }
+    }
+
+    private final Path file;
+    private final long fileSize;
+    private Layout layout = Layout.EMPTY;
+    private Elements elements;
+    private final List<Member> members = new ArrayList<>();
+    private boolean irregularMembers = false;
+
+    private StructuralIndex(Path file, long fileSize) {
+        this.file = file;
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * Scans a file with the default boundary granularity.
+     *
+     * @param file The JSON file, encoded in UTF-8
+     * @return The index
+     * @throws IOException if the file cannot be read
+     * @throws JsonSyntaxException if a string or bracket is still open at the end of the file
+     */
+    public static StructuralIndex build(Path file) throws IOException {
+        return build(file, DEFAULT_GRANULARITY);
+    }
+
+    /**
+     * Scans a file, keeping boundaries at least the given number of bytes apart.
+     *
+     * @param file The JSON file, encoded in UTF-8
+     * @param granularity The minimum distance between recorded boundaries. Must be positive.
+     * @return The index
+     * @throws IOException if the file cannot be read
+     * @throws JsonSyntaxException if a string or bracket is still open at the end of the file
+     */
+    public static StructuralIndex build(Path file, long granularity) throws IOException {
+        if (granularity <= 0) {
+            throw new IllegalArgumentException("Granularity must be positive.");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            StructuralIndex index = new StructuralIndex(file, channel.size());
+            index.scan(channel, granularity);
+            return index;
+        }
+    }
+
+    /**
+     * Scans the whole file once. Separators only count outside strings: at depth 1 they divide
+     * the root array's elements or the root object's members, at depth 2 the elements of an array
+     * member of the root object, and at depth 0 the values of a sequence.
+     */
+    private void scan(FileChannel channel, long granularity) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        long base = 0;
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+
+        long rootStart = -1;
+        long firstValueEnd = -1;
+        long memberStart = -1;
+        long valueStart = -1;
+        boolean afterColon = false;
+        boolean afterComma = false;
+        Elements memberElements = null;
+
+        byte rootByte = 0;
+        while (channel.read(buffer) > 0) {
+            int limit = buffer.position();
+            for (int i = 0; i < limit; i++) {
+                byte b = bytes[i];
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                    continue;
+                }
+                if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                    continue;
+                }
+                long position = base + i;
+
+                if (layout == Layout.EMPTY && position < 3 && (b & 0xFF) >= 0xBB) {
+                    // Part of a UTF-8 byte order mark
+                    continue;
+                }
+                if (depth == 0) {
+                    boolean container = b == '{' || b == '[';
+                    if (layout == Layout.EMPTY) {
+                        if (!container) {
+                            layout = Layout.SCALAR;
+                            return;
+                        }
+                        rootStart = position;
+                        rootByte = b;
+                        layout = b == '[' ? Layout.ARRAY : Layout.OBJECT;
+                        if (layout == Layout.ARRAY) {
+                            elements = new Elements(position + 1, 1, granularity);
+                        }
+                        depth = 1;
+                        continue;
+                    }
+                    if (!container) {
+                        // A scalar after the first value cannot be split
+                        layout = Layout.SCALAR;
+                        return;
+                    }
+                    if (layout != Layout.SEQUENCE) {
+                        // A second top-level value: the document is a sequence of records
+                        layout = Layout.SEQUENCE;
+                        members.clear();
+                        elements = new Elements(rootStart, 0, granularity);
+                        elements.value(rootByte);
+                        elements.separator(firstValueEnd);
+                    }
+                    elements.value(b);
+                    depth = 1;
+                    continue;
+                }
+
+                switch (b) {
+                    case '"':
+                        inString = true;
+                        break;
+                    case '{':
+                    case '[':
+                        depth++;
+                        break;
+                    case '}':
+                    case ']':
+                        depth--;
+                        break;
+                    default:
+                        break;
+                }
+
+                if (layout == Layout.SEQUENCE) {
+                    if (depth == 0) {
+                        elements.separator(position + 1);
+                    }
+                } else if (layout == Layout.ARRAY) {
+                    if (depth == 0) {
+                        elements.close(position);
+                        firstValueEnd = position + 1;
+                    } else if (depth == 1 && b == ',') {
+                        elements.separator(position);
+                    } else if (depth == 1 || (depth == 2 && (b == '{' || b == '['))) {
+                        elements.value(b);
+                    }
+                } else {
+                    // Object root: members at depth 1, array elements at depth 2
+                    if (depth == 0 || (depth == 1 && b == ',')) {
+                        if (memberStart >= 0 && valueStart >= 0) {
+                            members.add(new Member(memberStart, valueStart, position, memberElements));
+                        } else if (memberStart >= 0 || b == ',' || afterComma) {
+                            // A member without a value, an empty member or a trailing comma
+                            irregularMembers = true;
+                        }
+                        afterComma = b == ',';
+                        memberStart = -1;
+                        valueStart = -1;
+                        afterColon = false;
+                        memberElements = null;
+                        if (depth == 0) {
+                            firstValueEnd = position + 1;
+                        }
+                    } else if (afterColon && valueStart < 0) {
+                        valueStart = position;
+                        if (b == '[') {
+                            memberElements = new Elements(position + 1, 1, granularity);
+                        }
+                    } else if (depth == 1 && b == ':' && !afterColon) {
+                        afterColon = true;
+                    } else if (depth == 1 && memberStart < 0) {
+                        if (b == '"') {
+                            memberStart = position;
+                        } else {
+                            // An unquoted member name
+                            irregularMembers = true;
+                        }
+                    } else if (memberElements != null && valueStart >= 0) {
+                        if (depth == 1 && b == ']') {
+                            memberElements.close(position);
+                        } else if (depth == 2 && b == ',') {
+                            memberElements.separator(position);
+                        } else if (depth == 2 || (depth == 3 && (b == '{' || b == '['))) {
+                            memberElements.value(b);
+                        }
+                    }
+                }
+            }
+            base += limit;
+            buffer.clear();
+        }
+
+        if (inString || depth != 0) {
+            throw new JsonSyntaxException("Unexpected end of JSON in " + file + ": "
+                    + (inString ? "unterminated string" : depth + " unclosed bracket(s)"));
+        }
+        if (layout == Layout.SEQUENCE) {
+            elements.close(base);
+        }
+    }
+
+    /**
+     * Detects the layout of JSON text without consuming it, by looking at most at the given
+     * number of characters. A document whose first value does not end within that window is
+     * reported as an array or object even if more values follow it.
+     *
+     * @param reader A reader that supports {@link Reader#mark(int)}
+     * @param lookahead The maximum number of characters to examine
+     * @return The layout
+     * @throws IOException if the reader fails
+     * @throws IllegalArgumentException if the reader does not support mark
+     */
+    public static Layout detectLayout(Reader reader, int lookahead) throws IOException {
+        if (!reader.markSupported()) {
+            throw new IllegalArgumentException("Layout detection needs a reader that supports mark.");
+        }
+        reader.mark(lookahead);
+        try {
+            Layout layout = Layout.EMPTY;
+            int depth = 0;
+            boolean inString = false;
+            boolean escaped = false;
+            for (int i = 0; i < lookahead; i++) {
+                int c = reader.read();
+                if (c < 0) {
+                    return layout;
+                }
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                    continue;
+                }
+                if (Character.isWhitespace(c) || c == '\uFEFF') {
+                    continue;
+                }
+                if (layout == Layout.EMPTY) {
+                    if (c != '{' && c != '[') {
+                        return Layout.SCALAR;
+                    }
+                    layout = c == '[' ? Layout.ARRAY : Layout.OBJECT;
+                    depth = 1;
+                    continue;
+                }
+                if (depth == 0) {
+                    return Layout.SEQUENCE;
+                }
+                if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+            return layout;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    /**
+     * @return The indexed file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return The size of the file when it was indexed
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return The layout of the document
+     */
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Tells whether the records of the document can be cut into ranges. They cannot when the
+     * scan met elements or members it does not index, such as an unquoted member name, an empty
+     * element or a trailing comma; whether such input is valid is left to a full parser.
+     *
+     * @return false when the document should be parsed as a whole
+     */
+    public boolean isSplittable() {
+        if (irregularMembers || (elements != null && elements.irregular)) {
+            return false;
+        }
+        for (Member member : members) {
+            if (member.elements != null && member.elements.irregular) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the elements of the root array, or the values of a sequence.
+     *
+     * @return The elements, or null for other layouts
+     */
+    public Elements getElements() {
+        return elements;
+    }
+
+    /**
+     * Returns the members of the root object in document order.
+     *
+     * @return An unmodifiable list, empty for other layouts
+     */
+    public List<Member> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
+}
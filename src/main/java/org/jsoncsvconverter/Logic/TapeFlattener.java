@@ -0,0 +1,540 @@
+package org.jsoncsvconverter.Logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The flattening rules of {@link JsonFlattener}, applied to a {@link JsonTape} instead of a Gson
+ * tree. Columns are integer path ids interned from (parent path, name id) pairs, and cell values
+ * are the tape nodes holding them, so flattening a record creates no strings at all; the column
+ * names are built once per distinct path.
+ *
+ * <p>Both flatteners walk their input with the same explicit stack of frames and deliver rows in
+ * the same order with the same columns. Shapes for which {@link JsonFlattener} relies on Gson's
+ * conversions of non-primitive values (a primitive array containing an object, array or null)
+ * and objects with duplicate member names are not handled here; they raise
+ * {@link UnsupportedShapeException} so the caller can fall back to the Gson path.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+final class TapeFlattener {
+
+    /** Path id of the document root, whose column name is empty */
+    static final int ROOT_PATH = 0;
+
+    /**
+     * Receives flattened rows in output order. The row is reused as soon as
+     * {@link #accept(Row, JsonTape)} returns.
+     */
+    interface RowSink {
+        void accept(Row row, JsonTape tape);
+    }
+
+    /**
+     * Raised for input that this flattener does not reproduce exactly.
+     */
+    static final class UnsupportedShapeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedShapeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * An insertion-ordered set of (path id, tape node) pairs with the semantics of
+     * {@link RowBuilder}: putting a present column replaces its value in place.
+     */
+    static final class Row {
+        private int[] columns = new int[16];
+        private int[] values = new int[16];
+        private int size = 0;
+
+        /** Position of each column, valid when its stamp matches the generation */
+        private int[] positions = new int[64];
+        private int[] stamps = new int[64];
+        private int generation = 1;
+
+        void clear() {
+            size = 0;
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                generation = 1;
+            }
+        }
+
+        void put(int column, int value) {
+            int position = positionOf(column);
+            if (position >= 0) {
+                values[position] = value;
+                return;
+            }
+            if (size == columns.length) {
+                columns = Arrays.copyOf(columns, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            if (column >= stamps.length) {
+                int capacity = Math.max(stamps.length * 2, column + 1);
+                positions = Arrays.copyOf(positions, capacity);
+                stamps = Arrays.copyOf(stamps, capacity);
+            }
+            columns[size] = column;
+            values[size] = value;
+            positions[column] = size;
+            stamps[column] = generation;
+            size++;
+        }
+
+        void putAll(Row other) {
+            for (int i = 0; i < other.size; i++) {
+                put(other.columns[i], other.values[i]);
+            }
+        }
+
+        /**
+         * Moves the pairs of another row in front, keeping this row's value when a column is in
+         * both, as {@link RowBuilder#prepend(java.util.Map)} does.
+         */
+        void prepend(Row leading, Row scratch) {
+            if (leading.size == 0) {
+                return;
+            }
+            scratch.clear();
+            scratch.putAll(this);
+            clear();
+            for (int i = 0; i < leading.size; i++) {
+                int column = leading.columns[i];
+                int existing = scratch.positionOf(column);
+                put(column, existing >= 0 ? scratch.values[existing] : leading.values[i]);
+            }
+            for (int i = 0; i < scratch.size; i++) {
+                if (positionOf(scratch.columns[i]) < 0) {
+                    put(scratch.columns[i], scratch.values[i]);
+                }
+            }
+        }
+
+        int positionOf(int column) {
+            return column < stamps.length && stamps[column] == generation ? positions[column] : -1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int column(int index) {
+            return columns[index];
+        }
+
+        int value(int index) {
+            return values[index];
+        }
+    }
+
+    /** How the rows produced by a frame reach its parent, as in {@link JsonFlattener} */
+    private enum Mode {
+        ROOT, COLLAPSE, OBJECT_ARRAY_ITEM, ARRAY_ITEM
+    }
+
+    private static final int CLASSIFY = 0;
+    private static final int OBJECT_ARRAYS = 1;
+
+    private static final class Frame {
+        Mode mode;
+        int prefix;
+        boolean isObject;
+        int phase;
+        long emitted;
+        long itemStart;
+
+        int node;
+        int cursor;
+        final Row scalarData = new Row();
+        int[] primitivePaths = new int[8];
+        int[] primitiveNodes = new int[8];
+        int primitiveCount;
+        int[] arrayPaths = new int[8];
+        int[] arrayNodes = new int[8];
+        int arrayCount;
+        int arrayKeyIndex;
+
+        /** The array being iterated: the frame itself, or the current object array of an object */
+        int array;
+        int arrayPrefix;
+        int itemCursor;
+
+        void addPrimitiveArray(int path, int arrayNode) {
+            if (primitiveCount == primitivePaths.length) {
+                primitivePaths = Arrays.copyOf(primitivePaths, primitiveCount * 2);
+                primitiveNodes = Arrays.copyOf(primitiveNodes, primitiveCount * 2);
+            }
+            primitivePaths[primitiveCount] = path;
+            primitiveNodes[primitiveCount++] = arrayNode;
+        }
+
+        void addObjectArray(int path, int arrayNode) {
+            if (arrayCount == arrayPaths.length) {
+                arrayPaths = Arrays.copyOf(arrayPaths, arrayCount * 2);
+                arrayNodes = Arrays.copyOf(arrayNodes, arrayCount * 2);
+            }
+            arrayPaths[arrayCount] = path;
+            arrayNodes[arrayCount++] = arrayNode;
+        }
+    }
+
+    private final Utf8JsonTokenizer names;
+    private final int maxDepth;
+    private final List<Frame> stack = new ArrayList<>();
+    private final Row row = new Row();
+    private final Row scratch = new Row();
+    private int depth = 0;
+    private JsonTape tape;
+    private RowSink sink;
+    private int maxRowExplosion = 0;
+
+    /** Member names seen in the object being classified, to detect duplicates */
+    private int[] nameStamps = new int[64];
+    private int nameGeneration = 0;
+
+    /** Interned paths: open-addressed (parent, name) keys, and per id its parent, name and column */
+    private long[] pathKeys = new long[1024];
+    private int[] pathSlots = new int[1024];
+    private int[] pathParents = new int[256];
+    private int[] pathNames = new int[256];
+    private String[] pathStrings = new String[256];
+    private int pathCount = 1;
+
+    /**
+     * Constructs a flattener for tapes read by the given tokenizer, whose name ids it resolves.
+     *
+     * @param names The tokenizer that reads the tapes
+     * @param maxDepth The maximum number of nested objects and arrays. Must be positive.
+     */
+    TapeFlattener(Utf8JsonTokenizer names, int maxDepth) {
+        this.names = names;
+        this.maxDepth = maxDepth;
+        Arrays.fill(pathSlots, -1);
+        pathStrings[ROOT_PATH] = "";
+    }
+
+    /**
+     * Flattens one node of a tape, sending each resulting row to the sink in order.
+     *
+     * @param source The tape
+     * @param node The node to flatten
+     * @param prefix The path id of the node
+     * @param rowSink The destination of the rows
+     */
+    void flatten(JsonTape source, int node, int prefix, RowSink rowSink) {
+        this.tape = source;
+        this.sink = rowSink;
+        try {
+            if (source.isContainer(node)) {
+                push(node, prefix, Mode.ROOT);
+            } else {
+                emitLeaf(node, prefix, -1, Mode.ROOT);
+            }
+            while (depth > 0) {
+                Frame frame = stack.get(depth - 1);
+                if (frame.isObject) {
+                    stepObject(frame, depth - 1);
+                } else {
+                    stepArray(frame, depth - 1);
+                }
+            }
+        } finally {
+            depth = 0;
+            this.tape = null;
+            this.sink = null;
+        }
+    }
+
+    /**
+     * @return The largest number of rows a single array element expanded into
+     */
+    int getMaxRowExplosion() {
+        return maxRowExplosion;
+    }
+
+    /**
+     * Returns the path id of a member of the object at the given path.
+     *
+     * @param parent The path id of the object
+     * @param name The name id of the member
+     * @return The path id of the member
+     */
+    int child(int parent, int name) {
+        long key = ((long) parent << 32) | (name & 0xFFFFFFFFL);
+        int mask = pathSlots.length - 1;
+        int slot = (int) (key ^ (key >>> 29) ^ (key >>> 41)) * 0x9E3779B1 >>> 1 & mask;
+        while (pathSlots[slot] >= 0) {
+            if (pathKeys[slot] == key) {
+                return pathSlots[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = pathCount++;
+        if (id == pathParents.length) {
+            pathParents = Arrays.copyOf(pathParents, id * 2);
+            pathNames = Arrays.copyOf(pathNames, id * 2);
+            pathStrings = Arrays.copyOf(pathStrings, id * 2);
+        }
+        pathParents[id] = parent;
+        pathNames[id] = name;
+        pathKeys[slot] = key;
+        pathSlots[slot] = id;
+        if (pathCount * 2 > pathSlots.length) {
+            rehashPaths();
+        }
+        return id;
+    }
+
+    /**
+     * Returns the column name of a path, building it on first use.
+     *
+     * @param path A path id
+     * @return The flattened column name
+     */
+    String column(int path) {
+        String column = pathStrings[path];
+        if (column == null) {
+            column = JsonFlattener.childPrefix(column(pathParents[path]), names.getName(pathNames[path]));
+            pathStrings[path] = column;
+        }
+        return column;
+    }
+
+    /**
+     * @return The number of distinct paths interned so far, including the root
+     */
+    int getPathCount() {
+        return pathCount;
+    }
+
+    private void rehashPaths() {
+        long[] oldKeys = pathKeys;
+        int[] oldSlots = pathSlots;
+        pathKeys = new long[oldKeys.length * 2];
+        pathSlots = new int[oldSlots.length * 2];
+        Arrays.fill(pathSlots, -1);
+        int mask = pathSlots.length - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] < 0) {
+                continue;
+            }
+            long key = oldKeys[i];
+            int slot = (int) (key ^ (key >>> 29) ^ (key >>> 41)) * 0x9E3779B1 >>> 1 & mask;
+            while (pathSlots[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            pathKeys[slot] = key;
+            pathSlots[slot] = oldSlots[i];
+        }
+    }
+
+    private void stepObject(Frame frame, int index) {
+        if (frame.phase == CLASSIFY) {
+            if (frame.cursor < tape.end(frame.node)) {
+                int child = frame.cursor;
+                frame.cursor = tape.end(child);
+                int path = child(frame.prefix, tape.name(child));
+
+                byte kind = tape.kind(child);
+                if (kind == JsonTape.ARRAY) {
+                    int first = child + 1;
+                    if (first < tape.end(child) && tape.isPrimitive(first)) {
+                        requirePrimitives(child, path);
+                        frame.addPrimitiveArray(path, child);
+                    } else {
+                        frame.addObjectArray(path, child);
+                    }
+                } else if (kind == JsonTape.OBJECT) {
+                    push(child, path, Mode.COLLAPSE);
+                } else {
+                    frame.scalarData.put(path, child);
+                }
+                return;
+            }
+            frame.phase = OBJECT_ARRAYS;
+            frame.arrayKeyIndex = 0;
+            frame.array = -1;
+        }
+
+        if (frame.array < 0 || frame.itemCursor >= tape.end(frame.array)) {
+            if (frame.arrayKeyIndex < frame.arrayCount) {
+                frame.array = frame.arrayNodes[frame.arrayKeyIndex];
+                frame.arrayPrefix = frame.arrayPaths[frame.arrayKeyIndex++];
+                frame.itemCursor = frame.array + 1;
+            } else {
+                finishObject(frame, index);
+                pop();
+            }
+            return;
+        }
+
+        int item = frame.itemCursor;
+        frame.itemCursor = tape.end(item);
+        frame.itemStart = frame.emitted;
+        if (tape.isContainer(item)) {
+            push(item, frame.arrayPrefix, Mode.OBJECT_ARRAY_ITEM);
+        } else {
+            emitLeaf(item, frame.arrayPrefix, index, Mode.OBJECT_ARRAY_ITEM);
+            maxRowExplosion = Math.max(maxRowExplosion, 1);
+        }
+    }
+
+    private void finishObject(Frame frame, int index) {
+        int maxArrayLength = 0;
+        for (int a = 0; a < frame.primitiveCount; a++) {
+            maxArrayLength = Math.max(maxArrayLength, length(frame.primitiveNodes[a]));
+        }
+
+        if (frame.emitted > 0 || maxArrayLength > 0) {
+            for (int i = 0; i < maxArrayLength; i++) {
+                row.clear();
+                if (i == 0 && frame.emitted == 0) {
+                    row.putAll(frame.scalarData);
+                }
+                for (int a = 0; a < frame.primitiveCount; a++) {
+                    int arrayNode = frame.primitiveNodes[a];
+                    if (i < length(arrayNode)) {
+                        // Elements of a primitive array are scalars, one node each
+                        row.put(frame.primitivePaths[a], arrayNode + 1 + i);
+                    }
+                }
+                deliver(index - 1, frame.mode);
+            }
+        } else {
+            row.clear();
+            row.putAll(frame.scalarData);
+            deliver(index - 1, frame.mode);
+        }
+    }
+
+    private void stepArray(Frame frame, int index) {
+        int arrayNode = frame.array;
+        int first = arrayNode + 1;
+        if (frame.itemCursor == first && first < tape.end(arrayNode) && tape.isPrimitive(first)) {
+            requirePrimitives(arrayNode, frame.prefix);
+            for (int item = first; item < tape.end(arrayNode); item++) {
+                row.clear();
+                row.put(frame.prefix, item);
+                deliver(index - 1, frame.mode);
+            }
+            pop();
+            return;
+        }
+
+        if (frame.itemCursor >= tape.end(arrayNode)) {
+            pop();
+            return;
+        }
+
+        int item = frame.itemCursor;
+        frame.itemCursor = tape.end(item);
+        frame.itemStart = frame.emitted;
+        if (tape.isContainer(item)) {
+            push(item, frame.prefix, Mode.ARRAY_ITEM);
+        } else {
+            emitLeaf(item, frame.prefix, index, Mode.ARRAY_ITEM);
+            maxRowExplosion = Math.max(maxRowExplosion, 1);
+        }
+    }
+
+    private void emitLeaf(int node, int column, int parentIndex, Mode mode) {
+        row.clear();
+        row.put(column, node);
+        deliver(parentIndex, mode);
+    }
+
+    private void deliver(int parentIndex, Mode mode) {
+        int index = parentIndex;
+        while (true) {
+            if (mode == Mode.ROOT) {
+                sink.accept(row, tape);
+                return;
+            }
+            Frame parent = stack.get(index);
+            if (mode == Mode.COLLAPSE) {
+                parent.scalarData.putAll(row);
+                return;
+            }
+            if (mode == Mode.OBJECT_ARRAY_ITEM && parent.emitted == 0) {
+                row.prepend(parent.scalarData, scratch);
+            }
+            parent.emitted++;
+            mode = parent.mode;
+            index--;
+        }
+    }
+
+    private void push(int node, int prefix, Mode mode) {
+        if (depth >= maxDepth) {
+            throw new IllegalArgumentException("JSON nesting depth exceeds the limit of " + maxDepth
+                    + " at '" + (prefix == ROOT_PATH ? "(root)" : column(prefix)) + "'");
+        }
+        if (depth == stack.size()) {
+            stack.add(new Frame());
+        }
+        Frame frame = stack.get(depth++);
+        frame.mode = mode;
+        frame.prefix = prefix;
+        frame.emitted = 0;
+        frame.itemStart = 0;
+        frame.phase = CLASSIFY;
+        frame.node = node;
+        frame.cursor = node + 1;
+        frame.isObject = tape.kind(node) == JsonTape.OBJECT;
+        frame.scalarData.clear();
+        frame.primitiveCount = 0;
+        frame.arrayCount = 0;
+        frame.array = frame.isObject ? -1 : node;
+        frame.itemCursor = node + 1;
+        if (frame.isObject) {
+            checkUniqueNames(node);
+        }
+    }
+
+    private void pop() {
+        Frame frame = stack.get(--depth);
+        if (depth > 0 && (frame.mode == Mode.OBJECT_ARRAY_ITEM || frame.mode == Mode.ARRAY_ITEM)) {
+            Frame parent = stack.get(depth - 1);
+            maxRowExplosion = (int) Math.max(maxRowExplosion, parent.emitted - parent.itemStart);
+        }
+    }
+
+    /**
+     * Rejects objects that repeat a member name; Gson keeps only the last value of such members.
+     */
+    private void checkUniqueNames(int objectNode) {
+        nameGeneration++;
+        for (int child = objectNode + 1; child < tape.end(objectNode); child = tape.end(child)) {
+            int name = tape.name(child);
+            if (name >= nameStamps.length) {
+                nameStamps = Arrays.copyOf(nameStamps, Math.max(nameStamps.length * 2, name + 1));
+            }
+            if (nameStamps[name] == nameGeneration) {
+                throw new UnsupportedShapeException("Duplicate member name '" + names.getName(name) + "'");
+            }
+            nameStamps[name] = nameGeneration;
+        }
+    }
+
+    private void requirePrimitives(int arrayNode, int path) {
+        for (int item = arrayNode + 1; item < tape.end(arrayNode); item++) {
+            if (!tape.isPrimitive(item)) {
+                throw new UnsupportedShapeException("Primitive array with a non-primitive element at '"
+                        + column(path) + "'");
+            }
+        }
+    }
+
+    private int length(int arrayNode) {
+        return tape.end(arrayNode) - arrayNode - 1;
+    }
+}
@@ -0,0 +1,807 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The byte-level fast path of {@link StreamingJsonConverter}. The file is read twice with a
+ * {@link Utf8JsonTokenizer}: the first pass flattens every record on a {@link JsonTape} with a
+ * {@link TapeFlattener} only to discover the columns, and the second pass flattens again and
+ * writes every row straight to the CSV with a {@link CsvByteWriter}. Member names are interned,
+ * columns are integer paths, and plain values go from the input buffer to the output buffer
+ * without ever becoming strings; no row is buffered, so heap use does not grow with the file.
+ *
+ * <p>The output is byte-for-byte what the Gson path writes. Input this path does not reproduce
+ * exactly (lenient JSON syntax, duplicate member names, primitive arrays with non-primitive
+ * elements) is detected during the first pass, before anything is written, and reported by
+ * {@link #convert(String, String)} returning false so that the caller can use the Gson path.</p>
+ *
+ * <p>With a checkpoint interval set, the second pass saves a {@link ConversionCheckpoint} every
+ * that many input bytes and when its thread is interrupted; the next conversion of the same
+ * input to the same output continues from the last checkpoint without a first pass.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+final class Utf8CsvConverter {
+
+    private final ConversionOptions options;
+
+    /** Results of the first pass, used by the second */
+    private final Set<String> discovered = new LinkedHashSet<>();
+    private final Map<String, Integer> pathsByColumn = new HashMap<>();
+    private Map<String, String> leadingRow;
+    private RowBuffer tail;
+    /** Leading row written by the second pass, read back from the checkpoint when resuming */
+    private SparseRow leading;
+    private final Map<String, ColumnType> types = new HashMap<>();
+    /** Columns written in place of the discovered ones, or null */
+    private String[] layout;
+
+    private String[] headers = new String[0];
+    private Map<String, ColumnType> columnTypes = Collections.emptyMap();
+    private long rowCount = 0;
+    private int maxRowExplosion = 0;
+    private ColumnStatistics statistics = null;
+
+    /**
+     * Constructs a converter with the given options.
+     *
+     * @param options Options accepted by {@link #supports(ConversionOptions)}
+     */
+    Utf8CsvConverter(ConversionOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Tells whether conversions with the given options can use this path: the byte tokenizer is
+     * enabled, nothing is projected, filtered, sorted or deduplicated, no row index or columnar
+     * copy is written, primitive arrays are spread over rows rather than joined into cells, and the platform
+     * charset, in which
+     * {@link CSVWriterFile} writes, encodes ASCII as itself.
+     *
+     * @param options The conversion options
+     * @return true if this path produces the same output as the Gson path
+     */
+    static boolean supports(ConversionOptions options) {
+        return options.isByteTokenizerEnabled() && options.getProjection() == null && options.getFilter() == null
+                && options.getPrimitiveArrayDelimiter() == null && options.getSortColumns() == null
+                && !options.isDeduplicationEnabled() && options.getRowIndexInterval() == 0
+                && !options.isColumnarOutputEnabled()
+                && CsvByteWriter.supports(Charset.defaultCharset());
+    }
+
+    /**
+     * Converts a JSON file to a CSV file.
+     *
+     * @param inputPath The JSON file to read, encoded in UTF-8
+     * @param outputPath The CSV file to create
+     * @return true if the file was converted, false if it needs the Gson path; nothing is
+     *         written in that case
+     * @throws IOException if the input cannot be read
+     * @throws RuntimeException if the CSV file cannot be written
+     */
+    boolean convert(String inputPath, String outputPath) throws IOException {
+        if (options.getCheckpointIntervalBytes() > 0) {
+            ConversionCheckpoint checkpoint = ConversionCheckpoint.load(inputPath, outputPath, options);
+            if (checkpoint != null) {
+                headers = checkpoint.headers;
+                columnTypes = checkpoint.columnTypes;
+                rowCount = checkpoint.rowCount;
+                maxRowExplosion = checkpoint.maxRowExplosion;
+                statistics = checkpoint.statistics;
+                try {
+                    ConversionCheckpoint.readRows(outputPath, headers.length, row -> leading = row, null);
+                } catch (IOException e) {
+                    throw new RuntimeException("Error while resuming CSV file: " + outputPath, e);
+                }
+                write(inputPath, outputPath, checkpoint.sequence, checkpoint);
+                return true;
+            }
+        }
+
+        boolean sequence = isSequence(inputPath);
+        try {
+            if (!discover(inputPath, sequence)) {
+                return false;
+            }
+            if (headers.length == 0) {
+                // CSVWriterFile rejects an empty header row; leave the error to the Gson path
+                return false;
+            }
+
+            if (leadingRow != null) {
+                leading = SparseRow.of(leadingRow, headers);
+            }
+            write(inputPath, outputPath, sequence, null);
+            return true;
+        } finally {
+            if (tail != null) {
+                tail.close();
+                tail = null;
+            }
+        }
+    }
+
+    /**
+     * Converts a JSON file and writes only its rows to a stream in the platform charset, after
+     * the rows of other files in the same layout. No checkpoint is taken, as the output is
+     * shared, and the statistics are not saved. The stream is flushed but not closed.
+     *
+     * @param inputPath The JSON file to read, encoded in UTF-8
+     * @param output The stream receiving the rows
+     * @return true if the file was converted, false if it needs the Gson path; nothing is
+     *         written in that case
+     * @throws IOException if the input cannot be read or the rows cannot be written
+     */
+    boolean appendRows(String inputPath, OutputStream output) throws IOException {
+        boolean sequence = isSequence(inputPath);
+        try {
+            if (!discover(inputPath, sequence) || headers.length == 0) {
+                return false;
+            }
+            if (leadingRow != null) {
+                leading = SparseRow.of(leadingRow, headers);
+            }
+            if (options.isStatisticsEnabled()) {
+                statistics = new ColumnStatistics(headers);
+            }
+            try (ConversionMetrics.StageTimer timer =
+                         ConversionMetrics.getInstance().start(ConversionMetrics.Stage.WRITE, inputPath);
+                 Utf8JsonTokenizer in = new Utf8JsonTokenizer(new FileInputStream(inputPath))) {
+                CsvByteWriter out = new CsvByteWriter(output, Charset.defaultCharset());
+                try {
+                    new Pass(in, out).run(sequence);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                out.flush();
+                timer.complete(out.getPosition(), rowCount, headers.length);
+            }
+            return true;
+        } finally {
+            if (tail != null) {
+                tail.close();
+                tail = null;
+            }
+        }
+    }
+
+    /**
+     * Runs only the first pass over a file, finding the columns a conversion would write.
+     *
+     * @param inputPath The JSON file to read, encoded in UTF-8
+     * @return The columns in output order, or null if the file needs the Gson path
+     * @throws IOException if the input cannot be read
+     */
+    String[] discoverHeaders(String inputPath) throws IOException {
+        try {
+            return discover(inputPath, isSequence(inputPath)) ? headers.clone() : null;
+        } finally {
+            if (tail != null) {
+                tail.close();
+                tail = null;
+            }
+        }
+    }
+
+    /**
+     * Makes later conversions write the given columns, in that order, rather than the columns
+     * they discover. The layout must hold every column the input produces.
+     *
+     * @param layout The columns to write, or null to write the discovered columns
+     */
+    void setLayout(String[] layout) {
+        this.layout = layout == null ? null : layout.clone();
+    }
+
+    /**
+     * Tells whether a file is a sequence of records, recognised as {@link StreamingJsonConverter}
+     * does within its lookahead.
+     */
+    static boolean isSequence(String inputPath) throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(inputPath), StandardCharsets.UTF_8))) {
+            return StructuralIndex.detectLayout(reader, StreamingJsonConverter.LAYOUT_LOOKAHEAD)
+                    == StructuralIndex.Layout.SEQUENCE;
+        }
+    }
+
+    /**
+     * The first pass: discovers the columns, their types and the rows of the root object.
+     *
+     * @return false if the file needs the Gson path
+     */
+    private boolean discover(String inputPath, boolean sequence) throws IOException {
+        try (ConversionMetrics.StageTimer timer =
+                     ConversionMetrics.getInstance().start(ConversionMetrics.Stage.FLATTEN, inputPath);
+             Utf8JsonTokenizer in = new Utf8JsonTokenizer(new FileInputStream(inputPath))) {
+            new Pass(in, null).run(sequence);
+            List<String> columns = new ArrayList<>();
+            if (leadingRow != null) {
+                columns.addAll(leadingRow.keySet());
+            }
+            Set<String> all = new LinkedHashSet<>(columns);
+            all.addAll(discovered);
+            headers = layout != null ? layout.clone() : all.toArray(new String[0]);
+            columnTypes = ColumnType.schema(headers, types);
+            timer.complete(new File(inputPath).length(), rowCount, headers.length, maxRowExplosion);
+            return true;
+        } catch (MalformedJsonException | TapeFlattener.UnsupportedShapeException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The second pass: writes the headers and every row, or continues from a checkpoint after
+     * cutting the output back to the rows written before it.
+     *
+     * @param checkpoint The checkpoint to continue from, or null to start over
+     */
+    private void write(String inputPath, String outputPath, boolean sequence, ConversionCheckpoint checkpoint)
+            throws IOException {
+        File output = new File(outputPath);
+        boolean resuming = checkpoint != null && checkpoint.context != ConversionCheckpoint.Context.START;
+        try (ConversionMetrics.StageTimer timer =
+                     ConversionMetrics.getInstance().start(ConversionMetrics.Stage.WRITE, outputPath)) {
+            try {
+                File parent = output.getAbsoluteFile().getParentFile();
+                if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                    throw new IOException("Failed to create directory: " + parent);
+                }
+                if (checkpoint != null) {
+                    try (RandomAccessFile csv = new RandomAccessFile(output, "rw")) {
+                        csv.setLength(checkpoint.outputOffset);
+                    }
+                } else if (options.isStatisticsEnabled()) {
+                    statistics = new ColumnStatistics(headers);
+                }
+                try (FileInputStream input = new FileInputStream(inputPath);
+                     Utf8JsonTokenizer in = new Utf8JsonTokenizer(input);
+                     FileOutputStream file = new FileOutputStream(output, checkpoint != null);
+                     CsvByteWriter out = new CsvByteWriter(file, Charset.defaultCharset())) {
+                    if (checkpoint == null) {
+                        out.writeRow(headers);
+                    }
+                    Pass pass = new Pass(in, out);
+                    if (options.getCheckpointIntervalBytes() > 0) {
+                        pass.checkpoints(inputPath, outputPath, file, sequence, checkpoint);
+                    }
+                    if (resuming) {
+                        if (input.skip(checkpoint.inputOffset) != checkpoint.inputOffset) {
+                            throw new IOException("Input shorter than its checkpoint: " + inputPath);
+                        }
+                        in.resume(checkpoint.inputOffset, checkpoint.scopes);
+                        pass.resume(checkpoint);
+                    } else {
+                        pass.run(sequence);
+                    }
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                ConversionCheckpoint.delete(outputPath);
+            } catch (InterruptedIOException e) {
+                throw new RuntimeException("Conversion cancelled, resumable from its checkpoint: " + outputPath, e);
+            } catch (IOException e) {
+                throw new RuntimeException("Error while creating CSV file with data: " + outputPath, e);
+            }
+            timer.complete(output.length(), rowCount, headers.length);
+        }
+        if (statistics != null) {
+            statistics.write(ColumnStatistics.sidecarPath(outputPath));
+        }
+    }
+
+    /**
+     * @return The columns written by the last conversion, in output order
+     */
+    String[] getHeadersArray() {
+        return headers.clone();
+    }
+
+    /**
+     * @return The type of every column written by the last conversion, in output order
+     */
+    Map<String, ColumnType> getColumnTypes() {
+        return columnTypes;
+    }
+
+    /**
+     * @return The type of every column that had a value in the last conversion
+     */
+    Map<String, ColumnType> getInferredTypes() {
+        return types;
+    }
+
+    /**
+     * @return The statistics gathered while writing, or null unless they are enabled
+     */
+    ColumnStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return The number of data rows written by the last conversion
+     */
+    long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return The largest number of rows a single record or array element expanded into
+     */
+    int getMaxRowExplosion() {
+        return maxRowExplosion;
+    }
+
+    /**
+     * One reading of the file. Without a writer it discovers the columns, counts the rows and
+     * completes the root object's rows; with a writer it writes the rows in the same order.
+     */
+    private final class Pass implements TapeFlattener.RowSink {
+
+        private final Utf8JsonTokenizer in;
+        private final CsvByteWriter out;
+        private final JsonTape tape = new JsonTape();
+        private final TapeFlattener flattener;
+
+        /** Column index of every path for writing, or -2 when not yet looked up */
+        private int[] columnIndexes = new int[64];
+        private int[] cells;
+        /** Paths already added to the discovered columns, and the type of their values */
+        private boolean[] seen = new boolean[64];
+        private ColumnType[] pathTypes = new ColumnType[64];
+
+        private boolean objectArray;
+        private long rootRows;
+        private long itemRows;
+        private Map<String, String> firstRow;
+
+        /** The checkpoint being kept up to date, or null when checkpoints are off */
+        private ConversionCheckpoint checkpoint;
+        private String inputPath;
+        private String outputPath;
+        private FileOutputStream file;
+        private long nextCheckpoint;
+        /** Name of the root member being read */
+        private String member = "";
+        /** Whether the file is a sequence of records, the only layout with several top-level values */
+        private boolean sequence;
+
+        Pass(Utf8JsonTokenizer in, CsvByteWriter out) {
+            this.in = in;
+            this.out = out;
+            this.flattener = new TapeFlattener(in, options.getMaxNestingDepth());
+            Arrays.fill(columnIndexes, -2);
+            if (out != null) {
+                cells = new int[headers.length];
+            }
+        }
+
+        /**
+         * Reads every top-level value, as {@link StreamingJsonConverter} does.
+         */
+        void run(boolean sequence) throws IOException {
+            this.sequence = sequence;
+            values(!sequence);
+            if (out == null) {
+                maxRowExplosion = Math.max(maxRowExplosion, flattener.getMaxRowExplosion());
+                for (int path = 0; path < pathTypes.length; path++) {
+                    if (pathTypes[path] != null) {
+                        types.merge(column(path), pathTypes[path], ColumnType::merge);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Starts taking checkpoints while writing, saving the rows of an object root and a first
+         * checkpoint unless continuing from one.
+         *
+         * @param file The stream under the writer, synced before each checkpoint
+         * @param resumed The checkpoint being continued from, or null
+         */
+        void checkpoints(String inputPath, String outputPath, FileOutputStream file, boolean sequence,
+                         ConversionCheckpoint resumed) throws IOException {
+            this.inputPath = inputPath;
+            this.outputPath = outputPath;
+            this.file = file;
+            this.sequence = sequence;
+            if (resumed != null) {
+                checkpoint = resumed;
+                nextCheckpoint = resumed.inputOffset + options.getCheckpointIntervalBytes();
+                return;
+            }
+            ConversionCheckpoint.saveRows(outputPath, leading,
+                    tail == null ? null : tail.sparseView(Arrays.asList(headers)));
+            checkpoint = new ConversionCheckpoint(headers, columnTypes, rowCount, maxRowExplosion, sequence);
+            save(ConversionCheckpoint.Context.START);
+        }
+
+        /**
+         * Continues the reading of a checkpoint taken after a record, from the tokenizer
+         * already resumed at its offset.
+         */
+        void resume(ConversionCheckpoint from) throws IOException {
+            if (from.context == ConversionCheckpoint.Context.TOP_ARRAY) {
+                topArray();
+            } else if (from.context == ConversionCheckpoint.Context.ROOT_ARRAY) {
+                member = from.member;
+                rootRows = from.rootRows;
+                records(flattener.child(TapeFlattener.ROOT_PATH, in.intern(member)), in.next());
+                rootMembers(new LinkedHashMap<>(), new LinkedHashMap<>(), new HashSet<>());
+                writeTail();
+            }
+            values(false);
+        }
+
+        /**
+         * Reads the remaining top-level values, as {@link StreamingJsonConverter} does.
+         *
+         * @param first Whether the next value is the first, which may be a root object
+         */
+        private void values(boolean first) throws IOException {
+            for (Utf8JsonTokenizer.Token token = in.next(); token != Utf8JsonTokenizer.Token.END_DOCUMENT;
+                 token = in.next()) {
+                if (token != Utf8JsonTokenizer.Token.BEGIN_ARRAY && token != Utf8JsonTokenizer.Token.BEGIN_OBJECT) {
+                    throw new MalformedJsonException("Expected an object or array but was " + token
+                            + " at byte " + in.getPosition());
+                }
+                if (!sequence && !first) {
+                    throw new MalformedJsonException("Unexpected value after the end of the document at byte "
+                            + in.getPosition());
+                }
+                if (token == Utf8JsonTokenizer.Token.BEGIN_ARRAY) {
+                    topArray();
+                } else if (token == Utf8JsonTokenizer.Token.BEGIN_OBJECT && first) {
+                    rootObject();
+                } else {
+                    record(token, TapeFlattener.ROOT_PATH, 0);
+                }
+                first = false;
+            }
+        }
+
+        /**
+         * Reads the remaining elements of a top-level array.
+         */
+        private void topArray() throws IOException {
+            for (Utf8JsonTokenizer.Token item = in.next(); item != Utf8JsonTokenizer.Token.END_ARRAY;
+                 item = in.next()) {
+                record(item, TapeFlattener.ROOT_PATH, 1);
+            }
+        }
+
+        /**
+         * Flattens one record.
+         *
+         * @param enclosing The number of containers around the record, which count towards the
+         *                  nesting limit as they do for the Gson reader
+         */
+        private void record(Utf8JsonTokenizer.Token token, int prefix, int enclosing) throws IOException {
+            tape.read(in, token, options.getMaxNestingDepth() - enclosing);
+            itemRows = 0;
+            flattener.flatten(tape, 0, prefix, this);
+            if (out == null) {
+                maxRowExplosion = (int) Math.max(maxRowExplosion, itemRows);
+            } else if (checkpoint != null) {
+                checkpoint(enclosing);
+            }
+        }
+
+        /**
+         * Takes a checkpoint after a record once the interval has been read, or when the thread
+         * is interrupted, in which case the conversion stops there.
+         *
+         * @throws InterruptedIOException if the thread is interrupted
+         */
+        private void checkpoint(int enclosing) throws IOException {
+            boolean cancelled = Thread.currentThread().isInterrupted();
+            if (!cancelled && in.getPosition() < nextCheckpoint) {
+                return;
+            }
+            save(enclosing == 0 ? ConversionCheckpoint.Context.TOP_LEVEL
+                    : enclosing == 1 ? ConversionCheckpoint.Context.TOP_ARRAY : ConversionCheckpoint.Context.ROOT_ARRAY);
+            if (cancelled) {
+                throw new InterruptedIOException("Conversion cancelled at input offset " + in.getPosition());
+            }
+        }
+
+        /**
+         * Saves the checkpoint once every row written so far has reached the disk.
+         */
+        private void save(ConversionCheckpoint.Context context) throws IOException {
+            // The channel would close itself on an interrupted thread; the interrupt is kept for later
+            boolean interrupted = Thread.interrupted();
+            try {
+                out.flush();
+                FileChannel channel = file.getChannel();
+                channel.force(false);
+                checkpoint.context = context;
+                checkpoint.inputOffset = in.getPosition();
+                checkpoint.scopes = in.getScopes();
+                checkpoint.member = member;
+                checkpoint.rootRows = rootRows;
+                checkpoint.outputOffset = channel.position();
+                checkpoint.statistics = statistics;
+                checkpoint.save(inputPath, outputPath, options);
+                nextCheckpoint = checkpoint.inputOffset + options.getCheckpointIntervalBytes();
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * Streams the members of the root object. The first pass collects the scalar data and
+         * primitive arrays and completes the leading and trailing rows exactly as the Gson path
+         * does; the second pass writes the leading row first and the trailing rows last.
+         */
+        private void rootObject() throws IOException {
+            Map<String, String> scalarData = new LinkedHashMap<>();
+            Map<String, List<String>> primitiveArrays = new LinkedHashMap<>();
+            Set<Integer> names = new HashSet<>();
+            if (out != null && leading != null) {
+                writeRow(leading);
+            }
+            rootMembers(scalarData, primitiveArrays, names);
+
+            if (out == null) {
+                tail = new RowBuffer(options.getRowBufferBudgetBytes(), options.getSpillDirectory());
+                leadingRow = StreamingJsonConverter.finishRootObject(scalarData, primitiveArrays,
+                        firstRow, rootRows > 0, tail);
+                if (leadingRow != null) {
+                    ColumnType.inferInto(types, leadingRow);
+                }
+                ColumnType.mergeInto(types, tail.getColumnTypes());
+                rowCount += tail.size() + (leadingRow == null ? 0 : 1);
+                discovered.addAll(tail.getColumns());
+            } else {
+                writeTail();
+            }
+        }
+
+        /**
+         * Reads the remaining members of the root object.
+         */
+        private void rootMembers(Map<String, String> scalarData, Map<String, List<String>> primitiveArrays,
+                                 Set<Integer> names) throws IOException {
+            for (Utf8JsonTokenizer.Token token = in.next(); token != Utf8JsonTokenizer.Token.END_OBJECT;
+                 token = in.next()) {
+                if (!names.add(in.getNameId())) {
+                    throw new TapeFlattener.UnsupportedShapeException("Duplicate root member name");
+                }
+                if (checkpoint != null) {
+                    member = in.getName(in.getNameId());
+                }
+                int path = flattener.child(TapeFlattener.ROOT_PATH, in.getNameId());
+                Utf8JsonTokenizer.Token value = in.next();
+                if (value == Utf8JsonTokenizer.Token.BEGIN_ARRAY) {
+                    rootArray(path, primitiveArrays);
+                } else if (out != null) {
+                    in.skipValue(value);
+                } else if (value == Utf8JsonTokenizer.Token.BEGIN_OBJECT) {
+                    // Nested object - every row it produces is merged into the scalar data
+                    tape.read(in, value, options.getMaxNestingDepth() - 1);
+                    flattener.flatten(tape, 0, path, (row, source) -> copyInto(row, source, scalarData));
+                } else {
+                    scalarData.put(column(path), value == Utf8JsonTokenizer.Token.NULL ? "" : in.getValueString());
+                }
+            }
+        }
+
+        /**
+         * Writes the trailing rows of the root object, read back from the checkpoint when
+         * continuing from one.
+         */
+        private void writeTail() throws IOException {
+            if (tail != null) {
+                for (SparseRow row : tail.sparseView(Arrays.asList(headers))) {
+                    writeRow(row);
+                }
+            } else {
+                ConversionCheckpoint.readRows(outputPath, headers.length, row -> { }, this::writeRow);
+            }
+        }
+
+        /**
+         * Reads one array member of the root object. The first element decides the kind of
+         * array: primitive values are collected by the first pass, while every element of any
+         * other array is a record whose first row is the leading row.
+         */
+        private void rootArray(int path, Map<String, List<String>> primitiveArrays) throws IOException {
+            Utf8JsonTokenizer.Token item = in.next();
+            if (item == Utf8JsonTokenizer.Token.END_ARRAY) {
+                return;
+            }
+            if (item != Utf8JsonTokenizer.Token.BEGIN_OBJECT && item != Utf8JsonTokenizer.Token.BEGIN_ARRAY
+                    && item != Utf8JsonTokenizer.Token.NULL) {
+                List<String> values = out == null ? new ArrayList<>() : null;
+                for (; item != Utf8JsonTokenizer.Token.END_ARRAY; item = in.next()) {
+                    if (item == Utf8JsonTokenizer.Token.BEGIN_OBJECT || item == Utf8JsonTokenizer.Token.BEGIN_ARRAY
+                            || item == Utf8JsonTokenizer.Token.NULL) {
+                        throw new TapeFlattener.UnsupportedShapeException("Primitive array with a non-primitive element");
+                    }
+                    if (values != null) {
+                        values.add(in.getValueString());
+                    }
+                }
+                if (values != null) {
+                    primitiveArrays.put(column(path), values);
+                }
+                return;
+            }
+            records(path, item);
+        }
+
+        /**
+         * Reads the remaining elements of an array member of the root object as records.
+         *
+         * @param item The first token of the next element
+         */
+        private void records(int path, Utf8JsonTokenizer.Token item) throws IOException {
+            objectArray = true;
+            try {
+                for (; item != Utf8JsonTokenizer.Token.END_ARRAY; item = in.next()) {
+                    record(item, path, 2);
+                }
+            } finally {
+                objectArray = false;
+            }
+        }
+
+        @Override
+        public void accept(TapeFlattener.Row row, JsonTape source) {
+            itemRows++;
+            boolean leading = objectArray && rootRows++ == 0;
+            try {
+                if (out == null) {
+                    if (leading) {
+                        firstRow = new LinkedHashMap<>();
+                        copyInto(row, source, firstRow);
+                    } else {
+                        rowCount++;
+                        discover(row, source);
+                    }
+                } else if (!leading) {
+                    write(row, source);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void discover(TapeFlattener.Row row, JsonTape source) throws MalformedJsonException {
+            for (int i = 0; i < row.size(); i++) {
+                int path = row.column(i);
+                if (path >= seen.length) {
+                    seen = Arrays.copyOf(seen, Math.max(seen.length * 2, path + 1));
+                    pathTypes = Arrays.copyOf(pathTypes, seen.length);
+                }
+                if (!seen[path]) {
+                    seen[path] = true;
+                    discovered.add(column(path));
+                }
+                if (pathTypes[path] != ColumnType.STRING) {
+                    pathTypes[path] = ColumnType.merge(pathTypes[path], infer(source, row.value(i)));
+                }
+            }
+        }
+
+        /**
+         * Infers the type of a value from its text, as the Gson path does, decoding only the
+         * rare values with escape sequences; non-ASCII text is never a number or a boolean.
+         */
+        private ColumnType infer(JsonTape source, int node) throws MalformedJsonException {
+            if (source.kind(node) == JsonTape.NULL) {
+                return null;
+            }
+            int flags = source.flags(node);
+            if (flags == 0) {
+                return ColumnType.infer(source.arena(), source.start(node), source.length(node));
+            }
+            return (flags & JsonTape.ESCAPED) == 0 ? ColumnType.STRING : ColumnType.infer(source.text(node));
+        }
+
+        private void write(TapeFlattener.Row row, JsonTape source) throws IOException {
+            Arrays.fill(cells, -1);
+            for (int i = 0; i < row.size(); i++) {
+                cells[columnIndex(row.column(i))] = row.value(i);
+            }
+            for (int cell : cells) {
+                out.writeField(source, cell);
+            }
+            out.endRow();
+            if (statistics != null) {
+                for (int i = 0; i < cells.length; i++) {
+                    accept(i, source, cells[i]);
+                }
+                statistics.endRow();
+            }
+        }
+
+        private void writeRow(SparseRow row) throws IOException {
+            out.writeRow(row);
+            if (statistics != null) {
+                statistics.acceptRow(row);
+            }
+        }
+
+        /**
+         * Adds one written cell to the statistics, reading plain values from the input buffer.
+         */
+        private void accept(int column, JsonTape source, int node) throws MalformedJsonException {
+            if (node < 0 || source.kind(node) == JsonTape.NULL) {
+                return;
+            }
+            if (source.flags(node) == 0) {
+                statistics.acceptAscii(column, source.arena(), source.start(node), source.length(node));
+            } else {
+                statistics.acceptCell(column, source.text(node));
+            }
+        }
+
+        private int columnIndex(int path) {
+            if (path >= columnIndexes.length) {
+                int old = columnIndexes.length;
+                columnIndexes = Arrays.copyOf(columnIndexes, Math.max(old * 2, path + 1));
+                Arrays.fill(columnIndexes, old, columnIndexes.length, -2);
+            }
+            if (columnIndexes[path] == -2) {
+                columnIndexes[path] = Arrays.asList(headers).indexOf(column(path));
+            }
+            return columnIndexes[path];
+        }
+
+        /**
+         * Returns the column name of a path. Two paths spelling the same column, such as
+         * {@code a__b} and {@code a > b}, would be merged by the Gson path; they are left to it.
+         */
+        private String column(int path) {
+            String column = flattener.column(path);
+            if (out == null) {
+                Integer previous = pathsByColumn.putIfAbsent(column, path);
+                if (previous != null && previous != path) {
+                    throw new TapeFlattener.UnsupportedShapeException("Ambiguous column " + column);
+                }
+            }
+            return column;
+        }
+
+        private void copyInto(TapeFlattener.Row row, JsonTape source, Map<String, String> target) {
+            try {
+                for (int i = 0; i < row.size(); i++) {
+                    target.put(column(row.column(i)), source.text(row.value(i)));
+                }
+            } catch (MalformedJsonException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,703 @@
+package org.jsoncsvconverter.Logic;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pull tokenizer that reads UTF-8 JSON directly from bytes. Unlike
+ * {@link com.google.gson.stream.JsonReader} it creates no object per token: member names are
+ * looked up in a table of the names seen so far by their bytes and reported as small integer ids,
+ * and values are reported as a slice of the input buffer that the caller may copy or decode.
+ *
+ * <p>The accepted grammar is strict JSON, except that several top-level values may follow one
+ * another, as in newline-delimited JSON, and a leading byte order mark is skipped. Numbers are
+ * delimited but not validated; their text is passed on unchanged.</p>
+ *
+ * <p>The value slice of a token stays valid until the next call to {@link #next()}. Instances are
+ * not thread-safe.</p>
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public final class Utf8JsonTokenizer implements Closeable {
+
+    /**
+     * The kinds of token.
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, TRUE, FALSE, NULL, END_DOCUMENT
+    }
+
+    /** Scopes of the open containers */
+    private static final byte EMPTY_ARRAY = 1;
+    private static final byte NONEMPTY_ARRAY = 2;
+    private static final byte EMPTY_OBJECT = 3;
+    private static final byte DANGLING_NAME = 4;
+    private static final byte NONEMPTY_OBJECT = 5;
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private byte[] buffer;
+    private int pos = 0;
+    private int limit = 0;
+    /** Input offset of buffer[0] */
+    private long bufferOffset = 0;
+    private boolean started = false;
+
+    private byte[] scopes = new byte[32];
+    private int depth = 0;
+
+    private int valueStart;
+    private int valueLength;
+    private boolean valueEscaped;
+    private boolean valueAscii;
+    private int nameId;
+
+    /** Interned names: open-addressed table of ids, and per id the name bytes and string */
+    private int[] slots = new int[256];
+    private byte[][] nameBytes = new byte[64][];
+    private int[] nameHashes = new int[64];
+    private String[] nameStrings = new String[64];
+    private int nameCount = 0;
+    /** Ids of names that were spelled with escapes, by decoded name */
+    private final Map<String, Integer> decodedNames = new HashMap<>();
+
+    /**
+     * Constructs a tokenizer reading from a stream. The stream is closed by {@link #close()}.
+     *
+     * @param in The UTF-8 encoded JSON input
+     */
+    public Utf8JsonTokenizer(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a tokenizer with a given initial buffer size. The buffer grows when a single
+     * token is longer.
+     *
+     * @param in The UTF-8 encoded JSON input
+     * @param bufferSize The initial buffer size in bytes. Must be positive.
+     */
+    public Utf8JsonTokenizer(InputStream in, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive.");
+        }
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+        Arrays.fill(slots, -1);
+    }
+
+    /**
+     * Reads the next token.
+     *
+     * @return The token, {@link Token#END_DOCUMENT} once the input is exhausted
+     * @throws MalformedJsonException if the input is not valid JSON
+     * @throws IOException if the input cannot be read
+     */
+    public Token next() throws IOException {
+        int c = nextNonWhitespace();
+        if (depth == 0) {
+            if (c < 0) {
+                return Token.END_DOCUMENT;
+            }
+            return value(c);
+        }
+        switch (scopes[depth - 1]) {
+            case EMPTY_ARRAY:
+                if (c == ']') {
+                    depth--;
+                    return Token.END_ARRAY;
+                }
+                scopes[depth - 1] = NONEMPTY_ARRAY;
+                return value(c);
+            case NONEMPTY_ARRAY:
+                if (c == ']') {
+                    depth--;
+                    return Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                return value(nextNonWhitespace());
+            case DANGLING_NAME:
+                scopes[depth - 1] = NONEMPTY_OBJECT;
+                return value(c);
+            default:
+                if (c == '}') {
+                    depth--;
+                    return Token.END_OBJECT;
+                }
+                if (scopes[depth - 1] == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a member name");
+                }
+                readString();
+                nameId = intern();
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                scopes[depth - 1] = DANGLING_NAME;
+                return Token.NAME;
+        }
+    }
+
+    /**
+     * Skips the value that starts with the given token, including everything nested in it.
+     *
+     * @param token The first token of the value, just returned by {@link #next()}
+     * @throws IOException if the input cannot be read or is malformed
+     */
+    public void skipValue(Token token) throws IOException {
+        if (token != Token.BEGIN_OBJECT && token != Token.BEGIN_ARRAY) {
+            return;
+        }
+        int target = depth - 1;
+        while (depth > target) {
+            if (next() == Token.END_DOCUMENT) {
+                throw syntaxError("Unexpected end of input");
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the name just read. Equal names always have the same id.
+     *
+     * @return The name id, from 0 to the number of distinct names minus one
+     */
+    public int getNameId() {
+        return nameId;
+    }
+
+    /**
+     * Returns the name with the given id.
+     *
+     * @param id A name id returned by {@link #getNameId()}
+     * @return The name
+     */
+    public String getName(int id) {
+        return nameStrings[id];
+    }
+
+    /**
+     * Returns the buffer holding the current value. For strings the slice excludes the quotes and
+     * still contains any escape sequences.
+     *
+     * @return The buffer, valid until the next call to {@link #next()}
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return The offset of the current value in {@link #getBuffer()}
+     */
+    public int getValueStart() {
+        return valueStart;
+    }
+
+    /**
+     * @return The length in bytes of the current value
+     */
+    public int getValueLength() {
+        return valueLength;
+    }
+
+    /**
+     * Tells whether the current string contains escape sequences, so its bytes cannot be used as
+     * they are.
+     *
+     * @return true if the string must be decoded
+     */
+    public boolean isValueEscaped() {
+        return valueEscaped;
+    }
+
+    /**
+     * Tells whether the current value consists of ASCII characters only, so its bytes are the
+     * same in any ASCII-compatible encoding. Numbers and literals always are.
+     *
+     * @return true if every byte of the value is below 0x80
+     */
+    public boolean isValueAscii() {
+        return valueAscii;
+    }
+
+    /**
+     * Decodes the current string, number or literal.
+     *
+     * @return The value as a string
+     * @throws MalformedJsonException if the string contains an invalid escape sequence
+     */
+    public String getValueString() throws MalformedJsonException {
+        return decode(buffer, valueStart, valueLength, valueEscaped);
+    }
+
+    /**
+     * Returns the offset in the input just after the last token read, for diagnostics
+     * and checkpoints.
+     *
+     * @return The byte offset
+     */
+    public long getPosition() {
+        return bufferOffset + pos;
+    }
+
+    /**
+     * Returns the open containers around the current position, for resuming a later reading
+     * at this position with {@link #resume(long, byte[])}.
+     *
+     * @return The scope of each open container, outermost first
+     */
+    byte[] getScopes() {
+        return Arrays.copyOf(scopes, depth);
+    }
+
+    /**
+     * Continues a reading saved with {@link #getPosition()} and {@link #getScopes()}. The stream
+     * given to the constructor must be positioned at that offset, and nothing read yet.
+     *
+     * @param position The input offset of the saved reading
+     * @param openScopes The open containers of the saved reading
+     */
+    void resume(long position, byte[] openScopes) {
+        bufferOffset = position;
+        pos = 0;
+        limit = 0;
+        started = true;
+        scopes = Arrays.copyOf(openScopes, Math.max(32, openScopes.length));
+        depth = openScopes.length;
+    }
+
+    /**
+     * Returns the id of a name, adding it to the table if it has not been read yet.
+     *
+     * @param name The name
+     * @return The name id
+     */
+    int intern(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return lookup(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private Token value(int c) throws IOException {
+        switch (c) {
+            case '{':
+                push(EMPTY_OBJECT);
+                return Token.BEGIN_OBJECT;
+            case '[':
+                push(EMPTY_ARRAY);
+                return Token.BEGIN_ARRAY;
+            case '"':
+                readString();
+                return Token.STRING;
+            case 't':
+                readLiteral("true");
+                return Token.TRUE;
+            case 'f':
+                readLiteral("false");
+                return Token.FALSE;
+            case 'n':
+                readLiteral("null");
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of input");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber();
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void push(byte scope) {
+        if (depth == scopes.length) {
+            scopes = Arrays.copyOf(scopes, depth * 2);
+        }
+        scopes[depth++] = scope;
+    }
+
+    /**
+     * Reads a string whose opening quote has been consumed, leaving its slice as the value.
+     */
+    private void readString() throws IOException {
+        int start = pos;
+        boolean escaped = false;
+        boolean ascii = true;
+        while (true) {
+            if (pos >= limit) {
+                boolean more = fill(start);
+                start = 0;
+                if (!more) {
+                    throw syntaxError("Unterminated string");
+                }
+                continue;
+            }
+            byte b = buffer[pos];
+            if (b == '"') {
+                break;
+            }
+            if (b < 0) {
+                ascii = false;
+            } else if (b == '\\') {
+                // Escapes are validated here so that decoding them later cannot fail
+                if (pos + 5 >= limit) {
+                    boolean more = fill(start);
+                    start = 0;
+                    if (more) {
+                        continue;
+                    }
+                }
+                escaped = true;
+                pos += escapeLength();
+                continue;
+            }
+            pos++;
+        }
+        valueStart = start;
+        valueLength = pos - start;
+        valueEscaped = escaped;
+        valueAscii = ascii;
+        pos++;
+    }
+
+    /**
+     * Validates the escape sequence at the current position, accepting what Gson's lenient
+     * reader accepts.
+     *
+     * @return The length of the sequence in bytes
+     */
+    private int escapeLength() throws MalformedJsonException {
+        if (pos + 1 >= limit) {
+            throw syntaxError("Unterminated string");
+        }
+        switch (buffer[pos + 1]) {
+            case 'u':
+                for (int i = pos + 2; i < pos + 6; i++) {
+                    if (i >= limit || Character.digit(buffer[i], 16) < 0) {
+                        throw syntaxError("Invalid escape sequence");
+                    }
+                }
+                return 6;
+            case 'b':
+            case 'f':
+            case 'n':
+            case 'r':
+            case 't':
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+            case '\n':
+                return 2;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    /**
+     * Reads the rest of a number whose first character has been consumed.
+     */
+    private void readNumber() throws IOException {
+        int start = pos - 1;
+        while (true) {
+            if (pos >= limit) {
+                boolean more = fill(start);
+                start = 0;
+                if (!more) {
+                    break;
+                }
+                continue;
+            }
+            byte b = buffer[pos];
+            if ((b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        valueStart = start;
+        valueLength = pos - start;
+        valueEscaped = false;
+        valueAscii = true;
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        int start = pos - 1;
+        for (int i = 1; i < literal.length(); i++) {
+            if (pos >= limit) {
+                boolean more = fill(start);
+                start = 0;
+                if (!more) {
+                    throw syntaxError("Unexpected end of input");
+                }
+            }
+            if (buffer[pos] != literal.charAt(i)) {
+                throw syntaxError("Expected '" + literal + "'");
+            }
+            pos++;
+        }
+        valueStart = start;
+        valueLength = literal.length();
+        valueEscaped = false;
+        valueAscii = true;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            if (pos >= limit && !fill(pos)) {
+                return -1;
+            }
+            int c = buffer[pos++] & 0xFF;
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                continue;
+            }
+            if (!started) {
+                started = true;
+                if (c == 0xEF) {
+                    // Skip a byte order mark
+                    for (int i = 0; i < 2; i++) {
+                        if (pos >= limit && !fill(pos)) {
+                            throw syntaxError("Unexpected end of input");
+                        }
+                        pos++;
+                    }
+                    continue;
+                }
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Moves the bytes from {@code keep} onwards to the start of the buffer, growing it when they
+     * fill it, and reads more input behind them. The kept bytes move even at the end of the input.
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill(int keep) throws IOException {
+        int kept = limit - keep;
+        if (keep > 0) {
+            System.arraycopy(buffer, keep, buffer, 0, kept);
+        } else if (kept == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        bufferOffset += keep;
+        pos -= keep;
+        limit = kept;
+        int read;
+        do {
+            read = in.read(buffer, limit, buffer.length - limit);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    /**
+     * Finds or adds the current string in the name table without allocating when it is known.
+     */
+    private int intern() throws MalformedJsonException {
+        if (valueEscaped) {
+            // The same name may be spelled in several ways; compare decoded names instead
+            String name = decode(buffer, valueStart, valueLength, true);
+            Integer id = decodedNames.get(name);
+            if (id == null) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                id = lookup(bytes, 0, bytes.length);
+                decodedNames.put(name, id);
+            }
+            return id;
+        }
+        return lookup(buffer, valueStart, valueLength);
+    }
+
+    private int lookup(byte[] bytes, int start, int length) {
+        int hash = 1;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int mask = slots.length - 1;
+        for (int slot = (hash ^ (hash >>> 16)) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id < 0) {
+                return add(bytes, start, length, hash, slot);
+            }
+            if (nameHashes[id] == hash && Arrays.equals(nameBytes[id], 0, nameBytes[id].length,
+                    bytes, start, start + length)) {
+                return id;
+            }
+        }
+    }
+
+    private int add(byte[] bytes, int start, int length, int hash, int slot) {
+        int id = nameCount++;
+        if (id == nameBytes.length) {
+            nameBytes = Arrays.copyOf(nameBytes, id * 2);
+            nameHashes = Arrays.copyOf(nameHashes, id * 2);
+            nameStrings = Arrays.copyOf(nameStrings, id * 2);
+        }
+        nameBytes[id] = Arrays.copyOfRange(bytes, start, start + length);
+        nameHashes[id] = hash;
+        nameStrings[id] = new String(nameBytes[id], StandardCharsets.UTF_8);
+        slots[slot] = id;
+        if (nameCount * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, -1);
+        int mask = slots.length - 1;
+        for (int id = 0; id < nameCount; id++) {
+            int hash = nameHashes[id];
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (slots[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private MalformedJsonException syntaxError(String message) {
+        return new MalformedJsonException(message + " at byte " + getPosition());
+    }
+
+    /**
+     * Decodes a JSON string slice, resolving escape sequences.
+     *
+     * @param bytes The buffer
+     * @param start The offset of the slice
+     * @param length The length of the slice
+     * @param escaped Whether the slice contains escape sequences
+     * @return The decoded string
+     * @throws MalformedJsonException if an escape sequence is invalid
+     */
+    static String decode(byte[] bytes, int start, int length, boolean escaped) throws MalformedJsonException {
+        if (!escaped) {
+            return new String(bytes, start, length, StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        unescape(bytes, start, length, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the UTF-8 bytes of a JSON string slice with its escape sequences resolved.
+     *
+     * @param bytes The buffer
+     * @param start The offset of the slice
+     * @param length The length of the slice
+     * @param out The destination
+     * @throws MalformedJsonException if an escape sequence is invalid
+     */
+    static void unescape(byte[] bytes, int start, int length, ByteArrayOutputStream out)
+            throws MalformedJsonException {
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            byte b = bytes[i];
+            if (b != '\\') {
+                out.write(b);
+                continue;
+            }
+            if (++i >= end) {
+                throw new MalformedJsonException("Unterminated escape sequence");
+            }
+            switch (bytes[i]) {
+                case 'u':
+                    if (i + 4 >= end) {
+                        throw new MalformedJsonException("Unterminated escape sequence");
+                    }
+                    int c = hex(bytes, i + 1);
+                    i += 4;
+                    if (Character.isHighSurrogate((char) c) && i + 6 < end
+                            && bytes[i + 1] == '\\' && bytes[i + 2] == 'u') {
+                        int low = hex(bytes, i + 3);
+                        if (Character.isLowSurrogate((char) low)) {
+                            c = Character.toCodePoint((char) c, (char) low);
+                            i += 6;
+                        }
+                    }
+                    writeCodePoint(c, out);
+                    break;
+                case 'b':
+                    out.write('\b');
+                    break;
+                case 'f':
+                    out.write('\f');
+                    break;
+                case 'n':
+                    out.write('\n');
+                    break;
+                case 'r':
+                    out.write('\r');
+                    break;
+                case 't':
+                    out.write('\t');
+                    break;
+                default:
+                    // \" \' \\ \/ and an escaped line break stand for themselves
+                    out.write(bytes[i]);
+                    break;
+            }
+        }
+    }
+
+    private static int hex(byte[] bytes, int start) throws MalformedJsonException {
+        int value = 0;
+        for (int i = start; i < start + 4; i++) {
+            int digit = Character.digit(bytes[i], 16);
+            if (digit < 0) {
+                throw new MalformedJsonException("Invalid escape sequence \\u"
+                        + new String(bytes, start, 4, StandardCharsets.ISO_8859_1));
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    private static void writeCodePoint(int c, ByteArrayOutputStream out) {
+        if (Character.isSurrogate((char) c) && c < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            // An unpaired surrogate cannot be encoded; Java's encoder writes '?' for it
+            out.write('?');
+        } else if (c < 0x80) {
+            out.write(c);
+        } else if (c < 0x800) {
+            out.write(0xC0 | (c >> 6));
+            out.write(0x80 | (c & 0x3F));
+        } else if (c < 0x10000) {
+            out.write(0xE0 | (c >> 12));
+            out.write(0x80 | ((c >> 6) & 0x3F));
+            out.write(0x80 | (c & 0x3F));
+        } else {
+            out.write(0xF0 | (c >> 18));
+            out.write(0x80 | ((c >> 12) & 0x3F));
+            out.write(0x80 | ((c >> 6) & 0x3F));
+            out.write(0x80 | (c & 0x3F));
+        }
+    }
+}
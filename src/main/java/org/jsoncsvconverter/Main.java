@@ -1,11 +1,26 @@
 package org.jsoncsvconverter;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.ConversionServer;
+import org.jsoncsvconverter.Logic.PipelineConverter;
 import org.jsoncsvconverter.UI.CampusDataConverterUI;
 
 // Entry point for JSON converter to CSV application
+// With arguments it converts from a file or standard input to a file or standard output, for shell pipelines
+// With --serve [port] it runs the local HTTP conversion service until the process is stopped
 
 public class Main {
     public static void main(String[] args) {
 
+        if (args.length > 0 && "--serve".equals(args[0])) {
+            ConversionServer server = new ConversionServer(new ConversionOptions());
+            server.setPort(args.length > 1 ? Integer.parseInt(args[1]) : ConversionServer.DEFAULT_PORT).start();
+            System.err.println("Listening on http://localhost:" + server.getPort() + ConversionServer.CONVERT_PATH);
+            return;
+        }
+        if (args.length > 0) {
+            System.exit(PipelineConverter.run(args));
+        }
+
         CampusDataConverterUI campusUI = new CampusDataConverterUI();
         campusUI.setBounds(0, 0, 600, 800);
         campusUI.setVisible(true);
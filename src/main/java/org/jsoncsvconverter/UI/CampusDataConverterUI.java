@@ -2,6 +2,7 @@ package org.jsoncsvconverter.UI;
 
 import java.util.*;
 import org.jsoncsvconverter.Logic.CSVWriterFile;
+import org.jsoncsvconverter.Logic.ConversionMetrics;
 import org.jsoncsvconverter.Logic.JSONParser;
 import org.jsoncsvconverter.Logic.JsonFileReader;
 import javax.swing.*;
@@ -72,6 +73,9 @@ public class CampusDataConverterUI extends javax.swing.JFrame implements ActionL
     /** JSON parser instance containing the processed JSON data ready for conversion */
     private JSONParser parser = null;
 
+    /** Metrics captured when the current JSON file started loading, used to summarise the run */
+    private ConversionMetrics.Snapshot runStartMetrics = null;
+
     /**
      * Constructs and initializes the Campus Data Converter user interface.
      * This constructor sets up all UI components, applies styling, and configures
@@ -230,13 +234,18 @@ public class CampusDataConverterUI extends javax.swing.JFrame implements ActionL
                 String selectedFilePath = fileChooser.getSelectedFile().getAbsolutePath();
                 statusLabel.setText("Loading JSON file...");
                 statusLabel.setForeground(Color.BLUE);
+                runStartMetrics = ConversionMetrics.getInstance().snapshot();
 
                 // Opens the file selected in UI
                 jsonFileReader = new JsonFileReader(selectedFilePath);
                 String jsonString = jsonFileReader.getJsonString();
 
-                // Parse the JSON
-                parser = new JSONParser(jsonString);
+                // Release spill files held by a previously loaded file, then parse the JSON
+                if (parser != null) {
+                    parser.close();
+                    parser = null;
+                }
+                parser = new JSONParser(jsonString, selectedFilePath);
 
                 statusLabel.setText("JSON file loaded successfully: " + fileChooser.getSelectedFile().getName());
                 statusLabel.setForeground(new Color(34, 139, 34));
@@ -326,9 +335,9 @@ public class CampusDataConverterUI extends javax.swing.JFrame implements ActionL
      * <p>The method uses {@link CSVWriterFile} to perform the actual file creation
      * and provides real-time status updates throughout the process.</p>
      *
-     * @see CSVWriterFile#createCSVWithData(String, java.util.List)
+     * @see CSVWriterFile#createCSVWithSparseRows(String, java.util.List)
      * @see JSONParser#getHeadersArray()
-     * @see JSONParser#getRows()
+     * @see JSONParser#getSparseRows()
      */
     private void handleConversion() {
         if (parser == null || selectedOutputPath.isEmpty()) {
@@ -362,11 +371,15 @@ public class CampusDataConverterUI extends javax.swing.JFrame implements ActionL
 
             // Crear el archivo CSV
             CSVWriterFile csvWriterFile = new CSVWriterFile(parser.getHeadersArray());
-            csvWriterFile.createCSVWithData(fullOutputPath, parser.getRows());
+            csvWriterFile.createCSVWithSparseRows(fullOutputPath, parser.getSparseRows());
 
             statusLabel.setText("CSV file created successfully at: " + fullOutputPath);
             statusLabel.setForeground(new Color(34, 139, 34));
 
+            // Machine-readable summary of the run (read, parse, flatten and write stages)
+            System.out.println("Conversion metrics: "
+                    + ConversionMetrics.getInstance().snapshot().since(runStartMetrics).toJson());
+
             // Mostrar mensaje de éxito
             JOptionPane.showMessageDialog(this,
                     "CSV file has been created successfully!\nLocation: " + fullOutputPath,
@@ -0,0 +1,134 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.CampusDataGenerator;
+import org.jsoncsvconverter.Logic.JSONParser;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Test class for CampusDataGenerator using JUnit 3.8.1.
+ * This test suite validates that the generator is deterministic, honours record counts
+ * and byte targets, and produces valid JSON in every supported layout.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class CampusDataGeneratorTest extends TestCase {
+
+    /**
+     * Constructor for CampusDataGeneratorTest.
+     *
+     * @param testName Name of the test case
+     */
+    public CampusDataGeneratorTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for CampusDataGenerator
+     */
+    public static Test suite() {
+        return new TestSuite(CampusDataGeneratorTest.class);
+    }
+
+    /**
+     * Tests that the same seed always produces the same bytes and a different seed does not.
+     */
+    public void testSameSeedProducesSameBytes() throws Exception {
+        byte[] first = generate(7L, CampusDataGenerator.Layout.ARRAY_ROOT, 50);
+        byte[] second = generate(7L, CampusDataGenerator.Layout.ARRAY_ROOT, 50);
+        byte[] other = generate(8L, CampusDataGenerator.Layout.ARRAY_ROOT, 50);
+
+        assertTrue("Same seed should produce identical output", Arrays.equals(first, second));
+        assertFalse("Different seeds should produce different output", Arrays.equals(first, other));
+    }
+
+    /**
+     * Tests that the array-root layout contains exactly the requested number of records.
+     */
+    public void testArrayRootRecordCount() throws Exception {
+        String json = new String(generate(1L, CampusDataGenerator.Layout.ARRAY_ROOT, 25), StandardCharsets.UTF_8);
+        JsonArray array = JsonParser.parseString(json).getAsJsonArray();
+
+        assertEquals("Should contain 25 students", 25, array.size());
+        assertEquals("First id should be sequential", "S00000001",
+                array.get(0).getAsJsonObject().get("id").getAsString());
+        assertTrue("Records should have nested address",
+                array.get(0).getAsJsonObject().get("address").isJsonObject());
+    }
+
+    /**
+     * Tests that the object-root layout can be flattened by JSONParser.
+     */
+    public void testObjectRootIsAcceptedByParser() throws Exception {
+        String json = new String(generate(3L, CampusDataGenerator.Layout.OBJECT_ROOT, 10), StandardCharsets.UTF_8);
+        JSONParser parser = new JSONParser(json);
+
+        assertTrue("Headers should contain the institution", parser.getHeaders().contains("institution"));
+        assertTrue("Headers should contain flattened student ids", parser.getHeaders().contains("students__id"));
+        assertTrue("Headers should contain nested geo fields",
+                parser.getHeaders().contains("students__address__geo__lat"));
+        assertTrue("Should produce at least one row per student", parser.getRows().size() >= 10);
+    }
+
+    /**
+     * Tests that every NDJSON line is an independent JSON object.
+     */
+    public void testNdjsonLinesAreIndependentObjects() throws Exception {
+        String text = new String(generate(5L, CampusDataGenerator.Layout.NDJSON, 12), StandardCharsets.UTF_8);
+        String[] lines = text.split("\n");
+
+        assertEquals("Should contain one line per record", 12, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            JsonElement element = JsonParser.parseString(lines[i]);
+            assertTrue("Line " + i + " should be an object", element.isJsonObject());
+        }
+    }
+
+    /**
+     * Tests that generation by byte target stops shortly after the target.
+     */
+    public void testTargetSizeIsReached() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = new CampusDataGenerator(11L).generate(out, CampusDataGenerator.Layout.ARRAY_ROOT, 64 * 1024);
+
+        assertEquals("Reported size should match the stream", out.size(), written);
+        assertTrue("Should reach the target", written >= 64 * 1024);
+        assertTrue("Should stop near the target", written < 64 * 1024 + 4096);
+        assertTrue("Output should be valid JSON", JsonParser.parseString(out.toString("UTF-8")).isJsonArray());
+    }
+
+    /**
+     * Tests parsing of human-readable sizes.
+     */
+    public void testParseSize() {
+        assertEquals(1024L, CampusDataGenerator.parseSize("1KB"));
+        assertEquals(64L << 20, CampusDataGenerator.parseSize("64mb"));
+        assertEquals(20L << 30, CampusDataGenerator.parseSize("20GB"));
+        assertEquals(500L, CampusDataGenerator.parseSize("500"));
+
+        try {
+            CampusDataGenerator.parseSize("-3MB");
+            fail("Negative sizes should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertNotNull("Exception should have a message", e.getMessage());
+        }
+    }
+
+    private byte[] generate(long seed, CampusDataGenerator.Layout layout, int records) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CampusDataGenerator(seed).generateRecords(out, layout, records);
+        return out.toByteArray();
+    }
+}
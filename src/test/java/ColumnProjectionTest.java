@@ -0,0 +1,202 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.CSVWriterFile;
+import org.jsoncsvconverter.Logic.ColumnProjection;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.JSONParser;
+import org.jsoncsvconverter.Logic.ParallelJsonConverter;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test class for ColumnProjection using JUnit 3.8.1.
+ * This test suite validates path and glob matching, the pruning of unselected subtrees while
+ * parsing, the projected header order, and that the streaming converter produces the same CSV
+ * as JSONParser with and without a projection, without rows that have no selected value.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ColumnProjectionTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_projection_output";
+
+    /** Campus document with root scalars before and after the student array */
+    private static final String CAMPUS_JSON =
+            "{\"institution\": \"North\", \"students\": ["
+                    + "{\"id\": \"S1\", \"status\": \"active\", \"address\": {\"city\": \"Leon\", \"geo\": {\"lat\": 1.5}},"
+                    + " \"courses\": [{\"code\": \"CS1\", \"grades\": [90, 80]}, {\"code\": \"MA1\"}], \"skills\": [\"Java\"]},"
+                    + "{\"id\": \"S2\", \"status\": \"inactive\", \"address\": {\"city\": \"Puebla\"}, \"courses\": []}"
+                    + "], \"tags\": [\"a\", \"b\"], \"year\": 2024}";
+
+    /**
+     * Constructor for ColumnProjectionTest.
+     *
+     * @param testName Name of the test case
+     */
+    public ColumnProjectionTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for ColumnProjection
+     */
+    public static Test suite() {
+        return new TestSuite(ColumnProjectionTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        File[] files = new File(TEST_DIR).listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        new File(TEST_DIR).delete();
+    }
+
+    /**
+     * Tests exact paths, single-level and any-depth globs.
+     */
+    public void testMatching() {
+        ColumnProjection projection = ColumnProjection.parse("id, address__*, courses__**, *_code");
+
+        assertTrue("Exact path should match", projection.matches("id"));
+        assertFalse("Exact path should not match children", projection.matches("id__x"));
+        assertTrue("Single-level glob should match one level", projection.matches("address__city"));
+        assertFalse("Single-level glob should not cross separators", projection.matches("address__geo__lat"));
+        assertTrue("Any-depth glob should match deep columns", projection.matches("courses__grades__x"));
+        assertTrue("Glob may match part of a segment", projection.matches("zip_code"));
+
+        assertTrue("Root may always contain columns", projection.mayContain(""));
+        assertTrue("Prefix of a glob may contain columns", projection.mayContain("address"));
+        assertTrue("Prefix of a glob may contain columns", projection.mayContain("courses__grades"));
+        assertFalse("Unrelated subtree should be skipped", projection.mayContain("advisor"));
+        assertTrue("An array at a globbed path may produce that column", projection.mayContain("address__geo"));
+        assertFalse("Subtree below a single-level glob should be skipped", projection.mayContain("address__geo__lat"));
+    }
+
+    /**
+     * Tests that JSONParser only builds and outputs the selected columns, in projection order.
+     */
+    public void testParserSkipsUnselectedSubtrees() {
+        ConversionOptions options = new ConversionOptions()
+                .setProjection(ColumnProjection.parse("students__status, students__id, students__address__*, missing"));
+        JSONParser parser = new JSONParser(CAMPUS_JSON, options);
+
+        assertTrue("Headers should follow the projection",
+                Arrays.equals(new String[]{"students__status", "students__id", "students__address__city", "missing"},
+                        parser.getHeadersArray()));
+        assertFalse("Unselected root members should not be built", parser.getJsonObject().has("tags"));
+        assertFalse("Unselected nested members should not be built",
+                parser.getJsonObject().getAsJsonArray("students").get(0).getAsJsonObject().has("courses"));
+
+        List<String[]> rows = parser.getRows();
+        assertEquals("One row per student", 2, rows.size());
+        assertTrue("Row values should follow the headers",
+                Arrays.equals(new String[]{"active", "S1", "Leon", ""}, rows.get(0)));
+        parser.close();
+    }
+
+    /**
+     * Tests that the streaming converter matches JSONParser on an object-root document.
+     */
+    public void testStreamingMatchesParser() throws Exception {
+        assertSameCsv(new ConversionOptions());
+        assertSameCsv(new ConversionOptions().setProjection(ColumnProjection.parse("year, students__id, students__courses__**")));
+        assertSameCsv(new ConversionOptions().setProjection(ColumnProjection.parse("institution, tags")));
+        assertSameCsv(new ConversionOptions().setRowBufferBudgetBytes(64));
+    }
+
+    /**
+     * Tests that rows exploded only from unselected columns are not written, by the streaming and
+     * parallel converters and by JSONParser alike.
+     */
+    public void testRowsWithoutSelectedValuesDropped() throws Exception {
+        ConversionOptions options = new ConversionOptions().setProjection(ColumnProjection.parse("students__*"));
+        assertSameCsv(options);
+        String input = TEST_DIR + File.separator + "campus.json";
+        String output = TEST_DIR + File.separator + "glob.csv";
+        String expected = "\"students__id\",\"students__status\",\"students__skills\"\n"
+                + "\"S1\",\"active\",\"\"\n\"\",\"\",\"Java\"\n\"S2\",\"inactive\",\"\"\n";
+        assertEquals("Course rows should be dropped", 3, new StreamingJsonConverter(options).convert(input, output));
+        assertEquals(expected, TestFiles.read(output));
+        assertEquals(3, new ParallelJsonConverter(options.setParallelism(2)).setGranularity(1).convert(input, output));
+        assertEquals("The parallel converter should match", expected, TestFiles.read(output));
+    }
+
+    /**
+     * Tests that array-root and newline-delimited inputs are converted record by record.
+     */
+    public void testArrayRootAndNewlineDelimited() throws Exception {
+        String output = TEST_DIR + File.separator + "records.csv";
+        ConversionOptions options = new ConversionOptions().setProjection(ColumnProjection.parse("id, address__city"));
+
+        StreamingJsonConverter converter = new StreamingJsonConverter(options);
+        long rows = converter.convert(new StringReader(
+                "[{\"id\": 1, \"address\": {\"city\": \"Leon\", \"zip\": \"1\"}, \"skills\": [\"x\", \"y\"]}, {\"id\": 2}]"),
+                "array.json", output);
+        assertEquals("One row per record", 2, rows);
+        assertEquals("Should write the projected columns",
+                "\"id\",\"address__city\"\n\"1\",\"Leon\"\n\"2\",\"\"\n", TestFiles.read(output));
+
+        rows = converter.convert(new StringReader("{\"id\": 3}\n{\"id\": 4, \"address\": {\"city\": \"Tula\"}}\n"),
+                "records.ndjson", output);
+        assertEquals("One row per line", 2, rows);
+        assertEquals("Should write the projected columns",
+                "\"id\",\"address__city\"\n\"3\",\"\"\n\"4\",\"Tula\"\n", TestFiles.read(output));
+    }
+
+    /**
+     * Tests that blank patterns are rejected.
+     */
+    public void testInvalidPatterns() {
+        try {
+            ColumnProjection.parse("id, ,name");
+            fail("Blank patterns should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertNotNull("Exception should have a message", e.getMessage());
+        }
+    }
+
+    private void assertSameCsv(ConversionOptions options) throws Exception {
+        String input = TEST_DIR + File.separator + "campus.json";
+        String expected = TEST_DIR + File.separator + "expected.csv";
+        String actual = TEST_DIR + File.separator + "actual.csv";
+        Files.write(new File(input).toPath(), CAMPUS_JSON.getBytes(StandardCharsets.UTF_8));
+
+        JSONParser parser = new JSONParser(CAMPUS_JSON, options);
+        new CSVWriterFile(parser.getHeadersArray()).createCSVWithData(expected, parser.getRows());
+        parser.close();
+
+        StreamingJsonConverter converter = new StreamingJsonConverter(options);
+        converter.convert(input, actual);
+
+        assertEquals("Streaming output should match the parser for " + options.getProjection(),
+                TestFiles.read(expected), TestFiles.read(actual));
+    }
+}
@@ -0,0 +1,193 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.jsoncsvconverter.Logic.CSVWriterFile;
+import org.jsoncsvconverter.Logic.ColumnStatistics;
+import org.jsoncsvconverter.Logic.ColumnType;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.JSONParser;
+import org.jsoncsvconverter.Logic.ParallelJsonConverter;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Test class for ColumnStatistics using JUnit 3.8.1.
+ * This test suite validates null counts, numeric and textual extremes, the accuracy of the
+ * approximate distinct counts, and that every conversion path writes the same statistics file
+ * next to its CSV.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ColumnStatisticsTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_statistics_output";
+
+    /**
+     * Constructor for ColumnStatisticsTest.
+     *
+     * @param testName Name of the test case
+     */
+    public ColumnStatisticsTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for ColumnStatistics
+     */
+    public static Test suite() {
+        return new TestSuite(ColumnStatisticsTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        File[] files = new File(TEST_DIR).listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        new File(TEST_DIR).delete();
+    }
+
+    /**
+     * Tests null counts, and that extremes are compared as numbers in numeric columns, keeping
+     * their text, and as text in any other column.
+     */
+    public void testNullCountsAndExtremes() {
+        ColumnStatistics stats = new ColumnStatistics(new String[]{"id", "gpa", "name", "mixed", "empty"});
+        stats.acceptRow(new String[]{"9", "3.50", "Ana", "10", ""});
+        stats.acceptRow(new String[]{"10", "", "bo", "x", ""});
+        stats.acceptRow(new String[]{"-3", "1e1", "", "2"});
+
+        assertEquals("Should count every row", 3, stats.getRowCount());
+        assertEquals(ColumnType.LONG, stats.getColumnType(0));
+        assertEquals("Whole numbers compare as numbers", "-3", stats.getMin(0));
+        assertEquals("Whole numbers compare as numbers", "10", stats.getMax(0));
+        assertEquals("Fractions keep their text", "3.50", stats.getMin(1));
+        assertEquals("Exponents keep their text", "1e1", stats.getMax(1));
+        assertEquals("Empty cells count as nulls", 1, stats.getNullCount(1));
+        assertEquals("Text compares by character", "Ana", stats.getMin(2));
+        assertEquals("Text compares by character", "bo", stats.getMax(2));
+        assertEquals("Mixed columns compare as text", "10", stats.getMin(3));
+        assertEquals("Mixed columns compare as text", "x", stats.getMax(3));
+        assertEquals("Missing cells count as nulls", 3, stats.getNullCount(4));
+        assertNull("A column without values has no minimum", stats.getMin(4));
+        assertEquals("A column without values has no distinct value", 0, stats.getDistinctCount(4));
+        assertEquals("Small distinct counts should be exact", 3, stats.getDistinctCount(0));
+    }
+
+    /**
+     * Tests that distinct counts stay within a few percent of the true count.
+     */
+    public void testDistinctCountAccuracy() {
+        ColumnStatistics stats = new ColumnStatistics(new String[]{"id", "campus"});
+        int distinct = 100000;
+        for (int i = 0; i < 2 * distinct; i++) {
+            stats.acceptRow(new String[]{"student-" + (i % distinct), i % 7 == 0 ? "North" : "South"});
+        }
+
+        double error = Math.abs(stats.getDistinctCount(0) - distinct) / (double) distinct;
+        assertTrue("Estimate should be within 5%: " + stats.getDistinctCount(0), error < 0.05);
+        assertEquals("Repeated values should count once", 2, stats.getDistinctCount(1));
+    }
+
+    /**
+     * Tests that the byte path, the Gson path, the parallel path and the in-memory parser write
+     * the same statistics, including for numbers stored as primitives.
+     */
+    public void testEveryPathWritesSameStatistics() throws Exception {
+        StringBuilder json = new StringBuilder("{\"campus\": \"North\", \"students\": [");
+        for (int i = 0; i < 5000; i++) {
+            json.append(i == 0 ? "" : ",\n").append("{\"id\": ").append(i * 7 - 900)
+                    .append(", \"gpa\": ").append(i % 40 / 10.0)
+                    .append(", \"name\": \"caf\\u00e9 ").append(i % 300).append('"')
+                    .append(i % 3 == 0 ? ", \"note\": null" : ", \"note\": \"n" + i + "\"")
+                    .append(", \"tags\": [\"a\", \"b\"]}");
+        }
+        json.append("], \"terms\": [1, 2, 3]}");
+        File input = new File(TEST_DIR, "campus.json");
+        Files.write(input.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+
+        String expected = convert(new StreamingJsonConverter(new ConversionOptions().setStatisticsEnabled(true)), input);
+        JsonObject document = JsonParser.parseString(expected).getAsJsonObject();
+        JsonArray columns = document.getAsJsonArray("columns");
+        assertEquals("Should count every row", 10003, document.get("rowCount").getAsLong());
+        assertEquals("campus", columns.get(0).getAsJsonObject().get("name").getAsString());
+        JsonObject id = columns.get(1).getAsJsonObject();
+        assertEquals("LONG", id.get("type").getAsString());
+        assertEquals(-900, id.get("min").getAsLong());
+        assertEquals(4999 * 7 - 900, id.get("max").getAsLong());
+        assertEquals("Only the first row of each student has an id", 5003, id.get("nullCount").getAsLong());
+
+        long[] budgets = {1L << 30, 64 * 1024};
+        for (long budget : budgets) {
+            assertEquals("The Gson path should agree with budget " + budget, expected, convert(new StreamingJsonConverter(
+                    new ConversionOptions().setStatisticsEnabled(true).setByteTokenizerEnabled(false)
+                            .setRowBufferBudgetBytes(budget).setSpillDirectory(new File(TEST_DIR))), input));
+        }
+        ParallelJsonConverter parallel = new ParallelJsonConverter(
+                new ConversionOptions().setStatisticsEnabled(true).setParallelism(3)).setGranularity(4096);
+        assertEquals("The parallel path should agree", expected, convert(parallel, input));
+        assertTrue("The file should be split", parallel.getRangeCount() > 1);
+
+        File dom = new File(TEST_DIR, "dom.csv");
+        try (JSONParser parser = new JSONParser(json.toString())) {
+            ColumnStatistics stats = new ColumnStatistics(parser.getHeadersArray());
+            new CSVWriterFile(parser.getHeadersArray()).setStatistics(stats)
+                    .createCSVWithSparseRows(dom.getPath(), parser.getSparseRows());
+            stats.write(ColumnStatistics.sidecarPath(dom.getPath()));
+        }
+        assertEquals("The parser should agree", expected, TestFiles.read(new File(TEST_DIR, "dom.stats.json")));
+    }
+
+    /**
+     * Tests the name of the statistics file and that nothing is written by default.
+     */
+    public void testSidecarPath() throws Exception {
+        assertEquals("out/campus.stats.json", ColumnStatistics.sidecarPath("out/campus.csv"));
+        assertEquals("out/campus.txt.stats.json", ColumnStatistics.sidecarPath("out/campus.txt"));
+
+        File input = new File(TEST_DIR, "plain.json");
+        String output = TEST_DIR + File.separator + "plain.csv";
+        Files.write(input.toPath(), "[{\"a\": 1}]".getBytes(StandardCharsets.UTF_8));
+        StreamingJsonConverter converter = new StreamingJsonConverter(new ConversionOptions());
+        converter.convert(input.getPath(), output);
+        assertNull("Statistics should be off by default", converter.getStatistics());
+        assertFalse("No statistics file should be written", new File(ColumnStatistics.sidecarPath(output)).exists());
+    }
+
+    private static String convert(Object converter, File input) throws Exception {
+        String output = TEST_DIR + File.separator + "campus.csv";
+        new File(ColumnStatistics.sidecarPath(output)).delete();
+        if (converter instanceof StreamingJsonConverter) {
+            ((StreamingJsonConverter) converter).convert(input.getPath(), output);
+        } else {
+            ((ParallelJsonConverter) converter).convert(input.getPath(), output);
+        }
+        return TestFiles.read(ColumnStatistics.sidecarPath(output));
+    }
+}
@@ -0,0 +1,199 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.CSVWriterFile;
+import org.jsoncsvconverter.Logic.ColumnType;
+import org.jsoncsvconverter.Logic.ColumnarTable;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.JSONParser;
+import org.jsoncsvconverter.Logic.ParallelJsonConverter;
+import org.jsoncsvconverter.Logic.RowBuffer;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test class for ColumnType and typed column storage using JUnit 3.8.1.
+ * This test suite validates the inference and merging of column types, the primitive storage of
+ * numeric columns and its fallback to text, the schema reported by every conversion path, and
+ * that number cells are written exactly as their original text.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ColumnTypeTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_column_type_output";
+
+    /**
+     * Constructor for ColumnTypeTest.
+     *
+     * @param testName Name of the test case
+     */
+    public ColumnTypeTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for ColumnType
+     */
+    public static Test suite() {
+        return new TestSuite(ColumnTypeTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        File[] files = new File(TEST_DIR).listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        new File(TEST_DIR).delete();
+    }
+
+    /**
+     * Tests the classification of single values and the merging of types.
+     */
+    public void testInferenceAndMerge() {
+        assertEquals(ColumnType.LONG, ColumnType.infer("-42"));
+        assertEquals(ColumnType.LONG, ColumnType.infer("9223372036854775807"));
+        assertEquals("Whole numbers past a long are doubles", ColumnType.DOUBLE, ColumnType.infer("9223372036854775808"));
+        assertEquals(ColumnType.DOUBLE, ColumnType.infer("3.50"));
+        assertEquals(ColumnType.DOUBLE, ColumnType.infer("1E-7"));
+        assertEquals(ColumnType.BOOLEAN, ColumnType.infer("false"));
+        String[] strings = {"007", "+1", "1.", ".5", "1e", "NaN", "True", "12a", "-"};
+        for (int i = 0; i < strings.length; i++) {
+            assertEquals("Not a JSON number: " + strings[i], ColumnType.STRING, ColumnType.infer(strings[i]));
+        }
+        assertNull("Empty values have no type", ColumnType.infer(""));
+
+        assertEquals(ColumnType.DOUBLE, ColumnType.merge(ColumnType.LONG, ColumnType.DOUBLE));
+        assertEquals(ColumnType.LONG, ColumnType.merge(null, ColumnType.LONG));
+        assertEquals(ColumnType.STRING, ColumnType.merge(ColumnType.BOOLEAN, ColumnType.LONG));
+        assertNull(ColumnType.merge(null, null));
+    }
+
+    /**
+     * Tests that high-cardinality numeric columns switch to primitive arrays, that values which
+     * would not format back exactly send them to plain text, and that every value survives.
+     */
+    public void testPrimitiveStorage() {
+        ColumnarTable table = new ColumnarTable();
+        int rows = 4 * ColumnarTable.CARDINALITY_SAMPLE;
+        String[][] expected = new String[rows + 1][];
+        for (int i = 0; i < rows; i++) {
+            expected[i] = new String[]{String.valueOf(i * 7919L - 5000), i % 3 == 0 ? "" : (i / 8.0) + "",
+                    i % 2 == 0 ? "true" : "false", i + ".5"};
+            table.addRow(new int[]{0, 1, 2, 3}, expected[i], 4);
+        }
+        assertTrue("Distinct whole numbers should be stored as longs", table.isPrimitive(0));
+        assertTrue("Distinct decimals should be stored as doubles", table.isPrimitive(1));
+        assertFalse("Booleans should stay dictionary encoded", table.isPrimitive(2));
+        assertEquals(ColumnType.LONG, table.getColumnType(0));
+        assertEquals(ColumnType.DOUBLE, table.getColumnType(1));
+        assertEquals(ColumnType.BOOLEAN, table.getColumnType(2));
+        assertTrue("Longs should cost about eight bytes a row", table.getEstimatedHeapBytes() < rows * 40L);
+
+        expected[rows] = new String[]{"12", "2.50", "", ""};
+        table.addRow(new int[]{0, 1}, expected[rows], 2);
+        assertTrue("A canonical value should stay a number", table.isPrimitive(0));
+        assertFalse("A value spelled differently should switch the column to text", table.isPrimitive(1));
+        assertEquals(ColumnType.DOUBLE, table.getColumnType(1));
+        for (int i = 0; i <= rows; i++) {
+            for (int column = 0; column < 4; column++) {
+                assertEquals("Cell " + i + "," + column, expected[i][column], table.get(i, column));
+            }
+        }
+    }
+
+    /**
+     * Tests that number cells read from primitive columns are written exactly as the text they
+     * were added as, through the sparse writer and after spilling.
+     */
+    public void testNumberCellsWriteSameCsv() throws Exception {
+        for (long budget : new long[]{1L << 30, 8192}) {
+            RowBuffer buffer = new RowBuffer(budget, new File(TEST_DIR));
+            for (int i = 0; i < 5000; i++) {
+                Map<String, String> row = new LinkedHashMap<>();
+                row.put("id", String.valueOf(i == 17 ? Long.MAX_VALUE : -i * 104729L));
+                row.put("score", String.valueOf(i / 16.0 - 100));
+                if (i % 5 == 0) {
+                    row.put("name", "n\"" + i);
+                }
+                buffer.addRow(row);
+            }
+            List<String> order = buffer.getColumns();
+            String[] headers = order.toArray(new String[0]);
+            File dense = new File(TEST_DIR, "dense.csv");
+            File sparse = new File(TEST_DIR, "sparse.csv");
+            new CSVWriterFile(headers).createCSVWithData(dense.getPath(), buffer.view(order));
+            new CSVWriterFile(headers).createCSVWithSparseRows(sparse.getPath(), buffer.sparseView(order));
+            assertTrue("Number cells should be written as their text with budget " + budget,
+                    Arrays.equals(Files.readAllBytes(dense.toPath()), Files.readAllBytes(sparse.toPath())));
+            assertEquals("The schema should survive spills", ColumnType.DOUBLE, buffer.getColumnTypes().get("score"));
+            buffer.close();
+        }
+    }
+
+    /**
+     * Tests that every conversion path reports the same schema, in header order, with columns
+     * typed across records and nested arrays.
+     */
+    public void testSchemaFromEveryPath() throws Exception {
+        String json = "{\"campus\": \"North\", \"year\": 2024, \"students\": ["
+                + "{\"id\": 1, \"gpa\": 3.5, \"active\": true, \"note\": null, \"code\": \"7\"},"
+                + "{\"id\": 2, \"gpa\": 4, \"active\": false, \"note\": \"late\", \"code\": \"x\"}]}";
+        File input = new File(TEST_DIR, "campus.json");
+        Files.write(input.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        Map<String, ColumnType> expected = new LinkedHashMap<>();
+        expected.put("campus", ColumnType.STRING);
+        expected.put("year", ColumnType.LONG);
+        expected.put("students__id", ColumnType.LONG);
+        expected.put("students__gpa", ColumnType.DOUBLE);
+        expected.put("students__active", ColumnType.BOOLEAN);
+        expected.put("students__note", ColumnType.STRING);
+        expected.put("students__code", ColumnType.STRING);
+
+        String output = TEST_DIR + File.separator + "campus.csv";
+        StreamingJsonConverter bytes = new StreamingJsonConverter(new ConversionOptions());
+        bytes.convert(input.getPath(), output);
+        assertEquals("The byte path should report the schema", expected, bytes.getColumnTypes());
+        assertEquals("Headers and schema should share their order",
+                Arrays.asList(bytes.getHeadersArray()), Arrays.asList(bytes.getColumnTypes().keySet().toArray()));
+
+        StreamingJsonConverter gson = new StreamingJsonConverter(new ConversionOptions().setByteTokenizerEnabled(false));
+        gson.convert(input.getPath(), output);
+        assertEquals("The Gson path should report the schema", expected, gson.getColumnTypes());
+
+        ParallelJsonConverter parallel = new ParallelJsonConverter(new ConversionOptions().setParallelism(2));
+        parallel.convert(input.getPath(), output);
+        assertEquals("The parallel path should report the schema", expected, parallel.getColumnTypes());
+
+        try (JSONParser parser = new JSONParser(json)) {
+            assertEquals("The parser should report the schema", expected, parser.getColumnTypes());
+        }
+    }
+}
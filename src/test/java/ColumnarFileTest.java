@@ -0,0 +1,204 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.CSVWriterFile;
+import org.jsoncsvconverter.Logic.ColumnType;
+import org.jsoncsvconverter.Logic.ColumnarFileReader;
+import org.jsoncsvconverter.Logic.ColumnarFileWriter;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test class for the binary columnar output format using JUnit 3.8.1.
+ * This test suite validates that typed values round-trip through every encoding and row group,
+ * that the footer statistics describe each row group, that conversions write a columnar copy of
+ * their output, and that malformed files and mistyped values are rejected.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ColumnarFileTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_columnar_output";
+
+    /** Headers of the written test files */
+    private static final String[] HEADERS = {"id", "campus", "gpa", "active", "note"};
+
+    /**
+     * Constructor for ColumnarFileTest.
+     *
+     * @param testName Name of the test case
+     */
+    public ColumnarFileTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for the columnar format
+     */
+    public static Test suite() {
+        return new TestSuite(ColumnarFileTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        TestFiles.delete(new File(TEST_DIR));
+    }
+
+    /**
+     * Tests that typed values and empty cells read back as written across row groups, and that
+     * each column picks the encoding suiting its values.
+     */
+    public void testTypedValuesRoundTrip() throws Exception {
+        String path = TEST_DIR + File.separator + "students.cols";
+        List<String[]> rows = rows(1000);
+        new ColumnarFileWriter(HEADERS, types()).setRowGroupSize(300).createColumnarFile(path, rows);
+
+        try (ColumnarFileReader reader = new ColumnarFileReader(path)) {
+            assertEquals(1000, reader.getRowCount());
+            assertEquals(4, reader.getRowGroupCount());
+            assertEquals(100, reader.getRowGroupRowCount(3));
+            assertEquals(types(), reader.getColumnTypes());
+            assertEquals(ColumnarFileWriter.Encoding.PLAIN, reader.getEncoding(0, "id"));
+            assertEquals(ColumnarFileWriter.Encoding.DICTIONARY, reader.getEncoding(0, "campus"));
+            assertEquals(ColumnarFileWriter.Encoding.RUN_LENGTH, reader.getEncoding(0, "active"));
+
+            int row = 0;
+            for (int group = 0; group < reader.getRowGroupCount(); group++) {
+                for (Object[] values : reader.readRows(group)) {
+                    String[] expected = rows.get(row++);
+                    assertEquals(Long.valueOf(expected[0]), values[0]);
+                    assertEquals(expected[1], values[1]);
+                    assertEquals(Double.valueOf(expected[2]), values[2]);
+                    assertEquals(Boolean.TRUE, values[3]);
+                    assertEquals(expected[4].isEmpty() ? null : expected[4], values[4]);
+                }
+            }
+            assertEquals(1000, row);
+        }
+    }
+
+    /**
+     * Tests that the footer records the empty cells and the extremes of every column per row
+     * group.
+     */
+    public void testRowGroupStatistics() throws Exception {
+        String path = TEST_DIR + File.separator + "students.cols";
+        new ColumnarFileWriter(HEADERS, types()).setRowGroupSize(300).createColumnarFile(path, rows(1000));
+
+        try (ColumnarFileReader reader = new ColumnarFileReader(path)) {
+            assertEquals(300L, reader.getMin(1, "id"));
+            assertEquals(599L, reader.getMax(1, "id"));
+            assertEquals("North", reader.getMin(0, "campus"));
+            assertEquals("West", reader.getMax(0, "campus"));
+            assertEquals(0, reader.getNullCount(0, "id"));
+            assertEquals(270, reader.getNullCount(0, "note"));
+            Object[] notes = reader.readColumn(0, "note");
+            assertEquals("note 0", notes[0]);
+            assertNull(notes[1]);
+            try {
+                reader.readColumn(0, "missing");
+                fail("Unknown columns should be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Tests that a conversion with a columnar copy writes the rows of its CSV output typed by
+     * the inferred column types, and that a CSV file converts to the same columnar file.
+     */
+    public void testConversionWritesColumnarCopy() throws Exception {
+        File input = new File(TEST_DIR, "students.json");
+        Files.write(input.toPath(), ("[{\"id\": 1, \"gpa\": 3.5, \"tags\": [\"a\", \"b\"]},"
+                + " {\"id\": 2, \"gpa\": 4, \"active\": false}]").getBytes(StandardCharsets.UTF_8));
+        String output = TEST_DIR + File.separator + "students.csv";
+        StreamingJsonConverter converter = new StreamingJsonConverter(
+                new ConversionOptions().setColumnarOutputEnabled(true));
+        assertEquals(3, converter.convert(input.getPath(), output));
+
+        String columnar = TEST_DIR + File.separator + "students.cols";
+        try (ColumnarFileReader reader = new ColumnarFileReader(columnar)) {
+            assertEquals(converter.getColumnTypes(), reader.getColumnTypes());
+            assertEquals(3, reader.getRowCount());
+            assertEquals(Arrays.asList(1L, null, 2L), Arrays.asList(reader.readColumn(0, "id")));
+            assertEquals(Arrays.asList(3.5, null, 4.0), Arrays.asList(reader.readColumn(0, "gpa")));
+            assertEquals(Arrays.asList("a", "b", null), Arrays.asList(reader.readColumn(0, "tags")));
+            assertEquals(Arrays.asList(null, null, false), Arrays.asList(reader.readColumn(0, "active")));
+        }
+
+        String fromCsv = TEST_DIR + File.separator + "copy.cols";
+        assertEquals(3, new ColumnarFileWriter(converter.getHeadersArray(), converter.getColumnTypes())
+                .createColumnarFileFromCsv(output, fromCsv));
+        assertTrue(Arrays.equals(Files.readAllBytes(new File(columnar).toPath()),
+                Files.readAllBytes(new File(fromCsv).toPath())));
+    }
+
+    /**
+     * Tests that values not matching their column type and files that are not columnar are
+     * rejected.
+     */
+    public void testInvalidInputRejected() throws Exception {
+        try {
+            new ColumnarFileWriter(HEADERS, types()).createColumnarFile(TEST_DIR + File.separator + "bad.cols",
+                    Arrays.asList(new String[][]{{"1", "North", "abc", "true", ""}}));
+            fail("A text value in a double column should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("gpa"));
+        }
+        String csv = TEST_DIR + File.separator + "plain.csv";
+        new CSVWriterFile(HEADERS).createCSVWithData(csv, rows(3));
+        try {
+            new ColumnarFileReader(csv);
+            fail("A CSV file should not open as a columnar file");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("columnar file"));
+        }
+    }
+
+    private static Map<String, ColumnType> types() {
+        Map<String, ColumnType> types = new LinkedHashMap<>();
+        types.put("id", ColumnType.LONG);
+        types.put("campus", ColumnType.STRING);
+        types.put("gpa", ColumnType.DOUBLE);
+        types.put("active", ColumnType.BOOLEAN);
+        types.put("note", ColumnType.STRING);
+        return types;
+    }
+
+    private static List<String[]> rows(int count) {
+        String[] campuses = {"North", "South", "West"};
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(new String[]{String.valueOf(i), campuses[i % 3], String.valueOf(i / 4.0), "true",
+                    i % 10 == 0 ? "note " + i : ""});
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,164 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.ColumnarTable;
+import org.jsoncsvconverter.Logic.RowBuffer;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Test class for ColumnarTable using JUnit 3.8.1.
+ * This test suite validates dictionary encoding of repeated values, the widening of codes, the
+ * switch to plain storage for high-cardinality columns, and that RowBuffer reads the same rows
+ * back from the table and from spilled runs.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ColumnarTableTest extends TestCase {
+
+    /** Test directory for spill files */
+    private static final String TEST_DIR = "test_columnar_output";
+
+    /**
+     * Constructor for ColumnarTableTest.
+     *
+     * @param testName Name of the test case
+     */
+    public ColumnarTableTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for ColumnarTable
+     */
+    public static Test suite() {
+        return new TestSuite(ColumnarTableTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        File[] files = new File(TEST_DIR).listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        new File(TEST_DIR).delete();
+    }
+
+    /**
+     * Tests that repeated values are stored once per column and that empty, missing and late
+     * columns read back as empty strings.
+     */
+    public void testDictionaryEncoding() {
+        ColumnarTable table = new ColumnarTable();
+        String[] campuses = {"North", "South", "West"};
+        for (int i = 0; i < 3000; i++) {
+            table.addRow(new int[]{0, 1}, new String[]{campuses[i % 3], i % 2 == 0 ? "2024-FA" : ""}, 2);
+        }
+        table.addRow(new int[]{2}, new String[]{"late"}, 1);
+
+        assertEquals("Should hold every row", 3001, table.getRowCount());
+        assertEquals("Should know every column", 3, table.getColumnCount());
+        assertTrue("Repeated values should be dictionary encoded", table.isDictionaryEncoded(0));
+        assertEquals("Should store each distinct value once", 3, table.getDictionarySize(0));
+        assertEquals("Empty cells are not dictionary entries", 1, table.getDictionarySize(1));
+        assertEquals("Should decode values", "South", table.get(1, 0));
+        assertEquals("Should keep empty cells", "", table.get(1, 1));
+        assertEquals("Cells after a column's last value should be empty", "", table.get(3000, 0));
+        assertEquals("Cells before a column's first value should be empty", "", table.get(0, 2));
+        assertEquals("Unknown columns should be empty", "", table.get(0, 7));
+
+        String[] row = new String[4];
+        Arrays.fill(row, "x");
+        table.copyRow(3000, row);
+        assertTrue("Should copy a row by column id",
+                Arrays.equals(new String[]{"", "", "late", "x"}, row));
+        assertTrue("Codes should cost about a byte per cell", table.getEstimatedHeapBytes() < 3001 * 4);
+    }
+
+    /**
+     * Tests that codes widen past 255 values and that mostly distinct columns, or dictionaries past
+     * the limit, switch to plain storage without changing any value.
+     */
+    public void testCardinalitySwitch() {
+        ColumnarTable table = new ColumnarTable(1000);
+        int rows = 3 * ColumnarTable.CARDINALITY_SAMPLE;
+        for (int i = 0; i < rows; i++) {
+            table.addRow(new int[]{0, 1, 2}, new String[]{"id-\u00e9" + i, "m" + (i % 400), "c" + (i % 1200)}, 3);
+        }
+
+        assertFalse("A mostly distinct column should switch to plain storage", table.isDictionaryEncoded(0));
+        assertTrue("A column with 400 values should stay encoded", table.isDictionaryEncoded(1));
+        assertEquals("Codes past one byte should keep every value", 400, table.getDictionarySize(1));
+        assertFalse("A dictionary past the limit should switch to plain storage", table.isDictionaryEncoded(2));
+        for (int i = 0; i < rows; i += 97) {
+            assertEquals("Plain values should survive the switch", "id-\u00e9" + i, table.get(i, 0));
+            assertEquals("Encoded values should decode", "m" + (i % 400), table.get(i, 1));
+            assertEquals("Values past the limit should survive the switch", "c" + (i % 1200), table.get(i, 2));
+        }
+
+        table.clear();
+        assertEquals("Clear should remove every row", 0, table.getRowCount());
+        assertEquals("Clear should release the estimate", 0, table.getEstimatedHeapBytes());
+    }
+
+    /**
+     * Tests that RowBuffer reads the same rows whether they stay in the table or are spilled.
+     */
+    public void testRowBufferReadsTableAndRuns() {
+        RowBuffer inMemory = new RowBuffer(1L << 30);
+        RowBuffer spilled = new RowBuffer(4096, new File(TEST_DIR));
+        for (int i = 0; i < 2000; i++) {
+            Map<String, String> row = new LinkedHashMap<>();
+            row.put("id", String.valueOf(i));
+            row.put("status", i % 3 == 0 ? "inactive" : "active");
+            if (i % 10 == 0) {
+                row.put("note", "n" + i);
+            }
+            inMemory.addRow(row);
+            spilled.addRow(row);
+        }
+
+        assertTrue("The small buffer should spill", spilled.getSpillCount() > 0);
+        assertEquals("Columns should match", inMemory.getColumns(), spilled.getColumns());
+        for (int i = 0; i < 2000; i++) {
+            assertTrue("Row " + i + " should match", Arrays.equals(inMemory.get(i), spilled.get(i)));
+        }
+        assertEquals("Sparse cells should read back", "n1990", inMemory.get(1990)[2]);
+        assertEquals("Missing cells should read back empty", "", inMemory.get(1991)[2]);
+        inMemory.close();
+        spilled.close();
+    }
+
+    /**
+     * Tests that a non-positive dictionary limit is rejected.
+     */
+    public void testInvalidDictionarySize() {
+        try {
+            new ColumnarTable(0);
+            fail("A zero dictionary size should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertNotNull("Exception should have a message", e.getMessage());
+        }
+    }
+}
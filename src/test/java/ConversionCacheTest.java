@@ -0,0 +1,216 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.ColumnProjection;
+import org.jsoncsvconverter.Logic.ColumnStatistics;
+import org.jsoncsvconverter.Logic.ConversionCache;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.ParallelJsonConverter;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * Test class for ConversionCache using JUnit 3.8.1.
+ * This test suite validates that unchanged inputs are restored from the cache with the results
+ * of their conversion, that changed content or output options miss, that entries are evicted
+ * least recently used first and survive reopening, and that linked outputs never change the
+ * cached files.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ConversionCacheTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_cache_output";
+
+    /** Directory of the cache, inside the test directory */
+    private static final File CACHE_DIR = new File(TEST_DIR, "cache");
+
+    /**
+     * Constructor for ConversionCacheTest.
+     *
+     * @param testName Name of the test case
+     */
+    public ConversionCacheTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for ConversionCache
+     */
+    public static Test suite() {
+        return new TestSuite(ConversionCacheTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        TestFiles.delete(new File(TEST_DIR));
+    }
+
+    /**
+     * Tests that a second conversion of the same file is restored with the same output and
+     * results, also by a converter with other execution options.
+     */
+    public void testHitRestoresOutputAndResults() throws Exception {
+        File input = TestFiles.write(TEST_DIR, "campus.json", students(200, "North"));
+        ConversionCache cache = new ConversionCache(CACHE_DIR, 1L << 30);
+        String output = TEST_DIR + File.separator + "campus.csv";
+
+        StreamingJsonConverter first = new StreamingJsonConverter(
+                new ConversionOptions().setConversionCache(cache).setStatisticsEnabled(true));
+        long rows = first.convert(input.getPath(), output);
+        byte[] csv = Files.readAllBytes(new File(output).toPath());
+        String stats = TestFiles.read(ColumnStatistics.sidecarPath(output));
+        assertEquals("The first conversion should miss", 1, cache.getMissCount());
+        assertEquals("The conversion should be cached", 1, cache.getEntryCount());
+
+        new File(output).delete();
+        new File(ColumnStatistics.sidecarPath(output)).delete();
+        StreamingJsonConverter second = new StreamingJsonConverter(
+                new ConversionOptions().setConversionCache(cache).setStatisticsEnabled(true).setByteTokenizerEnabled(false));
+        assertEquals("Should report the cached row count", rows, second.convert(input.getPath(), output));
+        assertEquals("The second conversion should hit", 1, cache.getHitCount());
+        assertTrue("The CSV should be restored", Arrays.equals(csv, Files.readAllBytes(new File(output).toPath())));
+        assertEquals("The statistics should be restored", stats, TestFiles.read(ColumnStatistics.sidecarPath(output)));
+        assertTrue("Headers should be restored", Arrays.equals(first.getHeadersArray(), second.getHeadersArray()));
+        assertEquals("Column types should be restored", first.getColumnTypes(), second.getColumnTypes());
+        assertEquals("Row explosion should be restored", first.getMaxRowExplosion(), second.getMaxRowExplosion());
+
+        ParallelJsonConverter parallel = new ParallelJsonConverter(new ConversionOptions()
+                .setConversionCache(cache).setStatisticsEnabled(true).setParallelism(4));
+        assertEquals(rows, parallel.convert(input.getPath(), output));
+        assertEquals("Execution options should not change the key", 2, cache.getHitCount());
+    }
+
+    /**
+     * Tests that a change of content or of an option affecting the output misses.
+     */
+    public void testChangesMiss() throws Exception {
+        ConversionCache cache = new ConversionCache(CACHE_DIR, 1L << 30);
+        String output = TEST_DIR + File.separator + "campus.csv";
+        File input = TestFiles.write(TEST_DIR, "campus.json", students(200, "North"));
+        new StreamingJsonConverter(new ConversionOptions().setConversionCache(cache)).convert(input.getPath(), output);
+
+        TestFiles.write(TEST_DIR, "campus.json", students(200, "Norte"));
+        new StreamingJsonConverter(new ConversionOptions().setConversionCache(cache)).convert(input.getPath(), output);
+        assertEquals("Changed content should miss", 2, cache.getMissCount());
+        assertTrue("The new content should be written", TestFiles.read(output).contains("Norte"));
+
+        new StreamingJsonConverter(new ConversionOptions().setConversionCache(cache)
+                .setProjection(ColumnProjection.parse("students__id"))).convert(input.getPath(), output);
+        assertEquals("A projection should miss", 3, cache.getMissCount());
+        assertEquals("Only the projected column should be written", "\"students__id\"",
+                TestFiles.read(output).split("\n")[0]);
+        assertEquals(0, cache.getHitCount());
+    }
+
+    /**
+     * Tests that the least recently used entries are evicted beyond the size limit, and that the
+     * index survives reopening the cache.
+     */
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        File[] inputs = new File[3];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = TestFiles.write(TEST_DIR, "campus" + i + ".json", students(100, "Campus " + i));
+        }
+        String output = TEST_DIR + File.separator + "campus.csv";
+        ConversionCache probe = new ConversionCache(new File(TEST_DIR, "probe"), 1L << 30);
+        new StreamingJsonConverter(new ConversionOptions().setConversionCache(probe)).convert(inputs[0].getPath(), output);
+        long entrySize = probe.getSizeBytes();
+
+        ConversionCache cache = new ConversionCache(CACHE_DIR, entrySize * 2 + entrySize / 2);
+        ConversionOptions options = new ConversionOptions().setConversionCache(cache);
+        new StreamingJsonConverter(options).convert(inputs[0].getPath(), output);
+        new StreamingJsonConverter(options).convert(inputs[1].getPath(), output);
+        new StreamingJsonConverter(options).convert(inputs[0].getPath(), output);
+        new StreamingJsonConverter(options).convert(inputs[2].getPath(), output);
+        assertEquals("Two entries should fit", 2, cache.getEntryCount());
+        assertTrue("The size should stay within the limit", cache.getSizeBytes() <= entrySize * 2 + entrySize / 2);
+
+        ConversionCache reopened = new ConversionCache(CACHE_DIR, entrySize * 2 + entrySize / 2);
+        assertEquals("The index should survive reopening", 2, reopened.getEntryCount());
+        ConversionOptions reopenedOptions = new ConversionOptions().setConversionCache(reopened);
+        new StreamingJsonConverter(reopenedOptions).convert(inputs[0].getPath(), output);
+        new StreamingJsonConverter(reopenedOptions).convert(inputs[2].getPath(), output);
+        assertEquals("Recently used entries should be kept", 2, reopened.getHitCount());
+        new StreamingJsonConverter(reopenedOptions).convert(inputs[1].getPath(), output);
+        assertEquals("The least recently used entry should be evicted", 1, reopened.getMissCount());
+        assertEquals("Only the index and the cached files should remain", 3, CACHE_DIR.list().length);
+    }
+
+    /**
+     * Tests that linked outputs share the cached file and that converting to a linked output
+     * leaves the cached file unchanged.
+     */
+    public void testLinkedOutputs() throws Exception {
+        ConversionCache cache = new ConversionCache(CACHE_DIR, 1L << 30).setRestoreMode(ConversionCache.RestoreMode.LINK);
+        ConversionOptions options = new ConversionOptions().setConversionCache(cache);
+        File north = TestFiles.write(TEST_DIR, "north.json", students(100, "North"));
+        File south = TestFiles.write(TEST_DIR, "south.json", students(50, "South"));
+        String output = TEST_DIR + File.separator + "campus.csv";
+        String copy = TEST_DIR + File.separator + "copy.csv";
+
+        new StreamingJsonConverter(options).convert(north.getPath(), output);
+        String expected = TestFiles.read(output);
+        new StreamingJsonConverter(options).convert(north.getPath(), copy);
+        assertEquals("The output should be restored", expected, TestFiles.read(copy));
+        assertEquals("The outputs should share the cached file", fileKey(new File(output)), fileKey(new File(copy)));
+
+        new StreamingJsonConverter(options).convert(south.getPath(), output);
+        assertTrue("The new output should be written", TestFiles.read(output).contains("South"));
+        assertEquals("A linked output should not be changed by the next conversion", expected, TestFiles.read(copy));
+        new StreamingJsonConverter(options).convert(north.getPath(), output);
+        assertEquals("The cached file should be unchanged", expected, TestFiles.read(output));
+        assertEquals(2, cache.getHitCount());
+    }
+
+    /**
+     * Tests that opening a cache deletes its own unreferenced files, but leaves other files of
+     * the directory alone.
+     */
+    public void testForeignFilesSurvive() throws Exception {
+        CACHE_DIR.mkdirs();
+        File report = TestFiles.write(CACHE_DIR.getPath(), "report.txt", "keep me");
+        File notes = TestFiles.write(CACHE_DIR.getPath(), "notes.csv", "keep me too");
+        File orphan = TestFiles.write(CACHE_DIR.getPath(), "0123456789abcdef01234567-0123456789abcdef.csv.tmp", "");
+
+        new ConversionCache(CACHE_DIR, 1L << 30);
+        assertTrue("A foreign file should survive", report.exists());
+        assertTrue("A foreign CSV file should survive", notes.exists());
+        assertFalse("A leftover of the cache should be deleted", orphan.exists());
+        assertEquals("keep me", TestFiles.read(report));
+    }
+
+    private static String students(int count, String campus) {
+        StringBuilder json = new StringBuilder("{\"campus\": \"" + campus + "\", \"students\": [");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ", ").append("{\"id\": ").append(i)
+                    .append(", \"courses\": [{\"code\": \"C").append(i % 7).append("\"}, {\"code\": \"D\"}]}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static Object fileKey(File file) throws Exception {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    }
+}
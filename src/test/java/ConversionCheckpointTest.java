@@ -0,0 +1,188 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.ColumnStatistics;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Test class for the checkpoints of StreamingJsonConverter using JUnit 3.8.1.
+ * This test suite validates that a conversion cancelled by interrupting its thread, or cut
+ * short with rows written after its last checkpoint, resumes to the same CSV and statistics as
+ * an uninterrupted conversion, and that checkpoints of a changed input are ignored.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ConversionCheckpointTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_checkpoint_output";
+
+    /**
+     * Constructor for ConversionCheckpointTest.
+     *
+     * @param testName Name of the test case
+     */
+    public ConversionCheckpointTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for the conversion checkpoints
+     */
+    public static Test suite() {
+        return new TestSuite(ConversionCheckpointTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing and clears any interrupt left by a test.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        Thread.interrupted();
+        TestFiles.delete(new File(TEST_DIR));
+    }
+
+    /**
+     * Tests that conversions cancelled after every single record resume to the same output, for
+     * a top-level array, a sequence of values and a root object.
+     */
+    public void testResumeAfterEveryRecord() throws Exception {
+        StringBuilder array = new StringBuilder("[");
+        StringBuilder sequence = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            array.append(i == 0 ? "" : ", ").append(student(i));
+            sequence.append(student(i)).append('\n');
+        }
+        assertResumes("array.json", array.append("]").toString());
+        assertResumes("sequence.json", sequence.toString());
+        assertResumes("root.json", "{\"campus\": \"North\", \"year\": 2024, \"students\": ["
+                + student(1) + ", " + student(2) + ", " + student(3) + "], \"codes\": [1, 2, 3], "
+                + "\"staff\": [{\"name\": \"Ana\"}, {\"name\": \"Luis\", \"room\": 12}]}");
+    }
+
+    /**
+     * Tests that rows written after the last checkpoint, as a crash would leave them, are cut
+     * from the output when resuming.
+     */
+    public void testPartialRowsAreTruncated() throws Exception {
+        File input = TestFiles.write(TEST_DIR, "campus.json", array(500));
+        String expected = convert(input, TEST_DIR + File.separator + "expected.csv", 0);
+
+        String output = TEST_DIR + File.separator + "campus.csv";
+        Thread.currentThread().interrupt();
+        assertCancelled(input, output);
+        try (FileOutputStream partial = new FileOutputStream(output, true)) {
+            partial.write("\"9\",\"partial".getBytes(StandardCharsets.US_ASCII));
+        }
+        assertEquals("The resumed output should match", expected, convert(input, output, 1 << 10));
+        assertFalse("The checkpoint should be deleted", new File(output + ".checkpoint").exists());
+        assertFalse("The saved rows should be deleted", new File(output + ".checkpoint.rows").exists());
+    }
+
+    /**
+     * Tests that the checkpoint of an input changed since is ignored and the conversion starts
+     * over.
+     */
+    public void testChangedInputStartsOver() throws Exception {
+        File input = TestFiles.write(TEST_DIR, "campus.json", array(100));
+        String output = TEST_DIR + File.separator + "campus.csv";
+        Thread.currentThread().interrupt();
+        assertCancelled(input, output);
+        assertTrue("A checkpoint should be saved", new File(output + ".checkpoint").isFile());
+
+        TestFiles.write(TEST_DIR, "campus.json", array(60).replace("North", "Norte"));
+        input.setLastModified(input.lastModified() + 2000);
+        String expected = convert(input, TEST_DIR + File.separator + "expected.csv", 0);
+        assertEquals("The changed input should be converted from the start", expected, convert(input, output, 1 << 10));
+    }
+
+    /**
+     * Tests that a negative checkpoint interval is rejected.
+     */
+    public void testNegativeIntervalRejected() {
+        try {
+            new ConversionOptions().setCheckpointIntervalBytes(-1);
+            fail("Should throw IllegalArgumentException for a negative interval");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Exception message should mention the interval", e.getMessage().contains("interval"));
+        }
+    }
+
+    /**
+     * Converts a file with checkpoints after every record, cancelling the conversion after the
+     * first record each time, until it completes, and compares the output and statistics with
+     * a conversion without checkpoints.
+     */
+    private void assertResumes(String name, String content) throws Exception {
+        File input = TestFiles.write(TEST_DIR, name, content);
+        String expectedPath = TEST_DIR + File.separator + "expected_" + name + ".csv";
+        String expected = convert(input, expectedPath, 0);
+        String output = TEST_DIR + File.separator + name + ".csv";
+
+        int attempts = 0;
+        while (true) {
+            attempts++;
+            Thread.currentThread().interrupt();
+            try {
+                convert(input, output, 1);
+                break;
+            } catch (RuntimeException e) {
+                assertTrue("The conversion should be cancelled", e.getMessage().startsWith("Conversion cancelled"));
+                assertTrue("Too many attempts for " + name, attempts < 1000);
+            }
+        }
+        assertTrue("The conversion should resume several times", attempts > 3);
+        assertEquals("The resumed output should match for " + name, expected, TestFiles.read(output));
+        assertEquals("The resumed statistics should match for " + name,
+                TestFiles.read(ColumnStatistics.sidecarPath(expectedPath)),
+                TestFiles.read(ColumnStatistics.sidecarPath(output)));
+    }
+
+    private void assertCancelled(File input, String output) throws Exception {
+        try {
+            convert(input, output, 1 << 10);
+            fail("The conversion should be cancelled");
+        } catch (RuntimeException e) {
+            assertTrue("The conversion should be cancelled", e.getMessage().startsWith("Conversion cancelled"));
+        }
+        assertTrue("The interrupt should be kept", Thread.interrupted());
+    }
+
+    private static String convert(File input, String output, long interval) throws Exception {
+        new StreamingJsonConverter(new ConversionOptions().setCheckpointIntervalBytes(interval)
+                .setStatisticsEnabled(true)).convert(input.getPath(), output);
+        return TestFiles.read(output);
+    }
+
+    private static String array(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ", ").append(student(i));
+        }
+        return json.append("]").toString();
+    }
+
+    private static String student(int id) {
+        return "{\"id\": " + id + ", \"campus\": \"North\", \"courses\": [{\"code\": \"C" + (id % 7)
+                + "\"}, {\"code\": \"D\", \"credits\": " + (id % 4) + "}]" + (id % 5 == 0 ? ", \"honors\": true" : "") + "}";
+    }
+}
@@ -0,0 +1,95 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.JSONParser;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Test class for ConversionEvents using JUnit 3.8.1.
+ * This test suite records a conversion with Java Flight Recorder and validates that the
+ * stage events carry the file name, row and column counts and the largest row explosion.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ConversionEventsTest extends TestCase {
+
+    /** JSON whose first project expands into two rows */
+    private static final String JSON =
+            "{\"id\": 1, \"projects\": [{\"title\": \"A\", \"tags\": [\"x\", \"y\"]}, {\"title\": \"B\"}]}";
+
+    /**
+     * Constructor for ConversionEventsTest.
+     *
+     * @param testName Name of the test case
+     */
+    public ConversionEventsTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for ConversionEvents
+     */
+    public static Test suite() {
+        return new TestSuite(ConversionEventsTest.class);
+    }
+
+    /**
+     * Tests that parse and flatten events are committed with their payload while recording.
+     */
+    public void testFlattenEventIsRecorded() throws Exception {
+        File dump = File.createTempFile("conversion", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable("org.jsoncsvconverter.Parse");
+                recording.enable("org.jsoncsvconverter.Flatten");
+                recording.start();
+                new JSONParser(JSON, "projects.json");
+                recording.stop();
+                recording.dump(dump.toPath());
+            }
+
+            Path path = dump.toPath();
+            List<RecordedEvent> events = RecordingFile.readAllEvents(path);
+            RecordedEvent flatten = null;
+            boolean sawParse = false;
+            for (RecordedEvent event : events) {
+                String name = event.getEventType().getName();
+                if ("org.jsoncsvconverter.Flatten".equals(name)) {
+                    flatten = event;
+                } else if ("org.jsoncsvconverter.Parse".equals(name)) {
+                    sawParse = true;
+                    assertEquals("Parse event should report the input size", JSON.length(), event.getLong("bytes"));
+                }
+            }
+
+            assertTrue("A parse event should be recorded", sawParse);
+            assertNotNull("A flatten event should be recorded", flatten);
+            assertEquals("File name should be attached", "projects.json", flatten.getString("fileName"));
+            assertEquals("Row count should be reported", 3, flatten.getLong("rowCount"));
+            assertEquals("Column count should be reported", 3, flatten.getLong("columnCount"));
+            assertEquals("Largest explosion should be the first project", 2, flatten.getLong("maxRowExplosion"));
+        } finally {
+            dump.delete();
+        }
+    }
+
+    /**
+     * Tests that parsing still works when no recording is active.
+     */
+    public void testConversionWithoutRecording() {
+        JSONParser parser = new JSONParser(JSON);
+        assertEquals("Largest explosion should be tracked regardless of recording", 2, parser.getMaxRowExplosion());
+    }
+}
@@ -0,0 +1,147 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.CSVWriterFile;
+import org.jsoncsvconverter.Logic.ConversionMetrics;
+import org.jsoncsvconverter.Logic.JSONParser;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Test class for ConversionMetrics using JUnit 3.8.1.
+ * This test suite validates that every conversion stage records its timings and counts,
+ * that failures are counted, that run summaries are valid JSON, and that the stages are
+ * exported through JMX.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ConversionMetricsTest extends TestCase {
+
+    /** Test directory for temporary files during testing */
+    private static final String TEST_DIR = "test_metrics_output";
+
+    /** JSON with one object array producing two rows */
+    private static final String JSON =
+            "{\"id\": 1, \"projects\": [{\"title\": \"A\"}, {\"title\": \"B\"}]}";
+
+    /**
+     * Constructor for ConversionMetricsTest.
+     *
+     * @param testName Name of the test case
+     */
+    public ConversionMetricsTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for ConversionMetrics
+     */
+    public static Test suite() {
+        return new TestSuite(ConversionMetricsTest.class);
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        File testDir = new File(TEST_DIR);
+        File[] files = testDir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        testDir.delete();
+    }
+
+    /**
+     * Tests that parsing, flattening and writing are all recorded with their counts.
+     */
+    public void testStagesAreRecorded() {
+        ConversionMetrics metrics = ConversionMetrics.getInstance();
+        ConversionMetrics.Snapshot before = metrics.snapshot();
+
+        JSONParser parser = new JSONParser(JSON);
+        new CSVWriterFile(parser.getHeadersArray()).createCSVWithData(TEST_DIR + File.separator + "m.csv",
+                parser.getRows());
+
+        ConversionMetrics.Snapshot run = metrics.snapshot().since(before);
+        assertEquals("Parse should run once", 1, run.getInvocations(ConversionMetrics.Stage.PARSE));
+        assertEquals("Parse bytes should be the input length", JSON.length(), run.getBytes(ConversionMetrics.Stage.PARSE));
+        assertEquals("Flatten should report two rows", 2, run.getRows(ConversionMetrics.Stage.FLATTEN));
+        assertEquals("Flatten should report two columns", 2, run.getColumns(ConversionMetrics.Stage.FLATTEN));
+        assertEquals("Write should report two rows", 2, run.getRows(ConversionMetrics.Stage.WRITE));
+        assertEquals("Write bytes should match the file",
+                new File(TEST_DIR + File.separator + "m.csv").length(), run.getBytes(ConversionMetrics.Stage.WRITE));
+        assertTrue("Write time should be recorded", run.getNanos(ConversionMetrics.Stage.WRITE) > 0);
+    }
+
+    /**
+     * Tests that parse bytes count the input encoded in UTF-8, not its characters.
+     */
+    public void testParseBytesAreEncodedLength() {
+        String json = "{\"name\": \"Jos\u00e9 \u6771\u4eac \ud83c\udf93\"}";
+        ConversionMetrics.Snapshot before = ConversionMetrics.getInstance().snapshot();
+        new JSONParser(json);
+        ConversionMetrics.Snapshot run = ConversionMetrics.getInstance().snapshot().since(before);
+
+        assertEquals("Parse bytes should be the UTF-8 length", json.getBytes(StandardCharsets.UTF_8).length,
+                run.getBytes(ConversionMetrics.Stage.PARSE));
+    }
+
+    /**
+     * Tests that a timer closed without completion counts as a failure.
+     */
+    public void testIncompleteTimerCountsAsFailure() {
+        ConversionMetrics metrics = ConversionMetrics.getInstance();
+        long failures = metrics.getStage(ConversionMetrics.Stage.READ).getFailures();
+
+        try (ConversionMetrics.StageTimer timer = metrics.start(ConversionMetrics.Stage.READ)) {
+            assertNotNull("Timer should be created", timer);
+        }
+
+        assertEquals("Failure should be recorded", failures + 1,
+                metrics.getStage(ConversionMetrics.Stage.READ).getFailures());
+    }
+
+    /**
+     * Tests that the run summary is a JSON object with one entry per stage.
+     */
+    public void testSummaryIsMachineReadable() {
+        ConversionMetrics.Snapshot before = ConversionMetrics.getInstance().snapshot();
+        new JSONParser(JSON);
+        String summary = ConversionMetrics.getInstance().snapshot().since(before).toJson();
+
+        JsonObject json = JsonParser.parseString(summary).getAsJsonObject();
+        assertTrue("Summary should contain the read stage", json.has("read"));
+        assertTrue("Summary should contain the write stage", json.has("write"));
+        assertEquals("Summary should report the flattened rows", 2,
+                json.getAsJsonObject("flatten").get("rows").getAsInt());
+    }
+
+    /**
+     * Tests that each stage is registered as a JMX MBean.
+     */
+    public void testStagesAreExportedThroughJmx() throws Exception {
+        ConversionMetrics.getInstance();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.jsoncsvconverter:type=ConversionMetrics,stage=Flatten");
+
+        assertTrue("Flatten stage should be registered", server.isRegistered(name));
+        Object invocations = server.getAttribute(name, "Invocations");
+        assertTrue("Invocations should be readable as a long", invocations instanceof Long);
+    }
+}
@@ -0,0 +1,243 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.ConversionServer;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Test class for the local HTTP conversion service using JUnit 3.8.1.
+ * This test suite validates that posted JSON is answered with the CSV of a file conversion in a
+ * chunked response, also gzip-compressed, that malformed input and wrong methods get error
+ * statuses, that requests beyond the memory budget are turned away, and that the metrics
+ * endpoint reports the requests served.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class ConversionServerTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_server_output";
+
+    /** Records converted by the tests */
+    private static final String JSON = "[{\"id\": 1, \"name\": \"Ana\", \"courses\": [\"Math\", \"Art\"]},"
+            + " {\"id\": 2, \"name\": \"Luis\", \"address\": {\"city\": \"Lima\"}}]";
+
+    /** Row buffer budget of each conversion in the tests */
+    private static final long ROW_BUFFER_BUDGET = 1 << 20;
+
+    private ConversionServer server;
+
+    /**
+     * Constructor for ConversionServerTest.
+     *
+     * @param testName Name of the test case
+     */
+    public ConversionServerTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for the conversion server
+     */
+    public static Test suite() {
+        return new TestSuite(ConversionServerTest.class);
+    }
+
+    /**
+     * Creates the test directory and starts a server with room for one conversion.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+        server = new ConversionServer(new ConversionOptions().setRowBufferBudgetBytes(ROW_BUFFER_BUDGET))
+                .setPort(0).setMemoryBudgetBytes(ROW_BUFFER_BUDGET).setQueueTimeoutMillis(0);
+        server.start();
+    }
+
+    /**
+     * Stops the server and removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        server.close();
+        TestFiles.delete(new File(TEST_DIR));
+    }
+
+    /**
+     * Tests that posted JSON, plain or gzip-compressed, is answered with the CSV of a file
+     * conversion in a chunked response.
+     */
+    public void testConvertMatchesFileConversion() throws Exception {
+        File input = new File(TEST_DIR, "students.json");
+        Files.write(input.toPath(), JSON.getBytes(StandardCharsets.UTF_8));
+        String output = TEST_DIR + File.separator + "students.csv";
+        new StreamingJsonConverter(new ConversionOptions()).convert(input.getPath(), output);
+        String expected = new String(Files.readAllBytes(new File(output).toPath()), StandardCharsets.UTF_8);
+
+        HttpURLConnection connection = post(JSON.getBytes(StandardCharsets.UTF_8), null);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("chunked", connection.getHeaderField("Transfer-Encoding"));
+        assertTrue(connection.getContentType().startsWith("text/csv"));
+        assertEquals(expected, read(connection.getInputStream()));
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(JSON.getBytes(StandardCharsets.UTF_8));
+        }
+        connection = post(compressed.toByteArray(), "gzip");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(expected, read(connection.getInputStream()));
+    }
+
+    /**
+     * Tests that malformed JSON gets status 400 with the error message, and that other methods
+     * get status 405.
+     */
+    public void testErrorStatuses() throws Exception {
+        HttpURLConnection connection = post("[{\"id\": ".getBytes(StandardCharsets.UTF_8), null);
+        assertEquals(400, connection.getResponseCode());
+        assertFalse(read(connection.getErrorStream()).isEmpty());
+
+        connection = open(ConversionServer.CONVERT_PATH);
+        assertEquals(405, connection.getResponseCode());
+        assertEquals("POST", connection.getHeaderField("Allow"));
+    }
+
+    /**
+     * Tests that a request arriving while the memory budget is held by a running conversion is
+     * answered with status 503, and that the running conversion still completes.
+     */
+    public void testCapacityLimitedByMemoryBudget() throws Exception {
+        assertEquals(1, server.getConcurrencyLimit());
+        HttpURLConnection running = (HttpURLConnection) url(ConversionServer.CONVERT_PATH).openConnection();
+        running.setRequestMethod("POST");
+        running.setDoOutput(true);
+        running.setChunkedStreamingMode(0);
+        OutputStream body = running.getOutputStream();
+        body.write("[{\"id\": 1},".getBytes(StandardCharsets.UTF_8));
+        body.flush();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (metrics().getAsJsonObject("server").get("active").getAsInt() == 0) {
+            assertTrue("The first conversion should start", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        HttpURLConnection turnedAway = post(JSON.getBytes(StandardCharsets.UTF_8), null);
+        assertEquals(503, turnedAway.getResponseCode());
+        assertEquals("1", turnedAway.getHeaderField("Retry-After"));
+
+        body.write(" {\"id\": 2}]".getBytes(StandardCharsets.UTF_8));
+        body.close();
+        assertEquals(200, running.getResponseCode());
+        assertEquals("\"id\"\n\"1\"\n\"2\"\n", read(running.getInputStream()));
+    }
+
+    /**
+     * Tests that the CSV is written and declared as UTF-8 whatever the platform charset.
+     */
+    public void testResponseIsUtf8() throws Exception {
+        String json = "[{\"name\": \"Jos\u00e9\", \"city\": \"\u6771\u4eac\"}]";
+        HttpURLConnection connection = post(json.getBytes(StandardCharsets.UTF_8), null);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("text/csv; charset=UTF-8", connection.getContentType());
+        assertEquals("\"name\",\"city\"\n\"Jos\u00e9\",\"\u6771\u4eac\"\n", read(connection.getInputStream()));
+    }
+
+    /**
+     * Tests that deduplication and sorting each count one more row buffer budget against the
+     * memory budget.
+     */
+    public void testConcurrencyLimitCountsDeduplicationAndSorting() {
+        ConversionOptions options = new ConversionOptions().setRowBufferBudgetBytes(ROW_BUFFER_BUDGET)
+                .setDeduplicationEnabled(true).setSortColumns(Arrays.asList("id"));
+        try (ConversionServer arranging = new ConversionServer(options).setPort(0)
+                .setMemoryBudgetBytes(6 * ROW_BUFFER_BUDGET)) {
+            arranging.start();
+            assertEquals(2, arranging.getConcurrencyLimit());
+        }
+        try (ConversionServer deduplicating = new ConversionServer(new ConversionOptions()
+                .setRowBufferBudgetBytes(ROW_BUFFER_BUDGET).setDeduplicationEnabled(true))
+                .setPort(0).setMemoryBudgetBytes(6 * ROW_BUFFER_BUDGET)) {
+            deduplicating.start();
+            assertEquals(3, deduplicating.getConcurrencyLimit());
+        }
+    }
+
+    /**
+     * Tests that the metrics endpoint counts the requests served and includes the stage
+     * metrics of the conversions.
+     */
+    public void testMetricsEndpoint() throws Exception {
+        HttpURLConnection converted = post(JSON.getBytes(StandardCharsets.UTF_8), null);
+        assertEquals(200, converted.getResponseCode());
+        read(converted.getInputStream());
+        assertEquals(400, post("{".getBytes(StandardCharsets.UTF_8), null).getResponseCode());
+
+        JsonObject metrics = metrics();
+        JsonObject counters = metrics.getAsJsonObject("server");
+        assertEquals(2, counters.get("requests").getAsLong());
+        assertEquals(1, counters.get("completed").getAsLong());
+        assertEquals(1, counters.get("failed").getAsLong());
+        assertEquals(0, counters.get("active").getAsInt());
+        assertEquals(3, counters.get("rowsOut").getAsLong());
+        assertTrue(counters.get("bytesOut").getAsLong() > 0);
+        assertTrue(metrics.getAsJsonObject("stages").has("write"));
+    }
+
+    private JsonObject metrics() throws Exception {
+        HttpURLConnection connection = open(ConversionServer.METRICS_PATH);
+        assertEquals(200, connection.getResponseCode());
+        return JsonParser.parseString(read(connection.getInputStream())).getAsJsonObject();
+    }
+
+    private HttpURLConnection post(byte[] body, String contentEncoding) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) url(ConversionServer.CONVERT_PATH).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        if (contentEncoding != null) {
+            connection.setRequestProperty("Content-Encoding", contentEncoding);
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        return connection;
+    }
+
+    private HttpURLConnection open(String path) throws Exception {
+        return (HttpURLConnection) url(path).openConnection();
+    }
+
+    private URL url(String path) throws Exception {
+        return new URL("http://localhost:" + server.getPort() + path);
+    }
+
+    private static String read(InputStream in) throws Exception {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int count = stream.read(buffer); count >= 0; count = stream.read(buffer)) {
+                bytes.write(buffer, 0, count);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
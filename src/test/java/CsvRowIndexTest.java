@@ -0,0 +1,221 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.CSVWriterFile;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.CsvRowIndex;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Test class for the row-offset index written next to CSV files using JUnit 3.8.1.
+ * This test suite validates that rows read by seeking match the file, also across threads and
+ * cells holding quotes and line breaks, that key ranges skip to the matching blocks of a sorted
+ * conversion, that an index built from the file matches the written one, and that an index is
+ * refused once its file has changed.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class CsvRowIndexTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_row_index_output";
+
+    /** Headers of the written test files */
+    private static final String[] HEADERS = {"id", "name", "note"};
+
+    /**
+     * Constructor for CsvRowIndexTest.
+     *
+     * @param testName Name of the test case
+     */
+    public CsvRowIndexTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for the row index
+     */
+    public static Test suite() {
+        return new TestSuite(CsvRowIndexTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        TestFiles.delete(new File(TEST_DIR));
+    }
+
+    /**
+     * Tests that row ranges read by seeking, with one thread or several, are the rows written,
+     * including cells with quotes, commas and line breaks, and that ranges beyond the file fail.
+     */
+    public void testReadRowsMatchWrittenRows() throws Exception {
+        String output = TEST_DIR + File.separator + "students.csv";
+        List<String[]> rows = rows(95);
+        new CSVWriterFile(HEADERS).setRowIndex(10, null).createCSVWithData(output, rows);
+
+        CsvRowIndex index = CsvRowIndex.load(output);
+        assertTrue(new File(TEST_DIR, "students.idx").exists());
+        assertEquals(95, index.getRowCount());
+        assertEquals(10, index.getInterval());
+        assertRows(rows.subList(37, 57), index.readRows(37, 20));
+        assertRows(rows, index.readRows(0, 95, 4));
+        assertRows(rows.subList(94, 95), index.readRows(94, 1, 3));
+        try {
+            index.readRows(90, 6);
+            fail("Reading past the last row should fail");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that a key range over a conversion sorted by the key reads the matching rows,
+     * comparing numeric keys by value.
+     */
+    public void testKeyRangeOnSortedConversion() throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            ids.add(i);
+        }
+        Collections.shuffle(ids, new Random(7));
+        StringBuilder json = new StringBuilder("[");
+        for (int id : ids) {
+            json.append(json.length() > 1 ? "," : "").append("{\"id\": ").append(id).append(", \"name\": \"s")
+                    .append(id).append("\"}");
+        }
+        File input = TestFiles.write(TEST_DIR, "students.json", json.append("]").toString());
+        String output = TEST_DIR + File.separator + "students.csv";
+        new StreamingJsonConverter(new ConversionOptions().setSortColumns(Arrays.asList("id"))
+                .setRowIndexInterval(8).setRowIndexKeyColumn("id")).convert(input.getPath(), output);
+
+        CsvRowIndex index = CsvRowIndex.load(output);
+        assertEquals("id", index.getKeyColumn());
+        List<String[]> range = index.readKeyRange("20", "35", 3);
+        assertEquals(16, range.size());
+        for (int i = 0; i < range.size(); i++) {
+            assertEquals(String.valueOf(20 + i), range.get(i)[0]);
+        }
+        assertTrue(index.readKeyRange("101", "200", 2).isEmpty());
+    }
+
+    /**
+     * Tests that a key range returns every row of the matching records, including the rows of a
+     * nested array that have no key and those that run into the next blocks.
+     */
+    public void testKeyRangeKeepsContinuationRows() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int id = 1; id <= 20; id++) {
+            json.append(id == 1 ? "" : ",").append("{\"id\": ").append(id).append(", \"courses\": [");
+            for (int c = 0; c < id % 4 + 1; c++) {
+                json.append(c == 0 ? "" : ",").append("{\"code\": \"C").append(id).append('-').append(c).append("\"}");
+            }
+            json.append("]}");
+        }
+        File input = TestFiles.write(TEST_DIR, "students.json", json.append("]").toString());
+        String output = TEST_DIR + File.separator + "students.csv";
+        new StreamingJsonConverter(new ConversionOptions().setSortColumns(Arrays.asList("id"))
+                .setRowIndexInterval(3).setRowIndexKeyColumn("id")).convert(input.getPath(), output);
+
+        CsvRowIndex index = CsvRowIndex.load(output);
+        for (int parallelism = 1; parallelism <= 4; parallelism += 3) {
+            List<String[]> range = index.readKeyRange("6", "11", parallelism);
+            List<String> codes = new ArrayList<>();
+            for (String[] row : range) {
+                codes.add(row[row.length - 1]);
+            }
+            List<String> expected = new ArrayList<>();
+            for (int id = 6; id <= 11; id++) {
+                for (int c = 0; c < id % 4 + 1; c++) {
+                    expected.add("C" + id + "-" + c);
+                }
+            }
+            assertEquals(expected, codes);
+            assertEquals("6", range.get(0)[0]);
+        }
+    }
+
+    /**
+     * Tests that an index built by reading an existing file finds the same offsets as the one
+     * written with it.
+     */
+    public void testBuiltIndexMatchesWrittenIndex() throws Exception {
+        String output = TEST_DIR + File.separator + "students.csv";
+        List<String[]> rows = rows(50);
+        new CSVWriterFile(HEADERS).setRowIndex(7, "name").createCSVWithData(output, rows);
+        CsvRowIndex written = CsvRowIndex.load(output);
+
+        CsvRowIndex built = CsvRowIndex.build(output, 7, "name");
+        assertEquals(written.getRowCount(), built.getRowCount());
+        for (long row = 0; row < rows.size(); row++) {
+            assertEquals(written.getBlockOffset(row), built.getBlockOffset(row));
+        }
+        assertRows(written.readKeyRange("name 10", "name 19", 2), built.readKeyRange("name 10", "name 19", 2));
+        assertRows(rows.subList(12, 40), CsvRowIndex.load(output).readRows(12, 28, 2));
+    }
+
+    /**
+     * Tests that an index is refused once its file has changed and that negative intervals
+     * are rejected.
+     */
+    public void testStaleIndexRejected() throws Exception {
+        String output = TEST_DIR + File.separator + "students.csv";
+        new CSVWriterFile(HEADERS).setRowIndex(5, null).createCSVWithData(output, rows(12));
+        try (FileOutputStream out = new FileOutputStream(output, true)) {
+            out.write("\"99\",\"late\",\"\"\n".getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            CsvRowIndex.load(output);
+            fail("An index of a changed file should be refused");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("row index"));
+        }
+        try {
+            new ConversionOptions().setRowIndexInterval(-1);
+            fail("A negative interval should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static List<String[]> rows(int count) {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String note = i % 3 == 0 ? "line one\nline \"two\", end" : "";
+            rows.add(new String[]{String.valueOf(i), "name " + i, note});
+        }
+        return rows;
+    }
+
+    private static void assertRows(List<String[]> expected, List<String[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue("Row " + i, Arrays.equals(expected.get(i), actual.get(i)));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.CsvToJsonConverter;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Test class for CsvToJsonConverter using JUnit 3.8.1.
+ * This test suite validates that flattened CSV files convert back to the JSON they came from,
+ * regrouping continuation rows into arrays, for declared and inferred arrays, joined primitive
+ * arrays and untyped values, and that malformed rows are reported.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class CsvToJsonConverterTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_csv_to_json_output";
+
+    /**
+     * Constructor for CsvToJsonConverterTest.
+     *
+     * @param testName Name of the test case
+     */
+    public CsvToJsonConverterTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for CsvToJsonConverter
+     */
+    public static Test suite() {
+        return new TestSuite(CsvToJsonConverterTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        TestFiles.delete(new File(TEST_DIR));
+    }
+
+    /**
+     * Tests that records with nested objects, object arrays and primitive arrays survive a round
+     * trip through CSV when their arrays are declared.
+     */
+    public void testRoundTrip() throws Exception {
+        String json = "[{\"id\": 1, \"name\": \"Ana\", \"address\": {\"city\": \"Lima\", \"zip\": \"01\"},"
+                + " \"courses\": [{\"code\": \"C1\", \"credits\": 4, \"days\": [\"mon\", \"wed\"]}, {\"code\": \"C2\", \"active\": true}],"
+                + " \"skills\": [\"java\", \"sql\", \"git\"]},"
+                + " {\"id\": 2, \"name\": \"Luis\", \"courses\": [{\"code\": \"C3\", \"days\": [\"fri\"], \"credits\": 2.5}],"
+                + " \"skills\": [\"c\"]},"
+                + " {\"id\": 3, \"name\": \"Eva\"}]";
+        String csv = toCsv(json, new ConversionOptions());
+        String output = TEST_DIR + File.separator + "students.json";
+
+        CsvToJsonConverter converter = new CsvToJsonConverter(new ConversionOptions())
+                .setArrayPaths(Arrays.asList("courses", "courses__days", "skills"));
+        assertEquals(3, converter.convert(csv, output));
+        assertEquals(3, converter.getRecordCount());
+        assertEquals(JsonParser.parseString(json), JsonParser.parseString(TestFiles.read(output)));
+    }
+
+    /**
+     * Tests that arrays are recognised from continuation rows without declarations, and that
+     * single elements and single values are then taken for objects and scalars.
+     */
+    public void testArraysInferredFromContinuationRows() throws Exception {
+        String csv = "\"campus\",\"students__id\",\"students__grades__term\"\n"
+                + "\"North\",\"1\",\"T1\"\n"
+                + "\"\",\"\",\"T2\"\n"
+                + "\"\",\"2\",\"T1\"\n"
+                + "\"South\",\"3\",\"\"\n";
+        JsonArray records = convert(new CsvToJsonConverter(new ConversionOptions()), csv);
+        assertEquals(JsonParser.parseString("[{\"campus\": \"North\", \"students\": ["
+                + "{\"id\": 1, \"grades\": [{\"term\": \"T1\"}, {\"term\": \"T2\"}]},"
+                + " {\"id\": 2, \"grades\": {\"term\": \"T1\"}}]},"
+                + " {\"campus\": \"South\", \"students\": {\"id\": 3}}]"), records);
+
+        JsonArray untyped = convert(new CsvToJsonConverter(new ConversionOptions()).setTypedValues(false), csv);
+        assertEquals("1", untyped.get(0).getAsJsonObject().getAsJsonArray("students").get(0)
+                .getAsJsonObject().get("id").getAsJsonPrimitive().getAsString());
+        assertTrue(untyped.get(0).getAsJsonObject().getAsJsonArray("students").get(0)
+                .getAsJsonObject().get("id").getAsJsonPrimitive().isString());
+    }
+
+    /**
+     * Tests that primitive arrays joined with a delimiter are split back, escapes included.
+     */
+    public void testJoinedPrimitiveArraysSplit() throws Exception {
+        String json = "[{\"id\": 1, \"tags\": [\"a;b\", \"c\\\\d\", \"e\"], \"courses\": [{\"code\": \"C1\", \"days\": [\"mon\"]}]},"
+                + " {\"id\": 2, \"tags\": [\"x\"], \"courses\": [{\"code\": \"C2\", \"days\": [\"tue\", \"thu\"]}]}]";
+        ConversionOptions options = new ConversionOptions().setPrimitiveArrayDelimiter(";");
+        String csv = toCsv(json, options);
+        String output = TEST_DIR + File.separator + "joined.json";
+        new CsvToJsonConverter(options).setArrayPaths(Arrays.asList("tags", "courses", "courses__days"))
+                .convert(csv, output);
+        assertEquals(JsonParser.parseString(json), JsonParser.parseString(TestFiles.read(output)));
+    }
+
+    /**
+     * Tests that large files convert record by record and that malformed input is reported.
+     */
+    public void testLargeFileAndErrors() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            json.append(i == 0 ? "" : ", ").append("{\"id\": ").append(i)
+                    .append(", \"courses\": [{\"code\": \"A\"}, {\"code\": \"B\"}]}");
+        }
+        String csv = toCsv(json.append("]").toString(), new ConversionOptions());
+        String output = TEST_DIR + File.separator + "large.json";
+        CsvToJsonConverter converter = new CsvToJsonConverter(new ConversionOptions());
+        assertEquals(5000, converter.convert(csv, output));
+        assertEquals(10000, converter.getRowCount());
+        assertEquals(JsonParser.parseString(json.toString()), JsonParser.parseString(TestFiles.read(output)));
+
+        try {
+            convert(converter, "\"id\",\"name\"\n\"1\",\"Ana\",\"extra\"\n");
+            fail("Should throw RuntimeException for a row wider than the header");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Error while converting CSV file"));
+        }
+        try {
+            convert(converter, "\"id\",\"id\"\n\"1\",\"2\"\n");
+            fail("Should throw RuntimeException for a duplicate column");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause().getMessage().contains("Duplicate column"));
+        }
+        assertEquals(new JsonArray(), convert(converter, ""));
+    }
+
+    private static String toCsv(String json, ConversionOptions options) throws Exception {
+        File input = new File(TEST_DIR, "input" + System.nanoTime() + ".json");
+        Files.write(input.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        String csv = input.getPath().replace(".json", ".csv");
+        new StreamingJsonConverter(options).convert(input.getPath(), csv);
+        return csv;
+    }
+
+    private static JsonArray convert(CsvToJsonConverter converter, String csv) {
+        StringWriter output = new StringWriter();
+        converter.convert(new StringReader(csv), "test.csv", output);
+        return JsonParser.parseString(output.toString()).getAsJsonArray();
+    }
+}
@@ -0,0 +1,213 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.ParallelJsonConverter;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test class for dropping duplicate output rows using JUnit 3.8.1.
+ * This test suite validates that whole records and key columns are deduplicated keeping the
+ * first occurrence with its exploded rows, that the fingerprints partition to disk beyond the budget without changing the
+ * output, and that the parallel converter and sorting agree with it.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class DeduplicationTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_deduplication_output";
+
+    /**
+     * Constructor for DeduplicationTest.
+     *
+     * @param testName Name of the test case
+     */
+    public DeduplicationTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for deduplication
+     */
+    public static Test suite() {
+        return new TestSuite(DeduplicationTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        TestFiles.delete(new File(TEST_DIR));
+    }
+
+    /**
+     * Tests that repeated rows are dropped, keeping the first, and that rows differing only in
+     * a missing or empty cell count as duplicates.
+     */
+    public void testWholeRowDuplicatesDropped() throws Exception {
+        File input = TestFiles.write(TEST_DIR, "students.json",
+                "[{\"id\": 1, \"name\": \"Ana\"}, {\"id\": 2, \"name\": \"Luis\"},"
+                + " {\"id\": 1, \"name\": \"Ana\"}, {\"id\": 2, \"name\": \"Luis\", \"note\": \"\"},"
+                + " {\"id\": 3, \"name\": \"Ana\"}]");
+        String output = TEST_DIR + File.separator + "students.csv";
+        StreamingJsonConverter converter = new StreamingJsonConverter(
+                new ConversionOptions().setDeduplicationEnabled(true));
+        assertEquals(3, converter.convert(input.getPath(), output));
+        assertEquals(3, converter.getRowCount());
+        List<String> lines = lines(output);
+        assertEquals(Arrays.asList("\"1\",\"Ana\",\"\"", "\"2\",\"Luis\",\"\"", "\"3\",\"Ana\",\"\""),
+                lines.subList(1, lines.size()));
+    }
+
+    /**
+     * Tests that only the key columns decide duplicates, and that exploded rows without a key
+     * are kept with the record they continue.
+     */
+    public void testKeyColumnDuplicatesDropped() throws Exception {
+        File input = TestFiles.write(TEST_DIR, "courses.json",
+                "[{\"id\": 1, \"course\": \"Math\"}, {\"id\": 1, \"course\": \"Art\"},"
+                + " {\"id\": 2, \"courses\": [\"Art\", \"Math\", \"Math\"]}]");
+        String output = TEST_DIR + File.separator + "courses.csv";
+        StreamingJsonConverter byId = new StreamingJsonConverter(
+                new ConversionOptions().setDeduplicationColumns(Arrays.asList("id")));
+        assertEquals("Exploded rows without an id should follow their record", 4,
+                byId.convert(input.getPath(), output));
+
+        StreamingJsonConverter whole = new StreamingJsonConverter(
+                new ConversionOptions().setDeduplicationEnabled(true));
+        assertEquals("Repeated exploded rows of a distinct record should be kept", 5,
+                whole.convert(input.getPath(), output));
+
+        try {
+            new ConversionOptions().setDeduplicationColumns(Arrays.asList("id", ""));
+            fail("Should throw IllegalArgumentException for an empty column name");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("empty"));
+        }
+    }
+
+    /**
+     * Tests that records exploded by nested arrays are kept or dropped with all of their rows,
+     * by key columns and by whole records, in both converters.
+     */
+    public void testRecordGroupsDeduplicated() throws Exception {
+        File input = TestFiles.write(TEST_DIR, "campus.json",
+                "{\"campus\": \"North\", \"students\": ["
+                + "{\"id\": 1, \"courses\": [{\"code\": \"A\"}, {\"code\": \"B\"}]},"
+                + " {\"id\": 2, \"courses\": [{\"code\": \"C\"}, {\"code\": \"D\"}, {\"code\": \"E\"}],"
+                + " \"skills\": [\"x\", \"y\"]},"
+                + " {\"id\": 1, \"courses\": [{\"code\": \"A\"}, {\"code\": \"B\"}]}]}");
+        List<String> expected = Arrays.asList("\"North\",\"1\",\"A\",\"\"", "\"\",\"\",\"B\",\"\"",
+                "\"\",\"2\",\"C\",\"\"", "\"\",\"\",\"D\",\"\"", "\"\",\"\",\"E\",\"\"",
+                "\"\",\"\",\"\",\"x\"", "\"\",\"\",\"\",\"y\"");
+        String output = TEST_DIR + File.separator + "campus.csv";
+        new StreamingJsonConverter(new ConversionOptions().setDeduplicationColumns(Arrays.asList("students__id")))
+                .convert(input.getPath(), output);
+        List<String> lines = lines(output);
+        assertEquals(expected, lines.subList(1, lines.size()));
+        new ParallelJsonConverter(new ConversionOptions().setDeduplicationColumns(Arrays.asList("students__id"))
+                .setParallelism(3)).setGranularity(16).convert(input.getPath(), output);
+        lines = lines(output);
+        assertEquals("The parallel converter should match", expected, lines.subList(1, lines.size()));
+
+        File tags = TestFiles.write(TEST_DIR, "tags.json",
+                "[{\"id\": 1, \"tags\": [\"a\", \"b\"]}, {\"id\": 2, \"tags\": [\"c\", \"b\"]},"
+                + " {\"id\": 1, \"tags\": [\"a\", \"b\"]}]");
+        expected = Arrays.asList("\"1\",\"a\"", "\"\",\"b\"", "\"2\",\"c\"", "\"\",\"b\"");
+        new StreamingJsonConverter(new ConversionOptions().setDeduplicationEnabled(true))
+                .convert(tags.getPath(), output);
+        lines = lines(output);
+        assertEquals("Equal rows of different records should be kept", expected, lines.subList(1, lines.size()));
+        new ParallelJsonConverter(new ConversionOptions().setDeduplicationEnabled(true).setParallelism(3))
+                .setGranularity(16).convert(tags.getPath(), output);
+        lines = lines(output);
+        assertEquals("The parallel converter should match", expected, lines.subList(1, lines.size()));
+    }
+
+    /**
+     * Tests that fingerprints partitioned to disk give the same output as in memory, that the
+     * partition files are deleted, and that the parallel converter agrees.
+     */
+    public void testPartitionedFingerprintsMatchMemory() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 20000; i++) {
+            json.append(i == 0 ? "" : ", ").append("{\"id\": ").append((i * 7919) % 6000)
+                    .append(", \"campus\": \"C").append(i % 3).append("\"}");
+        }
+        File input = TestFiles.write(TEST_DIR, "large.json", json.append("]").toString());
+        String expectedPath = TEST_DIR + File.separator + "memory.csv";
+        StreamingJsonConverter memory = new StreamingJsonConverter(
+                new ConversionOptions().setDeduplicationColumns(Arrays.asList("id")));
+        assertEquals(6000, memory.convert(input.getPath(), expectedPath));
+
+        File spill = new File(TEST_DIR, "spill");
+        spill.mkdirs();
+        String output = TEST_DIR + File.separator + "partitioned.csv";
+        new StreamingJsonConverter(new ConversionOptions().setDeduplicationColumns(Arrays.asList("id"))
+                .setRowBufferBudgetBytes(1 << 14).setSpillDirectory(spill)).convert(input.getPath(), output);
+        assertEquals("Partitioning should not change the output", TestFiles.read(expectedPath), TestFiles.read(output));
+        assertEquals("Partition files should be deleted", 0, spill.list().length);
+
+        ParallelJsonConverter parallel = new ParallelJsonConverter(new ConversionOptions()
+                .setDeduplicationColumns(Arrays.asList("id")).setParallelism(4).setRowBufferBudgetBytes(1 << 14));
+        parallel.setGranularity(4096).convert(input.getPath(), output);
+        assertEquals("The parallel converter should match", TestFiles.read(expectedPath), TestFiles.read(output));
+        assertEquals(6000, parallel.getRowCount());
+
+        StringBuilder rows = new StringBuilder("[");
+        for (int i = 0; i < 20000; i++) {
+            int id = (i * 7919) % 6000;
+            rows.append(i == 0 ? "" : ", ").append(i % 2 == 0
+                    ? "{\"id\": " + id + ", \"campus\": \"C" + id % 3 + "\"}"
+                    : "{\"campus\": \"C" + id % 3 + "\", \"id\": " + id + "}");
+        }
+        File whole = TestFiles.write(TEST_DIR, "whole.json", rows.append("]").toString());
+        new StreamingJsonConverter(new ConversionOptions().setDeduplicationEnabled(true))
+                .convert(whole.getPath(), expectedPath);
+        parallel = new ParallelJsonConverter(new ConversionOptions().setDeduplicationEnabled(true)
+                .setParallelism(4).setRowBufferBudgetBytes(1 << 14));
+        parallel.setGranularity(4096).convert(whole.getPath(), output);
+        assertEquals("Whole-row deduplication should not depend on the order of the cells",
+                TestFiles.read(expectedPath), TestFiles.read(output));
+        assertEquals(6000, parallel.getRowCount());
+    }
+
+    /**
+     * Tests that duplicates are dropped before sorting, keeping the first of each in input order.
+     */
+    public void testDeduplicatedBeforeSorting() throws Exception {
+        File input = TestFiles.write(TEST_DIR, "sorted.json",
+                "[{\"id\": 3, \"term\": \"A\"}, {\"id\": 1, \"term\": \"A\"},"
+                + " {\"id\": 3, \"term\": \"B\"}, {\"id\": 2, \"term\": \"A\"}, {\"id\": 1, \"term\": \"C\"}]");
+        String output = TEST_DIR + File.separator + "sorted.csv";
+        new StreamingJsonConverter(new ConversionOptions().setDeduplicationColumns(Arrays.asList("id"))
+                .setSortColumns(Arrays.asList("id"))).convert(input.getPath(), output);
+        List<String> lines = lines(output);
+        assertEquals(Arrays.asList("\"1\",\"A\"", "\"2\",\"A\"", "\"3\",\"A\""), lines.subList(1, lines.size()));
+    }
+
+    private static List<String> lines(String path) throws Exception {
+        return Files.readAllLines(new File(path).toPath(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,157 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.JSONParser;
+import org.jsoncsvconverter.Logic.JsonFlattener;
+import org.jsoncsvconverter.Logic.RowBuilder;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test class for JsonFlattener using JUnit 3.8.1.
+ * This test suite validates that the iterative flattener applies the documented flattening
+ * rules, survives nesting far deeper than a recursive implementation could, and reports
+ * depth-limit violations with the offending path.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class JsonFlattenerTest extends TestCase {
+
+    /**
+     * Constructor for JsonFlattenerTest.
+     *
+     * @param testName Name of the test case
+     */
+    public JsonFlattenerTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for JsonFlattener
+     */
+    public static Test suite() {
+        return new TestSuite(JsonFlattenerTest.class);
+    }
+
+    /**
+     * Tests the scalar-on-first-row rule for object arrays followed by primitive array rows.
+     */
+    public void testObjectAndPrimitiveArrays() {
+        List<Map<String, String>> rows = flatten(
+                "{\"id\": 1, \"tags\": [\"x\", \"y\"], \"items\": [{\"n\": \"a\"}, {\"n\": \"b\"}]}");
+
+        assertEquals("Should produce two object rows and two primitive rows", 4, rows.size());
+        assertEquals("First row should carry the scalar data", "1", rows.get(0).get("id"));
+        assertEquals("First row should carry the first item", "a", rows.get(0).get("items__n"));
+        assertNull("Second row should not repeat scalar data", rows.get(1).get("id"));
+        assertEquals("Primitive rows follow the object rows", "x", rows.get(2).get("tags"));
+        assertEquals("Primitive rows follow the object rows", "y", rows.get(3).get("tags"));
+    }
+
+    /**
+     * Tests that nested objects are merged into a single row with prefixed keys.
+     */
+    public void testNestedObjectsCollapseIntoOneRow() {
+        List<Map<String, String>> rows = flatten("{\"a\": {\"b\": {\"c\": 1}, \"d\": null}}");
+
+        assertEquals("Should produce one row", 1, rows.size());
+        assertEquals("Should flatten nested keys", "1", rows.get(0).get("a__b__c"));
+        assertEquals("Null should become empty", "", rows.get(0).get("a__d"));
+    }
+
+    /**
+     * Tests that very deep nesting does not overflow the stack.
+     */
+    public void testDeepNestingDoesNotOverflow() {
+        int levels = 20000;
+        JsonObject root = new JsonObject();
+        JsonObject current = root;
+        for (int i = 0; i < levels; i++) {
+            JsonObject child = new JsonObject();
+            JsonArray array = new JsonArray();
+            array.add(child);
+            current.add("n", array);
+            current = child;
+        }
+        current.add("leaf", new JsonPrimitive("bottom"));
+
+        JsonFlattener flattener = new JsonFlattener(100000);
+        final List<Map<String, String>> rows = new ArrayList<>();
+        flattener.flatten(root, "", new JsonFlattener.RowSink() {
+            public void accept(RowBuilder row) {
+                rows.add(row.toMap());
+            }
+        });
+
+        assertEquals("Should produce a single row", 1, rows.size());
+        assertEquals("Should reach the bottom", "bottom", rows.get(0).values().iterator().next());
+        assertEquals("Should report the depth reached", levels + 1, flattener.getMaxDepthSeen());
+    }
+
+    /**
+     * Tests that exceeding the depth limit names the path where it happened.
+     */
+    public void testDepthLimitDiagnostics() {
+        try {
+            new JSONParser("{\"a\": {\"b\": {\"c\": {\"d\": 1}}}}", new ConversionOptions().setMaxNestingDepth(3));
+            fail("Documents deeper than the limit should be rejected");
+        } catch (RuntimeException e) {
+            assertTrue("Message should mention the nesting limit: " + e.getMessage(),
+                    e.getMessage().toLowerCase().contains("nesting"));
+        }
+
+        JsonFlattener flattener = new JsonFlattener(2);
+        try {
+            flattener.flatten(JsonParser.parseString("{\"a\": {\"b\": {\"c\": 1}}}"), "", new JsonFlattener.RowSink() {
+                public void accept(RowBuilder row) {
+                }
+            });
+            fail("Flattener should enforce its depth limit");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Message should name the path: " + e.getMessage(), e.getMessage().contains("a__b"));
+        }
+    }
+
+    /**
+     * Tests that one flattener can be reused and that its frames are reset between calls.
+     */
+    public void testFlattenerIsReusable() {
+        JsonFlattener flattener = new JsonFlattener(64);
+        final List<Map<String, String>> rows = new ArrayList<>();
+        JsonFlattener.RowSink sink = new JsonFlattener.RowSink() {
+            public void accept(RowBuilder row) {
+                rows.add(row.toMap());
+            }
+        };
+
+        flattener.flatten(JsonParser.parseString("{\"x\": 1, \"list\": [{\"y\": 2}]}"), "", sink);
+        flattener.flatten(JsonParser.parseString("{\"z\": 3}"), "", sink);
+
+        assertEquals("Should produce one row per document", 2, rows.size());
+        assertEquals("Second document should not inherit state", 1, rows.get(1).size());
+        assertEquals("Second document should be flattened", "3", rows.get(1).get("z"));
+    }
+
+    private List<Map<String, String>> flatten(String json) {
+        final List<Map<String, String>> rows = new ArrayList<>();
+        new JsonFlattener(64).flatten(JsonParser.parseString(json), "", new JsonFlattener.RowSink() {
+            public void accept(RowBuilder row) {
+                rows.add(row.toMap());
+            }
+        });
+        return rows;
+    }
+}
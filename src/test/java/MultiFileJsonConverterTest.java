@@ -0,0 +1,181 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.ColumnStatistics;
+import org.jsoncsvconverter.Logic.ColumnType;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.MultiFileJsonConverter;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test class for MultiFileJsonConverter using JUnit 3.8.1.
+ * This test suite validates the union of the headers of several files, the alignment of their
+ * rows to it, the agreement of the byte-level and Gson paths, and the merged statistics.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class MultiFileJsonConverterTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_multi_file_output";
+
+    /**
+     * Constructor for MultiFileJsonConverterTest.
+     *
+     * @param testName Name of the test case
+     */
+    public MultiFileJsonConverterTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for MultiFileJsonConverter
+     */
+    public static Test suite() {
+        return new TestSuite(MultiFileJsonConverterTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        TestFiles.delete(new File(TEST_DIR));
+    }
+
+    /**
+     * Tests that the header joins the columns of every file in order of first appearance and
+     * that every row is aligned to it, whatever the layout of its file.
+     */
+    public void testHeaderUnionAndAlignment() throws Exception {
+        File north = TestFiles.write(TEST_DIR, "north.json",
+                "[{\"id\": 1, \"name\": \"Ana\"}, {\"id\": 2, \"name\": \"Luis\"}]");
+        File south = TestFiles.write(TEST_DIR, "south.json", "{\"id\": 3, \"campus\": \"South\", \"name\": \"Eva\"}\n"
+                + "{\"id\": 4, \"campus\": \"South\"}\n");
+        File empty = TestFiles.write(TEST_DIR, "empty.json", "[]");
+        File east = TestFiles.write(TEST_DIR, "east.json",
+                "{\"campus\": \"East\", \"students\": [{\"id\": 5, \"gpa\": 3.5}]}");
+        String output = TEST_DIR + File.separator + "merged.csv";
+
+        MultiFileJsonConverter converter = new MultiFileJsonConverter(
+                new ConversionOptions().setSpillDirectory(new File(TEST_DIR)));
+        long rows = converter.merge(Arrays.asList(north.getPath(), south.getPath(), empty.getPath(),
+                east.getPath()), output);
+        assertEquals(5, rows);
+        assertEquals(Arrays.asList("id", "name", "campus", "students__id", "students__gpa"),
+                Arrays.asList(converter.getHeadersArray()));
+        assertEquals(Arrays.asList("\"id\",\"name\",\"campus\",\"students__id\",\"students__gpa\"",
+                "\"1\",\"Ana\",\"\",\"\",\"\"",
+                "\"2\",\"Luis\",\"\",\"\",\"\"",
+                "\"3\",\"Eva\",\"South\",\"\",\"\"",
+                "\"4\",\"\",\"South\",\"\",\"\"",
+                "\"\",\"\",\"East\",\"5\",\"3.5\""), lines(output));
+        assertEquals(ColumnType.LONG, converter.getColumnTypes().get("id"));
+        assertEquals(ColumnType.DOUBLE, converter.getColumnTypes().get("students__gpa"));
+        assertEquals("Only the output should be written", 5, new File(TEST_DIR).list().length);
+    }
+
+    /**
+     * Tests that the byte-level and Gson paths merge to the same bytes, and that merging one
+     * file writes what converting it does.
+     */
+    public void testPathsAgree() throws Exception {
+        List<String> inputs = new ArrayList<>();
+        for (int f = 0; f < 6; f++) {
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < 200; i++) {
+                json.append(i == 0 ? "" : ", ").append("{\"id\": ").append(f * 1000 + i)
+                        .append(", \"f").append(f).append("\": \"v").append(i % 7)
+                        .append("\", \"courses\": [{\"code\": \"C").append(i % 3).append("\"}]}");
+            }
+            inputs.add(TestFiles.write(TEST_DIR, "part" + f + ".json", json.append("]").toString()).getPath());
+        }
+        String bytes = TEST_DIR + File.separator + "bytes.csv";
+        String gson = TEST_DIR + File.separator + "gson.csv";
+        new MultiFileJsonConverter(new ConversionOptions()).merge(inputs, bytes);
+        new MultiFileJsonConverter(new ConversionOptions().setByteTokenizerEnabled(false)
+                .setRowBufferBudgetBytes(1 << 14)).merge(inputs, gson);
+        assertEquals(TestFiles.read(bytes), TestFiles.read(gson));
+
+        String single = TEST_DIR + File.separator + "single.csv";
+        String converted = TEST_DIR + File.separator + "converted.csv";
+        new MultiFileJsonConverter(new ConversionOptions()).merge(inputs.subList(0, 1), single);
+        new StreamingJsonConverter(new ConversionOptions()).convert(inputs.get(0), converted);
+        assertEquals(TestFiles.read(converted), TestFiles.read(single));
+    }
+
+    /**
+     * Tests that the statistics of a merge match those of converting every record at once.
+     */
+    public void testStatisticsMerged() throws Exception {
+        String a = "{\"id\": 10, \"score\": 7.5, \"name\": \"Ana\"}, {\"id\": 2, \"score\": 9, \"name\": \"Zoe\"}";
+        String b = "{\"id\": 30, \"score\": 1.25, \"name\": \"Ana\"}, {\"id\": -4, \"name\": \"Bea\"}";
+        File first = TestFiles.write(TEST_DIR, "a.json", "[" + a + "]");
+        File second = TestFiles.write(TEST_DIR, "b.json", "[" + b + "]");
+        File all = TestFiles.write(TEST_DIR, "all.json", "[" + a + ", " + b + "]");
+
+        MultiFileJsonConverter merger = new MultiFileJsonConverter(new ConversionOptions().setStatisticsEnabled(true));
+        merger.merge(Arrays.asList(first.getPath(), second.getPath()), TEST_DIR + File.separator + "merged.csv");
+        StreamingJsonConverter converter = new StreamingJsonConverter(new ConversionOptions().setStatisticsEnabled(true));
+        converter.convert(all.getPath(), TEST_DIR + File.separator + "all.csv");
+
+        ColumnStatistics merged = merger.getStatistics();
+        ColumnStatistics expected = converter.getStatistics();
+        assertEquals(Arrays.asList(expected.getHeaders()), Arrays.asList(merged.getHeaders()));
+        assertEquals(4, merged.getRowCount());
+        for (int column = 0; column < expected.getHeaders().length; column++) {
+            assertEquals(expected.getColumnType(column), merged.getColumnType(column));
+            assertEquals(expected.getNullCount(column), merged.getNullCount(column));
+            assertEquals(expected.getMin(column), merged.getMin(column));
+            assertEquals(expected.getMax(column), merged.getMax(column));
+            assertEquals(expected.getDistinctCount(column), merged.getDistinctCount(column));
+        }
+        assertEquals("-4", merged.getMin(0));
+        assertTrue("The statistics should be saved",
+                new File(ColumnStatistics.sidecarPath(TEST_DIR + File.separator + "merged.csv")).exists());
+    }
+
+    /**
+     * Tests that merges without inputs and options spanning every file are rejected.
+     */
+    public void testInvalidMergesRejected() {
+        try {
+            new MultiFileJsonConverter(new ConversionOptions()).merge(Collections.<String>emptyList(),
+                    TEST_DIR + File.separator + "none.csv");
+            fail("Should throw IllegalArgumentException without input files");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("input"));
+        }
+        try {
+            new MultiFileJsonConverter(new ConversionOptions().setSortColumns(Arrays.asList("id")));
+            fail("Should throw IllegalArgumentException for sorted output");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("not supported"));
+        }
+    }
+
+    private static List<String> lines(String path) throws Exception {
+        return Files.readAllLines(new File(path).toPath(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,140 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.ColumnProjection;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.NormalizedJsonConverter;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Test class for NormalizedJsonConverter using JUnit 3.8.1.
+ * This test suite validates that every array path is written to its own table with generated
+ * parent and child keys, for object-root, array-root and newline-delimited input, and that the
+ * tables share the row buffer budget without changing the output.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class NormalizedJsonConverterTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_normalized_output";
+
+    /**
+     * Constructor for NormalizedJsonConverterTest.
+     *
+     * @param testName Name of the test case
+     */
+    public NormalizedJsonConverterTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for NormalizedJsonConverter
+     */
+    public static Test suite() {
+        return new TestSuite(NormalizedJsonConverterTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        TestFiles.delete(new File(TEST_DIR));
+    }
+
+    /**
+     * Tests that the root object, its arrays and their nested arrays are written to separate
+     * tables linked by keys, with nested objects flattened into their rows.
+     */
+    public void testObjectRootTables() throws Exception {
+        File input = TestFiles.write(TEST_DIR, "campus.json",
+                "{\"campus\": \"North\", \"address\": {\"city\": \"Lima\"}, \"students\": ["
+                + "{\"id\": 1, \"name\": \"Ana\", \"courses\": [{\"code\": \"C1\", \"room\": {\"floor\": 2}}, {\"code\": \"C2\"}],"
+                + " \"tags\": [\"x\", \"y\"]},"
+                + "{\"id\": 2, \"name\": null, \"courses\": [], \"tags\": [\"z\"]}]}");
+        NormalizedJsonConverter converter = new NormalizedJsonConverter(new ConversionOptions());
+        String output = TEST_DIR + File.separator + "tables";
+        assertEquals("Rows should be counted over all tables", 8, converter.convert(input.getPath(), output));
+
+        assertEquals(Arrays.asList("campus", "students", "students__courses", "students__tags"),
+                Arrays.asList(converter.getTableFiles().keySet().toArray()));
+        assertEquals("\"_id\",\"campus\",\"address__city\"\n\"1\",\"North\",\"Lima\"\n",
+                TestFiles.read(new File(output, "campus.csv")));
+        assertEquals("\"_id\",\"_parent_id\",\"id\",\"name\"\n\"1\",\"1\",\"1\",\"Ana\"\n\"2\",\"1\",\"2\",\"\"\n",
+                TestFiles.read(new File(output, "students.csv")));
+        assertEquals("\"_id\",\"_parent_id\",\"code\",\"room__floor\"\n\"1\",\"1\",\"C1\",\"2\"\n\"2\",\"1\",\"C2\",\"\"\n",
+                TestFiles.read(new File(output, "students__courses.csv")));
+        assertEquals("\"_id\",\"_parent_id\",\"value\"\n\"1\",\"1\",\"x\"\n\"2\",\"1\",\"y\"\n\"3\",\"2\",\"z\"\n",
+                TestFiles.read(new File(output, "students__tags.csv")));
+        assertEquals(3, converter.getRowCount("students__tags"));
+        assertTrue(Arrays.equals(new String[]{"_id", "_parent_id", "value"}, converter.getHeaders("students__tags")));
+    }
+
+    /**
+     * Tests that every element of a root array, or every value of newline-delimited JSON, is a
+     * row of the root table, and that the root table is renamed when an array table has its name.
+     */
+    public void testRecordsAndRootNameClash() throws Exception {
+        String expected = "\"_id\",\"id\"\n\"1\",\"1\"\n\"2\",\"2\"\n";
+        File array = TestFiles.write(TEST_DIR, "students.json",
+                "[{\"id\": 1, \"students\": [{\"id\": 7}]}, {\"id\": 2}]");
+        NormalizedJsonConverter converter = new NormalizedJsonConverter(new ConversionOptions());
+        converter.convert(array.getPath(), TEST_DIR + File.separator + "array");
+        assertEquals(expected, TestFiles.read(new File(TEST_DIR + File.separator + "array", "students_root.csv")));
+        assertEquals("\"_id\",\"_parent_id\",\"id\"\n\"1\",\"1\",\"7\"\n",
+                TestFiles.read(new File(TEST_DIR + File.separator + "array", "students.csv")));
+
+        File lines = TestFiles.write(TEST_DIR, "records.json", "{\"id\": 1}\n{\"id\": 2}\n");
+        converter.convert(lines.getPath(), TEST_DIR + File.separator + "lines");
+        assertEquals(expected, TestFiles.read(new File(TEST_DIR + File.separator + "lines", "records.csv")));
+        assertEquals(1, converter.getTableFiles().size());
+    }
+
+    /**
+     * Tests that tables sharing a small budget spill without changing the output.
+     */
+    public void testSharedBudgetSpills() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i == 0 ? "" : ", ").append("{\"id\": ").append(i).append(", \"courses\": [{\"code\": \"C")
+                    .append(i % 13).append("\"}, {\"code\": \"D").append(i).append("\"}]}");
+        }
+        File input = TestFiles.write(TEST_DIR, "campus.json", json.append("]").toString());
+        new NormalizedJsonConverter(new ConversionOptions()).convert(input.getPath(), TEST_DIR + File.separator + "memory");
+        NormalizedJsonConverter spilling = new NormalizedJsonConverter(new ConversionOptions().setRowBufferBudgetBytes(4096));
+        assertEquals(6000, spilling.convert(input.getPath(), TEST_DIR + File.separator + "spilled"));
+        assertEquals(TestFiles.read(new File(TEST_DIR + File.separator + "memory", "courses.csv")),
+                TestFiles.read(new File(TEST_DIR + File.separator + "spilled", "courses.csv")));
+        assertEquals(TestFiles.read(new File(TEST_DIR + File.separator + "memory", "campus.csv")),
+                TestFiles.read(new File(TEST_DIR + File.separator + "spilled", "campus.csv")));
+    }
+
+    /**
+     * Tests that a projection, which selects columns of the wide table, is rejected.
+     */
+    public void testProjectionRejected() {
+        try {
+            new NormalizedJsonConverter(new ConversionOptions().setProjection(ColumnProjection.parse("id")));
+            fail("Should throw IllegalArgumentException for a projection");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Exception message should mention projections", e.getMessage().contains("Projections"));
+        }
+    }
+}
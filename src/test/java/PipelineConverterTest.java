@@ -0,0 +1,142 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.PipelineConverter;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Test class for converting between standard streams using JUnit 3.8.1.
+ * This test suite validates that stream conversions write the same CSV as file conversions,
+ * with sorting and deduplication applied, that command line paths mix files and standard
+ * streams, and that errors and invalid arguments are reported through the exit status.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class PipelineConverterTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_pipeline_output";
+
+    /** Records converted by the tests */
+    private static final String JSON = "[{\"id\": 3, \"name\": \"Ana\", \"courses\": [\"Math\", \"Art\"]},"
+            + " {\"id\": 1, \"name\": \"Luis, Jr.\"}, {\"id\": 1, \"name\": \"Luis, Jr.\"}]";
+
+    /**
+     * Constructor for PipelineConverterTest.
+     *
+     * @param testName Name of the test case
+     */
+    public PipelineConverterTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for pipeline conversions
+     */
+    public static Test suite() {
+        return new TestSuite(PipelineConverterTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        TestFiles.delete(new File(TEST_DIR));
+    }
+
+    /**
+     * Tests that a stream conversion writes exactly the CSV of a file conversion, with rows
+     * deduplicated and sorted.
+     */
+    public void testStreamMatchesFileConversion() throws Exception {
+        ConversionOptions options = new ConversionOptions().setDeduplicationEnabled(true)
+                .setSortColumns(Arrays.asList("id"));
+        File input = TestFiles.write(TEST_DIR, "students.json", JSON);
+        String output = TEST_DIR + File.separator + "students.csv";
+        new StreamingJsonConverter(options).convert(input.getPath(), output);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        long rows = new PipelineConverter(options).convert(
+                new ByteArrayInputStream(JSON.getBytes(StandardCharsets.UTF_8)), stream);
+        assertEquals(3, rows);
+        assertEquals(new String(Files.readAllBytes(new File(output).toPath()), StandardCharsets.UTF_8),
+                stream.toString("UTF-8"));
+    }
+
+    /**
+     * Tests that command line paths read or write a standard stream for "-" and files
+     * otherwise.
+     */
+    public void testCommandLinePaths() throws Exception {
+        File input = TestFiles.write(TEST_DIR, "students.json", JSON);
+        String output = TEST_DIR + File.separator + "students.csv";
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        assertEquals(0, PipelineConverter.run(new String[]{"-", output},
+                new ByteArrayInputStream(JSON.getBytes(StandardCharsets.UTF_8)), stdout, new PrintStream(stderr)));
+        assertEquals(0, stdout.size());
+
+        assertEquals(0, PipelineConverter.run(new String[]{input.getPath(), "-"},
+                new ByteArrayInputStream(new byte[0]), stdout, new PrintStream(stderr)));
+        assertEquals(new String(Files.readAllBytes(new File(output).toPath()), StandardCharsets.UTF_8),
+                stdout.toString("UTF-8"));
+        assertTrue(stdout.toString("UTF-8").startsWith("\"id\",\"name\",\"courses\""));
+        assertEquals(0, stderr.size());
+    }
+
+    /**
+     * Tests that malformed input and extra arguments fail with an exit status and a message on
+     * the error stream only.
+     */
+    public void testErrorsReportedByExitStatus() throws Exception {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        assertEquals(1, PipelineConverter.run(new String[0],
+                new ByteArrayInputStream("[{\"id\": ".getBytes(StandardCharsets.UTF_8)), stdout,
+                new PrintStream(stderr)));
+        assertTrue(stderr.toString("UTF-8").startsWith("Error: "));
+        assertEquals(0, stdout.size());
+
+        stderr.reset();
+        assertEquals(2, PipelineConverter.run(new String[]{"a", "b", "c"},
+                new ByteArrayInputStream(new byte[0]), stdout, new PrintStream(stderr)));
+        assertTrue(stderr.toString("UTF-8").startsWith("Usage: "));
+    }
+
+    /**
+     * Tests that options describing an output file are rejected for stream output.
+     */
+    public void testFileOnlyOptionsRejected() {
+        StreamingJsonConverter converter = new StreamingJsonConverter(new ConversionOptions().setRowIndexInterval(10));
+        try {
+            converter.convert(new StringReader(JSON), "-", new ByteArrayOutputStream());
+            fail("A row index of a stream should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("output file"));
+        }
+    }
+}
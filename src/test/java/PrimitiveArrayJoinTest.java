@@ -0,0 +1,150 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.CSVWriterFile;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.JSONParser;
+import org.jsoncsvconverter.Logic.ParallelJsonConverter;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Test class for joining primitive arrays into single cells using JUnit 3.8.1.
+ * This test suite validates that joined arrays keep one row per record, that delimiters and
+ * escape characters inside elements are escaped, and that the parser and the streaming and
+ * parallel converters write the same joined output.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class PrimitiveArrayJoinTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_array_join_output";
+
+    /**
+     * Constructor for PrimitiveArrayJoinTest.
+     *
+     * @param testName Name of the test case
+     */
+    public PrimitiveArrayJoinTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for joined primitive arrays
+     */
+    public static Test suite() {
+        return new TestSuite(PrimitiveArrayJoinTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        TestFiles.delete(new File(TEST_DIR));
+    }
+
+    /**
+     * Tests that several primitive arrays of a record share its single row.
+     */
+    public void testArraysJoinedIntoOneRow() {
+        String json = "{\"students\": [{\"id\": 1, \"skills\": [\"java\", \"sql\", \"git\"], \"langs\": [\"en\", \"es\"]},"
+                + " {\"id\": 2, \"skills\": [\"c\"], \"langs\": []}]}";
+        JSONParser exploded = new JSONParser(json);
+        assertEquals("Arrays should explode by default", 4, exploded.getRows().size());
+
+        JSONParser joined = new JSONParser(json, new ConversionOptions().setPrimitiveArrayDelimiter(";"));
+        assertEquals("Each record should keep one row", 2, joined.getRows().size());
+        assertEquals(Arrays.asList("students__id", "students__skills", "students__langs"),
+                Arrays.asList(joined.getHeadersArray()));
+        assertEquals(Arrays.asList("1", "java;sql;git", "en;es"), Arrays.asList(joined.getRows().get(0)));
+        assertEquals(Arrays.asList("2", "c", ""), Arrays.asList(joined.getRows().get(1)));
+    }
+
+    /**
+     * Tests that delimiters and escape characters inside elements are escaped.
+     */
+    public void testEscaping() {
+        String json = "{\"tags\": [\"a;b\", \"c\\\\d\", \"e\"]}";
+        JSONParser backslash = new JSONParser(json, new ConversionOptions().setPrimitiveArrayDelimiter(";"));
+        assertEquals("a\\;b;c\\\\d;e", backslash.getRows().get(0)[0]);
+
+        JSONParser custom = new JSONParser(json, new ConversionOptions().setPrimitiveArrayEscape('~')
+                .setPrimitiveArrayDelimiter(";"));
+        assertEquals("a~;b;c\\d;e", custom.getRows().get(0)[0]);
+    }
+
+    /**
+     * Tests that the streaming and parallel converters join arrays exactly as the parser does,
+     * including the primitive arrays of the root object and of nested arrays.
+     */
+    public void testStreamingMatchesParser() throws Exception {
+        StringBuilder json = new StringBuilder("{\"campus\": \"North\", \"codes\": [3, 1, 2], \"students\": [");
+        for (int i = 0; i < 300; i++) {
+            json.append(i == 0 ? "" : ", ").append("{\"id\": ").append(i).append(", \"skills\": [\"s").append(i % 5)
+                    .append("\", \"t|u\"], \"courses\": [{\"code\": \"C1\", \"days\": [\"mon\", \"wed\"]}, {\"code\": \"C2\"}],"
+                            + " \"grid\": [[1, 2], [3]]}");
+        }
+        json.append("], \"notes\": [\"a\", \"b\"]}");
+        File input = TestFiles.write(TEST_DIR, "campus.json", json.toString());
+        ConversionOptions options = new ConversionOptions().setPrimitiveArrayDelimiter("|");
+
+        JSONParser parser = new JSONParser(json.toString(), options);
+        String expectedPath = TEST_DIR + File.separator + "parser.csv";
+        new CSVWriterFile(parser.getHeadersArray()).createCSVWithData(expectedPath, parser.getRows());
+        String expected = TestFiles.read(expectedPath);
+        assertTrue("Joined cells should be written", expected.contains("\"s1|t\\|u\""));
+        assertTrue("Root arrays should be joined", expected.contains("\"3|1|2\""));
+
+        String output = TEST_DIR + File.separator + "streaming.csv";
+        StreamingJsonConverter streaming = new StreamingJsonConverter(options);
+        streaming.convert(input.getPath(), output);
+        assertEquals("The streaming converter should match the parser", expected, TestFiles.read(output));
+        assertEquals(parser.getRows().size(), streaming.getRowCount());
+
+        new ParallelJsonConverter(new ConversionOptions().setPrimitiveArrayDelimiter("|").setParallelism(4)
+                .setRowBufferBudgetBytes(1 << 16)).setGranularity(256).convert(input.getPath(), output);
+        assertEquals("The parallel converter should match the parser", expected, TestFiles.read(output));
+    }
+
+    /**
+     * Tests that invalid delimiters are rejected.
+     */
+    public void testInvalidDelimiterRejected() {
+        try {
+            new ConversionOptions().setPrimitiveArrayDelimiter("");
+            fail("Should throw IllegalArgumentException for an empty delimiter");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("empty"));
+        }
+        try {
+            new ConversionOptions().setPrimitiveArrayDelimiter("\\|");
+            fail("Should throw IllegalArgumentException for a delimiter holding the escape character");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("escape"));
+        }
+        try {
+            new ConversionOptions().setPrimitiveArrayDelimiter(",").setPrimitiveArrayEscape(',');
+            fail("Should throw IllegalArgumentException for an escape character in the delimiter");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("escape"));
+        }
+    }
+}
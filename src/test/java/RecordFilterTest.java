@@ -0,0 +1,164 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.ColumnProjection;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.JSONParser;
+import org.jsoncsvconverter.Logic.RecordFilter;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test class for RecordFilter using JUnit 3.8.1.
+ * This test suite validates expression parsing, comparison semantics for missing, numeric and
+ * repeated fields, and that both JSONParser and the streaming converter drop rejected records
+ * while reading them.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class RecordFilterTest extends TestCase {
+
+    /** Test directory for output files */
+    private static final String TEST_DIR = "test_filter_output";
+
+    /** Campus document whose students are the records */
+    private static final String CAMPUS_JSON =
+            "{\"institution\": \"North\", \"students\": ["
+                    + "{\"id\": \"S1\", \"status\": \"inactive\", \"campus\": \"East\", \"gpa\": 3.9},"
+                    + "{\"id\": \"S2\", \"status\": \"active\", \"campus\": \"East\", \"gpa\": 2.5, \"skills\": [\"Java\", \"SQL\"]},"
+                    + "{\"id\": \"S3\", \"status\": \"active\", \"campus\": \"West\", \"gpa\": 3.1},"
+                    + "{\"id\": \"S4\", \"campus\": \"South\"}"
+                    + "]}";
+
+    /**
+     * Constructor for RecordFilterTest.
+     *
+     * @param testName Name of the test case
+     */
+    public RecordFilterTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for RecordFilter
+     */
+    public static Test suite() {
+        return new TestSuite(RecordFilterTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        File[] files = new File(TEST_DIR).listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        new File(TEST_DIR).delete();
+    }
+
+    /**
+     * Tests equality, membership and the root scalar data moving to the first accepted record.
+     */
+    public void testParserKeepsMatchingRecords() {
+        JSONParser parser = new JSONParser(CAMPUS_JSON, new ConversionOptions()
+                .setFilter(RecordFilter.parse("students__status == \"active\" and students__campus in (\"East\", \"West\")")));
+
+        List<String[]> rows = parser.getRows();
+        assertEquals("Rejected records should be counted", 2, parser.getRejectedRecordCount());
+        assertEquals("Should keep S2 (with its skills) and S3", 3, rows.size());
+        assertEquals("Root scalar data should join the first accepted row", "North", rows.get(0)[0]);
+        assertEquals("First accepted record should be S2", "S2", rows.get(0)[1]);
+        assertEquals("Rejected records should not reach the tree", 2,
+                parser.getJsonObject().getAsJsonArray("students").size());
+        parser.close();
+    }
+
+    /**
+     * Tests numeric comparison, negation and missing fields.
+     */
+    public void testComparisonSemantics() {
+        assertEquals("Numbers compare numerically", Arrays.asList("S1", "S3"),
+                ids("students__gpa >= 3.05"));
+        assertEquals("Missing fields only equal null", Arrays.asList("S4"),
+                ids("students__status == null"));
+        assertEquals("Missing fields fail other comparisons", Arrays.asList("S1"),
+                ids("students__status != \"active\""));
+        assertEquals("Negation applies to the whole comparison", Arrays.asList("S2", "S3", "S4"),
+                ids("not students__status == \"inactive\""));
+        assertEquals("Repeated fields match when any value matches", Arrays.asList("S2"),
+                ids("students__skills == \"SQL\" or students__gpa < 0"));
+    }
+
+    /**
+     * Tests that the streaming converter filters array-root records, also on unprojected fields.
+     */
+    public void testStreamingFiltersRecords() throws Exception {
+        String output = TEST_DIR + File.separator + "filtered.csv";
+        ConversionOptions options = new ConversionOptions()
+                .setFilter(RecordFilter.parse("status == 'active' && (gpa > 3 || campus == 'East')"))
+                .setProjection(ColumnProjection.parse("id"));
+
+        StreamingJsonConverter converter = new StreamingJsonConverter(options);
+        long rows = converter.convert(new StringReader(
+                "[{\"id\": 1, \"status\": \"active\", \"gpa\": 3.5, \"courses\": [{\"code\": \"A\"}]},"
+                        + " {\"status\": \"inactive\", \"courses\": [{\"code\": \"B\"}], \"id\": 2},"
+                        + " {\"id\": 3, \"campus\": \"East\", \"status\": \"active\"}]"),
+                "students.json", output);
+
+        assertEquals("Should keep two records", 2, rows);
+        assertEquals("Should reject one record", 1, converter.getRejectedRecordCount());
+        assertEquals("Filter fields outside the projection should not be written",
+                "\"id\"\n\"1\"\n\"3\"\n",
+                new String(Files.readAllBytes(new File(output).toPath()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that malformed expressions are rejected with the position of the problem.
+     */
+    public void testMalformedExpressions() {
+        String[] invalid = {"", "status ==", "status = 'a'", "(status == 'a'", "campus in ('a',", "status == 'a' extra"};
+        for (String expression : invalid) {
+            try {
+                RecordFilter.parse(expression);
+                fail("Expression should be rejected: " + expression);
+            } catch (IllegalArgumentException e) {
+                assertNotNull("Exception should have a message", e.getMessage());
+            }
+        }
+    }
+
+    private static List<String> ids(String expression) {
+        JSONParser parser = new JSONParser(CAMPUS_JSON, new ConversionOptions()
+                .setFilter(RecordFilter.parse(expression))
+                .setProjection(ColumnProjection.parse("students__id")));
+        String[] result = new String[parser.getRows().size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = parser.getRows().get(i)[0];
+        }
+        parser.close();
+        return Arrays.asList(result);
+    }
+}
@@ -0,0 +1,198 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.CSVWriterFile;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.JSONParser;
+import org.jsoncsvconverter.Logic.RowBuffer;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test class for RowBuffer using JUnit 3.8.1.
+ * This test suite validates column discovery, dense row expansion, spilling to disk once the
+ * heap budget is exceeded, transparent read-back, and cleanup of spill files. It also checks that
+ * JSONParser produces identical output whether or not its rows were spilled.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class RowBufferTest extends TestCase {
+
+    /** Test directory for spill and output files */
+    private static final String TEST_DIR = "test_rowbuffer_output";
+
+    /** JSON that expands into many rows through nested arrays */
+    private static final String EXPLODING_JSON =
+            "{\"id\": 1, \"name\": \"Campus\", \"students\": ["
+                    + "{\"name\": \"Ana\", \"courses\": [{\"code\": \"CS1\", \"grades\": [90, 80, 70]}, {\"code\": \"MA1\"}]},"
+                    + "{\"name\": \"Luis\", \"skills\": [\"Java\", \"SQL\"], \"courses\": [{\"code\": \"BI1\", \"grades\": [60]}]},"
+                    + "{\"name\": \"Sofia\", \"address\": {\"city\": \"Monterrey\"}}"
+                    + "], \"tags\": [\"a\", \"b\"]}";
+
+    /**
+     * Constructor for RowBufferTest.
+     *
+     * @param testName Name of the test case
+     */
+    public RowBufferTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for RowBuffer
+     */
+    public static Test suite() {
+        return new TestSuite(RowBufferTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        File[] files = new File(TEST_DIR).listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        new File(TEST_DIR).delete();
+    }
+
+    /**
+     * Tests that rows are expanded to every discovered column, with empty strings for gaps.
+     */
+    public void testRowsAreExpandedToAllColumns() {
+        RowBuffer buffer = new RowBuffer(1L << 20);
+        buffer.addRow(row("a", "1", "b", "2"));
+        buffer.addRow(row("c", "3"));
+
+        assertEquals("Columns should be in discovery order", Arrays.asList("a", "b", "c"), buffer.getColumns());
+        assertEquals("Should hold two rows", 2, buffer.size());
+        assertTrue("First row should be padded", Arrays.equals(new String[]{"1", "2", ""}, buffer.get(0)));
+        assertTrue("Second row should be padded", Arrays.equals(new String[]{"", "", "3"}, buffer.get(1)));
+        assertEquals("Nothing should be spilled", 0, buffer.getSpillCount());
+        buffer.close();
+    }
+
+    /**
+     * Tests that exceeding the budget spills rows to disk and that they read back unchanged.
+     */
+    public void testSpilledRowsReadBackInOrder() {
+        RowBuffer buffer = new RowBuffer(1024, new File(TEST_DIR));
+        for (int i = 0; i < 500; i++) {
+            buffer.addRow(row("id", String.valueOf(i), "name", "né" + i));
+        }
+
+        assertTrue("Rows should have been spilled", buffer.getSpillCount() > 0);
+        assertTrue("Heap estimate should stay within the budget", buffer.getEstimatedHeapBytes() <= 1024);
+        assertEquals("All rows should be counted", 500, buffer.size());
+
+        int expected = 0;
+        for (Iterator<String[]> it = buffer.iterator(); it.hasNext(); expected++) {
+            String[] values = it.next();
+            assertEquals("Rows should keep insertion order", String.valueOf(expected), values[0]);
+            assertEquals("Non-ASCII values should survive the spill", "né" + expected, values[1]);
+        }
+        assertEquals("Iteration should visit every row", 500, expected);
+        assertEquals("Random access should work on spilled rows", "42", buffer.get(42)[0]);
+        assertEquals("Random access should work backwards", "7", buffer.get(7)[0]);
+
+        buffer.close();
+        assertEquals("Spill files should be deleted on close", 0, new File(TEST_DIR).listFiles().length);
+    }
+
+    /**
+     * Tests that spilled rows with more populated cells than the initial read arrays hold read
+     * back unchanged through the iterator.
+     */
+    public void testWideSpilledRowsReadBack() {
+        RowBuffer buffer = new RowBuffer(1024, new File(TEST_DIR));
+        for (int i = 0; i < 100; i++) {
+            String[] keysAndValues = new String[40];
+            for (int c = 0; c < 20; c++) {
+                keysAndValues[2 * c] = "c" + c;
+                keysAndValues[2 * c + 1] = i + "-" + c;
+            }
+            buffer.addRow(row(keysAndValues));
+        }
+        assertTrue("Rows should have been spilled", buffer.getSpillCount() > 0);
+
+        int expected = 0;
+        for (Iterator<String[]> it = buffer.iterator(); it.hasNext(); expected++) {
+            String[] values = it.next();
+            assertEquals("Every cell should be read back", 20, values.length);
+            assertEquals("First cell should match", expected + "-0", values[0]);
+            assertEquals("Last cell should match", expected + "-19", values[19]);
+        }
+        assertEquals("Iteration should visit every row", 100, expected);
+        buffer.close();
+    }
+
+    /**
+     * Tests that a tiny budget does not change the JSONParser output or the written CSV.
+     */
+    public void testParserOutputIsIndependentOfBudget() throws Exception {
+        JSONParser inMemory = new JSONParser(EXPLODING_JSON);
+        JSONParser spilled = new JSONParser(EXPLODING_JSON,
+                new ConversionOptions().setRowBufferBudgetBytes(100).setSpillDirectory(new File(TEST_DIR)));
+
+        assertTrue("Headers should match", Arrays.equals(inMemory.getHeadersArray(), spilled.getHeadersArray()));
+        List<String[]> expectedRows = inMemory.getRows();
+        List<String[]> actualRows = spilled.getRows();
+        assertEquals("Row counts should match", expectedRows.size(), actualRows.size());
+        for (int i = 0; i < expectedRows.size(); i++) {
+            assertTrue("Row " + i + " should match", Arrays.equals(expectedRows.get(i), actualRows.get(i)));
+        }
+
+        String memoryCsv = TEST_DIR + File.separator + "memory.csv";
+        String spilledCsv = TEST_DIR + File.separator + "spilled.csv";
+        new CSVWriterFile(inMemory.getHeadersArray()).createCSVWithData(memoryCsv, expectedRows);
+        new CSVWriterFile(spilled.getHeadersArray()).createCSVWithData(spilledCsv, actualRows);
+        assertTrue("CSV output should be identical",
+                Arrays.equals(Files.readAllBytes(new File(memoryCsv).toPath()),
+                        Files.readAllBytes(new File(spilledCsv).toPath())));
+
+        inMemory.close();
+        spilled.close();
+    }
+
+    /**
+     * Tests that a non-positive budget is rejected.
+     */
+    public void testInvalidBudget() {
+        try {
+            new RowBuffer(0);
+            fail("A zero budget should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertNotNull("Exception should have a message", e.getMessage());
+        }
+    }
+
+    private static Map<String, String> row(String... keysAndValues) {
+        Map<String, String> row = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            row.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return row;
+    }
+}
@@ -0,0 +1,167 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.ParallelJsonConverter;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test class for sorting the output rows by key columns using JUnit 3.8.1.
+ * This test suite validates numeric and text ordering with empty keys first, the stability of
+ * the sort, that records exploded into several rows stay together, and that spilled runs merged within a small budget give the same CSV as a sort in
+ * memory, for the streaming and parallel converters alike.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class SortedOutputTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_sorted_output";
+
+    /**
+     * Constructor for SortedOutputTest.
+     *
+     * @param testName Name of the test case
+     */
+    public SortedOutputTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for sorted output
+     */
+    public static Test suite() {
+        return new TestSuite(SortedOutputTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        TestFiles.delete(new File(TEST_DIR));
+    }
+
+    /**
+     * Tests that a numeric key sorts as numbers, with empty keys first and equal keys in their
+     * input order.
+     */
+    public void testNumericStableOrder() throws Exception {
+        File input = TestFiles.write(TEST_DIR, "students.json",
+                "[{\"id\": 10, \"name\": \"a\"}, {\"id\": 9, \"name\": \"b\"},"
+                + " {\"name\": \"c\"}, {\"id\": 10, \"name\": \"d\"}, {\"id\": -2, \"name\": \"e\"}, {\"id\": 100, \"name\": \"f\"}]");
+        String output = TEST_DIR + File.separator + "students.csv";
+        new StreamingJsonConverter(new ConversionOptions().setSortColumns(Collections.singletonList("id")))
+                .convert(input.getPath(), output);
+        assertEquals("\"id\",\"name\"\n\"\",\"c\"\n\"-2\",\"e\"\n\"9\",\"b\"\n\"10\",\"a\"\n\"10\",\"d\"\n\"100\",\"f\"\n",
+                TestFiles.read(output));
+    }
+
+    /**
+     * Tests that several key columns sort text before numbers in order of significance.
+     */
+    public void testSeveralKeys() throws Exception {
+        File input = TestFiles.write(TEST_DIR, "students.json",
+                "{\"id\": 3, \"campus\": \"South\"}\n{\"id\": 1, \"campus\": \"South\"}\n"
+                + "{\"id\": 2, \"campus\": \"North\"}\n{\"id\": 0, \"campus\": \"West\"}\n");
+        String output = TEST_DIR + File.separator + "students.csv";
+        new StreamingJsonConverter(new ConversionOptions().setSortColumns(Arrays.asList("campus", "id")))
+                .convert(input.getPath(), output);
+        assertEquals("\"id\",\"campus\"\n\"2\",\"North\"\n\"1\",\"South\"\n\"3\",\"South\"\n\"0\",\"West\"\n",
+                TestFiles.read(output));
+    }
+
+    /**
+     * Tests that records exploded into several rows are sorted by their first row with the rows
+     * kept together and in order, in memory, in spilled runs and in the parallel converter.
+     */
+    public void testMultiRowRecordsKeptTogether() throws Exception {
+        File input = TestFiles.write(TEST_DIR, "courses.json",
+                "[{\"id\": 3, \"courses\": [\"a\", \"b\"]}, {\"id\": 1, \"courses\": [\"c\", \"d\", \"e\"]},"
+                + " {\"id\": 2}, {\"courses\": [\"f\", \"g\"]}, {\"id\": 1, \"courses\": [\"h\", \"i\"]}]");
+        String expected = "\"id\",\"courses\"\n\"\",\"f\"\n\"\",\"g\"\n\"1\",\"c\"\n\"\",\"d\"\n\"\",\"e\"\n"
+                + "\"1\",\"h\"\n\"\",\"i\"\n\"2\",\"\"\n\"3\",\"a\"\n\"\",\"b\"\n";
+        List<String> key = Collections.singletonList("id");
+        String output = TEST_DIR + File.separator + "courses.csv";
+        new StreamingJsonConverter(new ConversionOptions().setSortColumns(key)).convert(input.getPath(), output);
+        assertEquals(expected, TestFiles.read(output));
+        new StreamingJsonConverter(new ConversionOptions().setSortColumns(key).setRowBufferBudgetBytes(1)
+                .setSpillDirectory(new File(TEST_DIR))).convert(input.getPath(), output);
+        assertEquals("Records spilled one per run should merge the same way", expected, TestFiles.read(output));
+        new ParallelJsonConverter(new ConversionOptions().setSortColumns(key).setParallelism(3))
+                .setGranularity(16).convert(input.getPath(), output);
+        assertEquals("The parallel converter should sort the same way", expected, TestFiles.read(output));
+    }
+
+    /**
+     * Tests that sorting in many spilled runs, merged in several passes, gives the same CSV as
+     * sorting in memory, and that the parallel converter sorts the same way.
+     */
+    public void testSpilledRunsMatchMemorySort() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 6000; i++) {
+            int id = (i * 7919) % 6007;
+            ids.add(id);
+            json.append(i == 0 ? "" : ", ").append("{\"id\": ").append(id).append(", \"seq\": ").append(i)
+                    .append(", \"campus\": \"Campus ").append(i % 3).append("\"}");
+        }
+        File input = TestFiles.write(TEST_DIR, "students.json", json.append("]").toString());
+        List<String> key = Collections.singletonList("id");
+
+        String memory = TEST_DIR + File.separator + "memory.csv";
+        new StreamingJsonConverter(new ConversionOptions().setSortColumns(key)).convert(input.getPath(), memory);
+        String spilled = TEST_DIR + File.separator + "spilled.csv";
+        new StreamingJsonConverter(new ConversionOptions().setSortColumns(key).setRowBufferBudgetBytes(8 * 1024)
+                .setSpillDirectory(new File(TEST_DIR)))
+                .convert(input.getPath(), spilled);
+        assertEquals("Spilled runs should merge into the same output", TestFiles.read(memory), TestFiles.read(spilled));
+
+        String[] lines = TestFiles.read(spilled).split("\n");
+        Collections.sort(ids);
+        for (int i = 0; i < ids.size(); i++) {
+            assertTrue("Row " + i + " should be in key order", lines[i + 1].startsWith("\"" + ids.get(i) + "\","));
+        }
+
+        String parallel = TEST_DIR + File.separator + "parallel.csv";
+        new ParallelJsonConverter(new ConversionOptions().setSortColumns(key).setParallelism(4)
+                .setRowBufferBudgetBytes(64 * 1024)).setGranularity(1024).convert(input.getPath(), parallel);
+        assertEquals("The parallel converter should sort the same way", TestFiles.read(memory),
+                TestFiles.read(parallel));
+        assertEquals("Run files should be deleted", 0, new File(TEST_DIR).listFiles((dir, name) -> name.endsWith(".run")).length);
+    }
+
+    /**
+     * Tests that empty sort column names are rejected.
+     */
+    public void testEmptyColumnRejected() {
+        try {
+            new ConversionOptions().setSortColumns(Arrays.asList("id", ""));
+            fail("Should throw IllegalArgumentException for an empty column name");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Sort column"));
+        }
+        assertNull("An empty list should keep the input order", new ConversionOptions()
+                .setSortColumns(Collections.<String>emptyList()).getSortColumns());
+    }
+}
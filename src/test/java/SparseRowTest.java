@@ -0,0 +1,202 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.jsoncsvconverter.Logic.CSVWriterFile;
+import org.jsoncsvconverter.Logic.ColumnarTable;
+import org.jsoncsvconverter.Logic.RowBuffer;
+import org.jsoncsvconverter.Logic.SparseRow;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test class for SparseRow and sparse row storage using JUnit 3.8.1.
+ * This test suite validates that wide, mostly empty rows are stored in proportion to their
+ * populated cells, that columns change layout without changing any value, and that sparse rows
+ * read back from memory or spilled runs write the same CSV as dense rows.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class SparseRowTest extends TestCase {
+
+    /** Test directory for spill and output files */
+    private static final String TEST_DIR = "test_sparse_output";
+
+    /**
+     * Constructor for SparseRowTest.
+     *
+     * @param testName Name of the test case
+     */
+    public SparseRowTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for SparseRow
+     */
+    public static Test suite() {
+        return new TestSuite(SparseRowTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        File[] files = new File(TEST_DIR).listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        new File(TEST_DIR).delete();
+    }
+
+    /**
+     * Tests that a table with thousands of columns, each populated in few rows, costs memory in
+     * proportion to the populated cells rather than to rows times columns.
+     */
+    public void testWideSparseTableMemory() {
+        ColumnarTable table = new ColumnarTable();
+        int rows = 50000;
+        for (int i = 0; i < rows; i++) {
+            table.addRow(new int[]{i % 2000, 2000}, new String[]{"v" + (i % 3), "always"}, 2);
+        }
+
+        assertTrue("A rarely populated column should be sparse", table.isSparse(5));
+        assertFalse("A column populated in every row should stay dense", table.isSparse(2000));
+        assertTrue("Memory should follow the populated cells: " + table.getEstimatedHeapBytes(),
+                table.getEstimatedHeapBytes() < rows * 40L);
+        assertEquals("Should read a sparse cell", "v0", table.get(4005, 5));
+        assertEquals("Should read an empty sparse cell", "", table.get(4006, 5));
+
+        int[] ids = new int[table.getColumnCount()];
+        String[] values = new String[table.getColumnCount()];
+        assertEquals("Should copy only the populated cells", 2, table.copyCells(4005, ids, values));
+        assertEquals(5, ids[0]);
+        assertEquals("v0", values[0]);
+        assertEquals(2000, ids[1]);
+    }
+
+    /**
+     * Tests that columns whose density changes switch between layouts, in both storage modes,
+     * and read back every value in order and out of order.
+     */
+    public void testLayoutChangesKeepValues() {
+        ColumnarTable table = new ColumnarTable(50);
+        List<String[]> expected = new ArrayList<>();
+        int rows = 20000;
+        for (int i = 0; i < rows; i++) {
+            // Dense, then sparse, then dense again
+            boolean sparsePhase = i >= 200 && i < 6000;
+            String encoded = sparsePhase && i % 97 != 0 ? "" : "c" + (i % 7);
+            String plain = sparsePhase && i % 89 != 0 ? "" : "p" + i;
+            table.addRow(new int[]{0, 1}, new String[]{encoded, plain}, 2);
+            expected.add(new String[]{encoded, plain});
+            if (i == 5999) {
+                assertTrue("A column emptied for long should turn sparse", table.isSparse(0));
+                assertTrue("A plain column emptied for long should turn sparse", table.isSparse(1));
+            }
+        }
+
+        assertFalse("A column filled again should turn dense", table.isSparse(0));
+        assertFalse("A plain column filled again should turn dense", table.isSparse(1));
+        assertFalse("Distinct values should be stored plain", table.isDictionaryEncoded(1));
+        for (int i = 0; i < rows; i++) {
+            assertEquals("Encoded cell " + i, expected.get(i)[0], table.get(i, 0));
+            assertEquals("Plain cell " + i, expected.get(i)[1], table.get(i, 1));
+        }
+        for (int i = rows - 1; i >= 0; i -= 13) {
+            assertEquals("Encoded cell read backwards " + i, expected.get(i)[0], table.get(i, 0));
+            assertEquals("Plain cell read backwards " + i, expected.get(i)[1], table.get(i, 1));
+        }
+    }
+
+    /**
+     * Tests that the sparse view of a buffer, in memory and spilled, expands to the same rows as
+     * the dense view, and that both write the same CSV.
+     */
+    public void testSparseViewWritesSameCsv() throws Exception {
+        RowBuffer buffer = new RowBuffer(2048, new File(TEST_DIR));
+        for (int i = 0; i < 1500; i++) {
+            Map<String, String> row = new LinkedHashMap<>();
+            row.put("id", String.valueOf(i));
+            row.put("field_" + (i % 300), "value \"" + i + "\"");
+            if (i % 4 == 0) {
+                row.put("dropped", "x");
+            }
+            buffer.addRow(row);
+        }
+        assertTrue("The small buffer should spill", buffer.getSpillCount() > 0);
+
+        List<String> order = new ArrayList<>();
+        order.add("never_seen");
+        for (int i = 299; i >= 0; i--) {
+            order.add("field_" + i);
+        }
+        order.add("id");
+        List<String[]> dense = buffer.view(order);
+        List<SparseRow> sparse = buffer.sparseView(order);
+
+        assertEquals("Views should have the same size", dense.size(), sparse.size());
+        Iterator<SparseRow> rows = sparse.iterator();
+        for (int i = 0; i < dense.size(); i++) {
+            SparseRow row = rows.next();
+            assertEquals("Row " + i + " should hold its two cells", 2, row.size());
+            assertTrue("Row " + i + " should expand to the dense row",
+                    Arrays.equals(dense.get(i), row.toArray()));
+        }
+        assertTrue("Random access should match", Arrays.equals(dense.get(1499), sparse.get(1499).toArray()));
+        assertTrue("Access behind the cursor should match", Arrays.equals(dense.get(3), sparse.get(3).toArray()));
+        assertTrue("Repeated access should match", Arrays.equals(dense.get(3), sparse.get(3).toArray()));
+
+        String[] headers = order.toArray(new String[0]);
+        File expected = new File(TEST_DIR, "dense.csv");
+        File actual = new File(TEST_DIR, "sparse.csv");
+        new CSVWriterFile(headers).createCSVWithData(expected.getPath(), dense);
+        new CSVWriterFile(headers).createCSVWithSparseRows(actual.getPath(), sparse);
+        assertTrue("Sparse rows should write the same CSV",
+                Arrays.equals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath())));
+        buffer.close();
+    }
+
+    /**
+     * Tests building sparse rows from maps and rejecting cells outside the row.
+     */
+    public void testSparseRowConstruction() {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("b", "2");
+        values.put("a", "");
+        values.put("z", "ignored");
+        SparseRow row = SparseRow.of(values, new String[]{"a", "b", "c"});
+        assertEquals("Should be as wide as the order", 3, row.getWidth());
+        assertEquals("Should keep only populated cells of the order", 1, row.size());
+        assertTrue("Should expand with empty cells", Arrays.equals(new String[]{"", "2", ""}, row.toArray()));
+
+        try {
+            new SparseRow(2, new int[]{2}, new String[]{"x"}, 1);
+            fail("A cell outside the row should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertNotNull("Exception should have a message", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,294 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+
+import org.jsoncsvconverter.Logic.ColumnProjection;
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.ParallelJsonConverter;
+import org.jsoncsvconverter.Logic.RecordFilter;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+import org.jsoncsvconverter.Logic.StructuralIndex;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Test class for StructuralIndex and ParallelJsonConverter using JUnit 3.8.1.
+ * This test suite validates that the byte-level pre-pass finds element boundaries outside
+ * strings and escapes, that it recognises each document layout, and that converting ranges in
+ * parallel writes the same CSV as the sequential streaming converter, also for input it cannot
+ * split, and that values outside the layout of the document are rejected.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class StructuralIndexTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_index_output";
+
+    /** Characters the streaming converter looks ahead to recognise a sequence */
+    private static final int LOOKAHEAD = 1 << 16;
+
+    /**
+     * Constructor for StructuralIndexTest.
+     *
+     * @param testName Name of the test case
+     */
+    public StructuralIndexTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for StructuralIndex
+     */
+    public static Test suite() {
+        return new TestSuite(StructuralIndexTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        File[] files = new File(TEST_DIR).listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        new File(TEST_DIR).delete();
+    }
+
+    /**
+     * Tests that brackets, commas and escaped quotes inside strings do not split elements, and
+     * that every range holds whole elements.
+     */
+    public void testRangesHoldWholeElements() throws Exception {
+        String json = "[{\"name\": \"a, [b]\"}, \"x\\\",{\", {\"list\": [1, 2, {\"c\": \"}\"}]},\n"
+                + " [3, 4], \"\\\\\", null, {\"d\": \"e\\\\\\\"]\"}]";
+        File input = TestFiles.write(TEST_DIR, "elements.json", json);
+
+        StructuralIndex index = StructuralIndex.build(input.toPath(), 1);
+        assertEquals("Should detect an array root", StructuralIndex.Layout.ARRAY, index.getLayout());
+        assertEquals("Should count the root elements only", 7, index.getElements().getElementCount());
+        assertEquals("Should report the first element's kind", '{', index.getElements().getFirstByte());
+
+        for (int parts = 1; parts <= 8; parts++) {
+            List<StructuralIndex.Range> ranges = index.getElements().split(parts);
+            assertTrue("Should not exceed the requested ranges", ranges.size() <= parts);
+            long elements = 0;
+            for (StructuralIndex.Range range : ranges) {
+                JsonArray parsed = JsonParser.parseString("[" + slice(input, range) + "]").getAsJsonArray();
+                assertEquals("Range should hold its counted elements", range.getElementCount(), parsed.size());
+                elements += parsed.size();
+            }
+            assertEquals("Ranges should cover every element", 7, elements);
+        }
+        assertEquals("Fine boundaries should allow one range per element", 7,
+                index.getElements().split(100).size());
+    }
+
+    /**
+     * Tests the recognised layouts and the rejection of unterminated input.
+     */
+    public void testLayouts() throws Exception {
+        StructuralIndex object = StructuralIndex.build(
+                TestFiles.write(TEST_DIR, "object.json",
+                        "{\"a\": 1, \"b\": [{\"x\": 1}, {\"x\": 2}], \"c\": {\"d\": [1]}}").toPath(), 1);
+        assertEquals("Should detect an object root", StructuralIndex.Layout.OBJECT, object.getLayout());
+        assertEquals("Should index every member", 3, object.getMembers().size());
+        assertNull("Scalar members have no elements", object.getMembers().get(0).getElements());
+        assertEquals("Array members should be indexed", 2, object.getMembers().get(1).getElements().getElementCount());
+        assertNull("Nested arrays are not indexed", object.getMembers().get(2).getElements());
+
+        StructuralIndex sequence = StructuralIndex.build(
+                TestFiles.write(TEST_DIR, "records.ndjson", "{\"a\": \"}\"}\n{\"a\": 2}\n\n[{\"a\": 3}]\n").toPath(),
+                        1);
+        assertEquals("Should detect a sequence", StructuralIndex.Layout.SEQUENCE, sequence.getLayout());
+        assertEquals("Should count the top-level values", 3, sequence.getElements().getElementCount());
+
+        assertEquals("Should detect a scalar root", StructuralIndex.Layout.SCALAR,
+                StructuralIndex.build(TestFiles.write(TEST_DIR, "scalar.json", " 42 ").toPath()).getLayout());
+        assertEquals("Should detect an empty file", StructuralIndex.Layout.EMPTY,
+                StructuralIndex.build(TestFiles.write(TEST_DIR, "empty.json", " \n").toPath()).getLayout());
+
+        try {
+            StructuralIndex.build(TestFiles.write(TEST_DIR, "open.json", "[{\"a\": \"b]}").toPath());
+            fail("Unterminated input should be rejected");
+        } catch (JsonSyntaxException e) {
+            assertNotNull("Exception should have a message", e.getMessage());
+        }
+
+        assertEquals("Lookahead should see the second record", StructuralIndex.Layout.SEQUENCE,
+                StructuralIndex.detectLayout(new BufferedReader(new StringReader("{\"a\": 1}\n{\"a\": 2}")), 64));
+        assertEquals("A record past the lookahead is not seen", StructuralIndex.Layout.OBJECT,
+                StructuralIndex.detectLayout(new BufferedReader(new StringReader("{\"a\": 1}\n{\"a\": 2}")), 4));
+    }
+
+    /**
+     * Tests that parallel conversion matches the streaming converter for every layout.
+     */
+    public void testParallelMatchesStreaming() throws Exception {
+        StringBuilder array = new StringBuilder("[");
+        StringBuilder lines = new StringBuilder();
+        StringBuilder campus = new StringBuilder("{\"institution\": \"North\", \"students\": [");
+        for (int i = 0; i < 200; i++) {
+            String student = "{\"id\": " + i + ", \"status\": \"" + (i % 3 == 0 ? "inactive" : "active") + "\""
+                    + (i % 7 == 0 ? ", \"note\": \"late, \\\"see\\\" [office]\"" : "")
+                    + ", \"courses\": [{\"code\": \"C" + i + "\"}, {\"code\": \"D" + i + "\"}]}";
+            array.append(i == 0 ? "" : ",\n").append(student);
+            lines.append(student).append('\n');
+            campus.append(i == 0 ? "" : ", ").append(student);
+        }
+        array.append("]");
+        campus.append("], \"tags\": [\"x\", \"y\"], \"year\": 2024}");
+
+        ConversionOptions options = new ConversionOptions().setParallelism(3);
+        assertSameCsv(TestFiles.write(TEST_DIR, "array.json", array.toString()), options);
+        assertSameCsv(TestFiles.write(TEST_DIR, "lines.ndjson", lines.toString()), options);
+        assertSameCsv(TestFiles.write(TEST_DIR, "campus.json", campus.toString()), options);
+        assertSameCsv(TestFiles.write(TEST_DIR, "campus.json", campus.toString()), options.setRowBufferBudgetBytes(1024)
+                .setFilter(RecordFilter.parse("students__status == 'active'")));
+    }
+
+    /**
+     * Tests that input the index cannot split, such as unquoted member names, empty elements and
+     * trailing commas, is accepted or rejected exactly as by the streaming converter.
+     */
+    public void testIrregularInputMatchesStreaming() throws Exception {
+        assertTrue("Well-formed input should be splittable", StructuralIndex.build(TestFiles.write(TEST_DIR,
+                "regular.json", "{\"a\": 1, \"s\": [{\"x\": 1}, {\"x\": 2}], \"e\": []}").toPath(), 1)
+                .isSplittable());
+        String[] inputs = {
+            "{a: 1}",
+            "{a: 1, \"b\": 2, \"students\": [{\"id\": 1}, {\"id\": 2}]}",
+            "{\"a\": 1,}",
+            "{\"a\": 1,, \"b\": 2}",
+            "{\"students\": [{\"id\": 1}, {\"id\": 2},]}",
+            "[{\"id\": 1},, {\"id\": 2}]",
+            "[{\"id\": 1}, {\"id\": 2},]"
+        };
+        ConversionOptions options = new ConversionOptions().setParallelism(2);
+        for (int i = 0; i < inputs.length; i++) {
+            File input = TestFiles.write(TEST_DIR, "irregular" + i + ".json", inputs[i]);
+            assertFalse("Should not split " + inputs[i], StructuralIndex.build(input.toPath(), 1).isSplittable());
+            String expected = TEST_DIR + File.separator + "expected.csv";
+            String actual = TEST_DIR + File.separator + "actual.csv";
+            Exception streamingError = null;
+            try {
+                new StreamingJsonConverter(options).convert(input.getPath(), expected);
+            } catch (JsonSyntaxException e) {
+                streamingError = e;
+            }
+            ParallelJsonConverter converter = new ParallelJsonConverter(options).setGranularity(1);
+            try {
+                converter.convert(input.getPath(), actual);
+                assertNull("Should reject " + inputs[i] + " like the streaming converter", streamingError);
+                assertEquals("Parallel output should match for " + inputs[i], TestFiles.read(expected),
+                        TestFiles.read(actual));
+            } catch (JsonSyntaxException e) {
+                assertNotNull("Should accept " + inputs[i] + " like the streaming converter", streamingError);
+            }
+            assertEquals("Should convert " + inputs[i] + " sequentially", 0, converter.getRangeCount());
+        }
+    }
+
+    /**
+     * Tests that top-level values other than objects and arrays, and values following a single
+     * document, are rejected by the byte and Gson paths and by the parallel converter.
+     */
+    public void testTrailingValuesRejected() throws Exception {
+        StringBuilder large = new StringBuilder("{\"notes\": \"");
+        for (int i = 0; i < LOOKAHEAD; i++) {
+            large.append('n');
+        }
+        String[] inputs = {
+            "{\"a\": 1} x",
+            "{\"a\": 1}\n{\"a\": 2}\nfoo\n",
+            "[{\"a\": 1}] 5",
+            "\"x\"",
+            large.append("\"}\n{\"notes\": \"m\"}\n").toString()
+        };
+        ConversionOptions[] options = {
+            new ConversionOptions(),
+            new ConversionOptions().setProjection(ColumnProjection.parse("a, notes")),
+            new ConversionOptions().setParallelism(2)
+        };
+        String output = TEST_DIR + File.separator + "trailing.csv";
+        for (int i = 0; i < inputs.length; i++) {
+            File input = TestFiles.write(TEST_DIR, "trailing" + i + ".json", inputs[i]);
+            for (int o = 0; o < options.length; o++) {
+                try {
+                    new ParallelJsonConverter(options[o]).setGranularity(1).convert(input.getPath(), output);
+                    fail("Should reject input " + i + " with options " + o);
+                } catch (JsonSyntaxException e) {
+                    assertNotNull("Exception should have a message", e.getMessage());
+                }
+            }
+        }
+
+        File lines = TestFiles.write(TEST_DIR, "lines.ndjson", "{\"a\": 1}\n[{\"a\": 2}]\n{\"a\": 3}\n");
+        for (int o = 0; o < options.length; o++) {
+            assertEquals("A sequence of objects and arrays should be accepted", 3,
+                    new ParallelJsonConverter(options[o]).setGranularity(1).convert(lines.getPath(), output));
+        }
+    }
+
+    /**
+     * Tests that the first line of newline-delimited JSON is filtered as a record.
+     */
+    public void testStreamingFiltersFirstLine() throws Exception {
+        String output = TEST_DIR + File.separator + "lines.csv";
+        StreamingJsonConverter converter = new StreamingJsonConverter(
+                new ConversionOptions().setFilter(RecordFilter.parse("id > 1")));
+        long rows = converter.convert(new StringReader("{\"id\": 1, \"tags\": [\"a\"]}\n{\"id\": 2}\n"),
+                "lines.ndjson", output);
+
+        assertEquals("Only the second line should be kept", 1, rows);
+        assertEquals("The first line should be rejected", 1, converter.getRejectedRecordCount());
+        assertEquals("Should write the kept record", "\"id\"\n\"2\"\n", TestFiles.read(output));
+    }
+
+    private void assertSameCsv(File input, ConversionOptions options) throws Exception {
+        String expected = TEST_DIR + File.separator + "expected.csv";
+        String actual = TEST_DIR + File.separator + "actual.csv";
+        long expectedRows = new StreamingJsonConverter(options).convert(input.getPath(), expected);
+
+        ParallelJsonConverter converter = new ParallelJsonConverter(options).setGranularity(64);
+        assertEquals("Row counts should match for " + input.getName(), expectedRows,
+                converter.convert(input.getPath(), actual));
+        assertTrue("Should split " + input.getName() + " into several ranges", converter.getRangeCount() > 1);
+        assertEquals("Parallel output should match for " + input.getName(), TestFiles.read(expected),
+                TestFiles.read(actual));
+    }
+
+    private static String slice(File file, StructuralIndex.Range range) throws Exception {
+        byte[] bytes = new byte[(int) (range.getEnd() - range.getStart())];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(range.getStart());
+            in.readFully(bytes);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,66 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * File helpers shared by the test classes that write JSON input and read converted output
+ * in their test directory.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+final class TestFiles {
+
+    private TestFiles() {
+    }
+
+    /**
+     * Writes a file encoded in UTF-8.
+     *
+     * @param directory The directory of the file
+     * @param name The file name
+     * @param content The text of the file
+     * @return The file written
+     */
+    static File write(String directory, String name, String content) throws Exception {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Reads a file encoded in UTF-8.
+     *
+     * @param file The file to read
+     * @return The text of the file
+     */
+    static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a file encoded in UTF-8.
+     *
+     * @param path The path of the file to read
+     * @return The text of the file
+     */
+    static String read(String path) throws Exception {
+        return read(new File(path));
+    }
+
+    /**
+     * Deletes a file, or a directory with everything in it.
+     *
+     * @param file The file or directory to delete
+     */
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,209 @@
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.MalformedJsonException;
+
+import org.jsoncsvconverter.Logic.ConversionOptions;
+import org.jsoncsvconverter.Logic.StreamingJsonConverter;
+import org.jsoncsvconverter.Logic.Utf8JsonTokenizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Test class for Utf8JsonTokenizer and the byte-level conversion path using JUnit 3.8.1.
+ * This test suite validates the tokens, interned names and decoded values read from UTF-8 bytes,
+ * and that converting with the byte tokenizer writes the same CSV as the Gson reader, including
+ * for input the byte path hands back to it.
+ *
+ * @author Miguel Fernandez
+ * @version 1.0
+ * @since 1.1
+ */
+public class Utf8JsonTokenizerTest extends TestCase {
+
+    /** Test directory for input and output files */
+    private static final String TEST_DIR = "test_tokenizer_output";
+
+    /**
+     * Constructor for Utf8JsonTokenizerTest.
+     *
+     * @param testName Name of the test case
+     */
+    public Utf8JsonTokenizerTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates and returns a test suite containing all test methods.
+     *
+     * @return Test suite for Utf8JsonTokenizer
+     */
+    public static Test suite() {
+        return new TestSuite(Utf8JsonTokenizerTest.class);
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(TEST_DIR).mkdirs();
+    }
+
+    /**
+     * Removes files created during testing.
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        File[] files = new File(TEST_DIR).listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        new File(TEST_DIR).delete();
+    }
+
+    /**
+     * Tests the token sequence, the interning of names however they are spelled, and the
+     * decoding of values, with a buffer small enough to split every token.
+     */
+    public void testTokensAndNames() throws Exception {
+        String json = "{\"id\": 12.5e1, \"name\": \"a\\\"b\\u00e9\", \"tags\": [true, null, false],"
+                + " \"n\\u0061me\": \"caf\u00e9 \\ud83d\\ude00\"}\n{\"id\": -3}";
+        Utf8JsonTokenizer in = new Utf8JsonTokenizer(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 3);
+
+        assertEquals(Utf8JsonTokenizer.Token.BEGIN_OBJECT, in.next());
+        assertEquals(Utf8JsonTokenizer.Token.NAME, in.next());
+        int id = in.getNameId();
+        assertEquals("Should resolve the name id", "id", in.getName(id));
+        assertEquals(Utf8JsonTokenizer.Token.NUMBER, in.next());
+        assertEquals("Numbers keep their text", "12.5e1", in.getValueString());
+
+        assertEquals(Utf8JsonTokenizer.Token.NAME, in.next());
+        int name = in.getNameId();
+        assertEquals(Utf8JsonTokenizer.Token.STRING, in.next());
+        assertTrue("Escapes should be reported", in.isValueEscaped());
+        assertEquals("Should decode escapes", "a\"b\u00e9", in.getValueString());
+
+        assertEquals(Utf8JsonTokenizer.Token.NAME, in.next());
+        assertEquals(Utf8JsonTokenizer.Token.BEGIN_ARRAY, in.next());
+        assertEquals(Utf8JsonTokenizer.Token.TRUE, in.next());
+        assertEquals(Utf8JsonTokenizer.Token.NULL, in.next());
+        assertEquals(Utf8JsonTokenizer.Token.FALSE, in.next());
+        assertEquals(Utf8JsonTokenizer.Token.END_ARRAY, in.next());
+
+        assertEquals(Utf8JsonTokenizer.Token.NAME, in.next());
+        assertEquals("An escaped spelling should map to the same id", name, in.getNameId());
+        assertEquals(Utf8JsonTokenizer.Token.STRING, in.next());
+        assertFalse("Non-ASCII bytes should be reported", in.isValueAscii());
+        assertEquals("Should decode UTF-8 and surrogate pairs", "caf\u00e9 \ud83d\ude00", in.getValueString());
+        assertEquals(Utf8JsonTokenizer.Token.END_OBJECT, in.next());
+
+        assertEquals("Should read a second top-level value", Utf8JsonTokenizer.Token.BEGIN_OBJECT, in.next());
+        assertEquals(Utf8JsonTokenizer.Token.NAME, in.next());
+        assertEquals("A repeated name should keep its id", id, in.getNameId());
+        assertEquals(Utf8JsonTokenizer.Token.NUMBER, in.next());
+        assertEquals("-3", in.getValueString());
+        assertEquals(Utf8JsonTokenizer.Token.END_OBJECT, in.next());
+        assertEquals(Utf8JsonTokenizer.Token.END_DOCUMENT, in.next());
+        in.close();
+    }
+
+    /**
+     * Tests that malformed input is rejected with its position.
+     */
+    public void testMalformedInput() throws Exception {
+        String[] inputs = {"{\"a\": \"\\x\"}", "{\"a\": \"open", "{\"a\" 1}", "[1, 2", "{\"a\": tru}", "[1,]"};
+        for (int i = 0; i < inputs.length; i++) {
+            Utf8JsonTokenizer in = new Utf8JsonTokenizer(
+                    new ByteArrayInputStream(inputs[i].getBytes(StandardCharsets.UTF_8)));
+            try {
+                Utf8JsonTokenizer.Token token;
+                do {
+                    token = in.next();
+                } while (token != Utf8JsonTokenizer.Token.END_DOCUMENT);
+                fail("Should reject " + inputs[i]);
+            } catch (MalformedJsonException e) {
+                assertTrue("Message should give the position: " + e.getMessage(), e.getMessage().contains("byte"));
+            }
+        }
+    }
+
+    /**
+     * Tests that the byte path writes the same CSV as the Gson reader for each layout, with
+     * values that need quoting, escapes, non-ASCII text, nulls and nested arrays.
+     */
+    public void testByteTokenizerMatchesGson() throws Exception {
+        String student = "{\"id\": %d, \"name\": \"Ana \\\"%d\\\", caf\u00e9\", \"gpa\": 3.50, \"active\": true,"
+                + " \"advisor\": null, \"address\": {\"city\": \"Le\\u00f3n\", \"zip\": [1, 2]},"
+                + " \"courses\": [{\"code\": \"C%d\", \"grades\": [90, 85]}, {\"code\": \"D\\n%d\"}],"
+                + " \"tags\": [\"x\", \"y\"]}";
+        StringBuilder array = new StringBuilder("[");
+        StringBuilder lines = new StringBuilder();
+        StringBuilder campus = new StringBuilder("{\"institution\": \"North \\/ South\", \"students\": [");
+        for (int i = 0; i < 20; i++) {
+            String record = String.format(student, i, i, i, i);
+            array.append(i == 0 ? "" : ",\n").append(record);
+            lines.append(record).append('\n');
+            campus.append(i == 0 ? "" : ", ").append(record);
+        }
+        array.append("]");
+        campus.append("], \"terms\": [\"fall\", \"spring\", \"summer\"], \"meta\": {\"year\": 2024}, \"empty\": []}");
+
+        assertSameCsv(TestFiles.write(TEST_DIR, "array.json", array.toString()));
+        assertSameCsv(TestFiles.write(TEST_DIR, "lines.ndjson", lines.toString()));
+        assertSameCsv(TestFiles.write(TEST_DIR, "campus.json", campus.toString()));
+        assertSameCsv(TestFiles.write(TEST_DIR, "scalars.ndjson", "[1, \"two\"]\n[3, {\"a\": null}]\n"));
+    }
+
+    /**
+     * Tests that input the byte path does not reproduce exactly still converts as with the Gson
+     * reader, and that malformed input is still reported as a syntax error.
+     */
+    public void testFallbackToGson() throws Exception {
+        assertSameCsv(TestFiles.write(TEST_DIR, "lenient.json", "{'a': 1, b: [1, 2], \"c\": NaN}"));
+        assertSameCsv(TestFiles.write(TEST_DIR, "duplicate.json",
+                "[{\"a\": 1, \"a\": 2, \"b\": {\"c\": 1, \"c\": 2}}]"));
+        assertSameCsv(TestFiles.write(TEST_DIR, "ambiguous.json", "[{\"a__b\": 1, \"a\": {\"b\": 2}}]"));
+        assertSameCsv(TestFiles.write(TEST_DIR, "deep.json", "{\"a\": [{\"b\": {\"c\": 1}}], \"d\": 2}"), 4);
+
+        try {
+            new StreamingJsonConverter(new ConversionOptions()).convert(
+                    TestFiles.write(TEST_DIR, "broken.json", "[{\"a\": \"open}]").getPath(),
+                            TEST_DIR + File.separator + "broken.csv");
+            fail("Malformed input should be rejected");
+        } catch (JsonSyntaxException e) {
+            assertNotNull("Exception should have a message", e.getMessage());
+        }
+    }
+
+    private void assertSameCsv(File input) throws Exception {
+        assertSameCsv(input, new ConversionOptions().getMaxNestingDepth());
+    }
+
+    private void assertSameCsv(File input, int maxDepth) throws Exception {
+        String expected = TEST_DIR + File.separator + "expected.csv";
+        String actual = TEST_DIR + File.separator + "actual.csv";
+        StreamingJsonConverter reference = new StreamingJsonConverter(
+                new ConversionOptions().setByteTokenizerEnabled(false).setMaxNestingDepth(maxDepth));
+        long expectedRows = reference.convert(input.getPath(), expected);
+
+        StreamingJsonConverter converter = new StreamingJsonConverter(
+                new ConversionOptions().setMaxNestingDepth(maxDepth));
+        assertEquals("Row counts should match for " + input.getName(), expectedRows,
+                converter.convert(input.getPath(), actual));
+        assertTrue("Headers should match for " + input.getName(),
+                Arrays.equals(reference.getHeadersArray(), converter.getHeadersArray()));
+        assertEquals("Row explosion should match for " + input.getName(),
+                reference.getMaxRowExplosion(), converter.getMaxRowExplosion());
+        assertEquals("Output should match for " + input.getName(), TestFiles.read(expected), TestFiles.read(actual));
+    }
+}